@@ -0,0 +1,36 @@
+package net.tomp2p.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this package and writes the results as JSON, so
+ * that runs of different versions can be compared.
+ * <p>
+ * Usage: java -jar target/benchmarks.jar [regexp] [result file]. The regular
+ * expression selects the benchmarks, all benchmarks of this package are run
+ * by default. The results are written to jmh-result.json by default. For other
+ * JMH options, run org.openjdk.jmh.Main from the same jar.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class BenchmarkRunner {
+
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(final String[] args) throws RunnerException {
+		final String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+		final String result = args.length > 1 ? args[1] : DEFAULT_RESULT_FILE;
+		final File resultFile = new File(result).getAbsoluteFile();
+		final Options options = new OptionsBuilder().include(include).resultFormat(ResultFormatType.JSON)
+		        .result(resultFile.getPath()).build();
+		new Runner(options).run();
+		System.out.printf("Results written to %s.\n", resultFile);
+	}
+}
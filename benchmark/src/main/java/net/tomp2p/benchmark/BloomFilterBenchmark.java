@@ -0,0 +1,84 @@
+package net.tomp2p.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.rpc.SimpleBloomFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds and checks keys in a {@link SimpleBloomFilter} with a false positive
+ * probability of 1%, and encodes and decodes the filter as done when it is
+ * sent with a digest request.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BloomFilterBenchmark {
+
+	@Param({ "100", "10000" })
+	public int elements;
+
+	private SimpleBloomFilter<Number160> bloomFilter;
+	private Number160[] keys;
+	private ByteBuf buf;
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		bloomFilter = new SimpleBloomFilter<Number160>(0.01, elements);
+		keys = new Number160[elements];
+		for (int i = 0; i < elements; i++) {
+			keys[i] = new Number160(random);
+			bloomFilter.add(keys[i]);
+		}
+		buf = Unpooled.buffer();
+		bloomFilter.toByteBuf(buf);
+	}
+
+	@Benchmark
+	public boolean add() {
+		index = (index + 1) % elements;
+		return bloomFilter.add(keys[index]);
+	}
+
+	@Benchmark
+	public boolean contains() {
+		index = (index + 1) % elements;
+		return bloomFilter.contains(keys[index]);
+	}
+
+	@Benchmark
+	public ByteBuf encode() {
+		final ByteBuf encoded = Unpooled.buffer(buf.readableBytes());
+		bloomFilter.toByteBuf(encoded);
+		return encoded;
+	}
+
+	@Benchmark
+	public SimpleBloomFilter<Number160> decode() {
+		return SimpleBloomFilter.decode(buf.duplicate());
+	}
+}
@@ -0,0 +1,99 @@
+package net.tomp2p.benchmark;
+
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.peers.DefaultMaintenance;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerMap;
+import net.tomp2p.peers.PeerMapConfiguration;
+import net.tomp2p.peers.PeerStatistic;
+import net.tomp2p.rpc.NeighborRPC;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link PeerMap#closePeers(Number160, int)}, which sorts all peers of
+ * the scanned bags, with the bounded heap selection for large peer maps. The
+ * bags are large enough to hold all peers, and the number of requested peers
+ * is the number of neighbors a peer reports.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClosePeersBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Maps {
+		@Param({ "1000", "10000", "100000" })
+		public int peers;
+
+		public PeerMap peerMap;
+		public PeerMap boundedPeerMap;
+		public Number160[] keys;
+
+		@Setup
+		public void setup() {
+			final Number160 self = new Number160(1);
+			peerMap = new PeerMap(configuration(self, peers, false));
+			boundedPeerMap = new PeerMap(configuration(self, peers, true));
+			final Random random = new Random(42);
+			for (int i = 0; i < peers; i++) {
+				final PeerAddress peerAddress = new PeerAddress(new Number160(random));
+				peerMap.peerFound(peerAddress, null, null, null);
+				boundedPeerMap.peerFound(peerAddress, null, null, null);
+			}
+			keys = new Number160[1024];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = new Number160(random);
+			}
+		}
+
+		private static PeerMapConfiguration configuration(final Number160 self, final int peers,
+				final boolean bounded) {
+			final PeerMapConfiguration conf = new PeerMapConfiguration(self);
+			conf.setFixedVerifiedBagSizes(peers).setFixedOverflowBagSizes(0);
+			conf.offlineCount(1000).offlineTimeout(100);
+			conf.maintenance(new DefaultMaintenance(0, new int[] {}));
+			conf.boundedClosePeers(bounded);
+			return conf;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int index;
+
+		public Number160 next(final Number160[] keys) {
+			index = (index + 1) % keys.length;
+			return keys[index];
+		}
+	}
+
+	@Benchmark
+	public NavigableSet<PeerStatistic> closePeers(final Maps maps, final Cursor cursor) {
+		return maps.peerMap.closePeers(cursor.next(maps.keys), NeighborRPC.NEIGHBOR_SIZE);
+	}
+
+	@Benchmark
+	public NavigableSet<PeerStatistic> boundedClosePeers(final Maps maps, final Cursor cursor) {
+		return maps.boundedPeerMap.closePeers(cursor.next(maps.keys), NeighborRPC.NEIGHBOR_SIZE);
+	}
+}
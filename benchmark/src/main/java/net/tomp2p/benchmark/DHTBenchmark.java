@@ -0,0 +1,113 @@
+package net.tomp2p.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.connection.Bindings;
+import net.tomp2p.dht.FutureGet;
+import net.tomp2p.dht.FuturePut;
+import net.tomp2p.dht.PeerBuilderDHT;
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.p2p.Peer;
+import net.tomp2p.p2p.PeerBuilder;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerMap;
+import net.tomp2p.peers.PeerMapConfiguration;
+import net.tomp2p.storage.Data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Puts and gets a value on a network of peers in this JVM that talk over
+ * local sockets. The peers know each other from the start, so the
+ * routing does not depend on maintenance. Each operation is started from a
+ * different peer and goes to a different location key.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DHTBenchmark {
+
+	private static final int PORT = 4001;
+	private static final int LOCATION_KEYS = 1024;
+
+	@Param({ "10", "50" })
+	public int peers;
+
+	private PeerDHT[] network;
+	private Number160[] locationKeys;
+	private Data data;
+	private int index = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		final Random random = new Random(42);
+		network = new PeerDHT[peers];
+		final Bindings bindings = new Bindings();
+		Peer master = null;
+		for (int i = 0; i < peers; i++) {
+			final Number160 peerId = new Number160(random);
+			final PeerBuilder peerBuilder = new PeerBuilder(peerId).enableMaintenance(false).bindings(bindings)
+			        .peerMap(new PeerMap(new PeerMapConfiguration(peerId).peerNoVerification()));
+			final Peer peer = master == null ? peerBuilder.ports(PORT).start() : peerBuilder.masterPeer(master)
+			        .start();
+			if (master == null) {
+				master = peer;
+			}
+			network[i] = new PeerBuilderDHT(peer).start();
+		}
+		for (int i = 0; i < peers; i++) {
+			for (int j = 0; j < peers; j++) {
+				network[i].peerBean().peerMap().peerFound(network[j].peerAddress(), null, null, null);
+			}
+		}
+		locationKeys = new Number160[LOCATION_KEYS];
+		for (int i = 0; i < LOCATION_KEYS; i++) {
+			locationKeys[i] = new Number160(random);
+		}
+		data = new Data(new byte[100]);
+		for (int i = 0; i < LOCATION_KEYS; i++) {
+			network[i % peers].put(locationKeys[i]).data(data).start().awaitUninterruptibly();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		// the master shuts down the other peers as well
+		network[0].shutdown().awaitUninterruptibly();
+	}
+
+	@Benchmark
+	public boolean put() {
+		index++;
+		final FuturePut futurePut = network[index % peers].put(locationKeys[index % LOCATION_KEYS]).data(data)
+		        .start().awaitUninterruptibly();
+		return futurePut.isSuccess();
+	}
+
+	@Benchmark
+	public Data get() {
+		index++;
+		final FutureGet futureGet = network[index % peers].get(locationKeys[index % LOCATION_KEYS]).start()
+		        .awaitUninterruptibly();
+		return futureGet.data();
+	}
+}
@@ -0,0 +1,111 @@
+package net.tomp2p.benchmark;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.connection.DSASignatureFactory;
+import net.tomp2p.connection.SignatureFactory;
+import net.tomp2p.message.DataMap;
+import net.tomp2p.message.Decoder;
+import net.tomp2p.message.Encoder;
+import net.tomp2p.message.Message;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerSocketAddress;
+import net.tomp2p.storage.AlternativeCompositeByteBuf;
+import net.tomp2p.storage.Data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes a message with {@link Encoder} and decodes it again with
+ * {@link Decoder}, as done for every request and reply. The message carries a
+ * data map with the given number of entries of 100 bytes each.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageCodecBenchmark {
+
+	@Param({ "0", "10", "100" })
+	public int entries;
+
+	private final SignatureFactory signatureFactory = new DSASignatureFactory();
+	private Message message;
+	private InetSocketAddress sender;
+	private InetSocketAddress recipient;
+	private EmbeddedChannel channel;
+	private ChannelHandlerContext ctx;
+
+	@Setup
+	public void setup() throws UnknownHostException {
+		final InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		final PeerAddress senderAddress = new PeerAddress(new Number160("0x4321"), new PeerSocketAddress(localhost,
+		        8001, 8002), false, false, false, false, false, PeerAddress.EMPTY_PEER_SOCKET_ADDRESSES);
+		final PeerAddress recipientAddress = new PeerAddress(new Number160("0x1234"), new PeerSocketAddress(localhost,
+		        8003, 8004), false, false, false, false, false, PeerAddress.EMPTY_PEER_SOCKET_ADDRESSES);
+		message = new Message().sender(senderAddress).recipient(recipientAddress).type(Message.Type.REQUEST_1)
+		        .command((byte) 0);
+		if (entries > 0) {
+			final Random random = new Random(42);
+			final NavigableMap<Number640, Data> dataMap = new TreeMap<Number640, Data>();
+			for (int i = 0; i < entries; i++) {
+				final byte[] value = new byte[100];
+				random.nextBytes(value);
+				dataMap.put(new Number640(random), new Data(value));
+			}
+			message.setDataMap(new DataMap(dataMap));
+		}
+		sender = senderAddress.createSocketTCP();
+		recipient = recipientAddress.createSocketTCP();
+		// the decoder needs a context for the channel attributes
+		channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		ctx = channel.pipeline().firstContext();
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.finish();
+	}
+
+	@Benchmark
+	public Message roundTrip() throws Exception {
+		final AlternativeCompositeByteBuf buf = AlternativeCompositeByteBuf
+		        .compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
+		try {
+			new Encoder(signatureFactory).write(buf, message, null);
+			final Decoder decoder = new Decoder(signatureFactory, AlternativeCompositeByteBuf.UNPOOLED_HEAP);
+			decoder.decode(ctx, buf, recipient, sender);
+			return decoder.prepareFinish();
+		} finally {
+			buf.release();
+		}
+	}
+}
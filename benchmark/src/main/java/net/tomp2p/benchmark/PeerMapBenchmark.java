@@ -0,0 +1,77 @@
+package net.tomp2p.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.peers.DefaultMaintenance;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerMap;
+import net.tomp2p.peers.PeerMapConfiguration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reports peers to {@link PeerMap#peerFound(PeerAddress, PeerAddress, net.tomp2p.connection.PeerConnection,
+ * net.tomp2p.peers.RTT)}, as done for every message received. The known benchmark reports peers that are already in
+ * the map, the unknown benchmark reports new peers, which mostly end up in the full overflow bags. The selection of
+ * close peers is measured by {@link ClosePeersBenchmark}.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PeerMapBenchmark {
+
+	@Param({ "100", "1000" })
+	public int peers;
+
+	private PeerMap peerMap;
+	private PeerAddress[] known;
+	private PeerAddress[] unknown;
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		final PeerMapConfiguration conf = new PeerMapConfiguration(new Number160(random));
+		conf.maintenance(new DefaultMaintenance(0, new int[] {}));
+		peerMap = new PeerMap(conf);
+		known = new PeerAddress[peers];
+		for (int i = 0; i < peers; i++) {
+			known[i] = new PeerAddress(new Number160(random));
+			peerMap.peerFound(known[i], null, null, null);
+		}
+		unknown = new PeerAddress[1024];
+		for (int i = 0; i < unknown.length; i++) {
+			unknown[i] = new PeerAddress(new Number160(random));
+		}
+	}
+
+	@Benchmark
+	public boolean known() {
+		index = (index + 1) % known.length;
+		return peerMap.peerFound(known[index], null, null, null);
+	}
+
+	@Benchmark
+	public boolean unknown() {
+		index = (index + 1) % unknown.length;
+		return peerMap.peerFound(unknown[index], null, null, null);
+	}
+}
@@ -0,0 +1,92 @@
+package net.tomp2p.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.synchronization.Checksum;
+import net.tomp2p.synchronization.Instruction;
+import net.tomp2p.synchronization.RSync;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creates the checksums of a value and the instructions to transform an older
+ * copy of this value, as done by the replica and the responsible peer when a
+ * value is synchronized. The older copy differs in one byte per 64KB. The
+ * values are split into buffers of 64KB, as they are when they are received,
+ * and the instructions are streamed as in the SyncBuilder.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class RSyncBenchmark {
+
+	private static final int BLOCK_SIZE = 700;
+
+	private static final int CHUNK_SIZE = 65536;
+
+	@Param({ "1048576", "16777216", "268435456" })
+	public int size;
+
+	private ByteBuffer[] newValue;
+	private ByteBuffer[] oldValue;
+	private List<Checksum> checksums;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		final byte[] newArray = new byte[size];
+		random.nextBytes(newArray);
+		final byte[] oldArray = newArray.clone();
+		for (int i = 0; i < size; i += CHUNK_SIZE) {
+			oldArray[i + random.nextInt(Math.min(CHUNK_SIZE, size - i))]++;
+		}
+		newValue = chunks(newArray);
+		oldValue = chunks(oldArray);
+		checksums = RSync.checksums(oldValue, BLOCK_SIZE);
+	}
+
+	private static ByteBuffer[] chunks(final byte[] array) {
+		final ByteBuffer[] chunks = new ByteBuffer[(array.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+		for (int i = 0; i < chunks.length; i++) {
+			final int offset = i * CHUNK_SIZE;
+			chunks[i] = ByteBuffer.wrap(array, offset, Math.min(CHUNK_SIZE, array.length - offset)).slice();
+		}
+		return chunks;
+	}
+
+	@Benchmark
+	public List<Checksum> checksums() {
+		return RSync.checksums(oldValue, BLOCK_SIZE);
+	}
+
+	@Benchmark
+	public void instructions(final Blackhole blackhole) {
+		RSync.instructions(newValue, checksums, BLOCK_SIZE, new RSync.InstructionListener() {
+			@Override
+			public void instruction(final Instruction instruction) {
+				blackhole.consume(instruction);
+			}
+		});
+	}
+}
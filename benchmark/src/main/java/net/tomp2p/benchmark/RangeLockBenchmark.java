@@ -0,0 +1,91 @@
+package net.tomp2p.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.dht.RangeLock;
+import net.tomp2p.dht.StripedRangeLock;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the single monitor {@link RangeLock} with the
+ * {@link StripedRangeLock} for point locks on random location keys, which is
+ * the lock pattern of put and get in the storage layer.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class RangeLockBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Locks {
+		@Param({ "16", "1024" })
+		public int locationKeys;
+
+		public RangeLock<Number640> rangeLock;
+		public StripedRangeLock stripedRangeLock;
+		public Number640[] keys;
+
+		@Setup
+		public void setup() {
+			rangeLock = new RangeLock<Number640>();
+			stripedRangeLock = new StripedRangeLock();
+			keys = new Number640[locationKeys];
+			final Random random = new Random(42);
+			for (int i = 0; i < locationKeys; i++) {
+				keys[i] = new Number640(new Number160(random), Number160.ZERO, Number160.ZERO, Number160.ZERO);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		private final Random random = new Random();
+
+		public Number640 next(final Number640[] keys) {
+			return keys[random.nextInt(keys.length)];
+		}
+	}
+
+	@Benchmark
+	public int rangeLock(final Locks locks, final Cursor cursor) {
+		final Number640 key = cursor.next(locks.keys);
+		final RangeLock<Number640>.Range range = locks.rangeLock.lock(key, key);
+		try {
+			return key.hashCode();
+		} finally {
+			range.unlock();
+		}
+	}
+
+	@Benchmark
+	public int stripedRangeLock(final Locks locks, final Cursor cursor) {
+		final Number640 key = cursor.next(locks.keys);
+		final StripedRangeLock.Range range = locks.stripedRangeLock.lock(key, key);
+		try {
+			return key.hashCode();
+		} finally {
+			range.unlock();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package net.tomp2p.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.connection.DSASignatureFactory;
+import net.tomp2p.connection.Ed25519SignatureFactory;
+import net.tomp2p.connection.RSASignatureFactory;
+import net.tomp2p.connection.SignatureFactory;
+import net.tomp2p.message.SignatureCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signs and verifies a message of the size of a UDP packet with the signature
+ * factories. The decodePublicKey benchmark reads the public key of the sender
+ * from the wire, as done for every signed message. Ed25519 needs Java 15 or
+ * newer, or an other Ed25519 provider. Without one, the Ed25519 runs fail in
+ * the setup and the other algorithms are still measured.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureBenchmark {
+
+	private static final int MESSAGE_SIZE = 1000;
+
+	@Param({ "DSA", "RSA", "Ed25519" })
+	public String algorithm;
+
+	private SignatureFactory signatureFactory;
+	private KeyPair keyPair;
+	private ByteBuffer message;
+	private SignatureCodec signature;
+	private ByteBuf encodedPublicKey;
+
+	@Setup
+	public void setup() throws NoSuchAlgorithmException, InvalidKeyException, SignatureException, IOException {
+		final KeyPairGenerator gen;
+		if ("Ed25519".equals(algorithm)) {
+			if (!Ed25519SignatureFactory.isAvailable()) {
+				throw new IllegalStateException("No Ed25519 provider, needs Java 15 or newer");
+			}
+			signatureFactory = new Ed25519SignatureFactory();
+			gen = KeyPairGenerator.getInstance("Ed25519");
+		} else if ("RSA".equals(algorithm)) {
+			signatureFactory = new RSASignatureFactory();
+			gen = KeyPairGenerator.getInstance("RSA");
+			gen.initialize(1024);
+		} else {
+			signatureFactory = new DSASignatureFactory();
+			gen = KeyPairGenerator.getInstance("DSA");
+			gen.initialize(1024);
+		}
+		keyPair = gen.generateKeyPair();
+		final byte[] bytes = new byte[MESSAGE_SIZE];
+		new Random(42).nextBytes(bytes);
+		message = ByteBuffer.wrap(bytes);
+		signature = signatureFactory.sign(keyPair.getPrivate(), new ByteBuffer[] { message.duplicate() });
+		encodedPublicKey = Unpooled.buffer();
+		signatureFactory.encodePublicKey(keyPair.getPublic(), encodedPublicKey);
+	}
+
+	@Benchmark
+	public SignatureCodec sign() throws InvalidKeyException, SignatureException, IOException {
+		return signatureFactory.sign(keyPair.getPrivate(), new ByteBuffer[] { message.duplicate() });
+	}
+
+	@Benchmark
+	public boolean verify() throws InvalidKeyException, SignatureException {
+		return signatureFactory.verify(keyPair.getPublic(), new ByteBuffer[] { message.duplicate() }, signature);
+	}
+
+	@Benchmark
+	public PublicKey decodePublicKey() {
+		return signatureFactory.decodePublicKey(encodedPublicKey.duplicate());
+	}
+}
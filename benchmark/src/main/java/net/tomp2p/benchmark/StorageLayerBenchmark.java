@@ -0,0 +1,97 @@
+package net.tomp2p.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.dht.StorageLayer;
+import net.tomp2p.dht.StorageMemory;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Puts and gets values through the {@link StorageLayer} with a
+ * {@link StorageMemory} backend, as done by the storage RPC. The keys are
+ * spread over the given number of location keys.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class StorageLayerBenchmark {
+
+	private static final int KEYS = 4096;
+
+	@State(Scope.Benchmark)
+	public static class Storage {
+		@Param({ "16", "1024" })
+		public int locationKeys;
+
+		public StorageMemory storageMemory;
+		public StorageLayer storageLayer;
+		public Number640[] keys;
+		public Data data;
+
+		@Setup
+		public void setup() {
+			storageMemory = new StorageMemory();
+			storageLayer = new StorageLayer(storageMemory);
+			final Random random = new Random(42);
+			final Number160[] locations = new Number160[locationKeys];
+			for (int i = 0; i < locationKeys; i++) {
+				locations[i] = new Number160(random);
+			}
+			data = new Data(new byte[100]);
+			keys = new Number640[KEYS];
+			for (int i = 0; i < KEYS; i++) {
+				keys[i] = new Number640(locations[i % locationKeys], Number160.ZERO, new Number160(random),
+				        Number160.ZERO);
+				storageLayer.put(keys[i], data, null, false, false, false);
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			storageMemory.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Index {
+		public int index = 0;
+
+		public int next() {
+			index = (index + 1) % KEYS;
+			return index;
+		}
+	}
+
+	@Benchmark
+	public Enum<?> put(final Storage storage, final Index index) {
+		return storage.storageLayer.put(storage.keys[index.next()], storage.data, null, false, false, false);
+	}
+
+	@Benchmark
+	public Data get(final Storage storage, final Index index) {
+		return storage.storageLayer.get(storage.keys[index.next()]);
+	}
+}
@@ -0,0 +1,117 @@
+package net.tomp2p.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.storage.BinaryValueCodec;
+import net.tomp2p.storage.Data;
+import net.tomp2p.storage.JavaValueCodec;
+import net.tomp2p.storage.ValueCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes the object of a data object from 1, 8, and 32 threads, as done by
+ * {@link Data#object(ValueCodec)} after a get. The synchronized codec decodes
+ * with Java serialization under one global lock, as Data.object() did before,
+ * the java codec decodes the same without the lock, and the binary codec uses
+ * {@link BinaryValueCodec}.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueCodecBenchmark {
+
+	@Param({ "synchronized", "java", "binary" })
+	public String codec;
+
+	@Param({ "string", "long" })
+	public String value;
+
+	private ValueCodec valueCodec;
+	private Data data;
+
+	@Setup
+	public void setup() throws IOException {
+		if ("binary".equals(codec)) {
+			valueCodec = new BinaryValueCodec();
+		} else if ("java".equals(codec)) {
+			valueCodec = new JavaValueCodec();
+		} else {
+			valueCodec = new SynchronizedValueCodec(new JavaValueCodec());
+		}
+		final Object object;
+		if ("long".equals(value)) {
+			object = Long.valueOf(4711);
+		} else {
+			final StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 32; i++) {
+				sb.append("value").append(i);
+			}
+			object = sb.toString();
+		}
+		data = new Data(object, valueCodec);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object decode1() throws ClassNotFoundException, IOException {
+		return data.object(valueCodec);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Object decode8() throws ClassNotFoundException, IOException {
+		return data.object(valueCodec);
+	}
+
+	@Benchmark
+	@Threads(32)
+	public Object decode32() throws ClassNotFoundException, IOException {
+		return data.object(valueCodec);
+	}
+
+	/**
+	 * Decodes under a global lock, like the former static synchronized
+	 * Utils.decodeJavaObject.
+	 */
+	private static class SynchronizedValueCodec implements ValueCodec {
+		private static final Object LOCK = new Object();
+		private final ValueCodec valueCodec;
+
+		private SynchronizedValueCodec(final ValueCodec valueCodec) {
+			this.valueCodec = valueCodec;
+		}
+
+		@Override
+		public byte[] encode(final Object object) throws IOException {
+			return valueCodec.encode(object);
+		}
+
+		@Override
+		public Object decode(final List<ByteBuffer> buffers) throws ClassNotFoundException, IOException {
+			synchronized (LOCK) {
+				return valueCodec.decode(buffers);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package net.tomp2p.benchmark;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorts peers by their XOR distance to a location key, as done in every
+ * routing step. The xor benchmark creates the distance with
+ * {@link Number160#xor(Number160)} for each comparison, the compareDistance
+ * benchmark uses the comparator of {@link PeerMap}. Run with "-prof gc" to
+ * see the allocation rate.
+ *
+ * @author Thomas Bocek
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XorDistanceBenchmark {
+
+	@Param({ "100", "1000" })
+	public int peers;
+
+	private PeerAddress[] peerAddresses;
+	private Number160 location;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		peerAddresses = new PeerAddress[peers];
+		for (int i = 0; i < peers; i++) {
+			peerAddresses[i] = new PeerAddress(new Number160(random));
+		}
+		location = new Number160(random);
+	}
+
+	@Benchmark
+	public NavigableSet<PeerAddress> xor() {
+		return sort(new Comparator<PeerAddress>() {
+			@Override
+			public int compare(final PeerAddress o1, final PeerAddress o2) {
+				return location.xor(o1.peerId()).compareTo(location.xor(o2.peerId()));
+			}
+		});
+	}
+
+	@Benchmark
+	public NavigableSet<PeerAddress> compareDistance() {
+		return sort(PeerMap.createXORAddressComparator(location));
+	}
+
+	private NavigableSet<PeerAddress> sort(final Comparator<PeerAddress> comparator) {
+		final NavigableSet<PeerAddress> set = new TreeSet<PeerAddress>(comparator);
+		for (PeerAddress peerAddress : peerAddresses) {
+			set.add(peerAddress);
+		}
+		return set;
+	}
+}
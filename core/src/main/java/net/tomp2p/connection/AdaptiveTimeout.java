@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerStatistic;
+import net.tomp2p.peers.PeerStatusListener;
+import net.tomp2p.peers.RTT;
+import net.tomp2p.peers.RTTEstimator;
+
+/**
+ * Replaces the fixed idle timeout of a request with a timeout derived from the RTTs measured so far. The timeout of a
+ * peer is its smoothed RTT plus four times the variation, see {@link PeerStatistic#rttEstimator()}. A peer without
+ * measurements gets the timeout of all measured RTTs of this peer. The idle timeout of the configuration stays the
+ * upper limit, and {@link #minMillis(int)} the lower limit.
+ * <p>
+ * Set it with {@link ChannelClientConfiguration#adaptiveTimeout(AdaptiveTimeout)}. The peer registers it as a
+ * {@link PeerStatusListener} to get the RTTs for the global estimate.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class AdaptiveTimeout implements PeerStatusListener {
+
+    public static final int DEFAULT_MIN_MILLIS = 500;
+
+    private final RTTEstimator globalEstimator = new RTTEstimator();
+
+    private int minMillis = DEFAULT_MIN_MILLIS;
+    private int udpRetries = 0;
+
+    /**
+     * @param peerStatistic
+     *            The statistic of the recipient, or null if it is not in the peer map
+     * @param udp
+     *            True if the request is sent over UDP
+     * @param idleMillis
+     *            The configured idle timeout, which is used if nothing has been measured yet
+     * @return The time in milliseconds to wait for a reply
+     */
+    public int timeoutMillis(final PeerStatistic peerStatistic, final boolean udp, final int idleMillis) {
+        long rto = peerStatistic == null ? -1 : peerStatistic.rttEstimator().retransmissionTimeout();
+        if (rto < 0) {
+            rto = globalEstimator.retransmissionTimeout();
+        }
+        if (rto < 0) {
+            return idleMillis;
+        }
+        if (!udp) {
+            // the RTTs of TCP requests are scaled down to the ones of UDP
+            rto = (long) (rto * RTT.TCP_SCALE_DOWN_FACTOR);
+        }
+        return (int) Math.min(idleMillis, Math.max(minMillis, rto));
+    }
+
+    /**
+     * @return The estimate of all measured RTTs, used for peers without measurements
+     */
+    public RTTEstimator globalEstimator() {
+        return globalEstimator;
+    }
+
+    public int minMillis() {
+        return minMillis;
+    }
+
+    /**
+     * @param minMillis
+     *            The lower limit of the timeout. The default is {@link #DEFAULT_MIN_MILLIS}
+     * @return This class
+     */
+    public AdaptiveTimeout minMillis(final int minMillis) {
+        this.minMillis = minMillis;
+        return this;
+    }
+
+    public int udpRetries() {
+        return udpRetries;
+    }
+
+    /**
+     * @param udpRetries
+     *            How many times a UDP request is sent again before it fails, e.g., 1. The RTT of a request that was
+     *            sent again is only used as an estimate, as it is not known which one got the reply. The default is 0
+     * @return This class
+     */
+    public AdaptiveTimeout udpRetries(final int udpRetries) {
+        this.udpRetries = udpRetries;
+        return this;
+    }
+
+    @Override
+    public boolean peerFailed(final PeerAddress remotePeer, final PeerException exception) {
+        return false;
+    }
+
+    @Override
+    public boolean peerFound(final PeerAddress remotePeer, final PeerAddress referrer,
+            final PeerConnection peerConnection, final RTT roundTripTime) {
+        // only first hand measurements
+        if (referrer == null && roundTripTime != null && !roundTripTime.isEstimated() && roundTripTime.getRtt() >= 0) {
+            globalEstimator.addSample(roundTripTime.getRtt());
+            return true;
+        }
+        return false;
+    }
+}
@@ -35,6 +35,7 @@ public class ChannelClientConfiguration {
     private int maxPermitsPermanentTCP;
     private int maxPermitsUDP;
     private int maxPermitsTCP;
+    private int udpChannelPoolSize = 0;
 
     private PipelineFilter pipelineFilter;
     private SignatureFactory signatureFactory;
@@ -45,6 +46,12 @@ public class ChannelClientConfiguration {
     
     private boolean enablePool = false;
     private boolean enableHeap = false;
+    
+    private ChannelTransport channelTransport = ChannelTransport.NIO;
+    private boolean flushConsolidation = false;
+    private Metrics metrics = null;
+    private int maxInFlight = PeerConnection.DEFAULT_MAX_IN_FLIGHT;
+    private AdaptiveTimeout adaptiveTimeout = null;
 
     /**
      * @return The maximum number of permanent (long-lived) connections
@@ -97,6 +104,25 @@ public class ChannelClientConfiguration {
         return this;
     }
 
+    /**
+     * @return The number of long-lived UDP channels that are shared among all
+     *         requests. 0 means that every UDP request binds its own channel
+     */
+    public int udpChannelPoolSize() {
+        return udpChannelPoolSize;
+    }
+
+    /**
+     * @param udpChannelPoolSize
+     *            The number of long-lived UDP channels that are shared among
+     *            all requests. Set to 0 to bind a channel per UDP request
+     * @return This class
+     */
+    public ChannelClientConfiguration udpChannelPoolSize(final int udpChannelPoolSize) {
+        this.udpChannelPoolSize = udpChannelPoolSize;
+        return this;
+    }
+
     /**
      * @return Gets the filter for the pipeline, where the user can add / remove or change handlers
      */
@@ -166,6 +192,113 @@ public class ChannelClientConfiguration {
 	    return this;
     }
 	
+	/**
+	 * @return The Netty transport for the client channels
+	 */
+	public ChannelTransport channelTransport() {
+		return channelTransport;
+	}
+
+	/**
+	 * @param channelTransport
+	 *            The Netty transport for the client channels. This must be the
+	 *            same as the transport of the worker group
+	 * @return This class
+	 */
+	public ChannelClientConfiguration channelTransport(final ChannelTransport channelTransport) {
+		this.channelTransport = channelTransport;
+		return this;
+	}
+	
+	/**
+	 * @return True if the messages written in one run of the event loop are
+	 *         flushed together
+	 */
+	public boolean isFlushConsolidation() {
+		return flushConsolidation;
+	}
+
+	public ChannelClientConfiguration flushConsolidation() {
+		flushConsolidation(true);
+		return this;
+	}
+
+	/**
+	 * @param flushConsolidation
+	 *            Set to true to flush the messages written in one run of the
+	 *            event loop together instead of one by one. With the epoll
+	 *            transport, the datagrams of one flush are sent with a single
+	 *            sendmmsg call
+	 * @return This class
+	 */
+	public ChannelClientConfiguration flushConsolidation(final boolean flushConsolidation) {
+		this.flushConsolidation = flushConsolidation;
+		return this;
+	}
+	
+	/**
+	 * @return The metrics the handlers record to, or null if nothing is
+	 *         recorded
+	 */
+	public Metrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            The metrics the handlers record to. Set by the peer, which
+	 *            exposes them with {@link ConnectionBean#metrics()}
+	 * @return This class
+	 */
+	public ChannelClientConfiguration metrics(final Metrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * @return The number of requests that can wait for their reply on a
+	 *         {@link PeerConnection} at the same time
+	 */
+	public int maxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @param maxInFlight
+	 *            The number of requests that can wait for their reply on a
+	 *            {@link PeerConnection} at the same time. With 1, the
+	 *            requests are sent one after the other. The default is
+	 *            {@link PeerConnection#DEFAULT_MAX_IN_FLIGHT}
+	 * @return This class
+	 */
+	public ChannelClientConfiguration maxInFlight(final int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one request needs to be in flight.");
+		}
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	/**
+	 * @return The timeouts derived from the measured RTTs, or null if the
+	 *         idle timeouts are used for every request
+	 */
+	public AdaptiveTimeout adaptiveTimeout() {
+		return adaptiveTimeout;
+	}
+
+	/**
+	 * @param adaptiveTimeout
+	 *            The timeouts derived from the measured RTTs. If set, the idle
+	 *            timeouts are the upper limit of a request. The default is
+	 *            null, which uses the idle timeouts for every request
+	 * @return This class
+	 */
+	public ChannelClientConfiguration adaptiveTimeout(final AdaptiveTimeout adaptiveTimeout) {
+		this.adaptiveTimeout = adaptiveTimeout;
+		return this;
+	}
+	
 	public ChannelClientConfiguration byteBufPool() {
 		byteBufPool(true);
 		return this;
@@ -27,20 +27,24 @@ import io.netty.channel.FixedRecvByteBufAllocator;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelGroupFuture;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.GenericFutureListener;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.FutureDone;
 import net.tomp2p.futures.FutureResponse;
 import net.tomp2p.message.Message;
@@ -84,6 +88,12 @@ public class ChannelCreator {
 
 	private final ChannelClientConfiguration channelClientConfiguration;
 
+	// shared among all channel creators of a reservation, may be null
+	private final UDPChannelPool udpChannelPool;
+	// requests in flight on the pooled UDP channels, failed on shutdown
+	private final Set<FutureResponse> pooledUDPRequests = Collections
+	        .newSetFromMap(new ConcurrentHashMap<FutureResponse, Boolean>());
+
 	private EventExecutorGroup handlerExecutor;
 
 	private boolean shutdownUDP = false;
@@ -105,10 +115,13 @@ public class ChannelCreator {
 	 *            The number of max. parallel TCP connections.
 	 * @param channelClientConfiguration
 	 *            The configuration that contains the pipeline filter
+	 * @param udpChannelPool
+	 *            The long-lived UDP channels shared by the reservation or null
+	 *            if a channel should be bound per UDP request
 	 */
 	ChannelCreator(final EventLoopGroup workerGroup, final FutureDone<Void> futureChannelCreationDone,
 			int maxPermitsUDP, int maxPermitsTCP,
-			final ChannelClientConfiguration channelClientConfiguration) {
+			final ChannelClientConfiguration channelClientConfiguration, final UDPChannelPool udpChannelPool) {
 		this.workerGroup = workerGroup;
 		this.futureChannelCreationDone = futureChannelCreationDone;
 		this.maxPermitsUDP = maxPermitsUDP;
@@ -116,6 +129,56 @@ public class ChannelCreator {
 		this.semaphoreUPD = new Semaphore(maxPermitsUDP);
 		this.semaphoreTCP = new Semaphore(maxPermitsTCP);
 		this.channelClientConfiguration = channelClientConfiguration;
+		this.udpChannelPool = udpChannelPool;
+	}
+
+	/**
+	 * @return True if UDP requests can be sent over the long-lived channels of
+	 *         the {@link UDPChannelPool}
+	 */
+	public boolean isUDPPooled() {
+		return udpChannelPool != null;
+	}
+
+	/**
+	 * Returns a pooled UDP channel for the given request. The permit is the
+	 * same as for {@link #createUDP(boolean, Map, FutureResponse)}, but it is
+	 * released when the future completes instead of when the channel closes,
+	 * since the pooled channel stays open.
+	 * 
+	 * @param futureResponse
+	 *            The future of the request that is sent over this channel
+	 * @return The pooled channel or null if we are shut down or no pooled
+	 *         channel is open
+	 */
+	public Channel createUDPPooled(final FutureResponse futureResponse) {
+		readUDP.lock();
+		try {
+			if (shutdownUDP) {
+				return null;
+			}
+			final Channel channel = udpChannelPool.next();
+			if (channel == null) {
+				return null;
+			}
+			if (!semaphoreUPD.tryAcquire()) {
+				final String errorMsg = "Tried to acquire more resources (UDP) than announced.";
+				LOG.error(errorMsg);
+				throw new RuntimeException(errorMsg);
+			}
+			pooledUDPRequests.add(futureResponse);
+			futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
+				@Override
+				public void operationComplete(final FutureResponse future) throws Exception {
+					if (pooledUDPRequests.remove(future)) {
+						semaphoreUPD.release();
+					}
+				}
+			});
+			return channel;
+		} finally {
+			readUDP.unlock();
+		}
 	}
 
 	/**
@@ -142,7 +205,7 @@ public class ChannelCreator {
 			}
 			final Bootstrap b = new Bootstrap();
 			b.group(workerGroup);
-			b.channel(NioDatagramChannel.class);
+			b.channel(channelClientConfiguration.channelTransport().datagramChannel());
 			b.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(ConnectionBean.UDP_LIMIT));
 			if (broadcast) {
 				b.option(ChannelOption.SO_BROADCAST, true);
@@ -191,7 +254,7 @@ public class ChannelCreator {
 			}
 			Bootstrap b = new Bootstrap();
 			b.group(workerGroup);
-			b.channel(NioSocketChannel.class);
+			b.channel(channelClientConfiguration.channelTransport().socketChannel());
 			b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeoutMillis);
 			b.option(ChannelOption.TCP_NODELAY, true);
 			b.option(ChannelOption.SO_LINGER, 0);
@@ -334,6 +397,12 @@ public class ChannelCreator {
 		recipients.close().addListener(new GenericFutureListener<ChannelGroupFuture>() {
 			@Override
 			public void operationComplete(final ChannelGroupFuture future) throws Exception {
+				// the pooled channels stay open, fail the requests that are
+				// still waiting for a reply to get the permits back
+				final List<FutureResponse> copy = new ArrayList<FutureResponse>(pooledUDPRequests);
+				for (FutureResponse futureResponse : copy) {
+					futureResponse.failed("Channel creator shut down");
+				}
 				// we can block here as we block in GlobalEventExecutor.INSTANCE
 				semaphoreUPD.acquireUninterruptibly(maxPermitsUDP);
 				semaphoreTCP.acquireUninterruptibly(maxPermitsTCP);
@@ -26,14 +26,13 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.FixedRecvByteBufAllocator;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.GenericFutureListener;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -68,12 +67,15 @@ public final class ChannelServer implements DiscoverNetworkListener{
 	
 	private final Map<InetAddress, Channel> channelsTCP = Collections.synchronizedMap(new HashMap<InetAddress, Channel>());
 	private final Map<InetAddress, Channel> channelsUDP = Collections.synchronizedMap(new HashMap<InetAddress, Channel>());
+	// additional UDP channels bound to the same port with SO_REUSEPORT
+	private final Map<InetAddress, List<Channel>> channelsUDPReusePort = Collections.synchronizedMap(new HashMap<InetAddress, List<Channel>>());
 
 	private final FutureDone<Void> futureServerDone = new FutureDone<Void>();
 
 	private final ChannelServerConfiguration channelServerConfiguration;
 	private final Dispatcher dispatcher;
 	private final List<PeerStatusListener> peerStatusListeners;
+	private final CryptoExecutor cryptoExecutor;
 	
 	private final DropConnectionInboundHandler tcpDropConnectionInboundHandler;
 	private final DropConnectionInboundHandler udpDropConnectionInboundHandler;
@@ -97,22 +99,30 @@ public final class ChannelServer implements DiscoverNetworkListener{
      *              The shared dispatcher
      * @param peerStatusListeners
 	 *            The status listeners for offline peers
+     * @param timer
+     *              The timer for the network discovery, or null to not start it
+     * @param cryptoExecutor
+     *              The executor that verifies and signs messages, or null if this
+     *              is done on the event loops
      * @throws IOException
      *               If device discovery failed.
      */
 	public ChannelServer(final EventLoopGroup bossGroup, final EventLoopGroup workerGroup, final ChannelServerConfiguration channelServerConfiguration, final Dispatcher dispatcher,
-	        final List<PeerStatusListener> peerStatusListeners, final ScheduledExecutorService timer) throws IOException {
+	        final List<PeerStatusListener> peerStatusListeners, final ScheduledExecutorService timer,
+	        final CryptoExecutor cryptoExecutor) throws IOException {
 		this.bossGroup = bossGroup;
 		this.workerGroup = workerGroup;
 		this.channelServerConfiguration = channelServerConfiguration;
 		this.dispatcher = dispatcher;
 		this.peerStatusListeners = peerStatusListeners;
+		this.cryptoExecutor = cryptoExecutor;
 		
 		this.discoverNetworks = new DiscoverNetworks(5000, channelServerConfiguration.bindings(), timer);
 		
 		this.tcpDropConnectionInboundHandler = new DropConnectionInboundHandler(channelServerConfiguration.maxTCPIncomingConnections());
 		this.udpDropConnectionInboundHandler = new DropConnectionInboundHandler(channelServerConfiguration.maxUDPIncomingConnections());
-		this.udpDecoderHandler = new TomP2PSinglePacketUDP(channelServerConfiguration.signatureFactory(), channelServerConfiguration.byteBufAllocator());
+		this.udpDecoderHandler = new TomP2PSinglePacketUDP(channelServerConfiguration.signatureFactory(), channelServerConfiguration.byteBufAllocator(),
+		        cryptoExecutor, channelServerConfiguration.metrics());
 		
 		discoverNetworks.addDiscoverNetworkListener(this);
 		if(timer!=null) {
@@ -191,6 +201,7 @@ public final class ChannelServer implements DiscoverNetworkListener{
 	    	if (channelUDP != null) {
 	    		channelUDP.close().awaitUninterruptibly();
 	    	}
+	    	closeReusePort(inetAddress);
 	    }
 	    
 	    boolean udpStartBroadcast = false;
@@ -238,9 +249,19 @@ public final class ChannelServer implements DiscoverNetworkListener{
 	    	if (channelUDP != null) {
 	    		channelUDP.close().awaitUninterruptibly();
 	    	}
+	    	closeReusePort(inetAddress);
 	    }
 	}
 
+	private void closeReusePort(final InetAddress inetAddress) {
+		final List<Channel> channels = channelsUDPReusePort.remove(inetAddress);
+		if (channels != null) {
+			for (Channel channel : channels) {
+				channel.close().awaitUninterruptibly();
+			}
+		}
+	}
+
 	@Override
     public void exception(Throwable throwable) {
 	    LOG.error("discovery problem", throwable);
@@ -257,9 +278,10 @@ public final class ChannelServer implements DiscoverNetworkListener{
 	 * @return True if startup was successful
 	 */
 	boolean startupUDP(final InetSocketAddress listenAddresses, final ChannelServerConfiguration config, boolean broadcastFlag) {
+		final ChannelTransport channelTransport = channelServerConfiguration.channelTransport();
 		Bootstrap b = new Bootstrap();
 		b.group(workerGroup);
-		b.channel(NioDatagramChannel.class);
+		b.channel(channelTransport.datagramChannel());
 		//option broadcast only required as we not listen to the broadcast address directly
 		if(broadcastFlag) {
 			b.option(ChannelOption.SO_BROADCAST, true);
@@ -280,9 +302,29 @@ public final class ChannelServer implements DiscoverNetworkListener{
 			}
 		});
 
+		final int udpServerChannels = channelServerConfiguration.udpServerChannels();
+		final boolean reusePort = udpServerChannels > 1 && channelTransport.reusePort(b);
+
 		ChannelFuture future = b.bind(listenAddresses);
 		channelsUDP.put(listenAddresses.getAddress(), future.channel());
-		return handleFuture(future);
+		if (!handleFuture(future)) {
+			return false;
+		}
+		if (reusePort) {
+			// the kernel spreads the packets over these channels, each one
+			// is served by its own event loop
+			final List<Channel> channels = new ArrayList<Channel>(udpServerChannels - 1);
+			for (int i = 1; i < udpServerChannels; i++) {
+				final ChannelFuture futureReusePort = b.bind(listenAddresses);
+				if (handleFuture(futureReusePort)) {
+					channels.add(futureReusePort.channel());
+				} else {
+					LOG.warn("cannot bind additional UDP channel with SO_REUSEPORT on {}", listenAddresses);
+				}
+			}
+			channelsUDPReusePort.put(listenAddresses.getAddress(), channels);
+		}
+		return true;
 	}
 
 	/**
@@ -297,7 +339,7 @@ public final class ChannelServer implements DiscoverNetworkListener{
 	boolean startupTCP(final InetSocketAddress listenAddresses, final ChannelServerConfiguration config) {
 		ServerBootstrap b = new ServerBootstrap();
 		b.group(bossGroup, workerGroup);
-		b.channel(NioServerSocketChannel.class);
+		b.channel(channelServerConfiguration.channelTransport().serverSocketChannel());
 		b.childHandler(new ChannelInitializer<Channel>() {
 			@Override
 			protected void initChannel(final Channel ch) throws Exception {
@@ -348,7 +390,8 @@ public final class ChannelServer implements DiscoverNetworkListener{
 			        new Pair<EventExecutorGroup, ChannelHandler>(null, timeoutFactory.idleStateHandlerTomP2P()));
 			handlers.put("timeout1", new Pair<EventExecutorGroup, ChannelHandler>(null, timeoutFactory.timeHandler()));
 			handlers.put("decoder", new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2PCumulationTCP(
-			        channelServerConfiguration.signatureFactory(), channelServerConfiguration.byteBufAllocator())));
+			        channelServerConfiguration.signatureFactory(), channelServerConfiguration.byteBufAllocator(),
+			        cryptoExecutor, channelServerConfiguration.metrics())));
 		} else {
 			// we don't need here a timeout since we receive a packet or
 			// nothing. It is different than with TCP where we
@@ -360,7 +403,9 @@ public final class ChannelServer implements DiscoverNetworkListener{
 			handlers.put("decoder", new Pair<EventExecutorGroup, ChannelHandler>(null, udpDecoderHandler));
 		}
 		handlers.put("encoder", new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2POutbound(
-		        channelServerConfiguration.signatureFactory(), channelServerConfiguration.byteBufAllocator())));
+		        channelServerConfiguration.signatureFactory(), channelServerConfiguration.byteBufAllocator(),
+		        channelServerConfiguration.isFlushConsolidation(), cryptoExecutor,
+		        channelServerConfiguration.metrics())));
 		handlers.put("dispatcher", new Pair<EventExecutorGroup, ChannelHandler>(null, dispatcher));
 		return channelServerConfiguration.pipelineFilter().filter(handlers, tcp, false);
 	}
@@ -402,7 +447,13 @@ public final class ChannelServer implements DiscoverNetworkListener{
 	        shutdown = true;
         }
 		discoverNetworks.stop();
-		final int maxListeners = channelsTCP.size() + channelsUDP.size();
+		final List<Channel> reusePort = new ArrayList<Channel>();
+		synchronized (channelsUDPReusePort) {
+			for (List<Channel> channels : channelsUDPReusePort.values()) {
+				reusePort.addAll(channels);
+			}
+		}
+		final int maxListeners = channelsTCP.size() + channelsUDP.size() + reusePort.size();
 		if(maxListeners == 0) {
 			shutdownFuture().done();
 		}
@@ -422,6 +473,17 @@ public final class ChannelServer implements DiscoverNetworkListener{
 				});
 			}
 		}
+		for (Channel channelUDP : reusePort) {
+			channelUDP.close().addListener(new GenericFutureListener<ChannelFuture>() {
+				@Override
+				public void operationComplete(final ChannelFuture future) throws Exception {
+					LOG.debug("shutdown UDP server");
+					if (listenerCounter.incrementAndGet() == maxListeners) {
+						futureServerDone.done();
+					}
+				}
+			});
+		}
 		synchronized (channelsTCP) {
 			for (Channel channelTCP : channelsTCP.values()) {
 				channelTCP.close().addListener(new GenericFutureListener<ChannelFuture>() {
@@ -56,6 +56,12 @@ public class ChannelServerConfiguration implements ConnectionConfiguration {
     
     private boolean enablePool = false;
     private boolean enableHeap = false;
+    
+    private ChannelTransport channelTransport = ChannelTransport.NIO;
+    private int udpServerChannels = 1;
+    private boolean flushConsolidation = false;
+    private int cryptoThreads = 0;
+    private Metrics metrics = null;
 
     /**
      * @return True if this peer is behind a firewall and cannot be accessed directly
@@ -287,6 +293,112 @@ public class ChannelServerConfiguration implements ConnectionConfiguration {
 		return slowResponseTimeoutSeconds;
 	}
 	
+	/**
+	 * @return The Netty transport for the event loops and the server channels
+	 */
+	public ChannelTransport channelTransport() {
+		return channelTransport;
+	}
+
+	/**
+	 * @param channelTransport
+	 *            The Netty transport for the event loops and the server
+	 *            channels. Falls back to NIO if not available
+	 * @return This class
+	 */
+	public ChannelServerConfiguration channelTransport(final ChannelTransport channelTransport) {
+		this.channelTransport = channelTransport;
+		return this;
+	}
+
+	/**
+	 * @return The number of UDP server channels bound to the same port
+	 */
+	public int udpServerChannels() {
+		return udpServerChannels;
+	}
+
+	/**
+	 * @param udpServerChannels
+	 *            The number of UDP server channels bound to the same port with
+	 *            SO_REUSEPORT, so that incoming packets are spread over
+	 *            several event loops. Only used if the transport supports it,
+	 *            otherwise one channel is bound
+	 * @return This class
+	 */
+	public ChannelServerConfiguration udpServerChannels(final int udpServerChannels) {
+		this.udpServerChannels = udpServerChannels;
+		return this;
+	}
+	
+	/**
+	 * @return True if the messages written in one run of the event loop are
+	 *         flushed together
+	 */
+	public boolean isFlushConsolidation() {
+		return flushConsolidation;
+	}
+
+	public ChannelServerConfiguration flushConsolidation() {
+		flushConsolidation(true);
+		return this;
+	}
+
+	/**
+	 * @param flushConsolidation
+	 *            Set to true to flush the messages written in one run of the
+	 *            event loop together instead of one by one. With the epoll
+	 *            transport, the datagrams of one flush are sent with a single
+	 *            sendmmsg call
+	 * @return This class
+	 */
+	public ChannelServerConfiguration flushConsolidation(final boolean flushConsolidation) {
+		this.flushConsolidation = flushConsolidation;
+		return this;
+	}
+	
+	/**
+	 * @return The number of threads that verify and sign messages, 0 if this
+	 *         is done on the event loops
+	 */
+	public int cryptoThreads() {
+		return cryptoThreads;
+	}
+
+	/**
+	 * @param cryptoThreads
+	 *            The number of threads that verify and sign messages instead
+	 *            of the event loops. A slow verification then does not hold
+	 *            back the other channels of an event loop. A signed message
+	 *            may be sent or received after messages of the same channel
+	 *            that came later. Set to 0 to verify and sign on the event
+	 *            loops
+	 * @return This class
+	 */
+	public ChannelServerConfiguration cryptoThreads(final int cryptoThreads) {
+		this.cryptoThreads = cryptoThreads;
+		return this;
+	}
+
+	/**
+	 * @return The metrics the handlers record to, or null if nothing is
+	 *         recorded
+	 */
+	public Metrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            The metrics the handlers record to. Set by the peer, which
+	 *            exposes them with {@link ConnectionBean#metrics()}
+	 * @return This class
+	 */
+	public ChannelServerConfiguration metrics(final Metrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+	
 	public ChannelServerConfiguration byteBufPool() {
 		byteBufPool(true);
 		return this;
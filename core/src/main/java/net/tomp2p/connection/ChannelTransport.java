@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The Netty transport used for the event loops and the channels. NIO works
+ * everywhere, EPOLL uses the native Linux transport, which supports
+ * SO_REUSEPORT, so several UDP server channels can be bound to the same port.
+ * The event loop groups and the channels must be of the same transport.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+public enum ChannelTransport {
+
+	/**
+	 * The Java NIO transport, available on all platforms
+	 */
+	NIO,
+
+	/**
+	 * The native epoll transport, Linux only
+	 */
+	EPOLL;
+
+	/**
+	 * @return True if this transport can be used on this platform
+	 */
+	public boolean isAvailable() {
+		switch (this) {
+		case EPOLL:
+			try {
+				return EpollSupport.isAvailable();
+			} catch (Throwable t) {
+				// native library or jar is missing
+				return false;
+			}
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * @return True if this transport can bind several UDP channels to the
+	 *         same port
+	 */
+	public boolean isReusePort() {
+		return this == EPOLL;
+	}
+
+	/**
+	 * @return EPOLL if available, otherwise NIO
+	 */
+	public static ChannelTransport bestAvailable() {
+		return EPOLL.isAvailable() ? EPOLL : NIO;
+	}
+
+	/**
+	 * @param nThreads
+	 *            The number of threads, 0 for the Netty default
+	 * @param threadFactory
+	 *            The factory for the threads
+	 * @return A new event loop group of this transport
+	 */
+	public EventLoopGroup eventLoopGroup(final int nThreads, final ThreadFactory threadFactory) {
+		switch (this) {
+		case EPOLL:
+			return EpollSupport.eventLoopGroup(nThreads, threadFactory);
+		default:
+			return new NioEventLoopGroup(nThreads, threadFactory);
+		}
+	}
+
+	/**
+	 * @return The UDP channel class of this transport
+	 */
+	public Class<? extends Channel> datagramChannel() {
+		switch (this) {
+		case EPOLL:
+			return EpollSupport.datagramChannel();
+		default:
+			return NioDatagramChannel.class;
+		}
+	}
+
+	/**
+	 * @return The TCP client channel class of this transport
+	 */
+	public Class<? extends Channel> socketChannel() {
+		switch (this) {
+		case EPOLL:
+			return EpollSupport.socketChannel();
+		default:
+			return NioSocketChannel.class;
+		}
+	}
+
+	/**
+	 * @return The TCP server channel class of this transport
+	 */
+	public Class<? extends ServerChannel> serverSocketChannel() {
+		switch (this) {
+		case EPOLL:
+			return EpollSupport.serverSocketChannel();
+		default:
+			return NioServerSocketChannel.class;
+		}
+	}
+
+	/**
+	 * Sets SO_REUSEPORT on the bootstrap if this transport supports it.
+	 * 
+	 * @param bootstrap
+	 *            The bootstrap of the UDP server channel
+	 * @return True if the option was set
+	 */
+	public boolean reusePort(final AbstractBootstrap<?, ?> bootstrap) {
+		if (!isReusePort()) {
+			return false;
+		}
+		EpollSupport.reusePort(bootstrap);
+		return true;
+	}
+}
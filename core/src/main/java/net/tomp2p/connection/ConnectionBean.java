@@ -45,6 +45,7 @@ public class ConnectionBean {
     private final Reservation reservation;
     private final ChannelClientConfiguration resourceConfiguration;
     private final ScheduledExecutorService timer;
+    private final Metrics metrics;
     
     /**
 	 * The connection bean with unmodifiable objects. Once it is set, it cannot be changed. If it is required
@@ -68,6 +69,20 @@ public class ConnectionBean {
     public ConnectionBean(final int p2pId, final Dispatcher dispatcher, final Sender sender,
             final ChannelServer channelServer, final Reservation reservation,
             final ChannelClientConfiguration resourceConfiguration, final ScheduledExecutorService timer) {
+        this(p2pId, dispatcher, sender, channelServer, reservation, resourceConfiguration, timer, new Metrics());
+    }
+
+    /**
+     * The connection bean with unmodifiable objects and the metrics that are recorded for the peers sharing these
+     * connections.
+     * 
+     * @param metrics
+     *            The metrics the dispatcher, the sender, the reservation and the handlers record to
+     */
+    public ConnectionBean(final int p2pId, final Dispatcher dispatcher, final Sender sender,
+            final ChannelServer channelServer, final Reservation reservation,
+            final ChannelClientConfiguration resourceConfiguration, final ScheduledExecutorService timer,
+            final Metrics metrics) {
         this.p2pId = p2pId;
         this.dispatcher = dispatcher;
         this.sender = sender;
@@ -75,6 +90,7 @@ public class ConnectionBean {
         this.reservation = reservation;
         this.resourceConfiguration = resourceConfiguration;
         this.timer = timer;
+        this.metrics = metrics;
     }
 
     /**
@@ -125,4 +141,11 @@ public class ConnectionBean {
     public ScheduledExecutorService timer() {
         return timer;
     }
+
+    /**
+     * @return The latencies and traffic of the peers sharing these connections
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
 }
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs signature verification and signing outside of the Netty event loops. A job is computed on one of the crypto
+ * threads and completed on the event loop it came from. A crypto thread takes all pending jobs up to the batch size at
+ * once and hands back the completed jobs with one task per event loop, so that a busy event loop is not woken up for
+ * every single message.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class CryptoExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CryptoExecutor.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    // queued by the shutdown after the last job, a crypto thread that takes it stops
+    private static final Job POISON = new Job(null, false) {
+        @Override
+        protected void compute() throws Exception {
+        }
+
+        @Override
+        protected void complete(final Throwable cause) {
+        }
+    };
+
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<Job>();
+    private final AtomicInteger running;
+    private final int batchSize;
+
+    private final AtomicLong verifications = new AtomicLong();
+    private final AtomicLong verificationNanos = new AtomicLong();
+    private final AtomicLong signatures = new AtomicLong();
+    private final AtomicLong signatureNanos = new AtomicLong();
+
+    private volatile boolean shutdown = false;
+
+    /**
+     * A unit of work for the crypto threads.
+     */
+    public static abstract class Job {
+        private final EventExecutor executor;
+        private final boolean verification;
+
+        /**
+         * @param executor
+         *            The event loop that completes this job
+         * @param verification
+         *            True if this job verifies a signature, false if it signs
+         */
+        protected Job(final EventExecutor executor, final boolean verification) {
+            this.executor = executor;
+            this.verification = verification;
+        }
+
+        /**
+         * Runs on a crypto thread.
+         *
+         * @throws Exception
+         *             Any exception is handed to {@link #complete(Throwable)}
+         */
+        protected abstract void compute() throws Exception;
+
+        /**
+         * Runs on the event loop of this job after {@link #compute()}.
+         *
+         * @param cause
+         *            The exception thrown by compute or null if it succeeded
+         */
+        protected abstract void complete(Throwable cause);
+    }
+
+    /**
+     * @param nrThreads
+     *            The number of crypto threads
+     * @param batchSize
+     *            The maximum number of jobs a crypto thread takes at once
+     * @param threadFactory
+     *            The factory for the crypto threads
+     */
+    public CryptoExecutor(final int nrThreads, final int batchSize, final ThreadFactory threadFactory) {
+        if (nrThreads <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Need at least one thread and a positive batch size.");
+        }
+        this.batchSize = batchSize;
+        this.running = new AtomicInteger(nrThreads);
+        for (int i = 0; i < nrThreads; i++) {
+            threadFactory.newThread(new Worker()).start();
+        }
+    }
+
+    /**
+     * Queues a job. If this executor is shut down, the job is computed by the calling thread.
+     *
+     * @param job
+     *            The job to run
+     */
+    public void execute(final Job job) {
+        if (!shutdown) {
+            queue.add(job);
+            // the workers may have seen an empty queue after the shutdown, then the job is ours again
+            if (!shutdown || !queue.remove(job)) {
+                return;
+            }
+        }
+        // the event loops may still send the last messages while the peer shuts down
+        final List<Job> jobs = new ArrayList<Job>(1);
+        jobs.add(job);
+        final List<Throwable> causes = new ArrayList<Throwable>(1);
+        causes.add(compute(job));
+        complete(jobs, causes);
+    }
+
+    /**
+     * @return The number of jobs waiting for a crypto thread
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return The number of signatures verified so far
+     */
+    public long verifications() {
+        return verifications.get();
+    }
+
+    /**
+     * @return The average time in nanoseconds a verification took on a crypto thread
+     */
+    public long averageVerificationNanos() {
+        final long count = verifications.get();
+        return count == 0 ? 0 : verificationNanos.get() / count;
+    }
+
+    /**
+     * @return The number of messages signed so far
+     */
+    public long signatures() {
+        return signatures.get();
+    }
+
+    /**
+     * @return The average time in nanoseconds encoding and signing a message took on a crypto thread
+     */
+    public long averageSignatureNanos() {
+        final long count = signatures.get();
+        return count == 0 ? 0 : signatureNanos.get() / count;
+    }
+
+    /**
+     * Stops the crypto threads once the queued jobs are done. Jobs queued afterwards run on the calling thread.
+     */
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        // a job added before the poison is taken before it, a job added after it sees the shutdown in execute
+        shutdown = true;
+        queue.add(POISON);
+    }
+
+    private Throwable compute(final Job job) {
+        final long start = System.nanoTime();
+        Throwable cause = null;
+        try {
+            job.compute();
+        } catch (Throwable t) {
+            cause = t;
+        }
+        final long nanos = System.nanoTime() - start;
+        if (job.verification) {
+            verifications.incrementAndGet();
+            verificationNanos.addAndGet(nanos);
+        } else {
+            signatures.incrementAndGet();
+            signatureNanos.addAndGet(nanos);
+        }
+        return cause;
+    }
+
+    private static void complete(final List<Job> jobs, final List<Throwable> causes) {
+        // one task per event loop, the jobs of a channel stay in order
+        final Map<EventExecutor, List<Integer>> byExecutor = new LinkedHashMap<EventExecutor, List<Integer>>();
+        for (int i = 0; i < jobs.size(); i++) {
+            final EventExecutor executor = jobs.get(i).executor;
+            List<Integer> indexes = byExecutor.get(executor);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                byExecutor.put(executor, indexes);
+            }
+            indexes.add(i);
+        }
+        for (final Map.Entry<EventExecutor, List<Integer>> entry : byExecutor.entrySet()) {
+            final Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    for (int index : entry.getValue()) {
+                        try {
+                            jobs.get(index).complete(causes.get(index));
+                        } catch (Throwable t) {
+                            LOG.error("Could not complete crypto job.", t);
+                        }
+                    }
+                }
+            };
+            if (entry.getKey().inEventLoop()) {
+                task.run();
+            } else {
+                try {
+                    entry.getKey().execute(task);
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Event loop is shut down, dropping {} crypto jobs.", entry.getValue().size());
+                }
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            final List<Job> jobs = new ArrayList<Job>(batchSize);
+            while (true) {
+                try {
+                    jobs.add(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                queue.drainTo(jobs, batchSize - 1);
+                final boolean stop = jobs.remove(POISON);
+                // the jobs drained after the poison are still ours, the poison goes back for the other threads
+                if (stop && running.decrementAndGet() > 0) {
+                    queue.add(POISON);
+                }
+                if (!jobs.isEmpty()) {
+                    final List<Throwable> causes = new ArrayList<Throwable>(jobs.size());
+                    for (Job job : jobs) {
+                        causes.add(compute(job));
+                    }
+                    complete(new ArrayList<Job>(jobs), causes);
+                    jobs.clear();
+                }
+                if (stop) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -67,6 +67,7 @@ public class Dispatcher extends SimpleChannelInboundHandler<Message> {
     private final int p2pID;
     private final PeerBean peerBeanMaster;
     private final int heartBeatMillis;
+    private final Metrics metrics;
 
     //use locks instead copy on write as testcases became really slow
     final private ReentrantReadWriteLock reentrantReadWriteLock = new ReentrantReadWriteLock();
@@ -80,6 +81,13 @@ public class Dispatcher extends SimpleChannelInboundHandler<Message> {
 	 * might arrive later. The key of the map is the expected message id.
 	 */
     final private Map<Integer, FutureResponse> pendingRequests = new ConcurrentHashMap<Integer, FutureResponse>();
+    
+	/**
+	 * Map that stores the requests sent over the pooled UDP channels of the {@link UDPChannelPool}. Since these
+	 * channels are shared, the replies cannot be handled by a per channel {@link RequestHandler}. The key of the map is
+	 * the message id of the request.
+	 */
+    final private ConcurrentHashMap<Integer, RequestHandler<?>> pendingUDPRequests = new ConcurrentHashMap<Integer, RequestHandler<?>>();
 
     
     /**
@@ -91,9 +99,20 @@ public class Dispatcher extends SimpleChannelInboundHandler<Message> {
      *            .
      */
     public Dispatcher(final int p2pID, final PeerBean peerBeanMaster, final int heartBeatMillis) {
+        this(p2pID, peerBeanMaster, heartBeatMillis, null);
+    }
+
+    /**
+     * Creates a dispatcher that records how long the received messages waited.
+     *
+     * @param metrics
+     *            The metrics for {@link Metrics#dispatchDelay()}, or null to not record anything
+     */
+    public Dispatcher(final int p2pID, final PeerBean peerBeanMaster, final int heartBeatMillis, final Metrics metrics) {
         this.p2pID = p2pID;
         this.peerBeanMaster = peerBeanMaster;
         this.heartBeatMillis = heartBeatMillis;
+        this.metrics = metrics;
     }
     
     public PeerBean peerBean() {
@@ -155,6 +174,9 @@ public class Dispatcher extends SimpleChannelInboundHandler<Message> {
     @Override
     protected void channelRead0(final ChannelHandlerContext ctx, final Message message) throws Exception {
         LOG.debug("Received request message {} from channel {}", message, ctx.channel());
+        if (metrics != null && message.receivedNanos() != 0) {
+            metrics.dispatchDelay().record(System.nanoTime() - message.receivedNanos());
+        }
         if (message.version() != p2pID) {
             LOG.error("Wrong version. We are looking for {}, but we got {}. Received: {}.", p2pID,
                     message.version(), message);
@@ -168,6 +190,14 @@ public class Dispatcher extends SimpleChannelInboundHandler<Message> {
         }
         
         if (!message.isRequest()) {
+        	if (ctx.channel() instanceof DatagramChannel) {
+        		final RequestHandler<?> requestHandler = pendingUDPRequests.remove(message.messageId());
+        		if (requestHandler != null) {
+        			LOG.debug("Handing response message to the pooled request handler. {}", message);
+        			requestHandler.responseMultiplexed(message);
+        			return;
+        		}
+        	}
             LOG.debug("Handing request message to the next handler. {}", message);
         	ctx.fireChannelRead(message);
         	return;
@@ -446,6 +476,33 @@ public class Dispatcher extends SimpleChannelInboundHandler<Message> {
 		}, timeout, TimeUnit.SECONDS);
 	}
 
+	/**
+	 * Adds a request that is sent over a pooled UDP channel. The reply is handed to the request handler once it
+	 * arrives.
+	 * 
+	 * @param messageId
+	 *            The message id of the request
+	 * @param requestHandler
+	 *            The handler that processes the reply
+	 * @return False if a request with the same message id is already in flight
+	 */
+	public boolean addPendingUDPRequest(final int messageId, final RequestHandler<?> requestHandler) {
+		return pendingUDPRequests.putIfAbsent(messageId, requestHandler) == null;
+	}
+
+	/**
+	 * Removes a request that was sent over a pooled UDP channel, e.g., on timeout.
+	 * 
+	 * @param messageId
+	 *            The message id of the request
+	 * @param requestHandler
+	 *            The handler that was registered for this message id
+	 * @return True if the request was still pending
+	 */
+	public boolean removePendingUDPRequest(final int messageId, final RequestHandler<?> requestHandler) {
+		return pendingUDPRequests.remove(messageId, requestHandler);
+	}
+
 	/**
 	 * @return all pending requests
 	 */
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+
+import net.tomp2p.message.Ed25519SignatureCodec;
+import net.tomp2p.message.SignatureCodec;
+import net.tomp2p.p2p.PeerBuilder;
+import net.tomp2p.utils.ConcurrentCacheMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The signature is done with Ed25519, which needs a security provider for this algorithm at runtime. The JDK has one
+ * since Java 15. Older runtimes, including the ones that build this module, need an other provider, e.g., BouncyCastle
+ * registered with Security.addProvider. Use {@link #isAvailable()} before choosing this factory. The signatures have a
+ * fixed size of 64 bytes and the public keys are sent as 32 raw bytes, which leaves more room in a UDP packet than DSA
+ * or RSA. Key pairs are created with KeyPairGenerator.getInstance("Ed25519").
+ * <p>
+ * Decoded public keys are cached, since a peer sends its key with every signed message. Signing and verifying reuse a
+ * signature instance per thread. The signature returned by
+ * {@link #update(PublicKey, ByteBuffer[])} is always a new instance, as the decoder keeps it until the message is
+ * complete.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class Ed25519SignatureFactory implements SignatureFactory {
+
+	private static final long serialVersionUID = 2924553271846104553L;
+	private static final Logger LOG = LoggerFactory.getLogger(Ed25519SignatureFactory.class);
+
+	private static final String ALGORITHM = "Ed25519";
+	public static final int PUBLIC_KEY_SIZE = 32;
+	// the X.509 header of an Ed25519 public key, followed by the 32 raw bytes
+	private static final byte[] X509_PREFIX = new byte[] { 0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70,
+	        0x03, 0x21, 0x00 };
+
+	private static final int PUBLIC_KEY_CACHE_TIME_TO_LIVE = 600;
+	private static final int PUBLIC_KEY_CACHE_SIZE = 4096;
+	// keys are immutable, so the cache can be shared among all peers
+	private static final ConcurrentCacheMap<ByteBuffer, PublicKey> PUBLIC_KEY_CACHE = new ConcurrentCacheMap<ByteBuffer, PublicKey>(
+	        PUBLIC_KEY_CACHE_TIME_TO_LIVE, PUBLIC_KEY_CACHE_SIZE);
+
+	private static final ThreadLocal<Signature> SIGNATURE = new ThreadLocal<Signature>() {
+		@Override
+		protected Signature initialValue() {
+			return signatureInstance();
+		}
+	};
+
+	/**
+	 * @return True if a security provider for Ed25519 is installed, otherwise signing and verifying fail
+	 */
+	public static boolean isAvailable() {
+		try {
+			Signature.getInstance(ALGORITHM);
+			KeyFactory.getInstance(ALGORITHM);
+			return true;
+		} catch (NoSuchAlgorithmException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return The signature mechanism
+	 */
+	private static Signature signatureInstance() {
+		try {
+			return Signature.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			LOG.error("could not find algorithm", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes a public key in the X.509 format or as 32 raw bytes.
+	 */
+	@Override
+	public PublicKey decodePublicKey(final byte[] me) {
+		final byte[] encoded;
+		if (me.length == PUBLIC_KEY_SIZE) {
+			encoded = new byte[X509_PREFIX.length + PUBLIC_KEY_SIZE];
+			System.arraycopy(X509_PREFIX, 0, encoded, 0, X509_PREFIX.length);
+			System.arraycopy(me, 0, encoded, X509_PREFIX.length, PUBLIC_KEY_SIZE);
+		} else {
+			encoded = me;
+		}
+		X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(encoded);
+		try {
+			KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM);
+			return keyFactory.generatePublic(pubKeySpec);
+		} catch (NoSuchAlgorithmException e) {
+			LOG.error("could not find algorithm", e);
+			return null;
+		} catch (InvalidKeySpecException e) {
+			LOG.error("wrong keyspec", e);
+			return null;
+		}
+	}
+
+	// decodes with header
+	@Override
+	public PublicKey decodePublicKey(ByteBuf buf) {
+		if (buf.readableBytes() < 2) {
+			return null;
+		}
+		int len = buf.getUnsignedShort(buf.readerIndex());
+
+		if (buf.readableBytes() - 2 < len) {
+			return null;
+		}
+		buf.skipBytes(2);
+
+		if (len <= 0) {
+			return PeerBuilder.EMPTY_PUBLIC_KEY;
+		}
+
+		// look up without copying the key out of the buffer
+		PublicKey publicKey = PUBLIC_KEY_CACHE.get(buf.nioBuffer(buf.readerIndex(), len));
+		if (publicKey != null) {
+			buf.skipBytes(len);
+			return publicKey;
+		}
+		byte me[] = new byte[len];
+		buf.readBytes(me);
+		publicKey = decodePublicKey(me);
+		if (publicKey != null) {
+			PUBLIC_KEY_CACHE.put(ByteBuffer.wrap(me), publicKey);
+		}
+		return publicKey;
+	}
+
+	@Override
+	public void encodePublicKey(PublicKey publicKey, ByteBuf buf) {
+		byte[] data = publicKey.getEncoded();
+		if (data == null) {
+			buf.writeShort(0);
+		} else if (data.length == X509_PREFIX.length + PUBLIC_KEY_SIZE) {
+			// the header is the same for all keys, send the raw key only
+			buf.writeShort(PUBLIC_KEY_SIZE);
+			buf.writeBytes(data, X509_PREFIX.length, PUBLIC_KEY_SIZE);
+		} else {
+			buf.writeShort(data.length);
+			buf.writeBytes(data);
+		}
+	}
+
+	@Override
+	public SignatureCodec sign(PrivateKey privateKey, ByteBuffer[] byteBuffers) throws InvalidKeyException,
+			SignatureException, IOException {
+		Signature signature = SIGNATURE.get();
+		signature.initSign(privateKey);
+		int len = byteBuffers.length;
+		for (int i = 0; i < len; i++) {
+			ByteBuffer buffer = byteBuffers[i];
+			signature.update(buffer);
+		}
+		byte[] signatureData = signature.sign();
+		return new Ed25519SignatureCodec(signatureData);
+	}
+
+	@Override
+	public boolean verify(PublicKey publicKey, ByteBuffer[] byteBuffers, SignatureCodec signatureEncoded)
+			throws SignatureException, InvalidKeyException {
+		Signature signature = SIGNATURE.get();
+		signature.initVerify(publicKey);
+		int len = byteBuffers.length;
+		for (int i = 0; i < len; i++) {
+			ByteBuffer buffer = byteBuffers[i];
+			signature.update(buffer);
+		}
+		byte[] signatureReceived = signatureEncoded.encode();
+		return signature.verify(signatureReceived);
+	}
+
+	@Override
+	public Signature update(PublicKey receivedPublicKey, ByteBuffer[] byteBuffers)
+			throws InvalidKeyException, SignatureException {
+		Signature signature = signatureInstance();
+		signature.initVerify(receivedPublicKey);
+		int arrayLength = byteBuffers.length;
+		for (int i = 0; i < arrayLength; i++) {
+			signature.update(byteBuffers[i]);
+		}
+		return signature;
+	}
+
+	@Override
+	public SignatureCodec signatureCodec(ByteBuf buf) {
+		return new Ed25519SignatureCodec(buf);
+	}
+
+	@Override
+	public int signatureSize() {
+		return Ed25519SignatureCodec.SIGNATURE_SIZE;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * All references to the native epoll transport are kept in this class, so
+ * that the optional netty-transport-native-epoll dependency is only loaded if
+ * {@link ChannelTransport#EPOLL} is used.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+final class EpollSupport {
+
+	private EpollSupport() {
+	}
+
+	static boolean isAvailable() {
+		return Epoll.isAvailable();
+	}
+
+	static EventLoopGroup eventLoopGroup(final int nThreads, final ThreadFactory threadFactory) {
+		return new EpollEventLoopGroup(nThreads, threadFactory);
+	}
+
+	static Class<? extends Channel> datagramChannel() {
+		return EpollDatagramChannel.class;
+	}
+
+	static Class<? extends Channel> socketChannel() {
+		return EpollSocketChannel.class;
+	}
+
+	static Class<? extends ServerChannel> serverSocketChannel() {
+		return EpollServerSocketChannel.class;
+	}
+
+	static void reusePort(final AbstractBootstrap<?, ?> bootstrap) {
+		bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed relative precision, in the style of an HDR histogram. Each power
+ * of two is split into {@link #SUB_BUCKETS} buckets, so a recorded value is off by at most 1/8 of its size. Recording a
+ * value costs three atomic increments and needs no lock, so it can be called from the event loops.
+ * <p>
+ * The buckets are read one by one, so a snapshot taken while values are recorded may be off by these values.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos
+     *            The duration in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return A copy of the current state, which can be queried for percentiles
+     */
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.get(), sum.get(), max.get());
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValue(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The recorded values of a {@link LatencyHistogram} at one point in time.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(final long[] counts, final long count, final long sum, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return The number of recorded values
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return The largest recorded value in nanoseconds
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * @return The average of the recorded values in nanoseconds, or 0 if nothing has been recorded
+         */
+        public long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * @param percentile
+         *            The percentile between 0 and 100, e.g., 99.9
+         * @return The value in nanoseconds that is larger or equal than the given percentage of the recorded values,
+         *         or 0 if nothing has been recorded
+         */
+        public long percentile(final double percentile) {
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @param earlier
+         *            A snapshot of the same histogram that was taken before this one
+         * @return The values recorded between the two snapshots. The maximum is the one of this snapshot
+         */
+        public Snapshot since(final Snapshot earlier) {
+            final long[] delta = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(delta, count - earlier.count, sum - earlier.sum, max);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("count=").append(count);
+            sb.append(", mean=").append(TimeUnit.NANOSECONDS.toMicros(mean())).append("us");
+            sb.append(", p50=").append(TimeUnit.NANOSECONDS.toMicros(percentile(50))).append("us");
+            sb.append(", p99=").append(TimeUnit.NANOSECONDS.toMicros(percentile(99))).append("us");
+            sb.append(", p99.9=").append(TimeUnit.NANOSECONDS.toMicros(percentile(99.9))).append("us");
+            sb.append(", max=").append(TimeUnit.NANOSECONDS.toMicros(max)).append("us");
+            return sb.toString();
+        }
+    }
+}
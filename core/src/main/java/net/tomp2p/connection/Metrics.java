@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.rpc.RPC;
+
+/**
+ * The metrics of a peer and the peers that share its connections. The latency of the requests is kept per
+ * {@link RPC.Commands} and per {@link Transport}. Next to it, the traffic is counted per transport, and the time a
+ * request waits for its permits in the {@link Reservation} and the time a received message waits until the
+ * {@link Dispatcher} gets it are recorded.
+ * <p>
+ * Recording is done on the event loops and costs a few atomic increments. The histogram of a command is created when
+ * its first reply arrives.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class Metrics {
+
+    /**
+     * The way a message travels. A message to or from a relayed peer is counted as {@link #RELAY}, no matter if the
+     * relay is reached over TCP or UDP.
+     */
+    public enum Transport {
+        UDP, TCP, RELAY;
+
+        /**
+         * @param udp
+         *            True if the message is sent or received over UDP
+         * @param remote
+         *            The other peer, may be null
+         * @return The transport of a message
+         */
+        public static Transport of(final boolean udp, final PeerAddress remote) {
+            if (remote != null && remote.isRelayed()) {
+                return RELAY;
+            }
+            return udp ? UDP : TCP;
+        }
+    }
+
+    private static final int TRANSPORTS = Transport.values().length;
+    private static final int COMMANDS = RPC.Commands.values().length;
+
+    private final AtomicReferenceArray<LatencyHistogram> latencies = new AtomicReferenceArray<LatencyHistogram>(
+            COMMANDS * TRANSPORTS);
+    private final LatencyHistogram permitWait = new LatencyHistogram();
+    private final LatencyHistogram dispatchDelay = new LatencyHistogram();
+
+    private final AtomicLongArray messagesReceived = new AtomicLongArray(TRANSPORTS);
+    private final AtomicLongArray bytesReceived = new AtomicLongArray(TRANSPORTS);
+    private final AtomicLongArray messagesSent = new AtomicLongArray(TRANSPORTS);
+    private final AtomicLongArray bytesSent = new AtomicLongArray(TRANSPORTS);
+
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+    // shared by all requests, so that tracking a request does not create a listener
+    private final BaseFutureAdapter<FutureResponse> requestDone = new BaseFutureAdapter<FutureResponse>() {
+        @Override
+        public void operationComplete(final FutureResponse future) throws Exception {
+            pendingRequests.decrementAndGet();
+        }
+    };
+
+    /**
+     * Records the time until the reply of a request arrived.
+     *
+     * @param command
+     *            The command of the request
+     * @param transport
+     *            The transport of the request
+     * @param nanos
+     *            The time between sending the request and receiving the reply
+     */
+    public void recordLatency(final byte command, final Transport transport, final long nanos) {
+        final int index = index(command, transport);
+        if (index < 0) {
+            return;
+        }
+        LatencyHistogram histogram = latencies.get(index);
+        if (histogram == null) {
+            latencies.compareAndSet(index, null, new LatencyHistogram());
+            histogram = latencies.get(index);
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * @param command
+     *            The command of the request
+     * @param transport
+     *            The transport of the request
+     * @return The latency of the replies to the command, or null if no reply has been received yet
+     */
+    public LatencyHistogram latency(final RPC.Commands command, final Transport transport) {
+        return latencies.get(index(command.getNr(), transport));
+    }
+
+    /**
+     * @param transport
+     *            The transport of the requests
+     * @return The latency of the replies of all commands that have received a reply over the given transport
+     */
+    public Map<RPC.Commands, LatencyHistogram> latencies(final Transport transport) {
+        final Map<RPC.Commands, LatencyHistogram> result = new EnumMap<RPC.Commands, LatencyHistogram>(
+                RPC.Commands.class);
+        for (RPC.Commands command : RPC.Commands.values()) {
+            final LatencyHistogram histogram = latency(command, transport);
+            if (histogram != null) {
+                result.put(command, histogram);
+            }
+        }
+        return result;
+    }
+
+    private static int index(final byte command, final Transport transport) {
+        final int nr = command & 0xff;
+        if (nr >= COMMANDS) {
+            return -1;
+        }
+        return nr * TRANSPORTS + transport.ordinal();
+    }
+
+    /**
+     * @return The time between asking the {@link Reservation} for permits and getting them
+     */
+    public LatencyHistogram permitWait() {
+        return permitWait;
+    }
+
+    /**
+     * @return The time between decoding a message and handing it to the {@link Dispatcher}. This includes the time
+     *         spent in the crypto threads if the verification is deferred
+     */
+    public LatencyHistogram dispatchDelay() {
+        return dispatchDelay;
+    }
+
+    /**
+     * Counts a request as pending until its future completes.
+     *
+     * @param futureResponse
+     *            The future of the request that is about to be sent
+     */
+    public void requestStarted(final FutureResponse futureResponse) {
+        pendingRequests.incrementAndGet();
+        futureResponse.addListener(requestDone);
+    }
+
+    /**
+     * @return The number of requests that have been sent and wait for their reply or timeout
+     */
+    public int pendingRequests() {
+        return pendingRequests.get();
+    }
+
+    public void messageReceived(final Transport transport) {
+        messagesReceived.incrementAndGet(transport.ordinal());
+    }
+
+    public void bytesReceived(final Transport transport, final long bytes) {
+        bytesReceived.addAndGet(transport.ordinal(), bytes);
+    }
+
+    public void messageSent(final Transport transport) {
+        messagesSent.incrementAndGet(transport.ordinal());
+    }
+
+    public void bytesSent(final Transport transport, final long bytes) {
+        bytesSent.addAndGet(transport.ordinal(), bytes);
+    }
+
+    /**
+     * @return The number of completely received messages over the given transport
+     */
+    public long messagesReceived(final Transport transport) {
+        return messagesReceived.get(transport.ordinal());
+    }
+
+    /**
+     * @return The number of bytes decoded from the given transport
+     */
+    public long bytesReceived(final Transport transport) {
+        return bytesReceived.get(transport.ordinal());
+    }
+
+    /**
+     * @return The number of completely sent messages over the given transport
+     */
+    public long messagesSent(final Transport transport) {
+        return messagesSent.get(transport.ordinal());
+    }
+
+    /**
+     * @return The number of bytes encoded for the given transport
+     */
+    public long bytesSent(final Transport transport) {
+        return bytesSent.get(transport.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("metrics: pending requests=").append(pendingRequests());
+        for (Transport transport : Transport.values()) {
+            sb.append("\n").append(transport).append(": received ").append(messagesReceived(transport))
+                    .append(" messages / ").append(bytesReceived(transport)).append(" bytes, sent ")
+                    .append(messagesSent(transport)).append(" messages / ").append(bytesSent(transport))
+                    .append(" bytes");
+            for (Map.Entry<RPC.Commands, LatencyHistogram> entry : latencies(transport).entrySet()) {
+                sb.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue().snapshot());
+            }
+        }
+        sb.append("\npermit wait: ").append(permitWait.snapshot());
+        sb.append("\ndispatch delay: ").append(dispatchDelay.snapshot());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the {@link Metrics} of a peer to a listener in a fixed interval. By default, the metrics are logged. Set it
+ * with PeerBuilder#metricsReporter(MetricsReporter) to start it with the peer.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class MetricsReporter implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsReporter.class);
+
+    /**
+     * Gets the metrics from the reporter.
+     */
+    public interface MetricsListener {
+        /**
+         * Called on the timer thread of the peer.
+         *
+         * @param metrics
+         *            The metrics of the peer
+         */
+        void report(Metrics metrics);
+    }
+
+    private static final MetricsListener LOG_LISTENER = new MetricsListener() {
+        @Override
+        public void report(final Metrics metrics) {
+            LOG.info("{}", metrics);
+        }
+    };
+
+    private final MetricsListener metricsListener;
+    private int intervalMillis = 60 * 1000;
+    private boolean reset = false;
+
+    private Metrics metrics;
+    private ScheduledFuture<?> scheduledFuture;
+
+    /**
+     * Creates a reporter that logs the metrics.
+     */
+    public MetricsReporter() {
+        this(LOG_LISTENER);
+    }
+
+    /**
+     * @param metricsListener
+     *            The listener that gets the metrics
+     */
+    public MetricsReporter(final MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public void init(final Metrics metrics, final ScheduledExecutorService timer) {
+        this.metrics = metrics;
+        scheduledFuture = timer.scheduleAtFixedRate(this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        try {
+            metricsListener.report(metrics);
+        } catch (Throwable t) {
+            LOG.error("Exception in reporting the metrics.", t);
+        }
+        if (reset) {
+            metrics.permitWait().reset();
+            metrics.dispatchDelay().reset();
+            for (Metrics.Transport transport : Metrics.Transport.values()) {
+                for (LatencyHistogram histogram : metrics.latencies(transport).values()) {
+                    histogram.reset();
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+    }
+
+    public int intervalMillis() {
+        return intervalMillis;
+    }
+
+    public MetricsReporter intervalMillis(final int intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        return this;
+    }
+
+    /**
+     * @return True if the histograms are cleared after each report, so that each report covers one interval
+     */
+    public boolean isReset() {
+        return reset;
+    }
+
+    public MetricsReporter reset(final boolean reset) {
+        this.reset = reset;
+        return this;
+    }
+
+    public MetricsReporter reset() {
+        return reset(true);
+    }
+}
@@ -30,6 +30,7 @@ import net.tomp2p.peers.RTT;
 import net.tomp2p.rpc.BloomfilterFactory;
 import net.tomp2p.storage.DigestStorage;
 import net.tomp2p.storage.DigestTracker;
+import net.tomp2p.storage.ValueCodec;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +57,7 @@ public class PeerBean {
     private int holePNumberOfHoles;
     private int holePNumberOfPunches;
     private LocalMap localMap;
+    private ValueCodec valueCodec;
     
 	/**
 	 * This map is used for all open PeerConnections which are meant to stay
@@ -184,6 +186,18 @@ public class PeerBean {
         return bloomfilterFactory;
     }
 
+    public PeerBean valueCodec(final ValueCodec valueCodec) {
+        this.valueCodec = valueCodec;
+        return this;
+    }
+
+    /**
+     * @return The codec to convert objects to data and back
+     */
+    public ValueCodec valueCodec() {
+        return valueCodec;
+    }
+
     public PeerBean maintenanceTask(MaintenanceTask maintenanceTask) {
         this.maintenanceTask = maintenanceTask;
         return this;
@@ -2,13 +2,13 @@ package net.tomp2p.connection;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.FutureChannelCreator;
@@ -23,29 +23,44 @@ public class PeerConnection {
 	final private static Logger LOG = LoggerFactory.getLogger(PeerConnection.class);
 	final public static int HEART_BEAT_MILLIS = 2000;
     
-	final private Semaphore oneConnection;
+	final public static int DEFAULT_MAX_IN_FLIGHT = 1;
+
+	final private Window window;
     final private PeerAddress remotePeer;
     final private ChannelCreator cc;
     final private boolean initiator;
 
-    final private Map<FutureChannelCreator, FutureResponse> map;
     final private FutureDone<Void> closeFuture;
     final private int heartBeatMillis;
 
-    // these may be called from different threads, but they will never be called concurrently within this library
-    private volatile ChannelFuture channelFuture;
+    /**
+     * The channel, the requests that are in flight and the requests that wait for a free slot. This is shared by the
+     * copies created with {@link PeerConnection#changeRemotePeer(PeerAddress)}, so a copy that was created before the
+     * channel was open sends up to maxInFlight requests once it is open.
+     */
+    private static final class Window {
+        private final int maxInFlight;
+        // these may be called from different threads, but they will never be called concurrently within this library
+        private volatile ChannelFuture channelFuture;
+        private final Map<FutureChannelCreator, FutureResponse> waiting = new LinkedHashMap<FutureChannelCreator, FutureResponse>();
+        private int inFlight = 0;
+
+        private Window(final int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("At least one request needs to be in flight.");
+            }
+            this.maxInFlight = maxInFlight;
+        }
+    }
     
-    private PeerConnection(Semaphore oneConnection, PeerAddress remotePeer, ChannelCreator cc, 
-    		boolean initiator, Map<FutureChannelCreator, FutureResponse> map, FutureDone<Void> closeFuture, 
-    		int heartBeatMillis, ChannelFuture channelFuture) {
-    	this.oneConnection = oneConnection;
+    private PeerConnection(Window window, PeerAddress remotePeer, ChannelCreator cc, 
+    		boolean initiator, FutureDone<Void> closeFuture, int heartBeatMillis) {
+    	this.window = window;
     	this.remotePeer = remotePeer;
     	this.cc = cc;
     	this.initiator = initiator;
-    	this.map = map;
     	this.closeFuture = closeFuture;
     	this.heartBeatMillis = heartBeatMillis;
-    	this.channelFuture = channelFuture;
     }
     
 
@@ -60,12 +75,29 @@ public class PeerConnection {
      *            The heart beat in milliseconds
      */
     public PeerConnection(PeerAddress remotePeer, ChannelCreator cc, int heartBeatMillis) {
+        this(remotePeer, cc, heartBeatMillis, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * If we don't have an open TCP connection, we first need a channel creator to open a channel. Until the channel
+     * is open, only one request is sent.
+     * 
+     * @param remotePeer
+     *            The remote peer to connect to
+     * @param cc
+     *            The channel creator where we can open a TCP connection
+     * @param heartBeatMillis
+     *            The heart beat in milliseconds
+     * @param maxInFlight
+     *            The number of requests that can wait for their reply on this connection at the same time. The replies
+     *            are matched by message id
+     */
+    public PeerConnection(PeerAddress remotePeer, ChannelCreator cc, int heartBeatMillis, int maxInFlight) {
         this.remotePeer = remotePeer;
         this.cc = cc;
         this.heartBeatMillis = heartBeatMillis;
         this.initiator = true;
-        this.oneConnection = new Semaphore(1);
-        this.map = new LinkedHashMap<FutureChannelCreator, FutureResponse>();
+        this.window = new Window(maxInFlight);
         this.closeFuture = new FutureDone<Void>();
     }
 
@@ -81,19 +113,33 @@ public class PeerConnection {
      */
     public PeerConnection(PeerAddress remotePeer, ChannelFuture channelFuture, int heartBeatMillis) {
         this.remotePeer = remotePeer;
-        this.channelFuture = channelFuture;
-        addCloseListener(channelFuture);
         this.cc = null;
         this.heartBeatMillis = heartBeatMillis;
         this.initiator = false;
-        this.oneConnection = new Semaphore(1);
-        this.map = new LinkedHashMap<FutureChannelCreator, FutureResponse>();
+        this.window = new Window(DEFAULT_MAX_IN_FLIGHT);
+        this.window.channelFuture = channelFuture;
         this.closeFuture = new FutureDone<Void>();
+        addCloseListener(channelFuture);
     }
 
+    /**
+     * Sets the channel. Once it is connected, the requests that waited for it are sent, up to maxInFlight.
+     * 
+     * @param channelFuture
+     *            The channel future of the TCP connection
+     * @return This class
+     */
     public PeerConnection channelFuture(ChannelFuture channelFuture) {
-        this.channelFuture = channelFuture;
+        window.channelFuture = channelFuture;
         addCloseListener(channelFuture);
+        channelFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(final ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    acquireWaiting();
+                }
+            }
+        });
         return this;
     }
     
@@ -102,7 +148,7 @@ public class PeerConnection {
     }
 
     public ChannelFuture channelFuture() {
-        return channelFuture;
+        return window.channelFuture;
     }
 
     public FutureDone<Void> closeFuture() {
@@ -120,6 +166,7 @@ public class PeerConnection {
     }
 
     public FutureDone<Void> close() {
+        final ChannelFuture channelFuture = window.channelFuture;
         // cc is not null if we opened the connection
     	Channel channel = channelFuture != null ? channelFuture.channel() : null;
         if (cc != null) {
@@ -149,34 +196,75 @@ public class PeerConnection {
     private FutureChannelCreator acquire(final FutureChannelCreator futureChannelCreator,
             final FutureResponse futureResponse) {
     	LOG.debug("About to acquire a peer connection for {}.", remotePeer);
-        if (oneConnection.tryAcquire()) {
-        	LOG.debug("Acquired a peer connection for {}.", remotePeer);
-            futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
-                @Override
-                public void operationComplete(FutureResponse future) throws Exception {
-                    oneConnection.release();
-                    LOG.debug("released peer connection for {}", remotePeer);
-                    synchronized (map) {
-                        Iterator<Map.Entry<FutureChannelCreator, FutureResponse>> iterator = map.entrySet()
-                                .iterator();
-                        if (iterator.hasNext()) {
-                            Map.Entry<FutureChannelCreator, FutureResponse> entry = iterator.next();
-                            iterator.remove();
-                            acquire(entry.getKey(), entry.getValue());
-                        }
-                    }
-                }
-            });
-            futureChannelCreator.reserved(cc);
-            return futureChannelCreator;
-        } else {
-            synchronized (map) {
-                map.put(futureChannelCreator, futureResponse);
+        synchronized (window) {
+            if (!tryAcquire()) {
+                window.waiting.put(futureChannelCreator, futureResponse);
+                return futureChannelCreator;
             }
         }
+        reserved(futureChannelCreator, futureResponse);
         return futureChannelCreator;
     }
 
+    /**
+     * Needs to be called while holding the lock of the window.
+     */
+    private boolean tryAcquire() {
+        // the first request opens the channel, the others have to wait until it is open
+        final ChannelFuture channelFuture = window.channelFuture;
+        final int maxInFlight = channelFuture == null || !channelFuture.isSuccess() ? 1 : window.maxInFlight;
+        if (window.inFlight < maxInFlight) {
+            window.inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    private void reserved(final FutureChannelCreator futureChannelCreator, final FutureResponse futureResponse) {
+    	LOG.debug("Acquired a peer connection for {}.", remotePeer);
+        futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
+            @Override
+            public void operationComplete(FutureResponse future) throws Exception {
+                release();
+            }
+        });
+        futureChannelCreator.reserved(cc);
+    }
+
+    private void release() {
+        LOG.debug("released peer connection for {}", remotePeer);
+        synchronized (window) {
+            window.inFlight--;
+        }
+        acquireWaiting();
+    }
+
+    /**
+     * Sends the requests that wait, as long as there is a free slot.
+     */
+    private void acquireWaiting() {
+        final Map<FutureChannelCreator, FutureResponse> next = new LinkedHashMap<FutureChannelCreator, FutureResponse>();
+        synchronized (window) {
+            final Iterator<Map.Entry<FutureChannelCreator, FutureResponse>> iterator = window.waiting.entrySet()
+                    .iterator();
+            while (iterator.hasNext() && tryAcquire()) {
+                final Map.Entry<FutureChannelCreator, FutureResponse> entry = iterator.next();
+                iterator.remove();
+                next.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<FutureChannelCreator, FutureResponse> entry : next.entrySet()) {
+            reserved(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return The number of requests that can wait for their reply on this connection at the same time
+     */
+    public int maxInFlight() {
+        return window.maxInFlight;
+    }
+
     public ChannelCreator channelCreator() {
         return cc;
     }
@@ -186,6 +274,7 @@ public class PeerConnection {
     }
     
     public boolean isOpen() {
+    	final ChannelFuture channelFuture = window.channelFuture;
     	if (channelFuture!=null) {
     		return channelFuture.channel().isOpen();
     	} else {
@@ -194,11 +283,12 @@ public class PeerConnection {
     }
     
     public PeerConnection changeRemotePeer(PeerAddress remotePeer) {
-    	return new PeerConnection(oneConnection, remotePeer, cc, initiator, map, closeFuture, heartBeatMillis, channelFuture);
+    	return new PeerConnection(window, remotePeer, cc, initiator, closeFuture, heartBeatMillis);
     }
     
 	@Override
 	public int hashCode() {
+		final ChannelFuture channelFuture = window.channelFuture;
 		if(channelFuture!=null) {
             return channelFuture.hashCode();
 		}
@@ -214,8 +304,10 @@ public class PeerConnection {
 			return true;
 		}
 		PeerConnection p = (PeerConnection) obj;
-		if (channelFuture!=null) {
-			return channelFuture.channel().equals(p.channelFuture.channel());
+		final ChannelFuture channelFuture = window.channelFuture;
+		final ChannelFuture other = p.window.channelFuture;
+		if (channelFuture!=null && other!=null) {
+			return channelFuture.channel().equals(other.channel());
 		}
         return remotePeer.equals(p.remotePeer);
     }
@@ -17,7 +17,6 @@
 package net.tomp2p.connection;
 
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -58,6 +57,8 @@ public class PeerCreator {
 
 	private final EventLoopGroup workerGroup;
 	private final EventLoopGroup bossGroup;
+	// only set for a master that verifies and signs off the event loops
+	private final CryptoExecutor cryptoExecutor;
 
 	private final boolean master;
 
@@ -95,18 +96,37 @@ public class PeerCreator {
 		LOG.info("Visible address to other peers: {}", self);
 		
 		//start server
-		workerGroup = new NioEventLoopGroup(0, new DefaultThreadFactory(ConnectionBean.THREAD_NAME
+		ChannelTransport channelTransport = channelServerConfiguration.channelTransport();
+		if (!channelTransport.isAvailable()) {
+			LOG.warn("Transport {} is not available, falling back to NIO.", channelTransport);
+			channelTransport = ChannelTransport.NIO;
+		}
+		// client and server share the worker group, so they must use the same transport
+		channelServerConfiguration.channelTransport(channelTransport);
+		channelClientConfiguration.channelTransport(channelTransport);
+		workerGroup = channelTransport.eventLoopGroup(0, new DefaultThreadFactory(ConnectionBean.THREAD_NAME
 		        + "worker-client/server - "));
-		bossGroup = new NioEventLoopGroup(2, new DefaultThreadFactory(ConnectionBean.THREAD_NAME + "boss - "));
-		Dispatcher dispatcher = new Dispatcher(p2pId, peerBean, channelServerConfiguration.heartBeatMillis());
+		bossGroup = channelTransport.eventLoopGroup(2, new DefaultThreadFactory(ConnectionBean.THREAD_NAME + "boss - "));
+		if (channelServerConfiguration.cryptoThreads() > 0) {
+			cryptoExecutor = new CryptoExecutor(channelServerConfiguration.cryptoThreads(),
+			        CryptoExecutor.DEFAULT_BATCH_SIZE, new DefaultThreadFactory(ConnectionBean.THREAD_NAME
+			                + "crypto - ", true));
+		} else {
+			cryptoExecutor = null;
+		}
+		final Metrics metrics = new Metrics();
+		channelServerConfiguration.metrics(metrics);
+		channelClientConfiguration.metrics(metrics);
+		Dispatcher dispatcher = new Dispatcher(p2pId, peerBean, channelServerConfiguration.heartBeatMillis(), metrics);
 		final ChannelServer channelServer = new ChannelServer(bossGroup, workerGroup, channelServerConfiguration,
-		        dispatcher, peerBean.peerStatusListeners(), timer);
+		        dispatcher, peerBean.peerStatusListeners(), timer, cryptoExecutor);
 		
 		//connection bean
-		Sender sender = new Sender(peerId, peerBean.peerStatusListeners(), channelClientConfiguration, dispatcher, sendBehavior, peerBean);
-		Reservation reservation = new Reservation(workerGroup, channelClientConfiguration);
+		Sender sender = new Sender(peerId, peerBean.peerStatusListeners(), channelClientConfiguration, dispatcher, sendBehavior, peerBean,
+		        cryptoExecutor);
+		Reservation reservation = new Reservation(workerGroup, channelClientConfiguration, dispatcher, cryptoExecutor);
 		connectionBean = new ConnectionBean(p2pId, dispatcher, sender, channelServer, reservation,
-		        channelClientConfiguration, timer);
+		        channelClientConfiguration, timer, metrics);
 		this.master = true;
 	}
 
@@ -124,6 +144,7 @@ public class PeerCreator {
 		parent.childConnections.add(this);
 		this.workerGroup = parent.workerGroup;
 		this.bossGroup = parent.bossGroup;
+		this.cryptoExecutor = null;
 		this.connectionBean = parent.connectionBean;
 		this.peerBean = new PeerBean(keyPair);
 		PeerAddress self = parent.peerBean().serverPeerAddress().changePeerId(peerId);
@@ -180,6 +201,9 @@ public class PeerCreator {
 			@Override
 			public void operationComplete(final Future future) throws Exception {
 				LOG.debug("Client / WorkerGroup shut down.");
+				if (cryptoExecutor != null) {
+					cryptoExecutor.shutdown();
+				}
 				bossGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).addListener(
 				        new GenericFutureListener() {
 					        @Override
@@ -215,6 +215,45 @@ public class RequestHandler<K extends FutureResponse> extends SimpleChannelInbou
 
     @Override
     public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+        handleException(ctx, cause);
+    }
+
+    /**
+     * Handles the reply for a request that was sent over a shared channel, which is a pooled UDP channel or a
+     * {@link PeerConnection}. This is called from the {@link Dispatcher} or the {@link RequestMultiplexer} since the
+     * shared channels do not have a request handler per request in their pipeline.
+     * 
+     * @param responseMessage
+     *            The reply matched by message id
+     */
+    public void responseMultiplexed(final Message responseMessage) {
+        handleResponse(null, responseMessage);
+    }
+
+    /**
+     * Handles an exception on a shared channel. The channel is not closed by this request handler.
+     * 
+     * @param cause
+     *            The reason for the failure
+     */
+    public void exceptionMultiplexed(final Throwable cause) {
+        handleException(null, cause);
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final Message responseMessage)
+            throws Exception {
+        handleResponse(ctx, responseMessage);
+    }
+
+    /**
+     * @param ctx
+     *            The channel context or null if the request was sent over a shared channel, which must not be
+     *            closed
+     * @param cause
+     *            The reason for the failure
+     */
+    private void handleException(final ChannelHandlerContext ctx, final Throwable cause) {
 		LOG.debug("Error originating from {}. Cause {}.", futureResponse.request(), cause);
         if (futureResponse.isCompleted()) {
 			LOG.warn("Got exception, but ignored it. (FutureResponse completed.): {}.",
@@ -247,35 +286,46 @@ public class RequestHandler<K extends FutureResponse> extends SimpleChannelInbou
         }
         
 		LOG.debug("Report failure: ", cause);
-        futureResponse.failedLater(cause);
-        ctx.close();
+        if (ctx == null) {
+            futureResponse.failed(cause);
+        } else {
+            futureResponse.failedLater(cause);
+            ctx.close();
+        }
     }
 
-    @Override
-    protected void channelRead0(final ChannelHandlerContext ctx, final Message responseMessage)
-            throws Exception {
+    /**
+     * @param ctx
+     *            The channel context or null if the request was sent over a shared channel, which must not be
+     *            closed
+     * @param responseMessage
+     *            The reply
+     */
+    private void handleResponse(final ChannelHandlerContext ctx, final Message responseMessage) {
         MessageID recvMessageID = new MessageID(responseMessage);
         // Error handling
         if (responseMessage.type() == Message.Type.UNKNOWN_ID) {
 			String msg = "Message was not delivered successfully, unknow ID (peer may be offline or unknown RPC handler): "
 					+ this.message;
-            exceptionCaught(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
+            handleException(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
             return;
 		} 
         if (responseMessage.type() == Message.Type.EXCEPTION) {
             String msg = "Message caused an exception on the other side, handle as peer_abort: "
                     + this.message;
-            exceptionCaught(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
+            handleException(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
             return;
 		} 
         if (responseMessage.isRequest()) {
-            ctx.fireChannelRead(responseMessage);
+            if (ctx != null) {
+                ctx.fireChannelRead(responseMessage);
+            }
             return;
 		} 
         if (!sendMessageID.equals(recvMessageID)) {
 			String msg = "Response message [" + responseMessage
                     + "] sent to the node is not the same as we expect. We sent [" + this.message + "]";
-            exceptionCaught(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
+            handleException(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
             return;
 		}
 		// We need to exclude RCON Messages from the sanity check because we
@@ -288,7 +338,7 @@ public class RequestHandler<K extends FutureResponse> extends SimpleChannelInbou
 			String msg = "Response message [" + responseMessage + "] sent has a different relay flag than we sent with request message ["
 					+ this.message + "]. Recipient (" + message.recipient().isRelayed() + ") / Sender ("
 					+ responseMessage.sender().isRelayed() + ")";
-            exceptionCaught(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
+            handleException(ctx, new PeerException(PeerException.AbortCause.PEER_ABORT, msg));
             return;
         }
         
@@ -300,6 +350,12 @@ public class RequestHandler<K extends FutureResponse> extends SimpleChannelInbou
 
         // Stop time measurement of RTT
         futureResponse.stopRTTMeasurement();
+        final Metrics metrics = connectionBean.metrics();
+        final long nanos = futureResponse.elapsedNanos();
+        if (metrics != null && nanos >= 0) {
+            metrics.recordLatency(message.command(), Metrics.Transport.of(responseMessage.isUdp(), message.recipient()),
+                    nanos);
+        }
 
         // We got a good answer, let's mark the sender as alive
         //if its an announce, the peer status will be handled in the RPC
@@ -320,11 +376,16 @@ public class RequestHandler<K extends FutureResponse> extends SimpleChannelInbou
         	// wait for the (real) answer of the unreachable peer.
         	connectionBean.dispatcher().addPendingRequest(message.messageId(), futureResponse, slowResponseTimeoutSeconds, connectionBean.timer());
         	// close the channel to the relay peer
-        	ctx.close();
+        	if (ctx != null) {
+        		ctx.close();
+        	}
         	return;
         }
         
-        if (!message.isKeepAlive()) {
+        if (ctx == null) {
+			LOG.debug("Good message {} on a shared channel.", responseMessage);
+            futureResponse.response(responseMessage);
+        } else if (!message.isKeepAlive()) {
 			LOG.debug("Good message {}. Close channel {}.", responseMessage, ctx.channel());
             //set the success now, but trigger the notify when we closed the channel.
             futureResponse.responseLater(responseMessage); 
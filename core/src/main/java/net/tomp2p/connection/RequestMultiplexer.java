@@ -0,0 +1,110 @@
+package net.tomp2p.connection;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.message.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches the replies on a {@link PeerConnection} to their requests by message id, so that several requests can be in
+ * flight on one channel. This handler stays in the pipeline for the lifetime of the channel, instead of replacing the
+ * {@link RequestHandler} for every request. Requests from the other peer are passed on to the {@link Dispatcher}.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class RequestMultiplexer extends SimpleChannelInboundHandler<Message> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RequestMultiplexer.class);
+
+	private final ConcurrentHashMap<Integer, RequestHandler<?>> pendingRequests = new ConcurrentHashMap<Integer, RequestHandler<?>>();
+
+	private volatile boolean inactive = false;
+
+	/**
+	 * Registers a request before it is sent. The request is removed once its future completes.
+	 *
+	 * @param requestHandler
+	 *            The handler that gets the reply
+	 * @return False if a request with the same message id is already in flight on this channel
+	 */
+	public boolean register(final RequestHandler<?> requestHandler) {
+		final FutureResponse futureResponse = requestHandler.futureResponse();
+		final int messageId = futureResponse.request().messageId();
+		if (pendingRequests.putIfAbsent(messageId, requestHandler) != null) {
+			LOG.debug("Message id {} already in flight on this peer connection.", messageId);
+			return false;
+		}
+		futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
+			@Override
+			public void operationComplete(final FutureResponse future) throws Exception {
+				pendingRequests.remove(messageId, requestHandler);
+			}
+		});
+		// the channel may have been closed while we registered
+		if (inactive && pendingRequests.remove(messageId, requestHandler)) {
+			futureResponse.failed("Peer connection closed.");
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of requests that wait for their reply on this channel
+	 */
+	public int pendingRequests() {
+		return pendingRequests.size();
+	}
+
+	@Override
+	protected void channelRead0(final ChannelHandlerContext ctx, final Message message) throws Exception {
+		if (message.isRequest()) {
+			ctx.fireChannelRead(message);
+			return;
+		}
+		final RequestHandler<?> requestHandler = pendingRequests.get(message.messageId());
+		if (requestHandler == null) {
+			LOG.debug("No request in flight for {}, passing it on.", message);
+			ctx.fireChannelRead(message);
+			return;
+		}
+		requestHandler.responseMultiplexed(message);
+	}
+
+	@Override
+	public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+		inactive = true;
+		for (RequestHandler<?> requestHandler : drain()) {
+			requestHandler.futureResponse().failed("Peer connection closed.");
+		}
+		ctx.fireChannelInactive();
+	}
+
+	@Override
+	public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+		// we cannot tell which request failed, and the stream may be out of sync
+		for (RequestHandler<?> requestHandler : drain()) {
+			requestHandler.exceptionMultiplexed(cause);
+		}
+		ctx.close();
+	}
+
+	private List<RequestHandler<?>> drain() {
+		final List<RequestHandler<?>> drained = new ArrayList<RequestHandler<?>>(pendingRequests.size());
+		for (Integer messageId : pendingRequests.keySet()) {
+			final RequestHandler<?> requestHandler = pendingRequests.remove(messageId);
+			if (requestHandler != null) {
+				drained.add(requestHandler);
+			}
+		}
+		return drained;
+	}
+}
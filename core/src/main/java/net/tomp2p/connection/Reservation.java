@@ -65,6 +65,7 @@ public class Reservation {
 	// single thread
 	private final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue);
 	private final EventLoopGroup workerGroup;
+	private final UDPChannelPool udpChannelPool;
 
 	// we should be fair, otherwise we see connection timeouts due to unfairness
 	// if busy
@@ -90,6 +91,29 @@ public class Reservation {
 	 *            permanent TCP connections
 	 */
 	public Reservation(final EventLoopGroup workerGroup, final ChannelClientConfiguration channelClientConfiguration) {
+		this(workerGroup, channelClientConfiguration, null, null);
+	}
+
+	/**
+	 * Creates a new reservation class with the 3 permits contained in the
+	 * provided configuration. If the configuration sets a UDP channel pool
+	 * size, the pooled channels are bound here and shared among all
+	 * {@link ChannelCreator}s.
+	 * 
+	 * @param workerGroup
+	 *            The worker group for both UDP and TCP channels. This will not
+	 *            be shutdown in this class, you need to shutdown it outside.
+	 * @param channelClientConfiguration
+	 *            Sets the permits and the size of the UDP channel pool
+	 * @param dispatcher
+	 *            The dispatcher that matches the replies on the pooled UDP
+	 *            channels. If null, no pool is created
+	 * @param cryptoExecutor
+	 *            The executor that verifies and signs messages on the pooled
+	 *            UDP channels, or null if this is done on the event loops
+	 */
+	public Reservation(final EventLoopGroup workerGroup, final ChannelClientConfiguration channelClientConfiguration,
+	        final Dispatcher dispatcher, final CryptoExecutor cryptoExecutor) {
 		this.workerGroup = workerGroup;
 		this.maxPermitsUDP = channelClientConfiguration.maxPermitsUDP();
 		this.maxPermitsTCP = channelClientConfiguration.maxPermitsTCP();
@@ -98,6 +122,21 @@ public class Reservation {
 		this.semaphoreTCP = new Semaphore(maxPermitsTCP);
 		this.semaphorePermanentTCP = new Semaphore(maxPermitsPermanentTCP);
 		this.channelClientConfiguration = channelClientConfiguration;
+		if (dispatcher != null && channelClientConfiguration.udpChannelPoolSize() > 0) {
+			final UDPChannelPool pool = new UDPChannelPool(workerGroup, channelClientConfiguration, dispatcher,
+			        cryptoExecutor);
+			this.udpChannelPool = pool.isEmpty() ? null : pool;
+		} else {
+			this.udpChannelPool = null;
+		}
+	}
+
+	/**
+	 * @return The shared UDP channels or null if every UDP request binds its
+	 *         own channel
+	 */
+	public UDPChannelPool udpChannelPool() {
+		return udpChannelPool;
 	}
 
 	/**
@@ -264,7 +303,7 @@ public class Reservation {
 		// the channelCreator does not change anymore from here on
 		final int size = copyChannelCreators.size();
 		if (size == 0) {
-			futureReservationDone.done();
+			shutdownPool();
 		} else {
 			final AtomicInteger completeCounter = new AtomicInteger(0);
 			for (final ChannelCreator channelCreator : copyChannelCreators) {
@@ -282,7 +321,7 @@ public class Reservation {
 							semaphoreUPD.acquireUninterruptibly(maxPermitsUDP);
 							semaphoreTCP.acquireUninterruptibly(maxPermitsTCP);
 							semaphorePermanentTCP.acquireUninterruptibly(maxPermitsPermanentTCP);
-							futureReservationDone.done();
+							shutdownPool();
 						}
 					}
 				});
@@ -293,6 +332,36 @@ public class Reservation {
 		return futureReservationDone;
 	}
 
+	/**
+	 * Closes the pooled UDP channels, if any, once all channel creators are
+	 * shut down and finishes the reservation shutdown.
+	 */
+	private void shutdownPool() {
+		if (udpChannelPool == null) {
+			futureReservationDone.done();
+			return;
+		}
+		udpChannelPool.shutdown().addListener(new BaseFutureAdapter<FutureDone<Void>>() {
+			@Override
+			public void operationComplete(final FutureDone<Void> future) throws Exception {
+				futureReservationDone.done();
+			}
+		});
+	}
+
+	/**
+	 * Records the time a reservation waited for its permits.
+	 * 
+	 * @param createdNanos
+	 *            The time when the reservation was requested
+	 */
+	private void recordPermitWait(final long createdNanos) {
+		final Metrics metrics = channelClientConfiguration.metrics();
+		if (metrics != null) {
+			metrics.permitWait().record(System.nanoTime() - createdNanos);
+		}
+	}
+
 	/**
 	 * Adds a channel creator to the set and also adds it to the shutdown listener.
 	 * 
@@ -322,6 +391,7 @@ public class Reservation {
 		private final FutureDone<Void> futureChannelCreationShutdown;
 		private final int permitsUDP;
 		private final int permitsTCP;
+		private final long createdNanos = System.nanoTime();
 
 		/**
 		 * Creates a reservation that returns a {@link ChannelCreator} in a
@@ -369,8 +439,9 @@ public class Reservation {
 					return;
 				}
 
+				recordPermitWait(createdNanos);
 				channelCreator = new ChannelCreator(workerGroup, futureChannelCreationShutdown, permitsUDP, permitsTCP,
-				        channelClientConfiguration);
+				        channelClientConfiguration, udpChannelPool);
 				addToSet(channelCreator);
 			} finally {
 				read.unlock();
@@ -396,6 +467,7 @@ public class Reservation {
 		private final FutureChannelCreator futureChannelCreator;
 		private final FutureDone<Void> futureChannelCreationShutdown;
 		private final int permitsPermanentTCP;
+		private final long createdNanos = System.nanoTime();
 
 		/**
 		 * Creates a reservation that returns a {@link ChannelCreator} in a
@@ -434,8 +506,9 @@ public class Reservation {
 					return;
 				}
 
+				recordPermitWait(createdNanos);
 				channelCreator = new ChannelCreator(workerGroup, futureChannelCreationShutdown, 0, permitsPermanentTCP,
-				        channelClientConfiguration);
+				        channelClientConfiguration, null);
 				addToSet(channelCreator);
 			} finally {
 				read.unlock();
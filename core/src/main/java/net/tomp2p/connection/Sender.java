@@ -16,6 +16,7 @@
 
 package net.tomp2p.connection;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -35,9 +36,11 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import net.tomp2p.connection.PeerException.AbortCause;
 import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.Cancel;
 import net.tomp2p.futures.FutureDone;
@@ -55,6 +58,7 @@ import net.tomp2p.p2p.builder.PingBuilder;
 import net.tomp2p.peers.LocalMap;
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerMap;
 import net.tomp2p.peers.PeerSocketAddress;
 import net.tomp2p.peers.PeerStatistic;
 import net.tomp2p.peers.PeerStatusListener;
@@ -83,6 +87,7 @@ public class Sender {
 	private final SendBehavior sendBehavior;
 	private final Random random;
 	private final PeerBean peerBean;
+	private final CryptoExecutor cryptoExecutor;
 	private final DataFilter dataFilterTTL = new DataFilterTTL();
 
 	// this map caches all messages which are meant to be sent by a reverse
@@ -101,15 +106,20 @@ public class Sender {
 	 * @param dispatcher
 	 * @param sendBehavior
 	 * @param peerBean
+	 * @param cryptoExecutor
+	 *            The executor that verifies and signs messages, or null if this
+	 *            is done on the event loops
 	 */
 	public Sender(final Number160 peerId, final List<PeerStatusListener> peerStatusListeners,
-			final ChannelClientConfiguration channelClientConfiguration, Dispatcher dispatcher, SendBehavior sendBehavior, PeerBean peerBean) {
+			final ChannelClientConfiguration channelClientConfiguration, Dispatcher dispatcher, SendBehavior sendBehavior, PeerBean peerBean,
+			final CryptoExecutor cryptoExecutor) {
 		this.peerStatusListeners = peerStatusListeners;
 		this.channelClientConfiguration = channelClientConfiguration;
 		this.dispatcher = dispatcher;
 		this.sendBehavior = sendBehavior;
 		this.random = new Random(peerId.hashCode());
 		this.peerBean = peerBean;
+		this.cryptoExecutor = cryptoExecutor;
 	}
 
 	public ChannelClientConfiguration channelClientConfiguration() {
@@ -164,13 +174,16 @@ public class Sender {
 
 		// RTT calculation
 		futureResponse.startRTTMeasurement(false);
+		if (channelClientConfiguration.metrics() != null) {
+			channelClientConfiguration.metrics().requestStarted(futureResponse);
+		}
 
 		final ChannelFuture channelFuture;
 		if (peerConnection != null && peerConnection.channelFuture() != null && peerConnection.channelFuture().channel().isActive()) {
 			channelFuture = sendTCPPeerConnection(peerConnection, handler, channelCreator, futureResponse);
 			afterConnect(futureResponse, message, channelFuture, handler == null);
 		} else if (channelCreator != null) {
-			final TimeoutFactory timeoutHandler = createTimeoutHandler(futureResponse, idleTCPMillis, handler == null);
+			final TimeoutFactory timeoutHandler = createTimeoutHandler(futureResponse, idleTCPMillis, false, handler == null);
 
 			switch (sendBehavior.tcpSendBehavior(message)) {
 			case DIRECT:
@@ -466,11 +479,12 @@ public class Sender {
 
 		handlers.put("decoder",
 				new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2PCumulationTCP(channelClientConfiguration.signatureFactory(), 
-						channelClientConfiguration.byteBufAllocator())));
+						channelClientConfiguration.byteBufAllocator(), cryptoExecutor, channelClientConfiguration.metrics())));
 		handlers.put(
 				"encoder",
 				new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2POutbound(channelClientConfiguration.signatureFactory(),
-						channelClientConfiguration.byteBufAllocator())));
+						channelClientConfiguration.byteBufAllocator(), channelClientConfiguration.isFlushConsolidation(),
+						cryptoExecutor, channelClientConfiguration.metrics())));
 
 		if (peerConnection != null) {
 			// we expect replies on this connection
@@ -478,7 +492,14 @@ public class Sender {
 		}
 
 		if (timeoutHandler != null) {
-			handlers.put("handler", new Pair<EventExecutorGroup, ChannelHandler>(null, handler));
+			if (peerConnection != null && handler instanceof RequestHandler) {
+				// the handlers stay for the following requests on this connection
+				final RequestMultiplexer requestMultiplexer = new RequestMultiplexer();
+				requestMultiplexer.register((RequestHandler<?>) handler);
+				handlers.put("handler", new Pair<EventExecutorGroup, ChannelHandler>(null, requestMultiplexer));
+			} else {
+				handlers.put("handler", new Pair<EventExecutorGroup, ChannelHandler>(null, handler));
+			}
 		}
 
 		HeartBeat heartBeat = null;
@@ -500,13 +521,23 @@ public class Sender {
 
 	private ChannelFuture sendTCPPeerConnection(PeerConnection peerConnection, ChannelHandler handler, final ChannelCreator channelCreator,
 			final FutureResponse futureResponse) {
-		// if the channel gets closed, the future should get notified
 		ChannelFuture channelFuture = peerConnection.channelFuture();
+		ChannelPipeline pipeline = channelFuture.channel().pipeline();
+		if (handler instanceof RequestHandler) {
+			// the reply is matched by message id, the multiplexer notifies
+			// the future if the channel gets closed
+			if (!requestMultiplexer(pipeline).register((RequestHandler<?>) handler)) {
+				futureResponse.failed("Message id " + futureResponse.request().messageId()
+						+ " is already in flight on this peer connection.");
+				return null;
+			}
+			return channelFuture;
+		}
+		// if the channel gets closed, the future should get notified
 		// channelCreator can be null if we don't need to create any channels
 		if (channelCreator != null) {
 			channelCreator.setupCloseListener(channelFuture, futureResponse);
 		}
-		ChannelPipeline pipeline = channelFuture.channel().pipeline();
 
 		// we need to replace the handler if this comes from the peer that
 		// create a peerConnection, otherwise we
@@ -534,6 +565,27 @@ public class Sender {
 	// }
 	// }
 
+	/**
+	 * Returns the multiplexer of a peer connection and adds it if this is the
+	 * first request we send over this channel, e.g., if the channel was opened
+	 * by the other peer.
+	 * 
+	 * @param pipeline
+	 *            The pipeline of the peer connection
+	 * @return The multiplexer that matches the replies on this channel
+	 */
+	private RequestMultiplexer requestMultiplexer(final ChannelPipeline pipeline) {
+		synchronized (pipeline) {
+			final ChannelHandler current = pipeline.get("handler");
+			if (current instanceof RequestMultiplexer) {
+				return (RequestMultiplexer) current;
+			}
+			final RequestMultiplexer requestMultiplexer = new RequestMultiplexer();
+			addOrReplace(pipeline, "dispatcher", "handler", requestMultiplexer);
+			return requestMultiplexer;
+		}
+	}
+
 	private boolean addOrReplace(ChannelPipeline pipeline, String before, String name, ChannelHandler channelHandler) {
 		List<String> names = pipeline.names();
 		if (names.contains(name)) {
@@ -593,13 +645,22 @@ public class Sender {
 
 		boolean isFireAndForget = handler == null;
 
-		final Map<String, Pair<EventExecutorGroup, ChannelHandler>> handlers = configureHandlers(handler, futureResponse, idleUDPMillis,
-				isFireAndForget);
-
 		// RTT calculation
 		futureResponse.startRTTMeasurement(true);
+		if (channelClientConfiguration.metrics() != null) {
+			channelClientConfiguration.metrics().requestStarted(futureResponse);
+		}
 
 		try {
+			if (!broadcast && channelCreator.isUDPPooled() && (isFireAndForget || handler instanceof RequestHandler)
+					&& sendBehavior.udpSendBehavior(message) == SendBehavior.SendMethod.DIRECT
+					&& sendUDPPooled((RequestHandler<?>) handler, futureResponse, message, channelCreator, idleUDPMillis)) {
+				return;
+			}
+
+			final Map<String, Pair<EventExecutorGroup, ChannelHandler>> handlers = configureHandlers(handler, futureResponse,
+					idleUDPMillis, isFireAndForget);
+
 			ChannelFuture channelFuture = null;
 			switch (sendBehavior.udpSendBehavior(message)) {
 			case DIRECT:
@@ -638,6 +699,100 @@ public class Sender {
 		}
 	}
 
+	/**
+	 * Sends a UDP message over one of the long-lived channels of the
+	 * {@link UDPChannelPool}. The reply is matched by message id in the
+	 * {@link Dispatcher}, and since there is no per channel idle handler, the
+	 * timeout is scheduled on the event loop of the pooled channel.
+	 * 
+	 * @param handler
+	 *            The handler to deal with a response message or null for fire
+	 *            and forget
+	 * @param futureResponse
+	 *            The future to set the response
+	 * @param message
+	 *            The message to send
+	 * @param channelCreator
+	 *            The channel creator that hands out the pooled channel
+	 * @param idleUDPMillis
+	 *            The time to wait for a reply, the upper limit if adaptive
+	 *            timeouts are enabled
+	 * @return False if the message id is already in flight, in which case the
+	 *         message needs to be sent over a new channel
+	 */
+	private boolean sendUDPPooled(final RequestHandler<?> handler, final FutureResponse futureResponse,
+			final Message message, final ChannelCreator channelCreator, final int idleUDPMillis) {
+		final boolean fireAndForget = handler == null;
+		final int messageId = message.messageId();
+		if (!fireAndForget && !dispatcher.addPendingUDPRequest(messageId, handler)) {
+			LOG.debug("Message id {} already in flight on a pooled UDP channel.", messageId);
+			return false;
+		}
+		final Channel channel = channelCreator.createUDPPooled(futureResponse);
+		if (channel == null) {
+			if (!fireAndForget) {
+				dispatcher.removePendingUDPRequest(messageId, handler);
+			}
+			futureResponse.failed("could not acquire a pooled UDP channel");
+			return true;
+		}
+		if (!fireAndForget) {
+			final int timeoutMillis = timeoutMillis(message, idleUDPMillis, true);
+			final AdaptiveTimeout adaptiveTimeout = channelClientConfiguration.adaptiveTimeout();
+			final int udpRetries = adaptiveTimeout == null ? 0 : adaptiveTimeout.udpRetries();
+			final ScheduledFuture<?> timeout = channel.eventLoop().schedule(new Runnable() {
+				private int retries = udpRetries;
+
+				@Override
+				public void run() {
+					if (futureResponse.isCompleted()) {
+						// a retry was scheduled before the reply arrived
+						return;
+					}
+					if (retries > 0) {
+						retries--;
+						TimeoutFactory.retry(channel, futureResponse);
+						channel.eventLoop().schedule(this, timeoutMillis, TimeUnit.MILLISECONDS);
+						return;
+					}
+					if (dispatcher.removePendingUDPRequest(messageId, handler)) {
+						LOG.warn("Pooled UDP request timeout {}.", message);
+						synchronized (peerStatusListeners) {
+							for (PeerStatusListener peerStatusListener : peerStatusListeners) {
+								peerStatusListener.peerFailed(message.recipient(), new PeerException(
+								        AbortCause.TIMEOUT, "Timeout!"));
+							}
+						}
+						futureResponse.failed("Pooled UDP request timeout after " + timeoutMillis + "ms");
+					}
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+			futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
+				@Override
+				public void operationComplete(final FutureResponse future) throws Exception {
+					timeout.cancel(false);
+					dispatcher.removePendingUDPRequest(messageId, handler);
+				}
+			});
+		}
+		final ChannelFuture writeFuture = channel.writeAndFlush(message);
+		final Cancel writeCancel = createCancel(writeFuture);
+		futureResponse.addCancel(writeCancel);
+		writeFuture.addListener(new GenericFutureListener<ChannelFuture>() {
+			@Override
+			public void operationComplete(final ChannelFuture future) throws Exception {
+				futureResponse.removeCancel(writeCancel);
+				if (!future.isSuccess()) {
+					LOG.warn("Failed to write pooled UDP request {} {}.", message, future.cause());
+					futureResponse.failed(future.cause());
+				} else if (fireAndForget) {
+					futureResponse.emptyResponse();
+				}
+			}
+		});
+		return true;
+	}
+
 	/**
 	 * This method needed to be extracted from sendUDP(...), because it is also
 	 * needed by the method handleHolePunch(...).
@@ -730,17 +885,20 @@ public class Sender {
 		} else {
 			final int nrTCPHandlers = 7; // 5 / 0.75
 			handlers = new LinkedHashMap<String, Pair<EventExecutorGroup, ChannelHandler>>(nrTCPHandlers);
-			final TimeoutFactory timeoutHandler = createTimeoutHandler(futureResponse, idleUDPMillis, isFireAndForget);
+			final TimeoutFactory timeoutHandler = createTimeoutHandler(futureResponse, idleUDPMillis, true, isFireAndForget);
 			handlers.put("timeout0", new Pair<EventExecutorGroup, ChannelHandler>(null, timeoutHandler.idleStateHandlerTomP2P()));
 			handlers.put("timeout1", new Pair<EventExecutorGroup, ChannelHandler>(null, timeoutHandler.timeHandler()));
 		}
 
 		handlers.put(
 				"decoder",
-				new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2PSinglePacketUDP(channelClientConfiguration.signatureFactory(), channelClientConfiguration.byteBufAllocator())));
+				new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2PSinglePacketUDP(channelClientConfiguration.signatureFactory(), channelClientConfiguration.byteBufAllocator(),
+						cryptoExecutor, channelClientConfiguration.metrics())));
 		handlers.put(
 				"encoder",
-				new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2POutbound(channelClientConfiguration.signatureFactory(), channelClientConfiguration.byteBufAllocator())));
+				new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2POutbound(channelClientConfiguration.signatureFactory(),
+						channelClientConfiguration.byteBufAllocator(), channelClientConfiguration.isFlushConsolidation(),
+						cryptoExecutor, channelClientConfiguration.metrics())));
 		if (!isFireAndForget) {
 			handlers.put("handler", new Pair<EventExecutorGroup, ChannelHandler>(null, handler));
 		}
@@ -759,8 +917,40 @@ public class Sender {
 	 *            True, if we don't expect a response
 	 * @return The timeout factory that will create timeout handlers
 	 */
-	private TimeoutFactory createTimeoutHandler(final FutureResponse futureResponse, final int idleMillis, final boolean fireAndForget) {
-		return fireAndForget ? null : new TimeoutFactory(futureResponse, idleMillis, peerStatusListeners, "Sender");
+	private TimeoutFactory createTimeoutHandler(final FutureResponse futureResponse, final int idleMillis, final boolean udp,
+			final boolean fireAndForget) {
+		if (fireAndForget) {
+			return null;
+		}
+		final AdaptiveTimeout adaptiveTimeout = channelClientConfiguration.adaptiveTimeout();
+		if (adaptiveTimeout == null) {
+			return new TimeoutFactory(futureResponse, idleMillis, peerStatusListeners, "Sender");
+		}
+		return new TimeoutFactory(futureResponse, timeoutMillis(futureResponse.request(), idleMillis, udp),
+				udp ? adaptiveTimeout.udpRetries() : 0, peerStatusListeners, "Sender");
+	}
+
+	/**
+	 * Calculates the timeout of a request from the RTTs of the recipient if
+	 * adaptive timeouts are enabled.
+	 * 
+	 * @param message
+	 *            The request
+	 * @param idleMillis
+	 *            The configured idle timeout
+	 * @param udp
+	 *            True if the request is sent over UDP
+	 * @return The time to wait for a reply, never more than the idle timeout
+	 */
+	private int timeoutMillis(final Message message, final int idleMillis, final boolean udp) {
+		final AdaptiveTimeout adaptiveTimeout = channelClientConfiguration.adaptiveTimeout();
+		// the RTT over a relay is not comparable to a direct one
+		if (adaptiveTimeout == null || message.recipient().isRelayed()) {
+			return idleMillis;
+		}
+		final PeerMap peerMap = peerBean.peerMap();
+		final PeerStatistic peerStatistic = peerMap == null ? null : peerMap.getPeerStatistic(message.recipient());
+		return adaptiveTimeout.timeoutMillis(peerStatistic, udp, idleMillis);
 	}
 
 	/**
@@ -16,6 +16,7 @@
 
 package net.tomp2p.connection;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
@@ -29,6 +30,7 @@ import java.util.List;
 import net.tomp2p.connection.PeerException.AbortCause;
 import net.tomp2p.futures.FutureResponse;
 import net.tomp2p.message.Decoder;
+import net.tomp2p.message.Message;
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.PeerAddress;
 import net.tomp2p.peers.PeerStatusListener;
@@ -47,6 +49,7 @@ public class TimeoutFactory {
 
 	private final FutureResponse futureResponse;
 	private final int timeoutMillis;
+	private final int udpRetries;
 	private final List<PeerStatusListener> peerStatusListeners;
 	private final String name;
 
@@ -60,9 +63,27 @@ public class TimeoutFactory {
 	 *            The listeners that get notified when a timeout happens
 	 */
 	public TimeoutFactory(final FutureResponse futureResponse, final int timeoutMillis,
+	        final List<PeerStatusListener> peerStatusListeners, final String name) {
+		this(futureResponse, timeoutMillis, 0, peerStatusListeners, name);
+	}
+
+	/**
+	 * Creates a factory for timeout handlers that sends a UDP request again
+	 * before it fails.
+	 * @param futureResponse
+	 *            The future that will be called if a timeout occured
+	 * @param timeoutMillis
+	 *            The time for a timeout
+	 * @param udpRetries
+	 *            How many times a UDP request is sent again on a timeout
+	 * @param peerStatusListeners
+	 *            The listeners that get notified when a timeout happens
+	 */
+	public TimeoutFactory(final FutureResponse futureResponse, final int timeoutMillis, final int udpRetries,
 	        final List<PeerStatusListener> peerStatusListeners, final String name) {
 		this.futureResponse = futureResponse;
 		this.timeoutMillis = timeoutMillis;
+		this.udpRetries = udpRetries;
 		this.peerStatusListeners = peerStatusListeners;
 		this.name = name;
 	}
@@ -78,7 +99,7 @@ public class TimeoutFactory {
 	 * @return Two handlers, one default Netty that will call the second handler
 	 */
 	public ChannelHandler timeHandler() {
-		return new TimeHandler(futureResponse, peerStatusListeners, name);
+		return new TimeHandler(futureResponse, udpRetries, peerStatusListeners, name);
 	}
 
 	public static void removeTimeout(ChannelHandlerContext ctx) {
@@ -101,18 +122,22 @@ public class TimeoutFactory {
 		private final FutureResponse futureResponse;
 		private final List<PeerStatusListener> peerStatusListeners;
 		private final String name;
+		private int udpRetries;
 
 		/**
 		 * @param futureResponse
 		 *            The future that will be called if a timeout occured. Can
 		 *            be null if we are server, if we are client, futureResponse
 		 *            will be set
+		 * @param udpRetries
+		 *            How many times a UDP request is sent again on a timeout
 		 * @param peerStatusListeners
 		 *            The listeners that get notified when a timeout happend
 		 */
-		public TimeHandler(final FutureResponse futureResponse, final List<PeerStatusListener> peerStatusListeners,
-		        final String name) {
+		public TimeHandler(final FutureResponse futureResponse, final int udpRetries,
+		        final List<PeerStatusListener> peerStatusListeners, final String name) {
 			this.futureResponse = futureResponse;
+			this.udpRetries = udpRetries;
 			this.peerStatusListeners = peerStatusListeners;
 			this.name = name;
 		}
@@ -120,6 +145,11 @@ public class TimeoutFactory {
 		@Override
 		public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt) throws Exception {
 			if (evt instanceof IdleStateHandlerTomP2P) {
+				if (futureResponse != null && udpRetries > 0) {
+					udpRetries--;
+					retry(ctx.channel(), futureResponse);
+					return;
+				}
 				LOG.warn("Channel timeout for channel {} {}.", name, ctx.channel());
 				final PeerAddress recipient;
 				if (futureResponse != null) {
@@ -167,4 +197,30 @@ public class TimeoutFactory {
 			}
 		}
 	}
+
+	/**
+	 * Sends the request of a timed out UDP request again. The reply may be
+	 * the one of the first request, so the RTT is only an estimate.
+	 * 
+	 * @param channel
+	 *            The UDP channel
+	 * @param futureResponse
+	 *            The future of the request
+	 */
+	static void retry(final Channel channel, final FutureResponse futureResponse) {
+		final Message message = futureResponse.request();
+		LOG.debug("No reply in time, sending {} again.", message);
+		futureResponse.getRoundTripTime().setEstimated();
+		// the encoder consumed the content references
+		message.restoreContentReferences();
+		message.restoreBuffers();
+		channel.writeAndFlush(message).addListener(new GenericFutureListener<ChannelFuture>() {
+			@Override
+			public void operationComplete(final ChannelFuture future) throws Exception {
+				if (!future.isSuccess()) {
+					futureResponse.failed(future.cause());
+				}
+			}
+		});
+	}
 }
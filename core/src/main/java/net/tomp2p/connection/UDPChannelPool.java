@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.connection;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelGroupFuture;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.message.TomP2POutbound;
+import net.tomp2p.message.TomP2PSinglePacketUDP;
+import net.tomp2p.utils.Pair;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small, fixed set of long-lived UDP channels that are shared among all
+ * {@link ChannelCreator}s of a {@link Reservation}. Instead of binding a new
+ * ephemeral port for every request, requests are written to one of these
+ * channels in a round-robin fashion. The replies are matched to their
+ * {@link RequestHandler} by message id in the {@link Dispatcher}.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class UDPChannelPool {
+	private static final Logger LOG = LoggerFactory.getLogger(UDPChannelPool.class);
+
+	private final List<Channel> channels;
+	private final ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+	private final AtomicInteger counter = new AtomicInteger(0);
+	private final FutureDone<Void> futurePoolDone = new FutureDone<Void>();
+
+	/**
+	 * Binds the pooled channels. This blocks until all channels are bound, so
+	 * it must not be called from a Netty thread.
+	 *
+	 * @param workerGroup
+	 *            The worker group, which is not shut down by this class
+	 * @param channelClientConfiguration
+	 *            The configuration with the pool size, the sender address and
+	 *            the pipeline filter
+	 * @param dispatcher
+	 *            The dispatcher that demultiplexes the replies
+	 * @param cryptoExecutor
+	 *            The executor that verifies and signs messages, or null if
+	 *            this is done on the event loops
+	 */
+	public UDPChannelPool(final EventLoopGroup workerGroup,
+	        final ChannelClientConfiguration channelClientConfiguration, final Dispatcher dispatcher,
+	        final CryptoExecutor cryptoExecutor) {
+		final int size = channelClientConfiguration.udpChannelPoolSize();
+		final List<Channel> bound = new ArrayList<Channel>(size);
+		for (int i = 0; i < size; i++) {
+			final Bootstrap b = new Bootstrap();
+			b.group(workerGroup);
+			b.channel(channelClientConfiguration.channelTransport().datagramChannel());
+			b.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(ConnectionBean.UDP_LIMIT));
+			final Map<String, Pair<EventExecutorGroup, ChannelHandler>> handlers = channelClientConfiguration
+			        .pipelineFilter().filter(handlers(channelClientConfiguration, dispatcher, cryptoExecutor), false, true);
+			b.handler(new ChannelInitializer<Channel>() {
+				@Override
+				protected void initChannel(final Channel ch) throws Exception {
+					ch.config().setAllocator(channelClientConfiguration.byteBufAllocator());
+					for (Map.Entry<String, Pair<EventExecutorGroup, ChannelHandler>> entry : handlers.entrySet()) {
+						if (entry.getValue().element0() != null) {
+							ch.pipeline().addLast(entry.getValue().element0(), entry.getKey(),
+							        entry.getValue().element1());
+						} else {
+							ch.pipeline().addLast(entry.getKey(), entry.getValue().element1());
+						}
+					}
+				}
+			});
+			final ChannelFuture future = b.bind(new InetSocketAddress(channelClientConfiguration.senderUDP(), 0));
+			future.awaitUninterruptibly();
+			if (future.isSuccess()) {
+				bound.add(future.channel());
+				channelGroup.add(future.channel());
+			} else {
+				LOG.warn("Could not bind pooled UDP channel.", future.cause());
+			}
+		}
+		this.channels = bound;
+		LOG.debug("Bound {} pooled UDP channels.", bound.size());
+	}
+
+	private static Map<String, Pair<EventExecutorGroup, ChannelHandler>> handlers(
+	        final ChannelClientConfiguration channelClientConfiguration, final Dispatcher dispatcher,
+	        final CryptoExecutor cryptoExecutor) {
+		final Map<String, Pair<EventExecutorGroup, ChannelHandler>> handlers = new LinkedHashMap<String, Pair<EventExecutorGroup, ChannelHandler>>(
+		        4);
+		handlers.put("decoder", new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2PSinglePacketUDP(
+		        channelClientConfiguration.signatureFactory(), channelClientConfiguration.byteBufAllocator(), cryptoExecutor,
+		        channelClientConfiguration.metrics())));
+		handlers.put("encoder", new Pair<EventExecutorGroup, ChannelHandler>(null, new TomP2POutbound(
+		        channelClientConfiguration.signatureFactory(), channelClientConfiguration.byteBufAllocator(),
+		        channelClientConfiguration.isFlushConsolidation(), cryptoExecutor,
+		        channelClientConfiguration.metrics())));
+		handlers.put("dispatcher", new Pair<EventExecutorGroup, ChannelHandler>(null, dispatcher));
+		return handlers;
+	}
+
+	/**
+	 * @return True if not a single pooled channel could be bound
+	 */
+	public boolean isEmpty() {
+		return channels.isEmpty();
+	}
+
+	/**
+	 * @return The number of bound channels in this pool
+	 */
+	public int size() {
+		return channels.size();
+	}
+
+	/**
+	 * @return The next pooled channel in a round-robin fashion, or null if no
+	 *         channel is open
+	 */
+	public Channel next() {
+		final int size = channels.size();
+		for (int i = 0; i < size; i++) {
+			final Channel channel = channels.get((counter.getAndIncrement() & Integer.MAX_VALUE) % size);
+			if (channel.isActive()) {
+				return channel;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes all pooled channels.
+	 *
+	 * @return The future that is done once all channels are closed
+	 */
+	public FutureDone<Void> shutdown() {
+		channelGroup.close().addListener(new GenericFutureListener<ChannelGroupFuture>() {
+			@Override
+			public void operationComplete(final ChannelGroupFuture future) throws Exception {
+				futurePoolDone.done();
+			}
+		});
+		return futurePoolDone;
+	}
+}
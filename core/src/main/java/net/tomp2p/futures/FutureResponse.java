@@ -40,6 +40,9 @@ public class FutureResponse extends BaseFutureImpl<FutureResponse> {
 
     private final RTT roundTripTime = new RTT();
 
+    // in nanoseconds for the latency histograms, the RTT above is measured in milliseconds
+    private volatile long startNanos = Long.MIN_VALUE;
+
     /**
      * Creates a future and sets the request message.
      * 
@@ -190,9 +193,20 @@ public class FutureResponse extends BaseFutureImpl<FutureResponse> {
      *         False if measurement already has been stopped
      */
     public boolean startRTTMeasurement(boolean isUDP) {
+        if (startNanos == Long.MIN_VALUE) {
+            startNanos = System.nanoTime();
+        }
         return getRoundTripTime().beginTimeMeasurement(isUDP);
     }
 
+    /**
+     * @return The nanoseconds since the time measurement has been started, or -1 if it has not been started
+     */
+    public long elapsedNanos() {
+        final long start = startNanos;
+        return start == Long.MIN_VALUE ? -1 : System.nanoTime() - start;
+    }
+
     /**
      * Stops time measurement for the round trip time
      *
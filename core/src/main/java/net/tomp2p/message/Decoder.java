@@ -16,7 +16,6 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -57,6 +56,7 @@ public class Decoder {
 	// current state - needs to be deleted if we want to reuse
 	private Message message = null;
 	private Signature signature = null;
+	private SignatureVerification verification = null;
 
 	private int neighborSize = -1;
 	private NeighborSet neighborSet = null;
@@ -91,10 +91,24 @@ public class Decoder {
 	private final SignatureFactory signatureFactory;
 	
 	private final ByteBufAllocator byteBufAllocator;
+	
+	private final boolean deferVerification;
 
 	public Decoder(SignatureFactory signatureFactory, final ByteBufAllocator byteBufAllocator) {
+		this(signatureFactory, byteBufAllocator, false);
+	}
+
+	/**
+	 * @param deferVerification
+	 *            If true, the signature of a message is not verified while
+	 *            decoding. The caller needs to run {@link #verification()}
+	 *            before the message is used
+	 */
+	public Decoder(SignatureFactory signatureFactory, final ByteBufAllocator byteBufAllocator,
+	        final boolean deferVerification) {
 		this.signatureFactory = signatureFactory;
 		this.byteBufAllocator = byteBufAllocator;
+		this.deferVerification = deferVerification;
 	}
 
 	public boolean decode(ChannelHandlerContext ctx, final ByteBuf buf, InetSocketAddress recipient,
@@ -173,13 +187,12 @@ public class Decoder {
 
 		if (donePayload) {
 			byte[] signatureReceived = message.receivedSignature().encode();
-			LOG.debug("Verifying received signature: {}", Arrays.toString(signatureReceived));
-			if (signature.verify(signatureReceived)) {
-				// set public key only if signature is correct
-				message.setVerified();
-				LOG.debug("Signature check OK.");
+			final SignatureVerification verification = new SignatureVerification(message, signature,
+			        signatureReceived);
+			if (deferVerification) {
+				this.verification = verification;
 			} else {
-				LOG.warn("Signature check NOT OK. Message: {}.", message);
+				verification.verify();
 			}
 		}
 	}
@@ -255,7 +268,7 @@ public class Decoder {
 				if (buf.readableBytes() < size) {
 					return false;
 				}
-				message.bloomFilter(new SimpleBloomFilter<Number160>(buf));
+				message.bloomFilter(SimpleBloomFilter.<Number160>decode(buf));
 				lastContent = contentTypes.poll();
 				break;
 			case SET_NEIGHBORS:
@@ -625,6 +638,7 @@ public class Decoder {
 		bufferTransferred = 0;
 		buffer = null;
 		signature = null;
+		verification = null;
 		return ret;
 	}
 
@@ -632,6 +646,15 @@ public class Decoder {
 		return message;
 	}
 
+	/**
+	 * @return The pending signature check of the decoded message if the
+	 *         verification is deferred and the message is signed, otherwise
+	 *         null. Needs to be called before {@link #prepareFinish()}
+	 */
+	public SignatureVerification verification() {
+		return verification;
+	}
+
 	public Content lastContent() {
 		return lastContent;
 	}
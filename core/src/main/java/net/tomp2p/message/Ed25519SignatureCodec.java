@@ -0,0 +1,75 @@
+package net.tomp2p.message;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An Ed25519 signature is the concatenation of the point R and the scalar S, 64 bytes in total. It is sent as it is.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class Ed25519SignatureCodec implements SignatureCodec {
+
+	public static final int SIGNATURE_SIZE = 64;
+	private final byte[] encodedData;
+
+	/**
+	 * Create a signature codec using an already existing signature (encoded)
+	 *
+	 * @param encodedData the encoded signature
+	 * @throws IOException
+	 */
+	public Ed25519SignatureCodec(byte[] encodedData) throws IOException {
+		if (encodedData.length != SIGNATURE_SIZE) {
+			throw new IOException("Ed25519 signature has size " + SIGNATURE_SIZE + " received: " + encodedData.length);
+		}
+		this.encodedData = encodedData;
+	}
+
+	/**
+	 * Create a signature codec from a buffer
+	 *
+	 * @param buf the buffer containing the signature at its reader index
+	 */
+	public Ed25519SignatureCodec(ByteBuf buf) {
+		encodedData = new byte[SIGNATURE_SIZE];
+		buf.readBytes(encodedData);
+	}
+
+	@Override
+	public byte[] encode() {
+		// no decoding necessary
+		return encodedData;
+	}
+
+	@Override
+	public SignatureCodec write(ByteBuf buf) {
+		buf.writeBytes(encodedData);
+		return this;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(encodedData);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Ed25519SignatureCodec)) {
+			return false;
+		}
+		if (obj == this) {
+			return true;
+		}
+		Ed25519SignatureCodec s = (Ed25519SignatureCodec) obj;
+		return Arrays.equals(s.encodedData, encodedData);
+	}
+
+	@Override
+	public int signatureSize() {
+		return SIGNATURE_SIZE;
+	}
+}
@@ -203,6 +203,7 @@ public class Message {
     private transient boolean content = false;
     private transient boolean verified = false;
     private transient boolean sendSelf = false;
+    private transient long receivedNanos = 0;
 
     /**
      * Creates message with a random ID.
@@ -1067,6 +1068,23 @@ public class Message {
     	return this;
 	}
 
+    /**
+     * @param receivedNanos
+     *            The {@link System#nanoTime()} when the message has been decoded
+     * @return This class
+     */
+    public Message receivedNanos(final long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+        return this;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} when the message has been decoded, or 0 if this is not recorded
+     */
+    public long receivedNanos() {
+        return receivedNanos;
+    }
+
     /**
      * @param done
      *            True if message decoding or encoding is done
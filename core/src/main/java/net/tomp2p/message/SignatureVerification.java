@@ -0,0 +1,87 @@
+package net.tomp2p.message;
+
+import io.netty.channel.ChannelHandlerContext;
+
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+
+import net.tomp2p.connection.CryptoExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The last step of the signature check of a message. The decoder updates the signature with the received bytes while
+ * decoding, which is cheap. The verification itself is expensive and can be done by a {@link CryptoExecutor} instead
+ * of the event loop.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public final class SignatureVerification {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SignatureVerification.class);
+
+	private final Message message;
+	private final Signature signature;
+	private final byte[] signatureReceived;
+
+	public SignatureVerification(final Message message, final Signature signature, final byte[] signatureReceived) {
+		this.message = message;
+		this.signature = signature;
+		this.signatureReceived = signatureReceived;
+	}
+
+	public Message message() {
+		return message;
+	}
+
+	/**
+	 * Verifies the signature and marks the message as verified if it is
+	 * correct.
+	 *
+	 * @return True if the signature is correct
+	 * @throws SignatureException
+	 *             If the signature could not be checked
+	 */
+	public boolean verify() throws SignatureException {
+		LOG.debug("Verifying received signature: {}", Arrays.toString(signatureReceived));
+		if (signature.verify(signatureReceived)) {
+			// set public key only if signature is correct
+			message.setVerified();
+			LOG.debug("Signature check OK.");
+			return true;
+		} else {
+			LOG.warn("Signature check NOT OK. Message: {}.", message);
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a job that verifies the signature on a crypto thread and then
+	 * passes the message to the next handler, as the decoder does without a
+	 * crypto executor.
+	 *
+	 * @param ctx
+	 *            The context of the decoder
+	 * @return The job for the {@link CryptoExecutor}
+	 */
+	public CryptoExecutor.Job job(final ChannelHandlerContext ctx) {
+		return new CryptoExecutor.Job(ctx.executor(), true) {
+			@Override
+			protected void compute() throws Exception {
+				verify();
+			}
+
+			@Override
+			protected void complete(final Throwable cause) {
+				if (cause != null) {
+					ctx.fireExceptionCaught(cause);
+					return;
+				}
+				ctx.fireChannelRead(message);
+			}
+		};
+	}
+}
@@ -7,6 +7,8 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 
 import java.net.InetSocketAddress;
 
+import net.tomp2p.connection.CryptoExecutor;
+import net.tomp2p.connection.Metrics;
 import net.tomp2p.connection.SignatureFactory;
 import net.tomp2p.storage.AlternativeCompositeByteBuf;
 
@@ -20,13 +22,37 @@ public class TomP2PCumulationTCP extends ChannelInboundHandlerAdapter {
 
 	private final Decoder decoder;
 	private final ByteBufAllocator byteBufAllocator;
+	private final CryptoExecutor cryptoExecutor;
+	private final Metrics metrics;
 	private AlternativeCompositeByteBuf cumulation = null;
 
 	private int lastId = 0;
 
 	public TomP2PCumulationTCP(final SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator) {
-		decoder = new Decoder(signatureFactory, byteBufAllocator);
+		this(signatureFactory, byteBufAllocator, null);
+	}
+
+	/**
+	 * @param cryptoExecutor
+	 *            The executor that verifies signed messages before they are
+	 *            passed on, or null to verify them on the event loop
+	 */
+	public TomP2PCumulationTCP(final SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator,
+	        final CryptoExecutor cryptoExecutor) {
+		this(signatureFactory, byteBufAllocator, cryptoExecutor, null);
+	}
+
+	/**
+	 * @param metrics
+	 *            The metrics that count the received messages and bytes, or
+	 *            null to not count them
+	 */
+	public TomP2PCumulationTCP(final SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator,
+	        final CryptoExecutor cryptoExecutor, final Metrics metrics) {
+		decoder = new Decoder(signatureFactory, byteBufAllocator, cryptoExecutor != null);
 		this.byteBufAllocator = byteBufAllocator;
+		this.cryptoExecutor = cryptoExecutor;
+		this.metrics = metrics;
 	}
 
 	@Override
@@ -66,12 +92,17 @@ public class TomP2PCumulationTCP extends ChannelInboundHandlerAdapter {
 		boolean finished = true;
 		boolean moreData = true;
 		while (finished && moreData) {
+			final int readable = cumulation.readableBytes();
 			finished = decoder.decode(ctx, cumulation, (InetSocketAddress) ctx
 					.channel().localAddress(), sender);
+			if (metrics != null && decoder.message() != null) {
+				metrics.bytesReceived(Metrics.Transport.of(false, decoder.message().sender()),
+				        readable - cumulation.readableBytes());
+			}
 			if (finished) {
 				lastId = decoder.message().messageId();
 				moreData = cumulation.readableBytes() > 0;
-				ctx.fireChannelRead(decoder.prepareFinish());
+				fireFinished(ctx);
 			} else {
 				if(decoder.message() == null) {
 					//wait for more data. This may happen if we don't get the first 58 bytes, 
@@ -84,7 +115,7 @@ public class TomP2PCumulationTCP extends ChannelInboundHandlerAdapter {
 				if (lastId == decoder.message().messageId()) {
 					finished = true;
 					moreData = cumulation.readableBytes() > 0;
-					ctx.fireChannelRead(decoder.prepareFinish());
+					fireFinished(ctx);
 				} else if (decoder.message().isStreaming()) {
 					ctx.fireChannelRead(decoder.message());
 				}
@@ -92,6 +123,23 @@ public class TomP2PCumulationTCP extends ChannelInboundHandlerAdapter {
 		}
 	}
 
+	private void fireFinished(final ChannelHandlerContext ctx) {
+		if (metrics != null) {
+			final Message message = decoder.message();
+			metrics.messageReceived(Metrics.Transport.of(false, message.sender()));
+			message.receivedNanos(System.nanoTime());
+		}
+		final SignatureVerification verification = decoder.verification();
+		if (verification != null) {
+			// passed on once verified, messages of other channels are not
+			// held back by this one
+			decoder.prepareFinish();
+			cryptoExecutor.execute(verification.job(ctx));
+		} else {
+			ctx.fireChannelRead(decoder.prepareFinish());
+		}
+	}
+
 	@Override
 	public void channelInactive(final ChannelHandlerContext ctx)
 			throws Exception {
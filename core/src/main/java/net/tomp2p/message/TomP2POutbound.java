@@ -10,7 +10,10 @@ import io.netty.channel.socket.DatagramPacket;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 
+import net.tomp2p.connection.CryptoExecutor;
+import net.tomp2p.connection.Metrics;
 import net.tomp2p.connection.SignatureFactory;
 import net.tomp2p.storage.AlternativeCompositeByteBuf;
 import net.tomp2p.utils.Utils;
@@ -21,87 +24,218 @@ import org.slf4j.LoggerFactory;
 public class TomP2POutbound extends ChannelOutboundHandlerAdapter {
 
     private static final Logger LOG = LoggerFactory.getLogger(TomP2POutbound.class);
+    // only Android needs the addresses to be recreated
+    private static final boolean ANDROID = System.getProperty("java.vm.vendor", "").contains("Android");
     private final Encoder encoder;
+    private final SignatureFactory signatureFactory;
     private final ByteBufAllocator byteBufAllocator;
+    private final boolean flushConsolidation;
+    private final CryptoExecutor cryptoExecutor;
+    private final Metrics metrics;
+    // only accessed from the event loop of the channel
+    private boolean flushPending = false;
 
     public TomP2POutbound(SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator) {
+        this(signatureFactory, byteBufAllocator, false);
+    }
+
+    /**
+     * @param flushConsolidation
+     *            If true, the messages written during one run of the event loop are flushed together, otherwise each
+     *            message is flushed on its own. With the epoll transport, flushed datagrams are sent with one
+     *            sendmmsg call
+     */
+    public TomP2POutbound(SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator,
+            boolean flushConsolidation) {
+        this(signatureFactory, byteBufAllocator, flushConsolidation, null);
+    }
+
+    /**
+     * @param cryptoExecutor
+     *            The executor that encodes and signs signed messages, or null to sign them on the event loop
+     */
+    public TomP2POutbound(SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator,
+            boolean flushConsolidation, CryptoExecutor cryptoExecutor) {
+        this(signatureFactory, byteBufAllocator, flushConsolidation, cryptoExecutor, null);
+    }
+
+    /**
+     * @param metrics
+     *            The metrics that count the sent messages and bytes, or null to not count them
+     */
+    public TomP2POutbound(SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator,
+            boolean flushConsolidation, CryptoExecutor cryptoExecutor, Metrics metrics) {
         this.encoder = new Encoder(signatureFactory);
+        this.signatureFactory = signatureFactory;
         this.byteBufAllocator = byteBufAllocator;
+        this.flushConsolidation = flushConsolidation;
+        this.cryptoExecutor = cryptoExecutor;
+        this.metrics = metrics;
     }
 
     @Override
     public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
             throws Exception {
-        AlternativeCompositeByteBuf buf = null;
         if (!(msg instanceof Message)) {
     		ctx.write(msg, promise);
             return;
     	}
+        final Message message = (Message) msg;
+        if (cryptoExecutor != null && message.isSign() && !message.isStreaming()) {
+            // a complete message can be encoded on its own, so it does not need the state of our encoder
+            cryptoExecutor.execute(new SignJob(ctx, message, promise));
+            return;
+        }
+        AlternativeCompositeByteBuf buf = null;
         try {
-        	boolean done = false;
             buf = AlternativeCompositeByteBuf.compBuffer(byteBufAllocator, buf);
             
             //null, means create signature
-            done = encoder.write(buf, (Message) msg, null);
-            
-            final Message message = encoder.message();
-
-            if (buf.isReadable()) {
-                // this will release the buffer
-                if (ctx.channel() instanceof DatagramChannel) {
-                	
-                	final InetSocketAddress recipientUnreflected;
-                	InetSocketAddress recipient;
-                	InetSocketAddress sender;
-                    if (message.senderSocket() == null) {
-                    	//in case of a request
-                    	if(message.recipientRelay()!=null) {
-                    		//in case of sending to a relay (the relayed flag is already set)
-                    		recipientUnreflected = message.recipientRelay().createSocketUDP();
-                    	} else {
-                    		recipientUnreflected = message.recipient().createSocketUDP();
-                    	}
-                    	recipient = Utils.natReflection(recipientUnreflected, true, message.sender());
-                    	sender = message.sender().createSocketUDP(0);
-                    } else {
-                    	//in case of a reply
-                    	recipient = message.senderSocket();
-                    	sender = message.recipientSocket();
-                    }
-                    
+            final boolean done = encoder.write(buf, message, null);
+            send(ctx, encoder, buf, done, promise);
+            buf = null;
+        } catch (Throwable t) {
+            exceptionCaught(ctx, t);
+        }
+        finally {
+            if (buf != null) {
+                buf.release();
+            }
+        }
+    }
+
+    private void send(final ChannelHandlerContext ctx, final Encoder encoder, final AlternativeCompositeByteBuf buf,
+            final boolean done, final ChannelPromise promise) throws UnknownHostException {
+        final Message message = encoder.message();
+
+        if (buf.isReadable()) {
+            final boolean udp = ctx.channel() instanceof DatagramChannel;
+            if (metrics != null) {
+                final Metrics.Transport transport = Metrics.Transport.of(udp, message.recipient());
+                metrics.bytesSent(transport, buf.readableBytes());
+                if (done) {
+                    metrics.messageSent(transport);
+                }
+            }
+            // this will release the buffer
+            if (udp) {
+            	
+            	final InetSocketAddress recipientUnreflected;
+            	InetSocketAddress recipient;
+            	InetSocketAddress sender;
+                if (message.senderSocket() == null) {
+                	//in case of a request
+                	if(message.recipientRelay()!=null) {
+                		//in case of sending to a relay (the relayed flag is already set)
+                		recipientUnreflected = message.recipientRelay().createSocketUDP();
+                	} else {
+                		recipientUnreflected = message.recipient().createSocketUDP();
+                	}
+                	recipient = Utils.natReflection(recipientUnreflected, true, message.sender());
+                	sender = message.sender().createSocketUDP(0);
+                } else {
+                	//in case of a reply
+                	recipient = message.senderSocket();
+                	sender = message.recipientSocket();
+                }
+                
+                if (ANDROID) {
                     // FIXME quickfix for Android (by Nico)
                     recipient = new InetSocketAddress(InetAddress.getByAddress(recipient.getAddress().getAddress()), recipient.getPort());
                     sender =  new InetSocketAddress(InetAddress.getByAddress(sender.getAddress().getAddress()), sender.getPort());
-                    
-                    DatagramPacket d = new DatagramPacket(buf, recipient, sender);
-                    LOG.debug("Send UDP message {}, datagram: {}.", message, d);
-                    ctx.writeAndFlush(d, promise);
-                    
-                } else {
-                    LOG.debug("Send TCP message {} to {}.", message, message.senderSocket());
-                    ctx.writeAndFlush(buf, promise);
-                }
-                if (done) {
-                    message.setDone(true);
-                    // we wrote the complete message, reset state
-                    encoder.reset();
                 }
+                
+                DatagramPacket d = new DatagramPacket(buf, recipient, sender);
+                LOG.debug("Send UDP message {}, datagram: {}.", message, d);
+                writeAndFlush(ctx, d, promise);
+                
             } else {
-                buf.release();
-                ctx.write(Unpooled.EMPTY_BUFFER, promise);
+                LOG.debug("Send TCP message {} to {}.", message, message.senderSocket());
+                writeAndFlush(ctx, buf, promise);
             }
-            buf = null;
+            if (done) {
+                message.setDone(true);
+                // we wrote the complete message, reset state
+                encoder.reset();
+            }
+        } else {
+            buf.release();
+            ctx.write(Unpooled.EMPTY_BUFFER, promise);
+        }
+    }
 
-        } catch (Throwable t) {
-            exceptionCaught(ctx, t);
+    /**
+     * Encodes and signs a message on a crypto thread and sends it from the event loop.
+     */
+    private final class SignJob extends CryptoExecutor.Job {
+        private final ChannelHandlerContext ctx;
+        private final Message message;
+        private final ChannelPromise promise;
+        private final Encoder signEncoder = new Encoder(signatureFactory);
+        private AlternativeCompositeByteBuf buf;
+        private boolean done;
+
+        private SignJob(final ChannelHandlerContext ctx, final Message message, final ChannelPromise promise) {
+            super(ctx.executor(), false);
+            this.ctx = ctx;
+            this.message = message;
+            this.promise = promise;
         }
-        finally {
-            if (buf != null) {
-                buf.release();
+
+        @Override
+        protected void compute() throws Exception {
+            buf = AlternativeCompositeByteBuf.compBuffer(byteBufAllocator, null);
+            //null, means create signature
+            done = signEncoder.write(buf, message, null);
+        }
+
+        @Override
+        protected void complete(final Throwable cause) {
+            try {
+                if (cause != null) {
+                    exceptionCaught(ctx, cause);
+                } else {
+                    send(ctx, signEncoder, buf, done, promise);
+                    buf = null;
+                }
+            } catch (Throwable t) {
+                LOG.error("Exception in sending a signed message.", t);
+            } finally {
+                if (buf != null) {
+                    buf.release();
+                }
             }
         }
     }
 
+    @Override
+    public void flush(final ChannelHandlerContext ctx) throws Exception {
+        if (flushPending) {
+            // the scheduled flush covers this one
+            return;
+        }
+        ctx.flush();
+    }
+
+    private void writeAndFlush(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+        if (!flushConsolidation) {
+            ctx.writeAndFlush(msg, promise);
+            return;
+        }
+        ctx.write(msg, promise);
+        if (!flushPending) {
+            flushPending = true;
+            // runs after the other tasks and I/O events of this run of the event loop
+            ctx.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushPending = false;
+                    ctx.flush();
+                }
+            });
+        }
+    }
+
     @Override
     public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
         if (encoder.message() == null) {
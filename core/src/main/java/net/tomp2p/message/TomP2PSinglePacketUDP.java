@@ -9,6 +9,8 @@ import io.netty.channel.socket.DatagramPacket;
 
 import java.net.InetSocketAddress;
 
+import net.tomp2p.connection.CryptoExecutor;
+import net.tomp2p.connection.Metrics;
 import net.tomp2p.connection.SignatureFactory;
 
 import org.slf4j.Logger;
@@ -21,10 +23,33 @@ public class TomP2PSinglePacketUDP extends ChannelInboundHandlerAdapter {
 
     private final SignatureFactory signatureFactory;
     private final ByteBufAllocator byteBufAllocator;
+    private final CryptoExecutor cryptoExecutor;
+    private final Metrics metrics;
     
     public TomP2PSinglePacketUDP(final SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator) {
+        this(signatureFactory, byteBufAllocator, null);
+    }
+
+    /**
+     * @param cryptoExecutor
+     *            The executor that verifies signed messages before they are passed on, or null to verify them on the
+     *            event loop
+     */
+    public TomP2PSinglePacketUDP(final SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator,
+            final CryptoExecutor cryptoExecutor) {
+        this(signatureFactory, byteBufAllocator, cryptoExecutor, null);
+    }
+
+    /**
+     * @param metrics
+     *            The metrics that count the received messages and bytes, or null to not count them
+     */
+    public TomP2PSinglePacketUDP(final SignatureFactory signatureFactory, ByteBufAllocator byteBufAllocator,
+            final CryptoExecutor cryptoExecutor, final Metrics metrics) {
         this.signatureFactory = signatureFactory;
         this.byteBufAllocator = byteBufAllocator;
+        this.cryptoExecutor = cryptoExecutor;
+        this.metrics = metrics;
     }
 
     @Override
@@ -42,10 +67,25 @@ public class TomP2PSinglePacketUDP extends ChannelInboundHandlerAdapter {
         final InetSocketAddress recipient = d.recipient();
 
         try {
-            Decoder decoder = new Decoder(signatureFactory, byteBufAllocator);
+            final int size = buf.readableBytes();
+            Decoder decoder = new Decoder(signatureFactory, byteBufAllocator, cryptoExecutor != null);
             boolean finished = decoder.decode(ctx, buf, recipient, sender);
             if (finished) {
-                ctx.fireChannelRead(decoder.prepareFinish());
+                if (metrics != null) {
+                    final Message message = decoder.message();
+                    final Metrics.Transport transport = Metrics.Transport.of(true, message.sender());
+                    metrics.bytesReceived(transport, size);
+                    metrics.messageReceived(transport);
+                    message.receivedNanos(System.nanoTime());
+                }
+                final SignatureVerification verification = decoder.verification();
+                if (verification != null) {
+                    // passed on once verified
+                    decoder.prepareFinish();
+                    cryptoExecutor.execute(verification.job(ctx));
+                } else {
+                    ctx.fireChannelRead(decoder.prepareFinish());
+                }
             } else {
                 LOG.warn("Did not get the complete packet!");
             }
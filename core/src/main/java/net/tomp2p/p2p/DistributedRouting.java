@@ -63,6 +63,8 @@ public class DistributedRouting {
 
     private final Random rnd;
 
+    private final RoutingCache routingCache;
+
     /**
      * The routing process involves multiple RPCs, mostly UDP based.
      * 
@@ -72,8 +74,25 @@ public class DistributedRouting {
      *            The neighbor RPC that will be issues
      */
     public DistributedRouting(final PeerBean peerBean, final NeighborRPC neighbors) {
+        this(peerBean, neighbors, null);
+    }
+
+    /**
+     * The routing process involves multiple RPCs, mostly UDP based.
+     * 
+     * @param peerBean
+     *            The peer bean
+     * @param neighbors
+     *            The neighbor RPC that will be issues
+     * @param routingCache
+     *            The cache for routings that set {@link RoutingBuilder#isCachedRouting()}, or null to always route.
+     *            The cache needs to be registered as a listener to the peer map.
+     */
+    public DistributedRouting(final PeerBean peerBean, final NeighborRPC neighbors,
+            final RoutingCache routingCache) {
         this.neighbors = neighbors;
         this.peerBean = peerBean;
+        this.routingCache = routingCache;
         // stable random number. No need to be truly random
         rnd = new Random(peerBean.serverPeerAddress().peerId().hashCode());
     }
@@ -142,10 +161,28 @@ public class DistributedRouting {
      * @return a FutureRouting object, is set to complete if the route has been found
      */
     public FutureRouting route(final RoutingBuilder routingBuilder, final Type type, final ChannelCreator cc) {
+        final RoutingCache.Key key = routingCache != null && routingBuilder.isCachedRouting() ? RoutingCache.key(
+                routingBuilder, type) : null;
+        if (key != null) {
+            final FutureRouting cached = routingCache.get(key);
+            if (cached != null) {
+                LOG.debug("Use cached routing to {}.", routingBuilder.locationKey());
+                return cached;
+            }
+        }
         // for bad distribution, use large NO_NEW_INFORMATION
         Collection<PeerStatistic> startPeers = peerBean.peerMap().closePeers(routingBuilder.locationKey(),
                 routingBuilder.parallel() * 2);
-        return routing(startPeers, routingBuilder, type, cc);
+        final FutureRouting futureRouting = routing(startPeers, routingBuilder, type, cc);
+        if (key != null) {
+            futureRouting.addListener(new BaseFutureAdapter<FutureRouting>() {
+                @Override
+                public void operationComplete(final FutureRouting future) throws Exception {
+                    routingCache.put(key, future);
+                }
+            });
+        }
+        return futureRouting;
     }
 
     /**
@@ -348,6 +385,13 @@ public class DistributedRouting {
         return peerBean.peerMap();
     }
 
+    /**
+     * @return The routing cache with its hit and miss counters, or null if routings are not cached
+     */
+    public RoutingCache routingCache() {
+        return routingCache;
+    }
+
     /**
      * Cancel the future that causes the underlying futures to cancel as well.
      * 
@@ -22,6 +22,7 @@ import java.util.Map;
 
 import net.tomp2p.connection.ChannelCreator;
 import net.tomp2p.connection.ConnectionBean;
+import net.tomp2p.connection.Metrics;
 import net.tomp2p.connection.PeerBean;
 import net.tomp2p.connection.PeerConnection;
 import net.tomp2p.connection.PeerCreator;
@@ -207,6 +208,15 @@ public class Peer {
         return peerCreator.connectionBean();
     }
 
+    /**
+     * The latencies and traffic of this peer. Peers that share the connections of a master peer share its metrics.
+     * 
+     * @return The metrics of this peer
+     */
+    public Metrics metrics() {
+        return peerCreator.connectionBean().metrics();
+    }
+
     /**
      * The ID of this peer.
      * @return
@@ -266,6 +276,26 @@ public class Peer {
      *         connection could not be reserved, maybe due to a shutdown, null is returned.
      */
     public FuturePeerConnection createPeerConnection(final PeerAddress destination, final int heartBeatMillis) {
+        return createPeerConnection(destination, heartBeatMillis, connectionBean().resourceConfiguration()
+                .maxInFlight());
+    }
+
+    /**
+     * Opens a TCP connection and keeps it open, see {@link #createPeerConnection(PeerAddress, int)}. The replies are
+     * matched to their requests by message id, so several requests can be sent over this connection without waiting
+     * for the previous reply.
+     * 
+     * @param destination
+     *            The end-point to connect to
+     * @param heartBeatMillis
+     *            The interval in milliseconds of the heartbeat that keeps the connection open
+     * @param maxInFlight
+     *            The number of requests that can wait for their reply at the same time, further requests wait until a
+     *            reply arrives
+     * @return A class that needs to be passed to those methods that should use the already open connection
+     */
+    public FuturePeerConnection createPeerConnection(final PeerAddress destination, final int heartBeatMillis,
+            final int maxInFlight) {
         final FuturePeerConnection futureDone = new FuturePeerConnection(destination);
         final FutureChannelCreator fcc = connectionBean().reservation().createPermanent(1);
         fcc.addListener(new BaseFutureAdapter<FutureChannelCreator>() {
@@ -273,7 +303,8 @@ public class Peer {
             public void operationComplete(final FutureChannelCreator future) throws Exception {
                 if (future.isSuccess()) {
                     final ChannelCreator cc = fcc.channelCreator();
-                    final PeerConnection peerConnection = new PeerConnection(destination, cc, heartBeatMillis);
+                    final PeerConnection peerConnection = new PeerConnection(destination, cc, heartBeatMillis,
+                            maxInFlight);
                     futureDone.done(peerConnection);
                 } else {
                     futureDone.failed(future);
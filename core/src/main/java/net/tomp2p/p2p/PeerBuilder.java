@@ -33,15 +33,21 @@ import java.util.concurrent.ScheduledExecutorService;
 import net.tomp2p.connection.Bindings;
 import net.tomp2p.connection.ChannelClientConfiguration;
 import net.tomp2p.connection.ChannelServerConfiguration;
+import net.tomp2p.connection.ChannelTransport;
 import net.tomp2p.connection.ConnectionBean;
 import net.tomp2p.connection.DSASignatureFactory;
 import net.tomp2p.connection.DefaultSendBehavior;
+import net.tomp2p.connection.Ed25519SignatureFactory;
+import net.tomp2p.connection.MetricsReporter;
 import net.tomp2p.connection.PeerBean;
 import net.tomp2p.connection.PeerCreator;
 import net.tomp2p.connection.PingBuilderFactory;
 import net.tomp2p.connection.PipelineFilter;
 import net.tomp2p.connection.Ports;
 import net.tomp2p.connection.SendBehavior;
+import net.tomp2p.connection.SignatureFactory;
+import net.tomp2p.futures.BaseFuture;
+import net.tomp2p.futures.FutureDone;
 import net.tomp2p.p2p.builder.PingBuilder;
 import net.tomp2p.peers.LocalMap;
 import net.tomp2p.peers.Number160;
@@ -55,6 +61,8 @@ import net.tomp2p.rpc.DirectDataRPC;
 import net.tomp2p.rpc.NeighborRPC;
 import net.tomp2p.rpc.PingRPC;
 import net.tomp2p.rpc.QuitRPC;
+import net.tomp2p.storage.JavaValueCodec;
+import net.tomp2p.storage.ValueCodec;
 import net.tomp2p.utils.Pair;
 import net.tomp2p.utils.Utils;
 
@@ -120,9 +128,14 @@ public class PeerBuilder {
 	private BloomfilterFactory bloomfilterFactory;
 	private ScheduledExecutorService scheduledExecutorService = null;
 	private MaintenanceTask maintenanceTask = null;
+	private MetricsReporter metricsReporter = null;
 	private Random random = null;
 	private List<PeerInit> toInitialize = new ArrayList<PeerInit>(1);
 	private SendBehavior sendBehavior;
+	private ChannelTransport channelTransport = null;
+	private SignatureFactory signatureFactory = null;
+	private RoutingCache routingCache = null;
+	private ValueCodec valueCodec = null;
 
 	// enable / disable RPC/P2P/other
 	private boolean enableHandShakeRPC = true;
@@ -202,6 +215,14 @@ public class PeerBuilder {
 		if (channelClientConfiguration == null) {
 			channelClientConfiguration = createDefaultChannelClientConfiguration();
 		}
+		if (channelTransport != null) {
+			channelServerConfiguration.channelTransport(channelTransport);
+			channelClientConfiguration.channelTransport(channelTransport);
+		}
+		if (signatureFactory != null) {
+			channelServerConfiguration.signatureFactory(signatureFactory);
+			channelClientConfiguration.signatureFactory(signatureFactory);
+		}
 		if (keyPair == null) {
 			keyPair = EMPTY_KEY_PAIR;
 		}
@@ -245,6 +266,10 @@ public class PeerBuilder {
 		peerBean.addPeerStatusListener(localMap);
 		
 		peerBean.addPeerStatusListener(peerMap);
+		if (channelClientConfiguration.adaptiveTimeout() != null) {
+			// needs the RTTs for the estimate of peers that are not in the peer map
+			peerBean.addPeerStatusListener(channelClientConfiguration.adaptiveTimeout());
+		}
 		
 		ConnectionBean connectionBean = peerCreator.connectionBean();
 
@@ -253,6 +278,14 @@ public class PeerBuilder {
 
 		if (bloomfilterFactory == null) {
 			peerBean.bloomfilterFactory(new DefaultBloomfilterFactory());
+		} else {
+			peerBean.bloomfilterFactory(bloomfilterFactory);
+		}
+
+		if (valueCodec == null) {
+			peerBean.valueCodec(new JavaValueCodec());
+		} else {
+			peerBean.valueCodec(valueCodec);
 		}
 
 		if (broadcastHandler == null) {
@@ -294,7 +327,10 @@ public class PeerBuilder {
 		}
 		
 		if (isEnableRouting() && isEnableNeighborRPC()) {
-			DistributedRouting routing = new DistributedRouting(peerBean, peer.neighborRPC());
+			if (routingCache != null) {
+				peerMap.addPeerMapChangeListener(routingCache);
+			}
+			DistributedRouting routing = new DistributedRouting(peerBean, peer.neighborRPC(), routingCache);
 			peer.distributedRouting(routing);
 		}
 
@@ -309,6 +345,18 @@ public class PeerBuilder {
 		}
 		peerBean.maintenanceTask(maintenanceTask);
 
+		if (metricsReporter != null) {
+			metricsReporter.init(connectionBean.metrics(), connectionBean.timer());
+			final MetricsReporter reporter = metricsReporter;
+			peer.addShutdownListener(new Shutdown() {
+				@Override
+				public BaseFuture shutdown() {
+					reporter.shutdown();
+					return new FutureDone<Void>().done();
+				}
+			});
+		}
+
 
 		// set the ping builder for the heart beat
 		connectionBean.sender().pingBuilderFactory(new PingBuilderFactory() {			
@@ -503,6 +551,24 @@ public class PeerBuilder {
 		return this;
 	}
 
+	public ValueCodec valueCodec() {
+		return valueCodec;
+	}
+
+	/**
+	 * Set the codec that converts objects to data and back. The default is
+	 * {@link JavaValueCodec}. All peers that share data objects need to use the
+	 * same codec.
+	 * 
+	 * @param valueCodec
+	 *            The codec, e.g., {@link net.tomp2p.storage.BinaryValueCodec}
+	 * @return This class
+	 */
+	public PeerBuilder valueCodec(ValueCodec valueCodec) {
+		this.valueCodec = valueCodec;
+		return this;
+	}
+
 	public MaintenanceTask maintenanceTask() {
 		return maintenanceTask;
 	}
@@ -512,6 +578,22 @@ public class PeerBuilder {
 		return this;
 	}
 
+	public MetricsReporter metricsReporter() {
+		return metricsReporter;
+	}
+
+	/**
+	 * @param metricsReporter
+	 *            Reports the metrics of the peer in a fixed interval. No
+	 *            reporter is started by default, the metrics can always be
+	 *            pulled with {@link Peer#metrics()}
+	 * @return This class
+	 */
+	public PeerBuilder metricsReporter(MetricsReporter metricsReporter) {
+		this.metricsReporter = metricsReporter;
+		return this;
+	}
+
 	public Random random() {
 		return random;
 	}
@@ -663,6 +745,74 @@ public class PeerBuilder {
 		return sendBehavior;
 	}
 
+	/**
+	 * Set the Netty transport for the event loops and all channels. Use
+	 * {@link ChannelTransport#bestAvailable()} to get the native epoll
+	 * transport on Linux. If the transport is not available, NIO is used.
+	 * 
+	 * @param channelTransport
+	 *            The transport for client and server
+	 * @return This class
+	 */
+	public PeerBuilder channelTransport(ChannelTransport channelTransport) {
+		this.channelTransport = channelTransport;
+		return this;
+	}
+
+	/**
+	 * @return The transport set with {@link #channelTransport(ChannelTransport)}
+	 *         or null if the transport of the configurations is used
+	 */
+	public ChannelTransport channelTransport() {
+		return channelTransport;
+	}
+
+	/**
+	 * Sets the signature algorithm for client and server, e.g.,
+	 * {@link Ed25519SignatureFactory} for small signatures, which needs an
+	 * Ed25519 provider at runtime, see
+	 * {@link Ed25519SignatureFactory#isAvailable()}. The key pair of this peer
+	 * needs to be of the same algorithm. All peers of a network need to use
+	 * the same algorithm.
+	 * 
+	 * @param signatureFactory
+	 *            The signature factory for client and server
+	 * @return This class
+	 */
+	public PeerBuilder signatureFactory(SignatureFactory signatureFactory) {
+		this.signatureFactory = signatureFactory;
+		return this;
+	}
+
+	/**
+	 * @return The signature factory set with
+	 *         {@link #signatureFactory(SignatureFactory)} or null if the
+	 *         signature factory of the configurations is used
+	 */
+	public SignatureFactory signatureFactory() {
+		return signatureFactory;
+	}
+
+	/**
+	 * Set a cache for routing results. Only routings that ask for a cached
+	 * result, e.g., DHT operations with cachedRouting set, use this cache.
+	 * 
+	 * @param routingCache
+	 *            The cache, or null to disable caching
+	 * @return This class
+	 */
+	public PeerBuilder routingCache(RoutingCache routingCache) {
+		this.routingCache = routingCache;
+		return this;
+	}
+
+	/**
+	 * @return The routing cache or null if routing results are not cached
+	 */
+	public RoutingCache routingCache() {
+		return routingCache;
+	}
+
 	/**
 	 * The default filter is no filter, just return the same array.
 	 * 
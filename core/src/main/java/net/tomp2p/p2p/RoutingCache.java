@@ -0,0 +1,253 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.p2p;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.tomp2p.futures.FutureRouting;
+import net.tomp2p.message.Message.Type;
+import net.tomp2p.p2p.builder.RoutingBuilder;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerMapChangeListener;
+import net.tomp2p.peers.PeerStatistic;
+import net.tomp2p.rpc.DigestInfo;
+import net.tomp2p.utils.ConcurrentCacheMap;
+
+/**
+ * Caches the outcome of routings to a location key, so that routings to hot keys do not need a full iterative lookup.
+ * The cache is bounded by size (LRU) and time to live. If a peer is removed from the peer map, all entries that
+ * contain this peer are removed. A peer that joins close to a cached location key is only seen once the entry expires.
+ * Only routings of type {@link Type#REQUEST_1} that search for a location key, domain key, and content key are
+ * cached. The other types collect the digests of the data stored on the peers as direct hits, which are outdated as
+ * soon as data is put or removed, and routings with bloom filters or ranges are always done.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class RoutingCache implements PeerMapChangeListener {
+
+    public static final int DEFAULT_TIME_TO_LIVE = 10;
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final ConcurrentCacheMap<Key, Entry> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a routing cache with a time to live of 10 seconds and at most 1024 entries.
+     */
+    public RoutingCache() {
+        this(DEFAULT_TIME_TO_LIVE, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param timeToLiveSeconds
+     *            The time in seconds a routing result is used
+     * @param maxEntries
+     *            The maximum number of cached routing results
+     */
+    public RoutingCache(final int timeToLiveSeconds, final int maxEntries) {
+        // do not refresh the timeout, a cached result should not live forever just because it is used
+        this.cache = new ConcurrentCacheMap<Key, Entry>(timeToLiveSeconds, maxEntries, false);
+    }
+
+    /**
+     * @param routingBuilder
+     *            The routing builder
+     * @param type
+     *            The type of the routing
+     * @return The key for this routing or null if this routing cannot be cached
+     */
+    static Key key(final RoutingBuilder routingBuilder, final Type type) {
+        if (type != Type.REQUEST_1 || routingBuilder.locationKey() == null || routingBuilder.keyBloomFilter() != null
+                || routingBuilder.contentBloomFilter() != null || routingBuilder.from() != null
+                || routingBuilder.to() != null) {
+            return null;
+        }
+        return new Key(routingBuilder.locationKey(), routingBuilder.domainKey(), routingBuilder.contentKey(), type);
+    }
+
+    /**
+     * Returns a finished routing future with a copy of the cached result, so that the caller can modify the sets.
+     *
+     * @param key
+     *            The key from {@link #key(RoutingBuilder, Type)}
+     * @return The finished future or null if nothing is cached
+     */
+    FutureRouting get(final Key key) {
+        final Entry entry = cache.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        final NavigableSet<PeerAddress> potentialHits = new TreeSet<PeerAddress>(entry.potentialHits.comparator());
+        potentialHits.addAll(entry.potentialHits);
+        final SortedMap<PeerAddress, DigestInfo> directHits = new TreeMap<PeerAddress, DigestInfo>(
+                entry.directHits);
+        final SortedSet<PeerAddress> routingPath = new TreeSet<PeerAddress>(entry.routingPath);
+        final FutureRouting futureRouting = new FutureRouting();
+        futureRouting.neighbors(directHits, potentialHits, routingPath, false, false);
+        return futureRouting;
+    }
+
+    /**
+     * Stores the result of a successful routing. If only this peer has been found, nothing is stored.
+     *
+     * @param key
+     *            The key from {@link #key(RoutingBuilder, Type)}
+     * @param futureRouting
+     *            The finished routing
+     */
+    void put(final Key key, final FutureRouting futureRouting) {
+        final NavigableSet<PeerAddress> potentialHits = futureRouting.potentialHits();
+        if (!futureRouting.isSuccess() || potentialHits == null || potentialHits.size() <= 1) {
+            return;
+        }
+        final NavigableSet<PeerAddress> potentialHitsCopy = new TreeSet<PeerAddress>(potentialHits.comparator());
+        potentialHitsCopy.addAll(potentialHits);
+        final SortedMap<PeerAddress, DigestInfo> directHits = new TreeMap<PeerAddress, DigestInfo>(
+                futureRouting.directHitsDigest());
+        final SortedSet<PeerAddress> routingPath = new TreeSet<PeerAddress>(futureRouting.routingPath());
+        cache.put(key, new Entry(potentialHitsCopy, directHits, routingPath));
+    }
+
+    /**
+     * @return The number of routings that used a cached result
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of cacheable routings that did a lookup, since nothing was cached
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of cached routing results, including expired ones that have not been removed yet
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Removes all cached routing results.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public void peerInserted(final PeerAddress peerAddress, final boolean verified) {
+        // a closer peer is seen once the entry expires
+    }
+
+    @Override
+    public void peerRemoved(final PeerAddress peerAddress, final PeerStatistic storedPeerAddress) {
+        final List<Key> invalid = new ArrayList<Key>();
+        for (Map.Entry<Key, Entry> entry : cache.entrySet()) {
+            if (entry.getValue().contains(peerAddress)) {
+                invalid.add(entry.getKey());
+            }
+        }
+        for (Key key : invalid) {
+            cache.remove(key);
+        }
+    }
+
+    @Override
+    public void peerUpdated(final PeerAddress peerAddress, final PeerStatistic storedPeerAddress) {
+        // an update does not change the distance to the location key
+    }
+
+    /**
+     * The cached result of one routing.
+     */
+    private static final class Entry {
+        private final NavigableSet<PeerAddress> potentialHits;
+        private final SortedMap<PeerAddress, DigestInfo> directHits;
+        private final SortedSet<PeerAddress> routingPath;
+
+        private Entry(final NavigableSet<PeerAddress> potentialHits,
+                final SortedMap<PeerAddress, DigestInfo> directHits, final SortedSet<PeerAddress> routingPath) {
+            this.potentialHits = potentialHits;
+            this.directHits = directHits;
+            this.routingPath = routingPath;
+        }
+
+        private boolean contains(final PeerAddress peerAddress) {
+            return potentialHits.contains(peerAddress) || directHits.containsKey(peerAddress);
+        }
+    }
+
+    /**
+     * The keys that define the outcome of a routing.
+     */
+    static final class Key {
+        private final Number160 locationKey;
+        private final Number160 domainKey;
+        private final Number160 contentKey;
+        private final Type type;
+
+        private Key(final Number160 locationKey, final Number160 domainKey, final Number160 contentKey,
+                final Type type) {
+            this.locationKey = locationKey;
+            this.domainKey = domainKey;
+            this.contentKey = contentKey;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key o = (Key) obj;
+            return locationKey.equals(o.locationKey) && equals(domainKey, o.domainKey)
+                    && equals(contentKey, o.contentKey) && type == o.type;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = locationKey.hashCode();
+            hash = hash * 31 + (domainKey == null ? 0 : domainKey.hashCode());
+            hash = hash * 31 + (contentKey == null ? 0 : contentKey.hashCode());
+            return hash * 31 + type.ordinal();
+        }
+
+        private static boolean equals(final Number160 a, final Number160 b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -37,6 +37,7 @@ public class RoutingBuilder extends DefaultConnectionConfiguration {
     private boolean isBootstrap;
     private boolean isForceRoutingOnlyToSelf;
     private boolean isRoutingToOthers;
+    private boolean isCachedRouting;
 
     public Number160 locationKey() {
         return locationKey;
@@ -107,6 +108,17 @@ public class RoutingBuilder extends DefaultConnectionConfiguration {
         this.isForceRoutingOnlyToSelf = isForceRoutingOnlyToSelf;
     }
 
+    /**
+     * @return True if a cached result of a previous routing to the same keys may be used instead of a lookup
+     */
+    public boolean isCachedRouting() {
+        return isCachedRouting;
+    }
+
+    public void cachedRouting(boolean isCachedRouting) {
+        this.isCachedRouting = isCachedRouting;
+    }
+
     public void locationKey(Number160 locationKey) {
         this.locationKey = locationKey;
     }
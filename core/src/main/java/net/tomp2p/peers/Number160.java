@@ -231,6 +231,51 @@ public final class Number160 extends Number implements Comparable<Number160> {
         return new Number160(result);
     }
 
+    /**
+     * Compares the XOR distance of two keys to a target without creating the XOR distance. The result is the same as
+     * target.xor(key1).compareTo(target.xor(key2)).
+     * 
+     * @param target
+     *            The key the distance is measured to
+     * @param key1
+     *            The first key
+     * @param key2
+     *            The second key
+     * @return -1 if the first key is closer to the target, 1 if the second key is closer, 0 if both are equal
+     */
+    public static int compareDistance(final Number160 target, final Number160 key1, final Number160 key2) {
+        for (int i = 0; i < INT_ARRAY_SIZE; i++) {
+            final long d1 = (target.val[i] ^ key1.val[i]) & LONG_MASK;
+            final long d2 = (target.val[i] ^ key2.val[i]) & LONG_MASK;
+            if (d1 < d2) {
+                return -1;
+            } else if (d1 > d2) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the bit length of the XOR distance of two keys without creating the XOR distance. The result is the same
+     * as key1.xor(key2).bitLength().
+     * 
+     * @param key1
+     *            The first key
+     * @param key2
+     *            The second key
+     * @return The number of bits of the XOR distance, 0 if both keys are equal
+     */
+    public static int distanceBitLength(final Number160 key1, final Number160 key2) {
+        for (int i = 0; i < INT_ARRAY_SIZE; i++) {
+            final int d = key1.val[i] ^ key2.val[i];
+            if (d != 0) {
+                return Integer.SIZE - Integer.numberOfLeadingZeros(d) + Integer.SIZE * (INT_ARRAY_SIZE - i - 1);
+            }
+        }
+        return 0;
+    }
+
     /**
      * Returns a copy of the backing array, which is always of size 5.
      * 
@@ -244,6 +289,17 @@ public final class Number160 extends Number implements Comparable<Number160> {
         return retVal;
     }
 
+    /**
+     * Returns one int of the backing array without copying the array.
+     *
+     * @param index
+     *            the index in the backing array, 0 is the most significant int
+     * @return the int at this index
+     */
+    public int intAt(final int index) {
+        return this.val[index];
+    }
+
     /**
      * Fills the byte array with this number.
      * 
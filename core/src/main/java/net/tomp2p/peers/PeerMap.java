@@ -24,6 +24,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -78,6 +79,8 @@ public class PeerMap implements PeerStatusListener, Maintainable {
 
     private PeerStatisticComparator peerStatisticComparator;
 
+    private final boolean boundedClosePeers;
+
     /**
      * Creates the bag for the peers. This peer knows a lot about close peers and the further away the peers are, the
      * less known they are. Distance is measured with XOR of the peer ID. The distance of peer with ID 0x12 and peer
@@ -109,6 +112,7 @@ public class PeerMap implements PeerStatusListener, Maintainable {
                 offlineMap, shutdownMap, exceptionMap);
         this.peerVerification = peerMapConfiguration.isPeerVerification();
         this.peerStatisticComparator = peerMapConfiguration.getPeerStatisticComparator();
+        this.boundedClosePeers = peerMapConfiguration.isBoundedClosePeers();
 
     }
 
@@ -524,9 +528,65 @@ public class PeerMap implements PeerStatusListener, Maintainable {
      * @return A sorted set with close peers first in this set. Use set.first() to get the closest peer
      */
     public NavigableSet<PeerStatistic> closePeers(final Number160 id, final int atLeast) {
+        if (boundedClosePeers) {
+            return closestPeers(self, id, atLeast, peerMapVerified, peerStatisticComparator.getComparator(id));
+        }
     	return closePeers(self, id, atLeast, peerMapVerified, peerStatisticComparator.getComparator(id));
     }
 
+    /**
+     * Returns exactly the closest peers to a given key, or less if the map does not contain enough peers. The same
+     * bags are scanned as in {@link #closePeers(Number160, Number160, int, List, Comparator)}, but instead of sorting
+     * all peers of those bags, only the closest are kept in a bounded max-heap.
+     * 
+     * @param self
+     *            The peer ID of the owner of the map
+     * @param other
+     *            The key that should be close to the keys in the map
+     * @param k
+     *            The number of peers to return
+     * @param peerMap
+     *            The bags
+     * @param comparator
+     *            The comparator that defines closeness, or null for the XOR distance
+     * @return A sorted set with at most k peers, close peers first
+     */
+    public static NavigableSet<PeerStatistic> closestPeers(final Number160 self, final Number160 other, final int k,
+            final List<Map<Number160, PeerStatistic>> peerMap, Comparator<PeerStatistic> comparator) {
+        if (comparator == null) {
+            comparator = createXORStatisticComparator(other);
+        }
+        final NavigableSet<PeerStatistic> set = new TreeSet<PeerStatistic>(comparator);
+        if (k <= 0) {
+            return set;
+        }
+        // the head of the heap is the peer furthest away
+        final PriorityQueue<PeerStatistic> heap = new PriorityQueue<PeerStatistic>(k,
+                Collections.reverseOrder(comparator));
+        final int classMember = classMember(self, other);
+        int seen = 0;
+        if (classMember == -1) {
+            for (int j = 0; j < Number160.BITS && seen < k; j++) {
+                seen += fillHeap(k, heap, peerMap.get(j), comparator);
+            }
+        } else {
+            seen += fillHeap(k, heap, peerMap.get(classMember), comparator);
+            if (seen < k) {
+                // same as in closePeers: the smaller bags are closer
+                for (int i = 0; i < classMember; i++) {
+                    seen += fillHeap(k, heap, peerMap.get(i), comparator);
+                }
+                if (seen < k) {
+                    for (int i = classMember + 1; i < Number160.BITS; i++) {
+                        fillHeap(k, heap, peerMap.get(i), comparator);
+                    }
+                }
+            }
+        }
+        set.addAll(heap);
+        return set;
+    }
+
     public static NavigableSet<PeerStatistic> closePeers(final Number160 self, final Number160 other,
                                                          final int atLeast,
                                                          List<Map<Number160, PeerStatistic>> peerMap,
@@ -716,11 +776,11 @@ public class PeerMap implements PeerStatusListener, Maintainable {
      * @return -1 if first peer is closer, 1 otherwise, 0 if both are equal
      */
     public static int isKadCloser(final Number160 id, final PeerAddress rn, final PeerAddress rn2) {
-        return distance(id, rn.peerId()).compareTo(distance(id, rn2.peerId()));
+        return Number160.compareDistance(id, rn.peerId(), rn2.peerId());
     }
     
     public static int isKadCloser(final Number160 id, final Number160 rn, final Number160 rn2) {
-        return distance(id, rn).compareTo(distance(id, rn2));
+        return Number160.compareDistance(id, rn, rn2);
     }
 
     /**
@@ -734,9 +794,9 @@ public class PeerMap implements PeerStatusListener, Maintainable {
      *          rn1 is closer or 0 if they are equal.
      */
     public static int classCloser(final Number160 ln, final PeerAddress rn, final PeerAddress rn2) {
-        Integer d1 = classMember(ln, rn.peerId());
-        Integer d2 = classMember(ln, rn2.peerId());
-        return d1.compareTo(d2);
+        final int d1 = classMember(ln, rn.peerId());
+        final int d2 = classMember(ln, rn2.peerId());
+        return d1 < d2 ? -1 : (d1 == d2 ? 0 : 1);
     }
     
     public static Comparator<Number160> createXORNumberComparator(final Number160 location) {
@@ -809,7 +869,7 @@ public class PeerMap implements PeerStatusListener, Maintainable {
      * @return The bit difference and -1 if they are equal
      */
     public static int classMember(final Number160 id1, final Number160 id2) {
-        return distance(id1, id2).bitLength() - 1;
+        return Number160.distanceBitLength(id1, id2) - 1;
     }
 
     /**
@@ -904,6 +964,26 @@ public class PeerMap implements PeerStatusListener, Maintainable {
         return set.size() >= atLeast;
     }
 
+    /**
+     * Offers the peers of a bag to the heap, keeping only the k closest.
+     * 
+     * @return The number of peers in the bag
+     */
+    private static int fillHeap(final int k, final PriorityQueue<PeerStatistic> heap,
+            final Map<Number160, PeerStatistic> tmp, final Comparator<PeerStatistic> comparator) {
+        synchronized (tmp) {
+            for (final PeerStatistic peerStatistic : tmp.values()) {
+                if (heap.size() < k) {
+                    heap.offer(peerStatistic);
+                } else if (comparator.compare(peerStatistic, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.offer(peerStatistic);
+                }
+            }
+            return tmp.size();
+        }
+    }
+
 	public int bagSizeVerified(int bag) {
 	    return bagSizesVerified[bag];
     }
@@ -41,6 +41,7 @@ public class PeerMapConfiguration {
     private Maintenance maintenance;
     private boolean peerVerification;
     private PeerStatisticComparator peerStatisticComparator;
+    private boolean boundedClosePeers;
 
     /**
      * Constructor with reasonable defaults.
@@ -59,6 +60,7 @@ public class PeerMapConfiguration {
         maintenance = new DefaultMaintenance(4, new int[] { 2, 4, 8, 16, 32, 64 });
         peerVerification = true;
         setPeerStatisticComparator(new DefaultPeerStatisticComparator());
+        boundedClosePeers = false;
     }
 
     /**
@@ -328,4 +330,24 @@ public class PeerMapConfiguration {
         this.peerStatisticComparator = peerStatisticComparator;
         return this;
     }
+
+    /**
+     * @return True if {@link PeerMap#closePeers(Number160, int)} returns exactly the requested number of closest peers
+     */
+    public boolean isBoundedClosePeers() {
+        return boundedClosePeers;
+    }
+
+    /**
+     * @param boundedClosePeers
+     *            Set to true to return exactly the requested number of closest peers from
+     *            {@link PeerMap#closePeers(Number160, int)}. The peers are selected with a bounded heap instead of
+     *            sorting all peers in the scanned bags, which is faster for large bag sizes. If set to false, all peers
+     *            of the scanned bags are returned.
+     * @return this class
+     */
+    public PeerMapConfiguration boundedClosePeers(final boolean boundedClosePeers) {
+        this.boundedClosePeers = boundedClosePeers;
+        return this;
+    }
 }
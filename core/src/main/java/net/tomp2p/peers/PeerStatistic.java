@@ -47,6 +47,8 @@ public class PeerStatistic {
 
     private FIFOCache<RTT> rttCache = new FIFOCache<RTT>(RTT_CACHE_SIZE);
 
+    private final RTTEstimator rttEstimator = new RTTEstimator();
+
     private long numberOfResponses = 0;
 
     /**
@@ -173,6 +175,10 @@ public class PeerStatistic {
      * @return      The PeerStatistic object
      */
     public PeerStatistic addRTT(RTT rtt) {
+        // a LAN may reply within the same millisecond, that is still a measurement
+        if (rtt != null && !rtt.isEstimated() && rtt.getRtt() >= 0) {
+            rttEstimator.addSample(rtt.getRtt());
+        }
         if (rtt != null && rtt.getRtt() > 0) {
             // If we have estimates in the cache,
             // clear cache before adding "real" measurement
@@ -228,6 +234,14 @@ public class PeerStatistic {
         return sum / rttCache.size();
     }
 
+    /**
+     * @return The smoothed RTT of all measured RTTs of this peer, used for the retransmission timeout. Estimates are
+     *         not part of it
+     */
+    public RTTEstimator rttEstimator() {
+        return rttEstimator;
+    }
+
     /**
      * How many RTT measurements are in the cache
      *
@@ -17,7 +17,7 @@ public class RTT {
     // ACK to confirm, we assume a total of 4 transmissions
     // for TCP, which is factor 2 longer than an UDP exchange
     // TODO: Confirm with Wireshark
-    private static final double TCP_SCALE_DOWN_FACTOR = 3.5;
+    public static final double TCP_SCALE_DOWN_FACTOR = 3.5;
 
     // Constructors
     public RTT() {
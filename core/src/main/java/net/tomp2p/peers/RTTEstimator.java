@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.peers;
+
+/**
+ * Estimates the retransmission timeout from RTT samples as TCP does (RFC 6298): a smoothed RTT and its variation are
+ * kept as exponentially weighted moving averages, and the timeout is the smoothed RTT plus four times the variation.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class RTTEstimator {
+
+    // the clock granularity, RTTs are measured with System.currentTimeMillis()
+    private static final long GRANULARITY_MILLIS = 10;
+
+    private long smoothedRTT = -1;
+    private long rttVariation = -1;
+    private long samples = 0;
+
+    /**
+     * Adds a measured RTT. Estimates from other peers should not be added.
+     *
+     * @param rtt
+     *            The RTT in milliseconds
+     * @return This class
+     */
+    public synchronized RTTEstimator addSample(final long rtt) {
+        if (rtt < 0) {
+            return this;
+        }
+        if (samples == 0) {
+            smoothedRTT = rtt;
+            rttVariation = rtt / 2;
+        } else {
+            // RTTVAR first, as it uses the previous SRTT
+            rttVariation = (3 * rttVariation + Math.abs(smoothedRTT - rtt)) / 4;
+            smoothedRTT = (7 * smoothedRTT + rtt) / 8;
+        }
+        samples++;
+        return this;
+    }
+
+    /**
+     * @return The smoothed RTT in milliseconds, or -1 if no sample has been added
+     */
+    public synchronized long smoothedRTT() {
+        return smoothedRTT;
+    }
+
+    /**
+     * @return The variation of the RTT in milliseconds, or -1 if no sample has been added
+     */
+    public synchronized long rttVariation() {
+        return rttVariation;
+    }
+
+    /**
+     * @return The number of samples added so far
+     */
+    public synchronized long samples() {
+        return samples;
+    }
+
+    /**
+     * @return The time in milliseconds after which a reply is not expected anymore, or -1 if no sample has been added
+     */
+    public synchronized long retransmissionTimeout() {
+        if (samples == 0) {
+            return -1;
+        }
+        return smoothedRTT + Math.max(GRANULARITY_MILLIS, 4 * rttVariation);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "srtt=" + smoothedRTT + ",rttvar=" + rttVariation + ",samples=" + samples;
+    }
+}
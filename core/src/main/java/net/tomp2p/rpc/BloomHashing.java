@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.rpc;
+
+import net.tomp2p.peers.Number160;
+
+/**
+ * Derives the k indexes of a bloom filter with double hashing (index_i = h1 +
+ * i * h2), see Kirsch and Mitzenmacher, "Less Hashing, Same Performance". For
+ * {@link Number160} the two hashes are taken from the five words of the number,
+ * for any other object from its hashCode. Nothing is allocated per element.
+ *
+ * @author Thomas Bocek
+ *
+ */
+final class BloomHashing {
+
+	private static final long LONG_MASK = 0xffffffffL;
+
+	private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+	private BloomHashing() {
+	}
+
+	/**
+	 * @param o
+	 *            The element
+	 * @return The first hash of the element
+	 */
+	static long hash1(final Object o) {
+		if (o instanceof Number160) {
+			final Number160 n = (Number160) o;
+			final long a = ((long) n.intAt(0) << Integer.SIZE) | (n.intAt(1) & LONG_MASK);
+			final long b = ((long) n.intAt(2) << Integer.SIZE) | (n.intAt(3) & LONG_MASK);
+			final long c = n.intAt(4) & LONG_MASK;
+			return mix(mix(mix(a) ^ b) ^ c);
+		}
+		return mix(o.hashCode());
+	}
+
+	/**
+	 * @param hash1
+	 *            The first hash from {@link #hash1(Object)}
+	 * @return The second hash, which is always odd so that the k indexes are
+	 *         never all the same
+	 */
+	static long hash2(final long hash1) {
+		return mix(hash1 ^ GOLDEN) | 1L;
+	}
+
+	/**
+	 * @param hash1
+	 *            The first hash
+	 * @param hash2
+	 *            The second hash
+	 * @param i
+	 *            The i-th hash function, from 0 to k-1
+	 * @param size
+	 *            The number of slots in the bloom filter
+	 * @return The index of the i-th hash function
+	 */
+	static int index(final long hash1, final long hash2, final int i, final int size) {
+		return (int) (((hash1 + i * hash2) & Long.MAX_VALUE) % size);
+	}
+
+	// finalizer of MurmurHash3
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
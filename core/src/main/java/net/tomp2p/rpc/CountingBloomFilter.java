@@ -43,6 +43,8 @@ public class CountingBloomFilter<E> implements Set<E>, Serializable {
 
     private final int intArraySize, expectedElements;
 
+    private final boolean hashed;
+
     /**
      * Constructs a CountingBloomFilter out of existing data. You must specify the number of bits in the Bloom Filter,
      * and also you should specify the number of items you expect to add. The latter is used to choose some optimal
@@ -54,10 +56,27 @@ public class CountingBloomFilter<E> implements Set<E>, Serializable {
      *            The data that will be used in the backing BitSet
      */
     public CountingBloomFilter(int expectedElements, int[] intSet) {
+        this(expectedElements, intSet, false);
+    }
+
+    /**
+     * Constructs a CountingBloomFilter out of existing data, see {@link #CountingBloomFilter(int, int[])}.
+     * 
+     * @param expectedElements
+     *            he typical number of items you expect to be added to the CountingBloomFilter (often called 'n').
+     * @param intSet
+     *            The data that will be used in the backing BitSet
+     * @param hashed
+     *            True, if the indexes should be derived with double hashing as in the {@link HashBloomFilter}, which
+     *            does not allocate per element. False, if java.util.Random should be used as before. Both variants
+     *            result in different counters for the same elements.
+     */
+    public CountingBloomFilter(int expectedElements, int[] intSet, boolean hashed) {
         this.intArraySize = intSet.length;
         this.expectedElements = expectedElements;
         this.k = (int) Math.ceil((intArraySize / (double) expectedElements) * Math.log(2.0));
         this.intSet = intSet;
+        this.hashed = hashed;
     }
 
     /**
@@ -86,18 +105,28 @@ public class CountingBloomFilter<E> implements Set<E>, Serializable {
      */
     @Override
     public boolean add(E o) {
+        if (hashed) {
+            final long hash1 = BloomHashing.hash1(o);
+            final long hash2 = BloomHashing.hash2(hash1);
+            for (int x = 0; x < k; x++) {
+                increment(BloomHashing.index(hash1, hash2, x, intArraySize));
+            }
+            return false;
+        }
         Random r = new Random(o.hashCode());
         for (int x = 0; x < k; x++) {
-            int index = r.nextInt(intArraySize);
-            int old = intSet[index];
-            if (old != Integer.MAX_VALUE) {
-                intSet[index] = old + 1;
-            }
-
+            increment(r.nextInt(intArraySize));
         }
         return false;
     }
 
+    private void increment(final int index) {
+        int old = intSet[index];
+        if (old != Integer.MAX_VALUE) {
+            intSet[index] = old + 1;
+        }
+    }
+
     /**
      * @param c
      *            The collection to add
@@ -126,6 +155,16 @@ public class CountingBloomFilter<E> implements Set<E>, Serializable {
      *         was. The probability can be estimated using the expectedFalsePositiveProbability() method.
      */
     public boolean contains(Object o) {
+        if (hashed) {
+            final long hash1 = BloomHashing.hash1(o);
+            final long hash2 = BloomHashing.hash2(hash1);
+            for (int x = 0; x < k; x++) {
+                if (intSet[BloomHashing.index(hash1, hash2, x, intArraySize)] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
         Random r = new Random(o.hashCode());
         for (int x = 0; x < k; x++) {
             if (intSet[r.nextInt(intArraySize)] == 0) {
@@ -232,6 +271,14 @@ public class CountingBloomFilter<E> implements Set<E>, Serializable {
      */
     public int approximateCount(final E key) {
         int retVal = Integer.MAX_VALUE;
+        if (hashed) {
+            final long hash1 = BloomHashing.hash1(key);
+            final long hash2 = BloomHashing.hash2(hash1);
+            for (int x = 0; x < k; x++) {
+                retVal = Math.min(retVal, intSet[BloomHashing.index(hash1, hash2, x, intArraySize)]);
+            }
+            return retVal;
+        }
         Random r = new Random(key.hashCode());
         for (int x = 0; x < k; x++) {
             retVal = Math.min(retVal, intSet[r.nextInt(intArraySize)]);
@@ -250,7 +297,7 @@ public class CountingBloomFilter<E> implements Set<E>, Serializable {
         @SuppressWarnings("unchecked")
         CountingBloomFilter<E> o = (CountingBloomFilter<E>) obj;
         return o.k == k && o.intArraySize == intArraySize && expectedElements == o.expectedElements
-                && Arrays.equals(intSet, o.intSet);
+                && hashed == o.hashed && Arrays.equals(intSet, o.intSet);
     }
 
     @Override
@@ -4,19 +4,49 @@ import net.tomp2p.peers.Number160;
 
 public class DefaultBloomfilterFactory  implements BloomfilterFactory {
 
+    private final boolean wireCompatible;
+
+    /**
+     * Creates {@link SimpleBloomFilter}s that can be read by any peer.
+     */
+    public DefaultBloomfilterFactory() {
+        this(true);
+    }
+
+    /**
+     * @param wireCompatible
+     *            True to create {@link SimpleBloomFilter}s that can be read by
+     *            any peer. False to create the faster {@link HashBloomFilter}s,
+     *            which older peers treat as filters that contain everything.
+     */
+    public DefaultBloomfilterFactory(final boolean wireCompatible) {
+        this.wireCompatible = wireCompatible;
+    }
+
+    public boolean isWireCompatible() {
+        return wireCompatible;
+    }
+
     @Override
     public SimpleBloomFilter<Number160> createContentKeyBloomFilter() {
-        return new SimpleBloomFilter<Number160>(0.01d, 1000);
+        return create();
     }
 
     @Override
     public SimpleBloomFilter<Number160> createVersionKeyBloomFilter() {
-        return new SimpleBloomFilter<Number160>(0.01d, 1000);
+        return create();
     }
     
     @Override
     public SimpleBloomFilter<Number160> createContentBloomFilter() {
-        return new SimpleBloomFilter<Number160>(0.01d, 1000);
+        return create();
+    }
+
+    private SimpleBloomFilter<Number160> create() {
+        if (wireCompatible) {
+            return new SimpleBloomFilter<Number160>(0.01d, 1000);
+        }
+        return new HashBloomFilter<Number160>(0.01d, 1000);
     }
 
 }
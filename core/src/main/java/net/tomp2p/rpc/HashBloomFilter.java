@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.rpc;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A bloom filter with the same size and header as the {@link SimpleBloomFilter}
+ * that does not allocate when adding or checking elements. The k indexes are
+ * derived with double hashing from the element (see {@link BloomHashing})
+ * instead of seeding a java.util.Random with its hashCode, and the bits are
+ * stored in a long[] that is written to and read from the byte buffer directly.
+ * <p>
+ * Since the indexes differ from the {@link SimpleBloomFilter}, the highest bit
+ * of the expected elements in the header is set, so that
+ * {@link SimpleBloomFilter#decode(ByteBuf)} knows which filter to create. A
+ * peer that does not know this filter calculates a negative k from the header
+ * and thus treats the filter as one that contains everything. Use
+ * {@link DefaultBloomfilterFactory} to select this filter.
+ * </p>
+ *
+ * @author Thomas Bocek
+ * @param <E>
+ *            The type of object the BloomFilter should contain
+ */
+public class HashBloomFilter<E> extends SimpleBloomFilter<E> {
+
+	private static final long serialVersionUID = -2286471406432356428L;
+
+	static final int HASH_MARKER = 0x80000000;
+
+	private static final int ADDRESS_BITS_PER_WORD = 6;
+
+	private static final int BIT_INDEX_MASK = Long.SIZE - 1;
+
+	private final long[] words;
+
+	/**
+	 * Construct an empty HashBloomFilter, see
+	 * {@link SimpleBloomFilter#SimpleBloomFilter(int, int)}.
+	 *
+	 * @param byteArraySize
+	 *            The number of bits in multiple of 8 in the bit array (often
+	 *            called 'm' in the context of bloom filters).
+	 * @param expectedElements
+	 *            The typical number of items you expect to be added to the
+	 *            HashBloomFilter (often called 'n').
+	 */
+	public HashBloomFilter(final int byteArraySize, final int expectedElements) {
+		this(byteArraySize, expectedElements, new long[words(byteArraySize)]);
+	}
+
+	/**
+	 * Construct an empty HashBloomFilter, see
+	 * {@link SimpleBloomFilter#SimpleBloomFilter(double, int)}.
+	 *
+	 * @param falsePositiveProbability
+	 *            The false positive probability for the expected elements
+	 * @param expectedElements
+	 *            The typical number of items you expect to be added to the
+	 *            HashBloomFilter (often called 'n').
+	 */
+	public HashBloomFilter(final double falsePositiveProbability, final int expectedElements) {
+		this(byteArraySize(falsePositiveProbability, expectedElements), expectedElements);
+	}
+
+	/**
+	 * Constructs a HashBloomFilter out of existing data. Use
+	 * {@link SimpleBloomFilter#decode(ByteBuf)} if the type of the filter is
+	 * not known.
+	 *
+	 * @param channelBuffer
+	 *            The byte buffer with the data
+	 */
+	public HashBloomFilter(final ByteBuf channelBuffer) {
+		this(channelBuffer.readUnsignedShort() - SIZE_HEADER, channelBuffer.readInt() & ~HASH_MARKER, channelBuffer);
+	}
+
+	private HashBloomFilter(final int byteArraySize, final int expectedElements, final ByteBuf channelBuffer) {
+		this(byteArraySize, expectedElements, new long[words(byteArraySize)]);
+		final int fullWords = byteArraySize >>> 3;
+		for (int i = 0; i < fullWords; i++) {
+			words[i] = channelBuffer.readLong();
+		}
+		final int rest = byteArraySize & 7;
+		if (rest > 0) {
+			long last = 0;
+			for (int i = 0; i < rest; i++) {
+				last |= (long) channelBuffer.readUnsignedByte() << (Long.SIZE - Byte.SIZE * (i + 1));
+			}
+			words[fullWords] = last;
+		}
+	}
+
+	private HashBloomFilter(final int byteArraySize, final int expectedElements, final long[] words) {
+		super(byteArraySize, expectedElements, new BitSet(0));
+		this.words = words;
+	}
+
+	private static int words(final int byteArraySize) {
+		return (byteArraySize + Long.SIZE / Byte.SIZE - 1) / (Long.SIZE / Byte.SIZE);
+	}
+
+	// the bits are stored most significant first, as RPCUtils.toByteArray
+	// does, so that a long written in big endian matches the byte layout of a
+	// SimpleBloomFilter
+	private static long mask(final int bitIndex) {
+		return 1L << (BIT_INDEX_MASK - (bitIndex & BIT_INDEX_MASK));
+	}
+
+	private boolean get(final int bitIndex) {
+		return (words[bitIndex >>> ADDRESS_BITS_PER_WORD] & mask(bitIndex)) != 0;
+	}
+
+	@Override
+	public boolean add(final E o) {
+		if (bitArraySize == 0) {
+			return false;
+		}
+		final long hash1 = BloomHashing.hash1(o);
+		final long hash2 = BloomHashing.hash2(hash1);
+		for (int x = 0; x < k; x++) {
+			final int bitIndex = BloomHashing.index(hash1, hash2, x, bitArraySize);
+			words[bitIndex >>> ADDRESS_BITS_PER_WORD] |= mask(bitIndex);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		if (isVoid() || bitArraySize == 0) {
+			return false;
+		}
+		final long hash1 = BloomHashing.hash1(o);
+		final long hash2 = BloomHashing.hash2(hash1);
+		for (int x = 0; x < k; x++) {
+			if (!get(BloomHashing.index(hash1, hash2, x, bitArraySize))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isFull() {
+		int cardinality = 0;
+		for (long word : words) {
+			cardinality += Long.bitCount(word);
+		}
+		return cardinality == bitArraySize;
+	}
+
+	@Override
+	public HashBloomFilter<E> setAll() {
+		Arrays.fill(words, -1L);
+		final int rest = bitArraySize & BIT_INDEX_MASK;
+		if (rest > 0) {
+			words[words.length - 1] = -1L << (Long.SIZE - rest);
+		}
+		return this;
+	}
+
+	/**
+	 * Returns a copy of the bits of this bloom filter as a bitset.
+	 *
+	 * @return bloom filter as a bitset
+	 */
+	@Override
+	public BitSet getBitSet() {
+		final BitSet bitSet = new BitSet(bitArraySize);
+		for (int i = 0; i < bitArraySize; i++) {
+			if (get(i)) {
+				bitSet.set(i);
+			}
+		}
+		return bitSet;
+	}
+
+	/**
+	 * Converts data to a byte buffer. The header is the same as the one of the
+	 * {@link SimpleBloomFilter}, with the highest bit of the expected elements
+	 * set.
+	 *
+	 * @param buf
+	 *            The byte buffer where the bloom filter will be written.
+	 */
+	@Override
+	public void toByteBuf(final ByteBuf buf) {
+		buf.writeShort(byteArraySize + SIZE_HEADER);
+		buf.writeInt(expectedElements | HASH_MARKER);
+		final int fullWords = byteArraySize >>> 3;
+		for (int i = 0; i < fullWords; i++) {
+			buf.writeLong(words[i]);
+		}
+		final int rest = byteArraySize & 7;
+		if (rest > 0) {
+			final long last = words[fullWords];
+			for (int i = 0; i < rest; i++) {
+				buf.writeByte((int) (last >>> (Long.SIZE - Byte.SIZE * (i + 1))));
+			}
+		}
+	}
+
+	@Override
+	public HashBloomFilter<E> merge(final SimpleBloomFilter<E> toMerge) {
+		if (!(toMerge instanceof HashBloomFilter) || toMerge.bitArraySize != bitArraySize) {
+			throw new RuntimeException("The two bloomfilters must have the same size and type.");
+		}
+		final long[] merged = words.clone();
+		final long[] other = ((HashBloomFilter<E>) toMerge).words;
+		for (int i = 0; i < merged.length; i++) {
+			merged[i] |= other[i];
+		}
+		return new HashBloomFilter<E>(byteArraySize, expectedElements, merged);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (!(obj instanceof HashBloomFilter)) {
+			return false;
+		}
+		if (this == obj) {
+			return true;
+		}
+		@SuppressWarnings("unchecked")
+		HashBloomFilter<E> o = (HashBloomFilter<E>) obj;
+		return o.k == k && o.bitArraySize == bitArraySize && expectedElements == o.expectedElements
+		        && Arrays.equals(words, o.words);
+	}
+
+	@Override
+	public int hashCode() {
+		final int magic = 31;
+		int hash = 7;
+		hash = magic * hash + Arrays.hashCode(words);
+		hash = magic * hash + k;
+		hash = magic * hash + expectedElements;
+		hash = magic * hash + bitArraySize;
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(bitArraySize);
+		for (int i = 0; i < bitArraySize; i++) {
+			sb.append(get(i) ? "1" : "0");
+		}
+		return sb.toString();
+	}
+}
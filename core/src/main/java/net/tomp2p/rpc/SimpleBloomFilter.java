@@ -49,17 +49,17 @@ public class SimpleBloomFilter<E> implements Set<E>, Serializable {
 
 	private static final long serialVersionUID = 3527833617516722215L;
 
-	private static final int SIZE_HEADER_LENGTH = 2;
+	static final int SIZE_HEADER_LENGTH = 2;
 
-	private static final int SIZE_HEADER_ELEMENTS = 4;
+	static final int SIZE_HEADER_ELEMENTS = 4;
 
 	public static final int SIZE_HEADER = SIZE_HEADER_LENGTH + SIZE_HEADER_ELEMENTS;
 
-	private final int k;
+	final int k;
 
 	private final BitSet bitSet;
 
-	private final int byteArraySize, bitArraySize, expectedElements;
+	final int byteArraySize, bitArraySize, expectedElements;
 
 	/**
 	 * Construct an empty SimpleBloomFilter. You must specify the number of bits
@@ -81,16 +81,31 @@ public class SimpleBloomFilter<E> implements Set<E>, Serializable {
 
 	// inspired by https://github.com/magnuss/java-bloomfilter
 	public SimpleBloomFilter(final double falsePositiveProbability, final int expectedElements) {
-		final double c = Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2.0))) / Math.log(2.0);
-		this.expectedElements = expectedElements;
-		int tmpBitArraySize = (int) Math.ceil(c * expectedElements);
-		this.byteArraySize = ((tmpBitArraySize + 7) / 8);
-		this.bitArraySize = byteArraySize * Byte.SIZE;
-		double hf = (bitArraySize / (double) expectedElements) * Math.log(2.0);
 		// k may be larger as we may have increased the byte array size to match
 		// a byte
-		this.k = (int) Math.ceil(hf);
-		this.bitSet = new BitSet(bitArraySize);
+		this(byteArraySize(falsePositiveProbability, expectedElements), expectedElements);
+	}
+
+	static int byteArraySize(final double falsePositiveProbability, final int expectedElements) {
+		final double c = Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2.0))) / Math.log(2.0);
+		int tmpBitArraySize = (int) Math.ceil(c * expectedElements);
+		return ((tmpBitArraySize + 7) / 8);
+	}
+
+	/**
+	 * Reads a bloom filter from the byte buffer. Depending on the header, this
+	 * is either a {@link SimpleBloomFilter} or a {@link HashBloomFilter}.
+	 * 
+	 * @param channelBuffer
+	 *            The byte buffer with the data
+	 * @return The bloom filter
+	 */
+	public static <E> SimpleBloomFilter<E> decode(final ByteBuf channelBuffer) {
+		final int expectedElements = channelBuffer.getInt(channelBuffer.readerIndex() + SIZE_HEADER_LENGTH);
+		if ((expectedElements & HashBloomFilter.HASH_MARKER) != 0) {
+			return new HashBloomFilter<E>(channelBuffer);
+		}
+		return new SimpleBloomFilter<E>(channelBuffer);
 	}
 
 	/**
@@ -372,12 +387,14 @@ public class SimpleBloomFilter<E> implements Set<E>, Serializable {
 
 	/** Merges this bloom filter with the provided one using OR.
 	 * @param toMerge
+	 *            A bloom filter of the same size and type. A {@link HashBloomFilter} sets other bits for the same
+	 *            elements, thus it cannot be merged.
 	 *
 	 * @return A new bloom filter that contains both sets.
 	 */
 	public SimpleBloomFilter<E> merge(final SimpleBloomFilter<E> toMerge) {
-		if (toMerge.bitArraySize != bitArraySize) {
-			throw new RuntimeException("The two bloomfilters must have the same size.");
+		if (toMerge instanceof HashBloomFilter || toMerge.bitArraySize != bitArraySize) {
+			throw new RuntimeException("The two bloomfilters must have the same size and type.");
 		}
 		BitSet mergedBitSet = (BitSet) bitSet.clone();
 		mergedBitSet.or(toMerge.bitSet);
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.utils.ByteBufferListInputStream;
+
+/**
+ * A compact codec for the types that are typically stored: strings, byte arrays, numbers, booleans, and
+ * {@link Number160}. Such a value is encoded as a one byte type followed by its binary representation, without the
+ * class descriptors of Java serialization. Any other object falls back to Java serialization.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+public class BinaryValueCodec implements ValueCodec {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int NULL = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int SHORT = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int STRING = 8;
+    private static final int BYTES = 9;
+    private static final int NUMBER160 = 10;
+    private static final int JAVA = 11;
+
+    @Override
+    public byte[] encode(final Object object) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bos);
+        if (object == null) {
+            out.writeByte(NULL);
+        } else if (object instanceof String) {
+            final byte[] me = ((String) object).getBytes(UTF8);
+            out.writeByte(STRING);
+            out.writeInt(me.length);
+            out.write(me);
+        } else if (object instanceof byte[]) {
+            final byte[] me = (byte[]) object;
+            out.writeByte(BYTES);
+            out.writeInt(me.length);
+            out.write(me);
+        } else if (object instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) object);
+        } else if (object instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) object);
+        } else if (object instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) object);
+        } else if (object instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) object);
+        } else if (object instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) object);
+        } else if (object instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) object);
+        } else if (object instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) object);
+        } else if (object instanceof Number160) {
+            out.writeByte(NUMBER160);
+            out.write(((Number160) object).toByteArray());
+        } else {
+            out.writeByte(JAVA);
+            out.flush();
+            final ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(object);
+            oos.flush();
+        }
+        // no need to call close since we use ByteArrayOutputStream
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    @Override
+    public Object decode(final List<ByteBuffer> buffers) throws ClassNotFoundException, IOException {
+        final DataInputStream in = new DataInputStream(new ByteBufferListInputStream(buffers));
+        final int type = in.readUnsignedByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case BOOLEAN:
+            return in.readBoolean();
+        case BYTE:
+            return in.readByte();
+        case SHORT:
+            return in.readShort();
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case STRING:
+            return new String(readBytes(in), UTF8);
+        case BYTES:
+            return readBytes(in);
+        case NUMBER160:
+            final byte[] me = new byte[Number160.BYTE_ARRAY_SIZE];
+            in.readFully(me);
+            return new Number160(me);
+        case JAVA:
+            return new ObjectInputStream(in).readObject();
+        default:
+            throw new IOException("unknown type: " + type);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("invalid length: " + length);
+        }
+        final byte[] me = new byte[length];
+        in.readFully(me);
+        return me;
+    }
+}
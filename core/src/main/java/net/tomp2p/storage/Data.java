@@ -145,6 +145,18 @@ public class Data {
 		this(Utils.encodeJavaObject(object));
 	}
 
+	/**
+	 * Creates a Data object from an object, encoded with the given codec.
+	 * 
+	 * @param object
+	 *            The object to store
+	 * @param valueCodec
+	 *            The codec that encodes the object, e.g., the codec of the peer
+	 */
+	public Data(final Object object, final ValueCodec valueCodec) throws IOException {
+		this(valueCodec.encode(object));
+	}
+
 	public Data(final byte[] buffer) {
 		this(buffer, 0, buffer.length);
 	}
@@ -472,6 +484,17 @@ public class Data {
 		return Utils.decodeJavaObject(buffer);
 	}
 
+	/**
+	 * Decodes the object with the given codec. The codec has to match the one used to create this data object.
+	 * 
+	 * @param valueCodec
+	 *            The codec that decodes the object, e.g., the codec of the peer
+	 * @return The decoded object
+	 */
+	public Object object(final ValueCodec valueCodec) throws ClassNotFoundException, IOException {
+		return valueCodec.decode(buffer.bufferList());
+	}
+
 	public long validFromMillis() {
 		return validFromMillis;
 	}
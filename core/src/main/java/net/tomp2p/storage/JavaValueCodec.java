@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import net.tomp2p.utils.Utils;
+
+/**
+ * The default codec, uses Java serialization. Each call uses its own streams, so there is no need to synchronize.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+public class JavaValueCodec implements ValueCodec {
+
+    @Override
+    public byte[] encode(final Object object) throws IOException {
+        return Utils.encodeJavaObject(object);
+    }
+
+    @Override
+    public Object decode(final List<ByteBuffer> buffers) throws ClassNotFoundException, IOException {
+        return Utils.decodeJavaObject(buffers);
+    }
+}
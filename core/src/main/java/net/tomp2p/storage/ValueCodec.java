@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Converts objects to the bytes of a {@link Data} object and back. Implementations must be thread safe, since one codec
+ * is shared by all the data objects of a peer.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+public interface ValueCodec {
+
+    /**
+     * @param object
+     *            The object to encode
+     * @return The encoded object
+     * @throws IOException
+     *             If the object cannot be encoded
+     */
+    byte[] encode(Object object) throws IOException;
+
+    /**
+     * Decodes an object directly from the buffers of a data object. The buffers are consumed.
+     * 
+     * @param buffers
+     *            The buffers that hold the encoded object, in this order
+     * @return The decoded object
+     * @throws ClassNotFoundException
+     *             If the class of the object is not found
+     * @throws IOException
+     *             If the object cannot be decoded
+     */
+    Object decode(List<ByteBuffer> buffers) throws ClassNotFoundException, IOException;
+}
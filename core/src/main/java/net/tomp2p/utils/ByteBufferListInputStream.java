@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Reads a list of byte buffers as one stream, without copying them into one array. The buffers are consumed, so use
+ * duplicates if they are shared. This stream is not thread safe.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+public class ByteBufferListInputStream extends InputStream {
+    private final List<ByteBuffer> buffers;
+    private int index = 0;
+
+    /**
+     * Create a stream from a list of byte buffers.
+     * 
+     * @param buffers
+     *            The buffers to read from, in this order
+     */
+    public ByteBufferListInputStream(final List<ByteBuffer> buffers) {
+        this.buffers = buffers;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final ByteBuffer buffer = current();
+        if (buffer == null) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        final ByteBuffer buffer = current();
+        if (buffer == null) {
+            return -1;
+        }
+        final int read = Math.min(len, buffer.remaining());
+        buffer.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        int available = 0;
+        final int size = buffers.size();
+        for (int i = index; i < size; i++) {
+            available += buffers.get(i).remaining();
+        }
+        return available;
+    }
+
+    private ByteBuffer current() {
+        final int size = buffers.size();
+        while (index < size) {
+            final ByteBuffer buffer = buffers.get(index);
+            if (buffer.hasRemaining()) {
+                return buffer;
+            }
+            index++;
+        }
+        return null;
+    }
+}
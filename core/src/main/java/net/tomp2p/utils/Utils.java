@@ -28,7 +28,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.SequenceInputStream;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
@@ -50,7 +49,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
-import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
@@ -277,42 +275,22 @@ public class Utils {
         return obj;
     }
 
-    public static synchronized Object decodeJavaObject(DataBuffer dataBuffer) throws ClassNotFoundException, IOException {
-        
-        List<ByteBuffer> buffers = dataBuffer.shallowCopy().bufferList();
-        int count = buffers.size();
-        Vector<InputStream> is = new Vector<InputStream>(count);
-        for (ByteBuffer byteBuffer : buffers) {
-            is.add(createInputStream(byteBuffer));
-        }
-        SequenceInputStream sis = new SequenceInputStream(is.elements());
-        ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(sis));
-        //TODO: investigate this issue
-        /*ObjectInputStream ois = null;
-        try {
-         ois = new ObjectInputStream(new BufferedInputStream(sis));
-        } catch (Throwable t) {
-            for (ByteBuffer byteBuffer : buffers) {
-                byteBuffer.rewind();
-                int read  = byteBuffer.capacity();
-                byteBuffer.limit(read);
-                byte me[] = new byte[read];
-                byteBuffer.get(me);
-                System.err.println("wrong array1 ("+System.identityHashCode(byteBuffer)+"): "+Arrays.toString(me));
-                
-                if(dataBuffer.test!=null) {
-                dataBuffer.test.readerIndex(0);
-                dataBuffer.test.writerIndex(dataBuffer.test.capacity());
-                me = new byte[dataBuffer.test.readableBytes()];
-                dataBuffer.test.readBytes(me);
-                System.err.println("wrong array2 ("+System.identityHashCode(byteBuffer)+"): "+Arrays.toString(me));
-                }
-                
-            }
-            t.printStackTrace();
-        }*/
+    public static Object decodeJavaObject(DataBuffer dataBuffer) throws ClassNotFoundException, IOException {
+        return decodeJavaObject(dataBuffer.bufferList());
+    }
+
+    /**
+     * Decodes a Java object from a list of byte buffers, without concatenating them. The buffers are consumed.
+     * 
+     * @param buffers
+     *            The buffers that hold the serialized object
+     * @return The decoded object
+     */
+    public static Object decodeJavaObject(List<ByteBuffer> buffers) throws ClassNotFoundException, IOException {
+        // ObjectInputStream reads in blocks, no need to buffer
+        ObjectInputStream ois = new ObjectInputStream(new ByteBufferListInputStream(buffers));
         Object obj = ois.readObject();
-        ois.close();
+        // no need to call close since we read from memory
         return obj;
     }
 
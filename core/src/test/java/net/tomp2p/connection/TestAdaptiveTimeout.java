@@ -0,0 +1,137 @@
+package net.tomp2p.connection;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import net.tomp2p.Utils2;
+import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.message.Message;
+import net.tomp2p.peers.LocalMap;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerStatistic;
+import net.tomp2p.peers.PeerStatusListener;
+import net.tomp2p.peers.RTT;
+import net.tomp2p.peers.RTTEstimator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TestAdaptiveTimeout {
+
+	@Test
+	public void testEstimator() {
+		final RTTEstimator estimator = new RTTEstimator();
+		Assert.assertEquals(-1, estimator.retransmissionTimeout());
+		estimator.addSample(100);
+		// first sample: srtt = r, rttvar = r / 2
+		Assert.assertEquals(100, estimator.smoothedRTT());
+		Assert.assertEquals(50, estimator.rttVariation());
+		Assert.assertEquals(300, estimator.retransmissionTimeout());
+		for (int i = 0; i < 100; i++) {
+			estimator.addSample(100);
+		}
+		// a stable RTT lets the timeout converge to the RTT plus the clock granularity
+		Assert.assertEquals(100, estimator.smoothedRTT());
+		Assert.assertEquals(0, estimator.rttVariation());
+		Assert.assertEquals(110, estimator.retransmissionTimeout());
+	}
+
+	@Test
+	public void testTimeout() throws UnknownHostException {
+		final AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout().minMillis(100);
+		final PeerAddress peerAddress = new PeerAddress(new Number160(1), InetAddress.getByName("127.0.0.1"));
+		final PeerStatistic peerStatistic = new PeerStatistic(peerAddress);
+		// nothing measured yet
+		Assert.assertEquals(5000, adaptiveTimeout.timeoutMillis(peerStatistic, true, 5000));
+
+		// a new peer gets the global estimate
+		adaptiveTimeout.peerFound(peerAddress, null, null, new RTT(200, true));
+		Assert.assertEquals(600, adaptiveTimeout.timeoutMillis(null, true, 5000));
+		// estimates from other peers are ignored
+		adaptiveTimeout.peerFound(peerAddress, null, null, new RTT(4000, true).setEstimated());
+		Assert.assertEquals(600, adaptiveTimeout.timeoutMillis(null, true, 5000));
+
+		peerStatistic.addRTT(new RTT(20, true));
+		Assert.assertEquals(100, adaptiveTimeout.timeoutMillis(peerStatistic, true, 5000));
+		peerStatistic.addRTT(new RTT(2000, true));
+		// never more than the idle timeout
+		Assert.assertEquals(1000, adaptiveTimeout.timeoutMillis(peerStatistic, true, 1000));
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		final Message request = Utils2.createDummyMessage().messageId(7).keepAlive(true);
+		final FutureResponse futureResponse = new FutureResponse(request);
+		final AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout().minMillis(100);
+		final PeerStatusListener listener = mock(PeerStatusListener.class);
+		final PeerBean peerBean = peerBean(adaptiveTimeout, listener);
+		final EmbeddedChannel channel = channel(futureResponse, peerBean, 1);
+		futureResponse.startRTTMeasurement(true);
+
+		// the first timeout sends the request again
+		channel.pipeline().fireUserEventTriggered(new IdleStateHandlerTomP2P(1000));
+		Assert.assertSame(request, channel.readOutbound());
+		Assert.assertFalse(futureResponse.isCompleted());
+		Assert.assertTrue(channel.isOpen());
+		verify(listener, never()).peerFailed(any(PeerAddress.class), any(PeerException.class));
+
+		// the reply is matched, but it may answer the first request
+		final Message reply = new Message().messageId(7).type(Message.Type.OK).sender(request.recipient())
+		        .recipient(request.sender()).setDone(true);
+		channel.writeInbound(reply);
+		Assert.assertTrue(futureResponse.isSuccess());
+		Assert.assertSame(reply, futureResponse.responseMessage());
+		final ArgumentCaptor<RTT> rtt = ArgumentCaptor.forClass(RTT.class);
+		verify(listener).peerFound(eq(request.recipient()), any(PeerAddress.class), any(PeerConnection.class),
+		        rtt.capture());
+		Assert.assertTrue(rtt.getValue().isEstimated());
+
+		// Karn's rule: neither the global nor the per peer estimate takes the sample
+		Assert.assertEquals(5000, adaptiveTimeout.timeoutMillis(null, true, 5000));
+		final PeerStatistic peerStatistic = new PeerStatistic(request.recipient());
+		peerStatistic.addRTT(rtt.getValue());
+		Assert.assertEquals(5000, adaptiveTimeout.timeoutMillis(peerStatistic, true, 5000));
+	}
+
+	@Test
+	public void testRetriesExhausted() throws Exception {
+		final Message request = Utils2.createDummyMessage().messageId(7);
+		final FutureResponse futureResponse = new FutureResponse(request);
+		final PeerStatusListener listener = mock(PeerStatusListener.class);
+		final EmbeddedChannel channel = channel(futureResponse, peerBean(listener), 1);
+
+		channel.pipeline().fireUserEventTriggered(new IdleStateHandlerTomP2P(1000));
+		Assert.assertSame(request, channel.readOutbound());
+		// no retry left, the request fails
+		channel.pipeline().fireUserEventTriggered(new IdleStateHandlerTomP2P(1000));
+		Assert.assertNull(channel.readOutbound());
+		Assert.assertTrue(futureResponse.isFailed());
+		Assert.assertFalse(channel.isOpen());
+		verify(listener).peerFailed(eq(request.recipient()), any(PeerException.class));
+	}
+
+	private static PeerBean peerBean(final PeerStatusListener... listeners) {
+		final PeerBean peerBean = new PeerBean(null).localMap(new LocalMap(new Number160(1)));
+		for (PeerStatusListener listener : listeners) {
+			peerBean.addPeerStatusListener(listener);
+		}
+		return peerBean;
+	}
+
+	private static EmbeddedChannel channel(final FutureResponse futureResponse, final PeerBean peerBean,
+	        final int udpRetries) {
+		final TimeoutFactory timeoutFactory = new TimeoutFactory(futureResponse, 1000, udpRetries,
+		        peerBean.peerStatusListeners(), "test");
+		return new EmbeddedChannel(timeoutFactory.timeHandler(), new RequestHandler<FutureResponse>(futureResponse,
+		        peerBean, mock(ConnectionBean.class), mock(ConnectionConfiguration.class)));
+	}
+}
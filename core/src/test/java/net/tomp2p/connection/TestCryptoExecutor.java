@@ -0,0 +1,189 @@
+package net.tomp2p.connection;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Tests the batching of the crypto jobs and how they are handed back to the event loops.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class TestCryptoExecutor {
+
+	@Test
+	public void testBatching() throws Exception {
+		final CryptoExecutor cryptoExecutor = new CryptoExecutor(1, 4, new DefaultThreadFactory("crypto"));
+		try {
+			final EventExecutor executor = eventLoop(false);
+			final List<Integer> completed = new ArrayList<Integer>();
+			// the first job keeps the crypto thread busy until the others are queued
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			cryptoExecutor.execute(new TestJob(executor, 0, completed) {
+				@Override
+				protected void compute() throws Exception {
+					started.countDown();
+					release.await();
+				}
+			});
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+			for (int i = 1; i <= 10; i++) {
+				cryptoExecutor.execute(new TestJob(executor, i, completed));
+			}
+			Assert.assertEquals(10, cryptoExecutor.queueDepth());
+			release.countDown();
+
+			// one task for the first job, then 10 jobs in batches of 4, 4 and 2
+			final ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+			verify(executor, timeout(10000).times(4)).execute(tasks.capture());
+			Assert.assertEquals(11, cryptoExecutor.verifications());
+			Assert.assertTrue(completed.isEmpty());
+			for (Runnable task : tasks.getAllValues()) {
+				task.run();
+			}
+			for (int i = 0; i <= 10; i++) {
+				Assert.assertEquals(i, completed.get(i).intValue());
+			}
+		} finally {
+			cryptoExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void testHandBack() throws Exception {
+		final CryptoExecutor cryptoExecutor = new CryptoExecutor(1, 4, new DefaultThreadFactory("crypto"));
+		try {
+			final EventExecutor executor = eventLoop(false);
+			final List<Integer> completed = new ArrayList<Integer>();
+			final Exception exception = new Exception("test");
+			final TestJob job = new TestJob(executor, 1, completed) {
+				@Override
+				protected void compute() throws Exception {
+					throw exception;
+				}
+			};
+			cryptoExecutor.execute(job);
+
+			// the job is completed on its event loop, not on the crypto thread
+			final ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+			verify(executor, timeout(10000)).execute(task.capture());
+			Assert.assertTrue(completed.isEmpty());
+			task.getValue().run();
+			Assert.assertEquals(1, completed.get(0).intValue());
+			Assert.assertSame(exception, job.cause);
+		} finally {
+			cryptoExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		final CryptoExecutor cryptoExecutor = new CryptoExecutor(1, 4, new DefaultThreadFactory("crypto"));
+		final EventExecutor executor = eventLoop(true);
+		final List<Integer> completed = new ArrayList<Integer>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		cryptoExecutor.execute(new TestJob(executor, 0, completed) {
+			@Override
+			protected void compute() throws Exception {
+				started.countDown();
+				release.await();
+			}
+		});
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		cryptoExecutor.execute(new TestJob(executor, 1, completed));
+		cryptoExecutor.shutdown();
+
+		// a job after the shutdown runs on the calling thread
+		cryptoExecutor.execute(new TestJob(executor, 2, completed));
+		synchronized (completed) {
+			Assert.assertEquals(1, completed.size());
+			Assert.assertEquals(2, completed.get(0).intValue());
+		}
+
+		// the queued jobs are still done
+		release.countDown();
+		for (int i = 0; i < 100 && size(completed) < 3; i++) {
+			Thread.sleep(100);
+		}
+		Assert.assertEquals(3, size(completed));
+		Assert.assertEquals(0, cryptoExecutor.queueDepth());
+		verify(executor, never()).execute(any(Runnable.class));
+	}
+
+	@Test
+	public void testShutdownIdle() throws Exception {
+		final List<Thread> threads = new ArrayList<Thread>();
+		final CryptoExecutor cryptoExecutor = new CryptoExecutor(3, 4, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "crypto");
+				threads.add(thread);
+				return thread;
+			}
+		});
+		cryptoExecutor.shutdown();
+		cryptoExecutor.shutdown();
+
+		// no crypto thread stays parked on the empty queue
+		Assert.assertEquals(3, threads.size());
+		for (Thread thread : threads) {
+			thread.join(10000);
+			Assert.assertFalse(thread.isAlive());
+		}
+		Assert.assertEquals(0, cryptoExecutor.queueDepth());
+	}
+
+	private static int size(final List<Integer> completed) {
+		synchronized (completed) {
+			return completed.size();
+		}
+	}
+
+	private static EventExecutor eventLoop(final boolean inEventLoop) {
+		final EventExecutor executor = mock(EventExecutor.class);
+		when(executor.inEventLoop()).thenReturn(inEventLoop);
+		return executor;
+	}
+
+	private static class TestJob extends CryptoExecutor.Job {
+		private final int nr;
+		private final List<Integer> completed;
+		private Throwable cause;
+
+		private TestJob(final EventExecutor executor, final int nr, final List<Integer> completed) {
+			super(executor, true);
+			this.nr = nr;
+			this.completed = completed;
+		}
+
+		@Override
+		protected void compute() throws Exception {
+		}
+
+		@Override
+		protected void complete(final Throwable cause) {
+			this.cause = cause;
+			synchronized (completed) {
+				completed.add(nr);
+			}
+		}
+	}
+}
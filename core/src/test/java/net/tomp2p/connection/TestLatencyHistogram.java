@@ -0,0 +1,74 @@
+package net.tomp2p.connection;
+
+import net.tomp2p.rpc.RPC;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	@Test
+	public void testBuckets() {
+		for (long value = 0; value < 100000; value++) {
+			final int index = LatencyHistogram.index(value);
+			Assert.assertTrue(LatencyHistogram.highestValue(index) >= value);
+			if (index > 0) {
+				Assert.assertTrue(LatencyHistogram.highestValue(index - 1) < value);
+			}
+		}
+		Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.index(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		Assert.assertEquals(1000, snapshot.count());
+		Assert.assertEquals(1000000, snapshot.max());
+		Assert.assertEquals(500500, snapshot.mean());
+		assertClose(500000, snapshot.percentile(50));
+		assertClose(990000, snapshot.percentile(99));
+		Assert.assertEquals(1000000, snapshot.percentile(100));
+	}
+
+	@Test
+	public void testSince() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000000);
+		final LatencyHistogram.Snapshot first = histogram.snapshot();
+		histogram.record(10);
+		histogram.record(20);
+		final LatencyHistogram.Snapshot interval = histogram.snapshot().since(first);
+		Assert.assertEquals(2, interval.count());
+		Assert.assertEquals(15, interval.mean());
+		assertClose(20, interval.percentile(100));
+		histogram.reset();
+		Assert.assertEquals(0, histogram.snapshot().percentile(50));
+	}
+
+	@Test
+	public void testMetrics() {
+		final Metrics metrics = new Metrics();
+		Assert.assertNull(metrics.latency(RPC.Commands.PING, Metrics.Transport.UDP));
+		metrics.recordLatency(RPC.Commands.PING.getNr(), Metrics.Transport.UDP, 5000);
+		metrics.recordLatency(RPC.Commands.PING.getNr(), Metrics.Transport.UDP, 7000);
+		metrics.recordLatency(RPC.Commands.NEIGHBOR.getNr(), Metrics.Transport.TCP, 9000);
+		Assert.assertEquals(2, metrics.latency(RPC.Commands.PING, Metrics.Transport.UDP).count());
+		Assert.assertNull(metrics.latency(RPC.Commands.PING, Metrics.Transport.TCP));
+		Assert.assertEquals(1, metrics.latencies(Metrics.Transport.TCP).size());
+		metrics.bytesSent(Metrics.Transport.RELAY, 100);
+		metrics.messageSent(Metrics.Transport.RELAY);
+		Assert.assertEquals(100, metrics.bytesSent(Metrics.Transport.RELAY));
+		Assert.assertEquals(1, metrics.messagesSent(Metrics.Transport.RELAY));
+		Assert.assertEquals(0, metrics.messagesSent(Metrics.Transport.UDP));
+	}
+
+	private static void assertClose(final long expected, final long actual) {
+		// a bucket covers at most 1/8 of its values
+		Assert.assertTrue("expected " + expected + " but was " + actual, actual >= expected
+		        && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+	}
+}
@@ -0,0 +1,143 @@
+package net.tomp2p.connection;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.io.IOException;
+
+import net.tomp2p.Utils2;
+import net.tomp2p.futures.FutureChannelCreator;
+import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.message.Message;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests several requests in flight on one peer connection.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class TestRequestMultiplexer {
+
+	@Test
+	public void testOutOfOrder() {
+		final RequestMultiplexer multiplexer = new RequestMultiplexer();
+		final EmbeddedChannel channel = new EmbeddedChannel(multiplexer);
+		final RequestHandler<FutureResponse> handler1 = requestHandler(1);
+		final RequestHandler<FutureResponse> handler2 = requestHandler(2);
+		Assert.assertTrue(multiplexer.register(handler1));
+		Assert.assertTrue(multiplexer.register(handler2));
+		Assert.assertEquals(2, multiplexer.pendingRequests());
+
+		// the second reply arrives first
+		final Message reply2 = reply(2);
+		channel.writeInbound(reply2);
+		verify(handler2).responseMultiplexed(reply2);
+		verify(handler1, never()).responseMultiplexed(reply2);
+		final Message reply1 = reply(1);
+		channel.writeInbound(reply1);
+		verify(handler1).responseMultiplexed(reply1);
+
+		// a reply without a request is passed on
+		final Message reply3 = reply(3);
+		channel.writeInbound(reply3);
+		Assert.assertSame(reply3, channel.readInbound());
+
+		handler1.futureResponse().response(reply1);
+		handler2.futureResponse().response(reply2);
+		Assert.assertEquals(0, multiplexer.pendingRequests());
+	}
+
+	@Test
+	public void testDuplicateMessageId() {
+		final RequestMultiplexer multiplexer = new RequestMultiplexer();
+		new EmbeddedChannel(multiplexer);
+		final RequestHandler<FutureResponse> handler1 = requestHandler(1);
+		Assert.assertTrue(multiplexer.register(handler1));
+		Assert.assertFalse(multiplexer.register(requestHandler(1)));
+		Assert.assertEquals(1, multiplexer.pendingRequests());
+		// once the first request is done, the id can be used again
+		handler1.futureResponse().response(reply(1));
+		Assert.assertTrue(multiplexer.register(requestHandler(1)));
+	}
+
+	@Test
+	public void testClose() {
+		final RequestMultiplexer multiplexer = new RequestMultiplexer();
+		final EmbeddedChannel channel = new EmbeddedChannel(multiplexer);
+		final RequestHandler<FutureResponse> handler1 = requestHandler(1);
+		final RequestHandler<FutureResponse> handler2 = requestHandler(2);
+		multiplexer.register(handler1);
+		multiplexer.register(handler2);
+		channel.close();
+		Assert.assertTrue(handler1.futureResponse().isFailed());
+		Assert.assertTrue(handler2.futureResponse().isFailed());
+		Assert.assertEquals(0, multiplexer.pendingRequests());
+
+		// a request registered after the close fails right away
+		final RequestHandler<FutureResponse> handler3 = requestHandler(3);
+		Assert.assertTrue(multiplexer.register(handler3));
+		Assert.assertTrue(handler3.futureResponse().isFailed());
+		Assert.assertEquals(0, multiplexer.pendingRequests());
+	}
+
+	@Test
+	public void testException() {
+		final RequestMultiplexer multiplexer = new RequestMultiplexer();
+		final EmbeddedChannel channel = new EmbeddedChannel(multiplexer);
+		final RequestHandler<FutureResponse> handler1 = requestHandler(1);
+		final RequestHandler<FutureResponse> handler2 = requestHandler(2);
+		multiplexer.register(handler1);
+		multiplexer.register(handler2);
+		final IOException cause = new IOException("test");
+		channel.pipeline().fireExceptionCaught(cause);
+		verify(handler1).exceptionMultiplexed(cause);
+		verify(handler2).exceptionMultiplexed(cause);
+		Assert.assertEquals(0, multiplexer.pendingRequests());
+		Assert.assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testWindow() throws Exception {
+		final PeerConnection peerConnection = new PeerConnection(Utils2.createAddress(1), null, 1000, 2);
+		// created before the channel is open, shares the window
+		final PeerConnection copy = peerConnection.changeRemotePeer(Utils2.createAddress(2));
+		final FutureResponse futureResponse1 = new FutureResponse(new Message());
+		final FutureResponse futureResponse2 = new FutureResponse(new Message());
+		final FutureResponse futureResponse3 = new FutureResponse(new Message());
+
+		// only the first request is sent until the channel is open
+		final FutureChannelCreator future1 = peerConnection.acquire(futureResponse1);
+		final FutureChannelCreator future2 = copy.acquire(futureResponse2);
+		Assert.assertTrue(future1.isSuccess());
+		Assert.assertFalse(future2.isCompleted());
+
+		final EmbeddedChannel channel = new EmbeddedChannel();
+		peerConnection.channelFuture(channel.newSucceededFuture());
+		Assert.assertSame(peerConnection.channelFuture(), copy.channelFuture());
+		Assert.assertTrue(future2.isSuccess());
+
+		// maxInFlight + 1 waits for a free slot
+		final FutureChannelCreator future3 = copy.acquire(futureResponse3);
+		Assert.assertFalse(future3.isCompleted());
+		futureResponse1.failed("done");
+		Assert.assertTrue(future3.isSuccess());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static RequestHandler<FutureResponse> requestHandler(final int messageId) {
+		final RequestHandler<FutureResponse> requestHandler = mock(RequestHandler.class);
+		final FutureResponse futureResponse = new FutureResponse(new Message().messageId(messageId));
+		when(requestHandler.futureResponse()).thenReturn(futureResponse);
+		return requestHandler;
+	}
+
+	private static Message reply(final int messageId) {
+		return new Message().messageId(messageId).type(Message.Type.OK);
+	}
+}
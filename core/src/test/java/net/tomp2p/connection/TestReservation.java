@@ -81,7 +81,7 @@ public class TestReservation {
     	        new DefaultThreadFactory(ConnectionBean.THREAD_NAME + "boss - "));
     	workerGroup = new NioEventLoopGroup(0,
     	        new DefaultThreadFactory(ConnectionBean.THREAD_NAME + "worker-server - "));
-		cs = new ChannelServer(bossGroup, workerGroup, c, null, null, null);
+		cs = new ChannelServer(bossGroup, workerGroup, c, null, null, null, null);
 		
 		boolean tcp = cs.startupTCP(new InetSocketAddress("127.0.0.1", 7070), new ChannelServerConfiguration());
 		boolean udp = cs.startupUDP(new InetSocketAddress("127.0.0.1", 7070), new ChannelServerConfiguration(), false);
@@ -22,8 +22,10 @@ import static org.mockito.Mockito.when;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.socket.DatagramChannel;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
@@ -50,6 +52,8 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import net.tomp2p.Utils2;
 import net.tomp2p.connection.DSASignatureFactory;
+import net.tomp2p.connection.Ed25519SignatureFactory;
+import net.tomp2p.connection.SignatureFactory;
 import net.tomp2p.message.Message.Content;
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.Number640;
@@ -60,6 +64,7 @@ import net.tomp2p.storage.Data;
 import net.tomp2p.utils.Utils;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -516,6 +521,31 @@ public class TestMessage {
 		
 	}
 	
+	/**
+	 * Writes several messages with flush consolidation. The flushes of the
+	 * writes are merged into one that runs after the current task of the event
+	 * loop.
+	 */
+	@Test
+	public void testFlushConsolidation() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new TomP2POutbound(new DSASignatureFactory(),
+		        UnpooledByteBufAllocator.DEFAULT, true));
+		for (int i = 0; i < 3; i++) {
+			channel.write(Utils2.createDummyMessage());
+		}
+		channel.flush();
+		// the flush is scheduled, nothing is sent yet
+		Assert.assertNull(channel.readOutbound());
+		channel.runPendingTasks();
+		for (int i = 0; i < 3; i++) {
+			ByteBuf buf = (ByteBuf) channel.readOutbound();
+			Assert.assertNotNull(buf);
+			buf.release();
+		}
+		Assert.assertNull(channel.readOutbound());
+		channel.finish();
+	}
+	
 	@Test
 	public void testRelayFlag() throws Exception { // encode
 		Message m1 = Utils2.createDummyMessage();
@@ -560,6 +590,60 @@ public class TestMessage {
 		Assert.assertEquals(size, encodeDecode(message).estimateSize());
 	}
 
+	/**
+	 * Sends a signed message with Ed25519. The signature has a fixed size and
+	 * the public key is sent without the X.509 header.
+	 */
+	@Test
+	public void testEd25519() throws Exception {
+		// the JDK has Ed25519 since Java 15
+		Assume.assumeTrue(Ed25519SignatureFactory.isAvailable());
+		Message m1 = Utils2.createDummyMessage();
+		m1.setHintSign();
+		KeyPairGenerator gen = KeyPairGenerator.getInstance("Ed25519");
+		m1.publicKeyAndSign(gen.generateKeyPair());
+		NavigableMap<Number640, Data> dataMap = new TreeMap<Number640, Data>();
+		dataMap.put(new Number640(new Random(42)), new Data(new byte[] { 3, 4, 5 }));
+		m1.setDataMap(new DataMap(dataMap));
+
+		Message m2 = encodeDecode(m1, new Ed25519SignatureFactory());
+		Assert.assertEquals(m1.publicKey(0), m2.publicKey(0));
+		Assert.assertEquals(true, m2.verified());
+		compareMessage(m1, m2);
+		// the cached key is returned the second time
+		Message m3 = encodeDecode(m1, new Ed25519SignatureFactory());
+		Assert.assertSame(m2.publicKey(0), m3.publicKey(0));
+		Assert.assertEquals(true, m3.verified());
+	}
+
+	/**
+	 * Decodes a signed message with deferred verification. The message is not
+	 * verified until the pending verification runs.
+	 */
+	@Test
+	public void testDeferredVerification() throws Exception {
+		Message m1 = Utils2.createDummyMessage();
+		m1.setHintSign();
+		KeyPairGenerator gen = KeyPairGenerator.getInstance("DSA");
+		m1.publicKeyAndSign(gen.generateKeyPair());
+
+		AtomicReference<Message> m2 = new AtomicReference<Message>();
+		final AlternativeCompositeByteBuf buf = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
+		new Encoder(new DSASignatureFactory()).write(buf, m1, null);
+		ChannelHandlerContext ctx = mockChannelHandlerContext(buf, m2);
+		Decoder decoder = new Decoder(new DSASignatureFactory(), AlternativeCompositeByteBuf.UNPOOLED_HEAP, true);
+		Assert.assertTrue(decoder.decode(ctx, buf, m1.recipient().createSocketTCP(), m1.sender().createSocketTCP()));
+		buf.release();
+
+		SignatureVerification verification = decoder.verification();
+		Assert.assertNotNull(verification);
+		Message m3 = decoder.prepareFinish();
+		Assert.assertSame(m3, verification.message());
+		Assert.assertFalse(m3.verified());
+		Assert.assertTrue(verification.verify());
+		Assert.assertTrue(m3.verified());
+	}
+
 	/**
 	 * Encodes and decodes a message.
 	 * 
@@ -569,12 +653,26 @@ public class TestMessage {
 	 * @throws Exception .
 	 */
 	private Message encodeDecode(final Message m1) throws Exception {
+		return encodeDecode(m1, new DSASignatureFactory());
+	}
+
+	/**
+	 * Encodes and decodes a message with the given signature algorithm.
+	 * 
+	 * @param m1
+	 *            The message the will be encoded
+	 * @param signatureFactory
+	 *            The signature algorithm for encoding and decoding
+	 * @return The message that was decoded.
+	 * @throws Exception .
+	 */
+	private Message encodeDecode(final Message m1, final SignatureFactory signatureFactory) throws Exception {
 		AtomicReference<Message> m2 = new AtomicReference<Message>();
 		final AlternativeCompositeByteBuf buf = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
-		Encoder encoder = new Encoder(new DSASignatureFactory());
+		Encoder encoder = new Encoder(signatureFactory);
 		encoder.write(buf, m1, null);
 		ChannelHandlerContext ctx = mockChannelHandlerContext(buf, m2);
-		Decoder decoder = new Decoder(new DSASignatureFactory(), AlternativeCompositeByteBuf.UNPOOLED_HEAP);
+		Decoder decoder = new Decoder(signatureFactory, AlternativeCompositeByteBuf.UNPOOLED_HEAP);
 		decoder.decode(ctx, buf, m1.recipient().createSocketTCP(), m1
 				.sender().createSocketTCP());
 		buf.release();
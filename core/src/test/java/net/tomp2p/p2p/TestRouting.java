@@ -12,6 +12,8 @@ import java.util.TreeSet;
 
 import net.tomp2p.Utils2;
 import net.tomp2p.connection.ChannelCreator;
+import net.tomp2p.connection.PeerException;
+import net.tomp2p.connection.PeerException.AbortCause;
 import net.tomp2p.futures.FutureChannelCreator;
 import net.tomp2p.futures.FutureDone;
 import net.tomp2p.futures.FutureRouting;
@@ -551,6 +553,79 @@ public class TestRouting {
         }
     }
 
+    @Test
+    public void testRoutingCache() throws Exception {
+        Peer master = null;
+        ChannelCreator cc = null;
+        try {
+            // setup
+            Peer[] peers = Utils2.createNodes(200, rnd, 4001);
+            master = peers[0];
+            Utils2.perfectRouting(peers);
+            RoutingCache routingCache = new RoutingCache();
+            peers[50].peerBean().peerMap().addPeerMapChangeListener(routingCache);
+            DistributedRouting routing = new DistributedRouting(peers[50].peerBean(), peers[50].neighborRPC(),
+                    routingCache);
+            FutureChannelCreator fcc = peers[50].connectionBean().reservation().create(1, 0);
+            fcc.awaitUninterruptibly();
+            cc = fcc.channelCreator();
+            // do testing
+            FutureRouting fr1 = routing.route(cachedRoutingBuilder(peers[20].peerID()), Type.REQUEST_1, cc);
+            fr1.awaitListenersUninterruptibly();
+            Assert.assertEquals(true, fr1.isSuccess());
+            Assert.assertEquals(0, routingCache.hits());
+            Assert.assertEquals(1, routingCache.misses());
+            Assert.assertEquals(1, routingCache.size());
+
+            FutureRouting fr2 = routing.route(cachedRoutingBuilder(peers[20].peerID()), Type.REQUEST_1, cc);
+            Assert.assertEquals(true, fr2.isSuccess());
+            Assert.assertEquals(1, routingCache.hits());
+            Assert.assertEquals(fr1.potentialHits(), fr2.potentialHits());
+            Assert.assertEquals(peers[20].peerAddress(), fr2.potentialHits().first());
+
+            // a routing that collects digests is never cached
+            FutureRouting fr3 = routing.route(cachedRoutingBuilder(peers[20].peerID()), Type.REQUEST_2, cc);
+            fr3.awaitListenersUninterruptibly();
+            Assert.assertEquals(true, fr3.isSuccess());
+            Assert.assertEquals(1, routingCache.hits());
+            Assert.assertEquals(1, routingCache.misses());
+            Assert.assertEquals(1, routingCache.size());
+
+            // removing a peer invalidates the entries that contain it
+            peers[50].peerBean().peerMap().peerFailed(peers[20].peerAddress(),
+                    new PeerException(AbortCause.PROBABLY_OFFLINE, "probably offline"));
+            Assert.assertEquals(0, routingCache.size());
+
+            // without the flag, the cache is not used
+            RoutingBuilder uncached = cachedRoutingBuilder(peers[20].peerID());
+            uncached.cachedRouting(false);
+            FutureRouting fr4 = routing.route(uncached, Type.REQUEST_1, cc);
+            fr4.awaitListenersUninterruptibly();
+            Assert.assertEquals(1, routingCache.hits());
+            Assert.assertEquals(1, routingCache.misses());
+            Assert.assertEquals(0, routingCache.size());
+        } finally {
+            if (cc != null) {
+                cc.shutdown().awaitListenersUninterruptibly();
+            }
+            if (master != null) {
+                master.shutdown().await();
+            }
+        }
+    }
+
+    private static RoutingBuilder cachedRoutingBuilder(Number160 locationKey) {
+        RoutingBuilder routingBuilder = new RoutingBuilder();
+        routingBuilder.locationKey(locationKey);
+        routingBuilder.maxDirectHits(0);
+        routingBuilder.setMaxNoNewInfo(0);
+        routingBuilder.maxFailures(0);
+        routingBuilder.maxSuccess(100);
+        routingBuilder.parallel(1);
+        routingBuilder.cachedRouting(true);
+        return routingBuilder;
+    }
+
     @Ignore
     @Test
     public void testRoutingConcurrently() throws Exception {
@@ -282,4 +282,24 @@ public class TestNumber160 {
         n2 = new Number160(Long.MAX_VALUE);
         Assert.assertEquals("0x7FFFFFFFFFFFFFFF".toLowerCase(), n2.toString());
     }
+
+    @Test
+    public void testCompareDistance() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            Number160 target = new Number160(rnd);
+            Number160 n1 = new Number160(rnd);
+            // share a prefix with n1 to test the lower words
+            Number160 n2 = i % 2 == 0 ? new Number160(rnd) : new Number160(n1.intAt(0), n1.intAt(1),
+                    rnd.nextInt(), rnd.nextInt(), rnd.nextInt());
+            Assert.assertEquals(target.xor(n1).compareTo(target.xor(n2)),
+                    Number160.compareDistance(target, n1, n2));
+            Assert.assertEquals(target.xor(n1).bitLength(), Number160.distanceBitLength(target, n1));
+        }
+        Number160 n = new Number160(rnd);
+        Assert.assertEquals(0, Number160.compareDistance(Number160.ZERO, n, n));
+        Assert.assertEquals(0, Number160.distanceBitLength(n, n));
+        Assert.assertEquals(160, Number160.distanceBitLength(Number160.ZERO, Number160.MAX_VALUE));
+        Assert.assertEquals(1, Number160.distanceBitLength(Number160.ZERO, Number160.ONE));
+    }
 }
@@ -528,4 +528,37 @@ public class TestPeerMap {
             }
         }
     }
+
+    @Test
+    public void testBoundedClosePeers() throws UnknownHostException {
+        Random rnd = new Random(42);
+        PeerMapConfiguration conf1 = new PeerMapConfiguration(ID);
+        conf1.setFixedVerifiedBagSizes(200).setFixedOverflowBagSizes(10);
+        conf1.offlineCount(1000).offlineTimeout(100);
+        conf1.maintenance(new DefaultMaintenance(0, new int[] {}));
+        PeerMapConfiguration conf2 = new PeerMapConfiguration(ID);
+        conf2.setFixedVerifiedBagSizes(200).setFixedOverflowBagSizes(10);
+        conf2.offlineCount(1000).offlineTimeout(100);
+        conf2.maintenance(new DefaultMaintenance(0, new int[] {}));
+        conf2.boundedClosePeers(true);
+        final PeerMap peerMap1 = new PeerMap(conf1);
+        final PeerMap peerMap2 = new PeerMap(conf2);
+        for (int i = 0; i < 2000; i++) {
+            PeerAddress r1 = new PeerAddress(new Number160(rnd));
+            peerMap1.peerFound(r1, null, null, null);
+            peerMap2.peerFound(r1, null, null, null);
+        }
+        for (int j = 0; j < 100; j++) {
+            Number160 key = j == 0 ? ID : new Number160(rnd);
+            for (int k : new int[] { 1, 2, 20, 500 }) {
+                NavigableSet<PeerStatistic> all = peerMap1.closePeers(key, k);
+                NavigableSet<PeerStatistic> bounded = peerMap2.closePeers(key, k);
+                Assert.assertEquals(Math.min(k, all.size()), bounded.size());
+                Iterator<PeerStatistic> iterator = all.iterator();
+                for (PeerStatistic peerStatistic : bounded) {
+                    Assert.assertEquals(iterator.next().peerAddress(), peerStatistic.peerAddress());
+                }
+            }
+        }
+    }
 }
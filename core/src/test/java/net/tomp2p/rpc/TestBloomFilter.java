@@ -177,6 +177,131 @@ public class TestBloomFilter {
         Assert.assertEquals(true, cbs.contains("abc"));
     }
     
+    @Test
+    public void testHashBloomfilter() {
+        Random rnd = new Random(0);
+        // not a multiple of 8 bytes
+        final int filterSize = 101;
+        final int expected = 100;
+        SimpleBloomFilter<Number160> bloomFilter = new HashBloomFilter<Number160>(filterSize, expected);
+        Number160[] added = new Number160[expected];
+        for (int i = 0; i < expected; i++) {
+            added[i] = new Number160(rnd);
+            bloomFilter.add(added[i]);
+        }
+
+        // convert and back
+        ByteBuf buf = Unpooled.buffer(filterSize + SimpleBloomFilter.SIZE_HEADER);
+        bloomFilter.toByteBuf(buf);
+        Assert.assertEquals(bloomFilter.size(), buf.readableBytes());
+        SimpleBloomFilter<Number160> bloomFilter2 = SimpleBloomFilter.decode(buf);
+        Assert.assertEquals(true, bloomFilter2 instanceof HashBloomFilter);
+        Assert.assertEquals(bloomFilter, bloomFilter2);
+        Assert.assertEquals(expected, bloomFilter2.expectedElements());
+        for (int i = 0; i < expected; i++) {
+            Assert.assertEquals(true, bloomFilter2.contains(added[i]));
+        }
+        // the bits have the same layout as the simple bloom filter
+        Assert.assertEquals(bloomFilter.getBitSet(),
+                new SimpleBloomFilter<Number160>(filterSize, expected, bloomFilter.getBitSet()).getBitSet());
+    }
+
+    @Test
+    public void testHashBloomfilterDecodeSimple() {
+        SimpleBloomFilter<Number160> bloomFilter = new SimpleBloomFilter<Number160>(0.01d, 1000);
+        bloomFilter.add(Number160.MAX_VALUE);
+        ByteBuf buf = Unpooled.buffer();
+        bloomFilter.toByteBuf(buf);
+        SimpleBloomFilter<Number160> bloomFilter2 = SimpleBloomFilter.decode(buf);
+        Assert.assertEquals(false, bloomFilter2 instanceof HashBloomFilter);
+        Assert.assertEquals(bloomFilter, bloomFilter2);
+    }
+
+    @Test
+    public void testHashBloomfilterEmptyAndFull() {
+        SimpleBloomFilter<Number160> empty = new HashBloomFilter<Number160>(0, 0);
+        Assert.assertEquals(true, empty.isVoid());
+        Assert.assertEquals(false, empty.contains(Number160.ONE));
+        ByteBuf buf = Unpooled.buffer(SimpleBloomFilter.SIZE_HEADER);
+        empty.toByteBuf(buf);
+        Assert.assertEquals(true, SimpleBloomFilter.decode(buf).isVoid());
+
+        SimpleBloomFilter<Number160> full = new HashBloomFilter<Number160>(9, Integer.MAX_VALUE).setAll();
+        Assert.assertEquals(true, full.isFull());
+        Assert.assertEquals(true, full.contains(Number160.ONE));
+        buf = Unpooled.buffer(9 + SimpleBloomFilter.SIZE_HEADER);
+        full.toByteBuf(buf);
+        Assert.assertEquals(true, SimpleBloomFilter.decode(buf).isFull());
+    }
+
+    @Test
+    public void testHashBloomfilterMerge() {
+        SimpleBloomFilter<Number160> bf1 = new HashBloomFilter<Number160>(0.01d, 100);
+        SimpleBloomFilter<Number160> bf2 = new HashBloomFilter<Number160>(0.01d, 100);
+        bf1.add(Number160.ONE);
+        bf2.add(Number160.MAX_VALUE);
+        SimpleBloomFilter<Number160> merged = bf1.merge(bf2);
+        Assert.assertEquals(true, merged.contains(Number160.ONE));
+        Assert.assertEquals(true, merged.contains(Number160.MAX_VALUE));
+        Assert.assertEquals(false, bf1.contains(Number160.MAX_VALUE));
+    }
+
+    @Test
+    public void testMixedBloomfilterMerge() {
+        SimpleBloomFilter<Number160> simple = new SimpleBloomFilter<Number160>(0.01d, 100);
+        SimpleBloomFilter<Number160> hashed = new HashBloomFilter<Number160>(0.01d, 100);
+        try {
+            simple.merge(hashed);
+            Assert.fail("merged a hash based bloom filter");
+        } catch (RuntimeException e) {
+            // expected, the bits of the same element differ
+        }
+        try {
+            hashed.merge(simple);
+            Assert.fail("merged a simple bloom filter");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHashBloomfilterFactory() {
+        Assert.assertEquals(false, new DefaultBloomfilterFactory().createContentKeyBloomFilter() instanceof HashBloomFilter);
+        Assert.assertEquals(true, new DefaultBloomfilterFactory(false).createContentKeyBloomFilter() instanceof HashBloomFilter);
+    }
+
+    @Test
+    public void testHashCountingBloomFilter() {
+        int[] counting = new int[bfSizeLarge];
+        CountingBloomFilter<String> cbs = new CountingBloomFilter<String>(10, counting, true);
+
+        cbs.add("abc");
+        cbs.add("abc");
+        cbs.add("abc");
+        cbs.add("abd");
+
+        Assert.assertEquals(true, cbs.approximateCount("abc") >= 3);
+        Assert.assertEquals(true, cbs.approximateCount("abd") >= 1);
+        Assert.assertEquals(true, cbs.contains("abc"));
+    }
+
+    @Test
+    public void intersectHashed() {
+        final int nrPeers = 1000;
+        SimpleBloomFilter<Number160> sbf = new HashBloomFilter<Number160>(0.01, nrPeers);
+        for (int i = 0; i < nrPeers; i++) {
+            sbf.add(new Number160(i));
+        }
+        int counter = 0;
+        for (int i = nrPeers; i < 2 * nrPeers; i++) {
+            if (sbf.contains(new Number160(i))) {
+                counter++;
+            }
+        }
+        // 1% expected, allow some slack
+        Assert.assertEquals(true, counter < 30);
+    }
+
     @Test 
     public void intersect() {
     	for(int i=1;i<100;i++) {
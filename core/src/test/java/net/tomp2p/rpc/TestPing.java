@@ -4,14 +4,23 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.tomp2p.connection.Bindings;
+import net.tomp2p.connection.ChannelClientConfiguration;
 import net.tomp2p.connection.ChannelCreator;
+import net.tomp2p.connection.ChannelServerConfiguration;
+import net.tomp2p.connection.ChannelTransport;
 import net.tomp2p.connection.DefaultConnectionConfiguration;
+import net.tomp2p.connection.PeerConnection;
+import net.tomp2p.connection.PeerException;
+import net.tomp2p.connection.PeerException.AbortCause;
 import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.FutureChannelCreator;
 import net.tomp2p.futures.FutureResponse;
 import net.tomp2p.p2p.Peer;
 import net.tomp2p.p2p.PeerBuilder;
 import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerStatusListener;
+import net.tomp2p.peers.RTT;
 import net.tomp2p.utils.Utils;
 
 import org.junit.Assert;
@@ -164,6 +173,128 @@ public class TestPing {
         }
     }
 
+    @Test
+    public void testPingUDPPooled() throws Exception {
+        Peer sender = null;
+        Peer recv1 = null;
+        ChannelCreator cc = null;
+        try {
+            ChannelClientConfiguration ccc = PeerBuilder.createDefaultChannelClientConfiguration();
+            ccc.udpChannelPoolSize(2);
+            sender = new PeerBuilder(new Number160("0x9876")).p2pId(55).ports(2424).channelClientConfiguration(ccc).start();
+            recv1 = new PeerBuilder(new Number160("0x1234")).p2pId(55).ports(8088).start();
+            Assert.assertEquals(2, sender.connectionBean().reservation().udpChannelPool().size());
+            FutureChannelCreator fcc = sender.connectionBean().reservation().create(3, 0);
+            fcc.awaitUninterruptibly();
+            cc = fcc.channelCreator();
+            List<FutureResponse> list = new ArrayList<FutureResponse>();
+            for (int i = 0; i < 3; i++) {
+                list.add(sender.pingRPC().pingUDP(recv1.peerAddress(), cc, new DefaultConnectionConfiguration()));
+            }
+            for (FutureResponse fr : list) {
+                fr.awaitUninterruptibly();
+                Assert.assertEquals(true, fr.isSuccess());
+            }
+        } finally {
+            if (cc != null) {
+                cc.shutdown().await();
+            }
+            if (sender != null) {
+                sender.shutdown().await();
+            }
+            if (recv1 != null) {
+                recv1.shutdown().await();
+            }
+        }
+    }
+
+    @Test
+    public void testPingUDPBestTransport() throws Exception {
+        Peer sender = null;
+        Peer recv1 = null;
+        ChannelCreator cc = null;
+        try {
+            ChannelServerConfiguration csc = PeerBuilder.createDefaultChannelServerConfiguration();
+            csc.udpServerChannels(2);
+            sender = new PeerBuilder(new Number160("0x9876")).p2pId(55).ports(2424)
+                    .channelTransport(ChannelTransport.bestAvailable()).start();
+            recv1 = new PeerBuilder(new Number160("0x1234")).p2pId(55).ports(8088).channelServerConfiguration(csc)
+                    .channelTransport(ChannelTransport.bestAvailable()).start();
+            FutureChannelCreator fcc = sender.connectionBean().reservation().create(1, 0);
+            fcc.awaitUninterruptibly();
+            cc = fcc.channelCreator();
+            FutureResponse fr = sender.pingRPC().pingUDP(recv1.peerAddress(), cc, new DefaultConnectionConfiguration());
+            fr.awaitUninterruptibly();
+            Assert.assertEquals(true, fr.isSuccess());
+        } finally {
+            if (cc != null) {
+                cc.shutdown().await();
+            }
+            if (sender != null) {
+                sender.shutdown().await();
+            }
+            if (recv1 != null) {
+                recv1.shutdown().await();
+            }
+        }
+    }
+
+    @Test
+    public void testPingUDPPooledTimeout() throws Exception {
+        Peer sender = null;
+        Peer recv1 = null;
+        ChannelCreator cc = null;
+        try {
+            ChannelClientConfiguration ccc = PeerBuilder.createDefaultChannelClientConfiguration();
+            ccc.udpChannelPoolSize(2);
+            sender = new PeerBuilder(new Number160("0x9876")).p2pId(55).ports(2424).channelClientConfiguration(ccc).start();
+            recv1 = new PeerBuilder(new Number160("0x1234")).p2pId(55).ports(8088).start();
+            final PeerAddress offline = recv1.peerAddress();
+            recv1.shutdown().await();
+            recv1 = null;
+            final List<PeerException> failed = new ArrayList<PeerException>();
+            sender.peerBean().addPeerStatusListener(new PeerStatusListener() {
+                @Override
+                public boolean peerFailed(PeerAddress remotePeer, PeerException exception) {
+                    if (remotePeer.equals(offline)) {
+                        synchronized (failed) {
+                            failed.add(exception);
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean peerFound(PeerAddress remotePeer, PeerAddress referrer, PeerConnection peerConnection,
+                        RTT roundTripTime) {
+                    return false;
+                }
+            });
+            FutureChannelCreator fcc = sender.connectionBean().reservation().create(1, 0);
+            fcc.awaitUninterruptibly();
+            cc = fcc.channelCreator();
+            FutureResponse fr = sender.pingRPC().pingUDP(offline, cc,
+                    new DefaultConnectionConfiguration().idleUDPMillis(500));
+            fr.awaitUninterruptibly();
+            Assert.assertEquals(true, fr.isFailed());
+            // the peer map learns about the timeout, as without the pool
+            synchronized (failed) {
+                Assert.assertEquals(1, failed.size());
+                Assert.assertEquals(AbortCause.TIMEOUT, failed.get(0).abortCause());
+            }
+        } finally {
+            if (cc != null) {
+                cc.shutdown().await();
+            }
+            if (sender != null) {
+                sender.shutdown().await();
+            }
+            if (recv1 != null) {
+                recv1.shutdown().await();
+            }
+        }
+    }
+
     @Test
     public void testPingHandlerError() throws Exception {
         Peer sender = null;
@@ -45,6 +45,35 @@ public class TestData {
         transfer2.release();
     }
     
+    @Test
+    public void testValueCodec() throws IOException, ClassNotFoundException, InvalidKeyException, SignatureException {
+        ValueCodec[] codecs = new ValueCodec[] { new JavaValueCodec(), new BinaryValueCodec() };
+        Object[] objects = new Object[] { "test", 42L, new byte[] { 1, 2, 3 }, new Number160(42), UUID.randomUUID() };
+        for (ValueCodec codec : codecs) {
+            for (Object object : objects) {
+                Data data = new Data(object, codec);
+                AlternativeCompositeByteBuf transfer = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
+                data.encodeHeader(transfer, factory);
+                data.encodeBuffer(transfer);
+                data.encodeDone(transfer, factory);
+                Data newData = Data.decodeHeader(transfer, factory);
+                newData.decodeBuffer(transfer);
+                newData.decodeDone(transfer, null, factory);
+                Object test = newData.object(codec);
+                if (object instanceof byte[]) {
+                    Assert.assertArrayEquals((byte[]) object, (byte[]) test);
+                } else {
+                    Assert.assertEquals(object, test);
+                }
+                // the buffers of the data object are not consumed
+                Assert.assertEquals(test.getClass(), newData.object(codec).getClass());
+                transfer.release();
+            }
+        }
+        // the binary codec does not write class descriptors
+        Assert.assertTrue(new Data("test", new BinaryValueCodec()).length() < new Data("test").length());
+    }
+
     @Test	
     public void clearTest()	{		
     	ByteBuf acbb = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);		
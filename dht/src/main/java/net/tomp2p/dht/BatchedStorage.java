@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.dht;
+
+/**
+ * A storage that can commit several modifications at once. The {@link StorageLayer} uses a batch for each putAll, so
+ * that a put of many keys results in one commit instead of one commit per modification. It also uses a batch for every
+ * other modification, so that the commit happens after the lock of the modified range has been released.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public interface BatchedStorage extends Storage {
+    /**
+     * Starts a batch for the current thread. The modifications of this thread are not committed until the batch ends.
+     * Batches can be nested, only the outermost batch commits.
+     */
+    public abstract void beginBatch();
+
+    /**
+     * Ends the batch of the current thread and commits its modifications. This method returns once the modifications
+     * are durable.
+     */
+    public abstract void endBatch();
+}
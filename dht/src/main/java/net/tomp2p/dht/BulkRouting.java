@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.dht;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.tomp2p.connection.ChannelCreator;
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureChannelCreator;
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.futures.FutureRouting;
+import net.tomp2p.message.Message.Type;
+import net.tomp2p.p2p.DistributedRouting;
+import net.tomp2p.p2p.RequestP2PConfiguration;
+import net.tomp2p.p2p.RoutingConfiguration;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The routing and request scheduling for the bulk operations putAll and getAll. All location keys are routed, at most
+ * a fixed number at the same time, the keys are grouped by the peers closest to their location key, and one request
+ * is sent per peer, at most as many at the same time as the request configuration allows.
+ *
+ * @author Thomas Bocek
+ *
+ */
+final class BulkRouting {
+    private static final Logger LOG = LoggerFactory.getLogger(BulkRouting.class);
+
+    static final int DEFAULT_PARALLEL_ROUTINGS = 4;
+
+    private BulkRouting() {
+    }
+
+    /**
+     * Reserves enough connections for parallelRoutings routings at the same time. The requests are only sent once
+     * all routings are done, thus they can reuse the same connections.
+     */
+    static FutureChannelCreator reserve(final PeerDHT peer, final RoutingConfiguration routingConfiguration,
+            final RequestP2PConfiguration requestP2PConfiguration, final int parallelRoutings,
+            final DHTBuilder<?> builder) {
+        final int routingPermits = routingConfiguration.parallel() * parallelRoutings;
+        final int requestPermits = requestP2PConfiguration.parallel();
+        int permitsUDP = 0;
+        int permitsTCP = 0;
+        if (builder.isForceTCP()) {
+            permitsTCP = routingPermits;
+        } else {
+            permitsUDP = routingPermits;
+        }
+        if (builder.isForceUDP()) {
+            permitsUDP = Math.max(permitsUDP, requestPermits);
+        } else {
+            permitsTCP = Math.max(permitsTCP, requestPermits);
+        }
+        return peer.peer().connectionBean().reservation().create(permitsUDP, permitsTCP);
+    }
+
+    /**
+     * Routes to all location keys.
+     *
+     * @return The future that is done when all routings are done, with the potential hits per location key. If a
+     *         routing failed, its location key is missing.
+     */
+    static FutureDone<Map<Number160, NavigableSet<PeerAddress>>> routeAll(final DistributedRouting routing,
+            final DHTBuilder<?> builder, final Collection<Number160> locationKeys, final int parallelRoutings,
+            final ChannelCreator channelCreator) {
+        final FutureDone<Map<Number160, NavigableSet<PeerAddress>>> futureDone = new FutureDone<Map<Number160, NavigableSet<PeerAddress>>>();
+        final Map<Number160, NavigableSet<PeerAddress>> routes = new HashMap<Number160, NavigableSet<PeerAddress>>(
+                locationKeys.size());
+        if (locationKeys.isEmpty()) {
+            return futureDone.done(routes);
+        }
+        final Iterator<Number160> iterator = new ArrayList<Number160>(locationKeys).iterator();
+        final AtomicInteger pending = new AtomicInteger(locationKeys.size());
+        final int parallel = Math.min(parallelRoutings, locationKeys.size());
+        for (int i = 0; i < parallel; i++) {
+            routeNext(routing, builder, iterator, pending, routes, futureDone, channelCreator);
+        }
+        return futureDone;
+    }
+
+    private static void routeNext(final DistributedRouting routing, final DHTBuilder<?> builder,
+            final Iterator<Number160> iterator, final AtomicInteger pending,
+            final Map<Number160, NavigableSet<PeerAddress>> routes,
+            final FutureDone<Map<Number160, NavigableSet<PeerAddress>>> futureDone,
+            final ChannelCreator channelCreator) {
+        final Number160 locationKey;
+        synchronized (iterator) {
+            if (!iterator.hasNext()) {
+                return;
+            }
+            locationKey = iterator.next();
+        }
+        final FutureRouting futureRouting = routing.route(
+                DistributedHashTable.createBuilder(builder, locationKey), Type.REQUEST_1, channelCreator);
+        futureRouting.addListener(new BaseFutureAdapter<FutureRouting>() {
+            @Override
+            public void operationComplete(final FutureRouting future) throws Exception {
+                if (future.isSuccess()) {
+                    synchronized (routes) {
+                        routes.put(locationKey, future.potentialHits());
+                    }
+                } else {
+                    LOG.debug("routing to {} failed: {}", locationKey, future.failedReason());
+                }
+                if (pending.decrementAndGet() == 0) {
+                    futureDone.done(routes);
+                } else {
+                    routeNext(routing, builder, iterator, pending, routes, futureDone, channelCreator);
+                }
+            }
+        });
+    }
+
+    /**
+     * Groups the keys by the peers closest to their location key.
+     *
+     * @param keys
+     *            The keys to group
+     * @param routes
+     *            The potential hits per location key, sorted by distance
+     * @param replicas
+     *            The number of closest peers each key is sent to
+     * @param sent
+     *            Is filled with the number of peers each key is sent to. Keys that could not be routed are missing
+     * @return The keys per peer
+     */
+    static Map<PeerAddress, List<Number640>> groupByPeer(final Collection<Number640> keys,
+            final Map<Number160, NavigableSet<PeerAddress>> routes, final int replicas,
+            final Map<Number640, Integer> sent) {
+        final Map<PeerAddress, List<Number640>> grouped = new LinkedHashMap<PeerAddress, List<Number640>>();
+        for (Number640 key : keys) {
+            final NavigableSet<PeerAddress> peers = routes.get(key.locationKey());
+            if (peers == null) {
+                continue;
+            }
+            int counter = 0;
+            for (PeerAddress peerAddress : peers) {
+                if (counter >= replicas) {
+                    break;
+                }
+                List<Number640> peerKeys = grouped.get(peerAddress);
+                if (peerKeys == null) {
+                    peerKeys = new ArrayList<Number640>();
+                    grouped.put(peerAddress, peerKeys);
+                }
+                peerKeys.add(key);
+                counter++;
+            }
+            if (counter > 0) {
+                sent.put(key, counter);
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * Sends one request to each peer, at most parallel at the same time. Unlike the requests of a single put or get,
+     * a failed request is not retried on another peer, its keys are reported as failed instead.
+     */
+    static <K extends FutureDHT<?>> void requestAll(final Collection<PeerAddress> peers, final int parallel,
+            final K futureDHT, final ChannelCreator channelCreator, final OperationMapper<K> operation) {
+        if (peers.isEmpty()) {
+            operation.response(futureDHT, null);
+            return;
+        }
+        final Iterator<PeerAddress> iterator = new ArrayList<PeerAddress>(peers).iterator();
+        final AtomicInteger pending = new AtomicInteger(peers.size());
+        final int max = Math.min(parallel, peers.size());
+        for (int i = 0; i < max; i++) {
+            requestNext(iterator, pending, futureDHT, channelCreator, operation);
+        }
+    }
+
+    private static <K extends FutureDHT<?>> void requestNext(final Iterator<PeerAddress> iterator,
+            final AtomicInteger pending, final K futureDHT, final ChannelCreator channelCreator,
+            final OperationMapper<K> operation) {
+        final PeerAddress next;
+        synchronized (iterator) {
+            if (!iterator.hasNext()) {
+                return;
+            }
+            next = iterator.next();
+        }
+        final FutureResponse futureResponse = operation.create(channelCreator, next);
+        futureDHT.addRequests(futureResponse);
+        futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
+            @Override
+            public void operationComplete(final FutureResponse future) throws Exception {
+                operation.interMediateResponse(future);
+                if (pending.decrementAndGet() == 0) {
+                    operation.response(futureDHT, null);
+                } else {
+                    requestNext(iterator, pending, futureDHT, channelCreator, operation);
+                }
+            }
+        });
+    }
+}
@@ -65,6 +65,7 @@ public abstract class DHTBuilder<K extends DHTBuilder<K>> extends DefaultConnect
     // private boolean signMessage = false;
     private KeyPair keyPair = null;
     private boolean streaming = false;
+    private boolean cachedRouting = false;
     // private boolean forceUDP = false;
     // private boolean forceTCP = false;
     
@@ -158,6 +159,26 @@ public abstract class DHTBuilder<K extends DHTBuilder<K>> extends DefaultConnect
         return self;
     }
 
+    /**
+     * @return True if the result of a previous routing to the same location key may be used, if the peer has a
+     *         routing cache
+     */
+    public boolean isCachedRouting() {
+        return cachedRouting;
+    }
+
+    /**
+     * @param cachedRouting
+     *            Set to true to use the result of a previous routing to the same location key instead of a lookup. This
+     *            only has an effect if the peer has been built with a {@link net.tomp2p.p2p.RoutingCache}, and not
+     *            for a fastGet, which needs the current digests of the closest peers.
+     * @return This class
+     */
+    public K cachedRouting(final boolean cachedRouting) {
+        this.cachedRouting = cachedRouting;
+        return self;
+    }
+
     /**
      * @return Set to true if the domain should be set to protected. This means that this domain is flagged an a public
      *         key is stored for this entry. An update or removal can only be made with the matching private key.
@@ -309,11 +330,21 @@ public abstract class DHTBuilder<K extends DHTBuilder<K>> extends DefaultConnect
         requestP2PConfiguration = requestP2PConfiguration.adjustMinimumResult(size);
         if (futureChannelCreator == null || 
         		(futureChannelCreator.channelCreator()!=null && futureChannelCreator.channelCreator().isShutdown())) {
-            futureChannelCreator = peer.peer().connectionBean().reservation()
-                    .create(routingConfiguration, requestP2PConfiguration, this);
+            futureChannelCreator = createFutureChannelCreator();
         }
     }
 
+    /**
+     * Reserves the connections for this operation. Called from {@link #preBuild(String)} once the routing and request
+     * configuration are set, if no future channel creator was provided.
+     * 
+     * @return The future channel creator with the reserved connections
+     */
+    protected FutureChannelCreator createFutureChannelCreator() {
+        return peer.peer().connectionBean().reservation()
+                .create(routingConfiguration, requestP2PConfiguration, this);
+    }
+
     public RoutingBuilder createBuilder(RequestP2PConfiguration requestP2PConfiguration,
             RoutingConfiguration routingConfiguration) {
         RoutingBuilder routingBuilder = new RoutingBuilder();
@@ -323,6 +354,7 @@ public abstract class DHTBuilder<K extends DHTBuilder<K>> extends DefaultConnect
         routingBuilder.maxDirectHits(routingConfiguration.maxDirectHits());
         routingBuilder.maxFailures(routingConfiguration.maxFailures());
         routingBuilder.maxSuccess(routingConfiguration.maxSuccess());
+        routingBuilder.cachedRouting(cachedRouting);
         return routingBuilder;
     }
 
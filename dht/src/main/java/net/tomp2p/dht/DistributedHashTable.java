@@ -20,9 +20,13 @@ import io.netty.buffer.ByteBuf;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -303,6 +307,144 @@ public class DistributedHashTable {
         return futureDHT;
     }
 
+    public FuturePutAll putAll(final PutAllBuilder builder) {
+        final FuturePutAll futureDHT = new FuturePutAll(builder, builder.dataMap().keySet());
+        builder.futureChannelCreator().addListener(new BaseFutureAdapter<FutureChannelCreator>() {
+            @Override
+            public void operationComplete(final FutureChannelCreator future) throws Exception {
+                if (future.isSuccess()) {
+                    final FutureDone<Map<Number160, NavigableSet<PeerAddress>>> futureRoutes = BulkRouting.routeAll(
+                            routing, builder, locationKeys(builder.dataMap().keySet()), builder.parallelRoutings(),
+                            future.channelCreator());
+                    futureRoutes.addListener(new BaseFutureAdapter<FutureDone<Map<Number160, NavigableSet<PeerAddress>>>>() {
+                        @Override
+                        public void operationComplete(final FutureDone<Map<Number160, NavigableSet<PeerAddress>>> futureRoutes)
+                                throws Exception {
+                            final Map<Number640, Integer> replicas = new HashMap<Number640, Integer>();
+                            final Map<PeerAddress, List<Number640>> grouped = BulkRouting.groupByPeer(builder
+                                    .dataMap().keySet(), futureRoutes.object(), builder.requestP2PConfiguration()
+                                    .minimumResults(), replicas);
+                            logger.debug("storing {} keys on {} peers", builder.dataMap().size(), grouped.size());
+                            BulkRouting.requestAll(grouped.keySet(), builder.requestP2PConfiguration().parallel(),
+                                    futureDHT, future.channelCreator(), new OperationMapper<FuturePutAll>() {
+
+                                        Map<PeerAddress, Map<Number640, Byte>> rawData = new HashMap<PeerAddress, Map<Number640, Byte>>();
+
+                                        @Override
+                                        public FutureResponse create(final ChannelCreator channelCreator,
+                                                final PeerAddress address) {
+                                            final NavigableMap<Number640, Data> dataMap = new TreeMap<Number640, Data>();
+                                            for (Number640 key : grouped.get(address)) {
+                                                dataMap.put(key, builder.dataMap().get(key));
+                                            }
+                                            return storeRCP.putAll(address, builder, dataMap, channelCreator);
+                                        }
+
+                                        @Override
+                                        public void response(final FuturePutAll futureDHT,
+                                                final FutureDone<Void> futuresCompleted) {
+                                            synchronized (rawData) {
+                                                futureDHT.storedKeys(rawData, replicas, futuresCompleted);
+                                            }
+                                        }
+
+                                        @Override
+                                        public void interMediateResponse(final FutureResponse future) {
+                                            final PeerAddress recipient = future.request().recipient();
+                                            final Map<Number640, Byte> result;
+                                            if (future.isSuccess() && future.responseMessage().isOk()) {
+                                                result = future.responseMessage().keyMapByte(0).keysMap();
+                                            } else {
+                                                logger.debug("future failed: {}", future.failedReason());
+                                                result = Utils.setMapError(future.request().dataMap(0).dataMap(),
+                                                        (byte) (future.emptyResponse() == null ? REASON_CANCEL
+                                                                : REASON_UNKOWN));
+                                            }
+                                            synchronized (rawData) {
+                                                rawData.put(recipient, result);
+                                            }
+                                        }
+                                    });
+                        }
+                    });
+                    futureDHT.addFutureDHTReleaseListener(future.channelCreator());
+                } else {
+                    futureDHT.failed(future);
+                }
+            }
+        });
+        return futureDHT;
+    }
+
+    public FutureGetAll getAll(final GetAllBuilder builder) {
+        final FutureGetAll futureDHT = new FutureGetAll(builder, builder.keys());
+        builder.futureChannelCreator().addListener(new BaseFutureAdapter<FutureChannelCreator>() {
+            @Override
+            public void operationComplete(final FutureChannelCreator future) throws Exception {
+                if (future.isSuccess()) {
+                    final FutureDone<Map<Number160, NavigableSet<PeerAddress>>> futureRoutes = BulkRouting.routeAll(
+                            routing, builder, locationKeys(builder.keys()), builder.parallelRoutings(),
+                            future.channelCreator());
+                    futureRoutes.addListener(new BaseFutureAdapter<FutureDone<Map<Number160, NavigableSet<PeerAddress>>>>() {
+                        @Override
+                        public void operationComplete(final FutureDone<Map<Number160, NavigableSet<PeerAddress>>> futureRoutes)
+                                throws Exception {
+                            final Map<PeerAddress, List<Number640>> grouped = BulkRouting.groupByPeer(
+                                    builder.keys(), futureRoutes.object(), builder.requestP2PConfiguration()
+                                            .minimumResults(), new HashMap<Number640, Integer>());
+                            logger.debug("getting {} keys from {} peers", builder.keys().size(), grouped.size());
+                            BulkRouting.requestAll(grouped.keySet(), builder.requestP2PConfiguration().parallel(),
+                                    futureDHT, future.channelCreator(), new OperationMapper<FutureGetAll>() {
+
+                                        Map<PeerAddress, Map<Number640, Data>> rawData = new HashMap<PeerAddress, Map<Number640, Data>>();
+
+                                        @Override
+                                        public FutureResponse create(final ChannelCreator channelCreator,
+                                                final PeerAddress address) {
+                                            return storeRCP.getAll(address, builder, grouped.get(address),
+                                                    channelCreator);
+                                        }
+
+                                        @Override
+                                        public void response(final FutureGetAll futureDHT,
+                                                final FutureDone<Void> futuresCompleted) {
+                                            synchronized (rawData) {
+                                                futureDHT.receivedData(rawData, futuresCompleted);
+                                            }
+                                        }
+
+                                        @Override
+                                        public void interMediateResponse(final FutureResponse future) {
+                                            if (future.isSuccess()) {
+                                                final Map<Number640, Data> data = future.responseMessage()
+                                                        .dataMap(0).dataMap();
+                                                synchronized (rawData) {
+                                                    rawData.put(future.request().recipient(), data);
+                                                }
+                                            } else {
+                                                logger.debug("future failed: {}", future.failedReason());
+                                            }
+                                        }
+                                    });
+                        }
+                    });
+                    futureDHT.addFutureDHTReleaseListener(future.channelCreator());
+                } else {
+                    futureDHT.failed(future);
+                }
+            }
+        });
+        return futureDHT;
+    }
+
+    private static Collection<Number160> locationKeys(final Collection<Number640> keys) {
+        final Set<Number160> locationKeys = new LinkedHashSet<Number160>();
+        for (Number640 key : keys) {
+            locationKeys.add(key.locationKey());
+        }
+        return locationKeys;
+    }
+
     public FutureGet get(final GetBuilder builder) {
 
         final FutureGet futureDHT = new FutureGet(builder, builder.requestP2PConfiguration()
@@ -689,9 +831,13 @@ public class DistributedHashTable {
     }
     
     private static RoutingBuilder createBuilder(BasicBuilder<?> builder) {
+    	return createBuilder(builder, builder.locationKey());
+    }
+
+    static RoutingBuilder createBuilder(BasicBuilder<?> builder, Number160 locationKey) {
     	RoutingBuilder routingBuilder = builder.createBuilder(builder.requestP2PConfiguration(),
                 builder.routingConfiguration());
-        routingBuilder.locationKey(builder.locationKey());
+        routingBuilder.locationKey(locationKey);
         routingBuilder.domainKey(builder.domainKey());
         routingBuilder.peerMapFilters(builder.peerMapFilters());
         routingBuilder.postRoutingFilters(builder.postRoutingFilters());
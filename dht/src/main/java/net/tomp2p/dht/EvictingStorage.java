@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.dht;
+
+import java.util.Map;
+
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+/**
+ * A storage that may remove older versions of an entry when a new version is put, e.g., if it keeps only a limited
+ * number of versions. The {@link StorageLayer} needs to know the removed versions to keep its range hashes up to date.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public interface EvictingStorage extends Storage {
+    /**
+     * Stores the value as {@link #put(Number640, Data)} does and reports the versions that were removed.
+     *
+     * @param key
+     *            The key of the value
+     * @param value
+     *            The value
+     * @param evicted
+     *            The versions that were removed are added to this map and need to be released by the caller
+     * @return The value that was replaced, or null
+     */
+    public abstract Data put(Number640 key, Data value, Map<Number640, Data> evicted);
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.dht;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.storage.Data;
+
+/**
+ * The future object for getAll() operations. The outcome is reported per key: if the peers asked for a key return
+ * different data, the data returned by most of them is used.
+ *
+ * @author Thomas Bocek
+ */
+public class FutureGetAll extends FutureDHT<FutureGetAll> {
+
+    // The keys we were looking for
+    private final Collection<Number640> keys;
+
+    // Storage of results
+    private Map<PeerAddress, Map<Number640, Data>> rawData;
+
+    private Map<Number640, Data> dataMap;
+
+    /**
+     * Creates a new future object that keeps track of the status of the getAll operation.
+     *
+     * @param builder
+     *            The builder that started this operation
+     * @param keys
+     *            The keys that we are looking for
+     */
+    public FutureGetAll(final DHTBuilder<?> builder, final Collection<Number640> keys) {
+        super(builder);
+        this.keys = keys;
+        self(this);
+    }
+
+    /**
+     * Finish the future and set the data that has been received. The future is successful on the network level if at
+     * least one peer could be contacted. Which keys have been found can be checked with {@link #notFound()}.
+     *
+     * @param rawData
+     *            The data per peer
+     * @param futuresCompleted
+     *            Not used for getAll, since there is no quorum
+     */
+    public void receivedData(final Map<PeerAddress, Map<Number640, Data>> rawData,
+            final FutureDone<Void> futuresCompleted) {
+        synchronized (lock) {
+            if (!completedAndNotify()) {
+                return;
+            }
+            this.rawData = rawData;
+            this.futuresCompleted = futuresCompleted;
+            final boolean contacted = !rawData.isEmpty();
+            this.type = contacted ? FutureType.OK : FutureType.FAILED;
+            this.reason = contacted ? "Received data from " + rawData.size() + " peers"
+                    : "No peer could be contacted";
+        }
+        notifyListeners();
+    }
+
+    /**
+     * @return The raw data and the information which peer has been contacted
+     */
+    public Map<PeerAddress, Map<Number640, Data>> rawData() {
+        synchronized (lock) {
+            return rawData;
+        }
+    }
+
+    /**
+     * @return The data per key, evaluated over all peers that returned this key
+     */
+    public Map<Number640, Data> dataMap() {
+        synchronized (lock) {
+            if (dataMap == null) {
+                dataMap = evaluate(rawData);
+            }
+            return dataMap;
+        }
+    }
+
+    /**
+     * @return The keys for which no peer returned data
+     */
+    public List<Number640> notFound() {
+        synchronized (lock) {
+            final Map<Number640, Data> dataMap = dataMap();
+            final List<Number640> notFound = new ArrayList<Number640>();
+            for (Number640 key : keys) {
+                if (!dataMap.containsKey(key)) {
+                    notFound.add(key);
+                }
+            }
+            return notFound;
+        }
+    }
+
+    private static Map<Number640, Data> evaluate(final Map<PeerAddress, Map<Number640, Data>> rawData) {
+        final Map<Number640, Data> result = new HashMap<Number640, Data>();
+        final Map<Number640, Map<Number160, Integer>> votes = new HashMap<Number640, Map<Number160, Integer>>();
+        final Map<Number640, Integer> best = new HashMap<Number640, Integer>();
+        for (Map<Number640, Data> map : rawData.values()) {
+            for (Map.Entry<Number640, Data> entry : map.entrySet()) {
+                Map<Number160, Integer> counter = votes.get(entry.getKey());
+                if (counter == null) {
+                    counter = new HashMap<Number160, Integer>(2);
+                    votes.put(entry.getKey(), counter);
+                }
+                final Number160 hash = entry.getValue().hash();
+                final Integer count = counter.get(hash);
+                final int c = count == null ? 1 : count + 1;
+                counter.put(hash, c);
+                final Integer max = best.get(entry.getKey());
+                if (max == null || c > max) {
+                    best.put(entry.getKey(), c);
+                    result.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.dht;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.tomp2p.dht.StorageLayer.PutStatus;
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+
+/**
+ * The future object for putAll() operations. The outcome is reported per key: a key is stored if all the peers it was
+ * sent to have stored it.
+ *
+ * @author Thomas Bocek
+ */
+public class FuturePutAll extends FutureDHT<FuturePutAll> {
+
+    // The keys we wanted to store
+    private final Collection<Number640> keys;
+
+    // Storage of results
+    private Map<PeerAddress, Map<Number640, Byte>> rawResult;
+
+    // The number of peers each key was sent to
+    private Map<Number640, Integer> replicas;
+
+    private Map<Number640, Integer> result;
+
+    /**
+     * Creates a new future object that keeps track of the status of the putAll operation.
+     *
+     * @param builder
+     *            The builder that started this operation
+     * @param keys
+     *            The keys that should be stored
+     */
+    public FuturePutAll(final DHTBuilder<?> builder, final Collection<Number640> keys) {
+        super(builder);
+        this.keys = keys;
+        self(this);
+    }
+
+    /**
+     * Finish the future and set the keys that have been stored. The future is successful on the network level if at
+     * least one peer could be contacted. Whether each key has been stored can be checked with {@link #failedKeys()}.
+     *
+     * @param rawResult
+     *            The status of each key, per peer
+     * @param replicas
+     *            The number of peers each key was sent to
+     * @param futuresCompleted
+     *            Not used for putAll, since there is no quorum
+     */
+    public void storedKeys(final Map<PeerAddress, Map<Number640, Byte>> rawResult,
+            final Map<Number640, Integer> replicas, final FutureDone<Void> futuresCompleted) {
+        synchronized (lock) {
+            if (!completedAndNotify()) {
+                return;
+            }
+            this.rawResult = rawResult;
+            this.replicas = replicas;
+            this.futuresCompleted = futuresCompleted;
+            final boolean contacted = !rawResult.isEmpty();
+            this.type = contacted ? FutureType.OK : FutureType.FAILED;
+            this.reason = contacted ? "Stored on " + rawResult.size() + " peers" : "No peer could be contacted";
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Returns the raw result from the storage operation.
+     *
+     * @return The status of each key and the information which peer has been contacted
+     */
+    public Map<PeerAddress, Map<Number640, Byte>> rawResult() {
+        synchronized (lock) {
+            return rawResult;
+        }
+    }
+
+    /**
+     * @return The number of peers each key was sent to. A key is missing if its location key could not be routed.
+     */
+    public Map<Number640, Integer> replicas() {
+        synchronized (lock) {
+            return replicas;
+        }
+    }
+
+    /**
+     * @return The number of peers that have stored each key. Keys that no peer has stored are missing.
+     */
+    public Map<Number640, Integer> result() {
+        synchronized (lock) {
+            if (result == null) {
+                result = evaluate(rawResult);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return The keys that have not been stored on all the peers they were sent to, including the keys that could
+     *         not be routed
+     */
+    public List<Number640> failedKeys() {
+        synchronized (lock) {
+            final Map<Number640, Integer> result = result();
+            final List<Number640> failed = new ArrayList<Number640>();
+            for (Number640 key : keys) {
+                final Integer expected = replicas.get(key);
+                final Integer stored = result.get(key);
+                if (expected == null || stored == null || stored < expected) {
+                    failed.add(key);
+                }
+            }
+            return failed;
+        }
+    }
+
+    private static Map<Number640, Integer> evaluate(final Map<PeerAddress, Map<Number640, Byte>> rawResult) {
+        final Map<Number640, Integer> result = new HashMap<Number640, Integer>();
+        for (Map<Number640, Byte> map : rawResult.values()) {
+            for (Map.Entry<Number640, Byte> entry : map.entrySet()) {
+                if (entry.getValue().intValue() == PutStatus.OK.ordinal()
+                        || entry.getValue().intValue() == PutStatus.OK_PREPARED.ordinal()
+                        || entry.getValue().intValue() == PutStatus.OK_UNCHANGED.ordinal()
+                        || entry.getValue().intValue() == PutStatus.VERSION_FORK.ordinal()
+                        || entry.getValue().intValue() == PutStatus.DELETED.ordinal()) {
+                    final Integer integer = result.get(entry.getKey());
+                    result.put(entry.getKey(), integer == null ? 1 : integer + 1);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        if (!super.isSuccess()) {
+            return false;
+        }
+        return failedKeys().isEmpty();
+    }
+
+    public boolean isSuccessPartially() {
+        boolean networkSuccess = super.isSuccess();
+        return networkSuccess && result().size() > 0;
+    }
+}
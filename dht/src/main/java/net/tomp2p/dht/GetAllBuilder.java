@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.dht;
+
+import java.util.Collection;
+
+import net.tomp2p.futures.FutureChannelCreator;
+import net.tomp2p.peers.Number640;
+
+/**
+ * Gets data with many location keys at once. The location keys are routed in parallel, the keys are grouped by the
+ * peers that are responsible for them, and each of those peers receives a single get message with all its keys. The
+ * number of peers asked per key is the minimum results of the {@link net.tomp2p.p2p.RequestP2PConfiguration}.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class GetAllBuilder extends DHTBuilder<GetAllBuilder> {
+    private final static FutureGetAll FUTURE_SHUTDOWN = new FutureGetAll(null, null)
+            .failed("get all builder - peer is shutting down");
+
+    private final Collection<Number640> keys;
+
+    private int parallelRoutings = BulkRouting.DEFAULT_PARALLEL_ROUTINGS;
+
+    public GetAllBuilder(PeerDHT peer, Collection<Number640> keys) {
+        super(peer, null);
+        this.keys = keys;
+        self(this);
+    }
+
+    public Collection<Number640> keys() {
+        return keys;
+    }
+
+    public int parallelRoutings() {
+        return parallelRoutings;
+    }
+
+    /**
+     * @param parallelRoutings
+     *            The number of location keys that are routed at the same time. Each routing reserves as many
+     *            connections as set in the routing configuration.
+     * @return This class
+     */
+    public GetAllBuilder parallelRoutings(int parallelRoutings) {
+        this.parallelRoutings = parallelRoutings;
+        return this;
+    }
+
+    @Override
+    protected FutureChannelCreator createFutureChannelCreator() {
+        return BulkRouting.reserve(peer, routingConfiguration, requestP2PConfiguration, parallelRoutings, this);
+    }
+
+    public FutureGetAll start() {
+        if (peer.peer().isShutdown()) {
+            return FUTURE_SHUTDOWN;
+        }
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("You must provide keys to get.");
+        }
+        if (parallelRoutings < 1) {
+            throw new IllegalArgumentException("At least one routing needs to run.");
+        }
+        preBuild("get-all-builder");
+        return peer.distributedHashTable().getAll(this);
+    }
+}
@@ -1,10 +1,15 @@
 package net.tomp2p.dht;
 
+import java.util.Collection;
+import java.util.NavigableMap;
+
 import net.tomp2p.connection.PeerBean;
 import net.tomp2p.futures.BaseFuture;
 import net.tomp2p.p2p.Peer;
 import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
 import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.storage.Data;
 
 public class PeerDHT {
 
@@ -48,6 +53,30 @@ public class PeerDHT {
 		return new GetBuilder(this, locationKey);
 	}
 
+	/**
+	 * Stores data with many location keys. Instead of one routing and one
+	 * message per location key and replica, the keys are grouped by the peers
+	 * that are responsible for them and each peer receives one message.
+	 * 
+	 * @param dataMap
+	 *            The data to store, the location key is part of the key
+	 * @return The builder that allows to set options
+	 */
+	public PutAllBuilder putAll(NavigableMap<Number640, Data> dataMap) {
+		return new PutAllBuilder(this, dataMap);
+	}
+
+	/**
+	 * Gets data with many location keys, see {@link #putAll(NavigableMap)}.
+	 * 
+	 * @param keys
+	 *            The keys to get, the location key is part of the key
+	 * @return The builder that allows to set options
+	 */
+	public GetAllBuilder getAll(Collection<Number640> keys) {
+		return new GetAllBuilder(this, keys);
+	}
+
 	public DigestBuilder digest(Number160 locationKey) {
 		return new DigestBuilder(this, locationKey);
 	}
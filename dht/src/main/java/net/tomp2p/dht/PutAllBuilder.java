@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.dht;
+
+import java.util.NavigableMap;
+
+import net.tomp2p.futures.FutureChannelCreator;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+/**
+ * Stores data with many location keys at once. The location keys are routed in parallel, the keys are grouped by the
+ * peers that are responsible for them, and each of those peers receives a single put message with all its keys. The
+ * number of replicas per key is the minimum results of the {@link net.tomp2p.p2p.RequestP2PConfiguration}.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class PutAllBuilder extends DHTBuilder<PutAllBuilder> {
+    private final static FuturePutAll FUTURE_SHUTDOWN = new FuturePutAll(null, null)
+            .failed("put all builder - peer is shutting down");
+
+    private final NavigableMap<Number640, Data> dataMap;
+
+    private boolean putIfAbsent = false;
+
+    private int parallelRoutings = BulkRouting.DEFAULT_PARALLEL_ROUTINGS;
+
+    public PutAllBuilder(PeerDHT peer, NavigableMap<Number640, Data> dataMap) {
+        super(peer, null);
+        this.dataMap = dataMap;
+        self(this);
+    }
+
+    public NavigableMap<Number640, Data> dataMap() {
+        return dataMap;
+    }
+
+    public boolean isPutIfAbsent() {
+        return putIfAbsent;
+    }
+
+    public PutAllBuilder putIfAbsent(boolean putIfAbsent) {
+        this.putIfAbsent = putIfAbsent;
+        return this;
+    }
+
+    public PutAllBuilder putIfAbsent() {
+        this.putIfAbsent = true;
+        return this;
+    }
+
+    public int parallelRoutings() {
+        return parallelRoutings;
+    }
+
+    /**
+     * @param parallelRoutings
+     *            The number of location keys that are routed at the same time. Each routing reserves as many
+     *            connections as set in the routing configuration.
+     * @return This class
+     */
+    public PutAllBuilder parallelRoutings(int parallelRoutings) {
+        this.parallelRoutings = parallelRoutings;
+        return this;
+    }
+
+    @Override
+    protected FutureChannelCreator createFutureChannelCreator() {
+        return BulkRouting.reserve(peer, routingConfiguration, requestP2PConfiguration, parallelRoutings, this);
+    }
+
+    public FuturePutAll start() {
+        if (peer.peer().isShutdown()) {
+            return FUTURE_SHUTDOWN;
+        }
+        if (dataMap == null || dataMap.isEmpty()) {
+            throw new IllegalArgumentException("You must provide data to store.");
+        }
+        if (parallelRoutings < 1) {
+            throw new IllegalArgumentException("At least one routing needs to run.");
+        }
+        preBuild("put-all-builder");
+        return peer.distributedHashTable().putAll(this);
+    }
+}
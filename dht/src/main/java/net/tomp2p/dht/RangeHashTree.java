@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.dht;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+import net.tomp2p.utils.Utils;
+
+/**
+ * A hash tree over the location keys of the stored entries, used to find the entries that differ between two peers
+ * without comparing every entry. A node covers all location keys with the same first {@link #BITS_PER_LEVEL} bits per
+ * level, the root covers all of them and a leaf the first {@link #BITS_PER_LEVEL} * {@link #DEPTH} bits.
+ * <p>
+ * The hash of an entry is the SHA-1 of its key and the hash of its value, and the hash of a node is the XOR of the
+ * hashes of all entries it covers. As XOR does not depend on the order, a put or remove updates one node per level,
+ * and the tree never needs to be rebuilt. Entries with the prepare flag are left out, as in a digest.
+ * </p>
+ * <p>
+ * A node covers the entries of all location keys in its range, and two peers store different sets of location keys.
+ * To compare only some location keys, the tree keeps the hash of each location key as well, see
+ * {@link #hashes(int, Collection)}.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class RangeHashTree {
+
+    public static final int BITS_PER_LEVEL = 4;
+    public static final int FAN_OUT = 1 << BITS_PER_LEVEL;
+    public static final int DEPTH = 4;
+
+    private static final int INT_ARRAY_SIZE = Number160.INT_ARRAY_SIZE;
+    private static final int KEY_SIZE = Number160.BYTE_ARRAY_SIZE * 5;
+
+    // the hashes of level l, FAN_OUT^l nodes with INT_ARRAY_SIZE ints each
+    private final int[][] levels = new int[DEPTH + 1][];
+    // the XOR of the hashes of the entries of each location key
+    private final Map<Number160, Number160> locationHashes = new HashMap<Number160, Number160>();
+
+    public RangeHashTree() {
+        for (int level = 0, nodes = 1; level <= DEPTH; level++, nodes *= FAN_OUT) {
+            levels[level] = new int[nodes * INT_ARRAY_SIZE];
+        }
+    }
+
+    /**
+     * Adds the hash of an entry to the nodes that cover it.
+     *
+     * @param key
+     *            The key of the entry
+     * @param data
+     *            The value of the entry
+     */
+    public void add(final Number640 key, final Data data) {
+        xor(key, data);
+    }
+
+    /**
+     * Removes the hash of an entry from the nodes that cover it. The value needs to be the one that was added.
+     *
+     * @param key
+     *            The key of the entry
+     * @param data
+     *            The value of the entry
+     */
+    public void remove(final Number640 key, final Data data) {
+        // XOR is its own inverse
+        xor(key, data);
+    }
+
+    /**
+     * @param level
+     *            The level of the node, 0 is the root
+     * @param index
+     *            The index of the node within its level, see {@link #index(Number160, int)}
+     * @return The XOR of the hashes of all entries this node covers
+     */
+    public synchronized Number160 hash(final int level, final int index) {
+        final int[] val = new int[INT_ARRAY_SIZE];
+        System.arraycopy(levels[level], index * INT_ARRAY_SIZE, val, 0, INT_ARRAY_SIZE);
+        return new Number160(val);
+    }
+
+    /**
+     * @param locationKey
+     *            The location key
+     * @return The XOR of the hashes of the entries of this location key
+     */
+    public synchronized Number160 hash(final Number160 locationKey) {
+        final Number160 hash = locationHashes.get(locationKey);
+        return hash == null ? Number160.ZERO : hash;
+    }
+
+    /**
+     * Calculates the hashes of the nodes on one level, but only over the entries of the given location keys. Two peers
+     * that store other location keys as well get the same hashes if they have the same entries for these keys.
+     *
+     * @param level
+     *            The level of the nodes
+     * @param locationKeys
+     *            The location keys to include
+     * @return The hashes by the index of the node, for the nodes that cover one of the location keys
+     */
+    public synchronized Map<Integer, Number160> hashes(final int level, final Collection<Number160> locationKeys) {
+        final Map<Integer, Number160> hashes = new HashMap<Integer, Number160>();
+        // a location key that is included twice would cancel itself out
+        for (Number160 locationKey : new HashSet<Number160>(locationKeys)) {
+            final int index = index(locationKey, level);
+            final Number160 hash = hashes.get(index);
+            final Number160 locationHash = hash(locationKey);
+            hashes.put(index, hash == null ? locationHash : hash.xor(locationHash));
+        }
+        return hashes;
+    }
+
+    /**
+     * @param locationKey
+     *            The location key
+     * @param level
+     *            The level of the tree
+     * @return The index of the node that covers the location key on this level
+     */
+    public static int index(final Number160 locationKey, final int level) {
+        if (level == 0) {
+            return 0;
+        }
+        return locationKey.intAt(0) >>> (Integer.SIZE - (level * BITS_PER_LEVEL));
+    }
+
+    /**
+     * @param index
+     *            The index of a node
+     * @param child
+     *            The number of the child, from 0 to {@link #FAN_OUT} - 1
+     * @return The index of the child node on the next level
+     */
+    public static int childIndex(final int index, final int child) {
+        return (index << BITS_PER_LEVEL) | child;
+    }
+
+    /**
+     * @return The smallest location key the node covers
+     */
+    public static Number160 fromKey(final int level, final int index) {
+        if (level == 0) {
+            return Number160.ZERO;
+        }
+        return new Number160(index << (Integer.SIZE - (level * BITS_PER_LEVEL)), 0, 0, 0, 0);
+    }
+
+    /**
+     * @return The largest location key the node covers
+     */
+    public static Number160 toKey(final int level, final int index) {
+        if (level == 0) {
+            return Number160.MAX_VALUE;
+        }
+        final int shift = Integer.SIZE - (level * BITS_PER_LEVEL);
+        return new Number160((index << shift) | ((1 << shift) - 1), -1, -1, -1, -1);
+    }
+
+    /**
+     * @return The hash of an entry, which changes if the key or the value changes
+     */
+    public static Number160 entryHash(final Number640 key, final Data data) {
+        final byte[] me = new byte[KEY_SIZE];
+        int offset = key.locationKey().toByteArray(me, 0);
+        offset = key.domainKey().toByteArray(me, offset);
+        offset = key.contentKey().toByteArray(me, offset);
+        offset = key.versionKey().toByteArray(me, offset);
+        data.hash().toByteArray(me, offset);
+        return Utils.makeSHAHash(ByteBuffer.wrap(me));
+    }
+
+    private void xor(final Number640 key, final Data data) {
+        if (data == null || data.hasPrepareFlag()) {
+            return;
+        }
+        final Number160 hash = entryHash(key, data);
+        final Number160 locationKey = key.locationKey();
+        synchronized (this) {
+            for (int level = 0; level <= DEPTH; level++) {
+                final int[] nodes = levels[level];
+                final int offset = index(locationKey, level) * INT_ARRAY_SIZE;
+                for (int i = 0; i < INT_ARRAY_SIZE; i++) {
+                    nodes[offset + i] ^= hash.intAt(i);
+                }
+            }
+            final Number160 locationHash = locationHashes.get(locationKey);
+            final Number160 newLocationHash = locationHash == null ? hash : locationHash.xor(hash);
+            if (newLocationHash.isZero()) {
+                locationHashes.remove(locationKey);
+            } else {
+                locationHashes.put(locationKey, newLocationHash);
+            }
+        }
+    }
+}
@@ -64,6 +64,14 @@ public interface Storage {
 
     public abstract void removeTimeout(Number640 key);
 
+    /**
+     * Returns the keys that expire before the given time. The returned keys may already be removed from the timeout
+     * index, but {@link #removeTimeout(Number640)} is still called for each of them.
+     * 
+     * @param to
+     *            The time in milliseconds, exclusive
+     * @return The expired keys
+     */
     public abstract Collection<Number640> subMapTimeout(long to);
     
     public int storageCheckIntervalMillis();
@@ -26,8 +26,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -78,11 +82,15 @@ public class StorageLayer implements DigestStorage {
 	// anyone
 	final private Collection<Number160> removedDomains = new HashSet<Number160>();
 
-	final private RangeLock<Number640> rangeLock = new RangeLock<Number640>();
-	final private RangeLock<Number640> responsibilityLock = new RangeLock<Number640>();
+	final private StripedRangeLock rangeLock = new StripedRangeLock();
+	final private StripedRangeLock responsibilityLock = new StripedRangeLock();
 	
 	final private Storage backend;
 
+	// built on first use, maintained on every put and remove afterwards
+	private volatile RangeHashTree rangeHashTree;
+	final private ConcurrentHashMap<Number160, NavigableSet<Number640>> domainIndexes = new ConcurrentHashMap<Number160, NavigableSet<Number640>>();
+
 	public StorageLayer(Storage backend) {
 		this.backend = backend;
 	}
@@ -135,37 +143,37 @@ public class StorageLayer implements DigestStorage {
 		return removedDomains.contains(domain);
 	}
 	
-	private RangeLock<Number640>.Range lock(Number640 min, Number640 max) { 
+	private StripedRangeLock.Range lock(Number640 min, Number640 max) { 
 		return rangeLock.lock(min, max);
 	}
 	
-	private RangeLock<Number640>.Range lock(Number640 number640) { 
+	private StripedRangeLock.Range lock(Number640 number640) { 
 		return rangeLock.lock(number640, number640);
 	}
 	
-	private RangeLock<Number640>.Range lock(Number480 number480) { 
+	private StripedRangeLock.Range lock(Number480 number480) { 
 		return rangeLock.lock(new Number640(number480, Number160.ZERO), new Number640(number480, Number160.MAX_VALUE));
 	}
 	
-	private RangeLock<Number640>.Range lock(Number320 number320) { 
+	private StripedRangeLock.Range lock(Number320 number320) { 
 		return rangeLock.lock(
 				new Number640(number320, Number160.ZERO, Number160.ZERO), 
 				new Number640(number320, Number160.MAX_VALUE, Number160.MAX_VALUE));
 	}
 	
-	private RangeLock<Number640>.Range lock(Number160 number160) { 
+	private StripedRangeLock.Range lock(Number160 number160) { 
 		return rangeLock.lock(
 				new Number640(number160, Number160.ZERO, Number160.ZERO, Number160.ZERO), 
 				new Number640(number160, Number160.MAX_VALUE, Number160.MAX_VALUE, Number160.MAX_VALUE));
 	}
 	
-	private RangeLock<Number640>.Range lockResponsibility(Number160 number160) { 
+	private StripedRangeLock.Range lockResponsibility(Number160 number160) { 
 		return responsibilityLock.lock(
 				new Number640(number160, Number160.ZERO, Number160.ZERO, Number160.ZERO), 
 				new Number640(number160, Number160.MAX_VALUE, Number160.MAX_VALUE, Number160.MAX_VALUE));
 	}
 	
-	private RangeLock<Number640>.Range lock() { 
+	private StripedRangeLock.Range lock() { 
 		return rangeLock.lock(
 				new Number640(Number160.ZERO, Number160.ZERO, Number160.ZERO, Number160.ZERO), 
 				new Number640(Number160.MAX_VALUE, Number160.MAX_VALUE, Number160.MAX_VALUE, Number160.MAX_VALUE));
@@ -176,11 +184,44 @@ public class StorageLayer implements DigestStorage {
 		if(dataMap.isEmpty()) {
 			return Collections.emptyMap();
 		}
+		// commit all keys at once, after the lock has been released
+		final BatchedStorage batch = beginBatch();
+		try {
+			return putAllInternal(dataMap, publicKey, putIfAbsent, domainProtection, sendSelf);
+		} finally {
+			endBatch(batch);
+		}
+	}
+
+	/**
+	 * Starts a batch if the backend supports it. Every modification starts a batch before it takes its lock and ends
+	 * it after the lock has been released, so that waiting for the commit does not block other threads on that range.
+	 * 
+	 * @return The backend if it supports batches, or null
+	 */
+	private BatchedStorage beginBatch() {
+		if (backend instanceof BatchedStorage) {
+			final BatchedStorage batch = (BatchedStorage) backend;
+			batch.beginBatch();
+			return batch;
+		}
+		return null;
+	}
+
+	private static void endBatch(final BatchedStorage batch) {
+		if (batch != null) {
+			batch.endBatch();
+		}
+	}
+
+	private Map<Number640, Enum<?>> putAllInternal(final NavigableMap<Number640, Data> dataMap,
+	        final PublicKey publicKey, final boolean putIfAbsent, final boolean domainProtection,
+	        final boolean sendSelf) {
 		final Number640 min = dataMap.firstKey();
 		final Number640 max = dataMap.lastKey();
 		final Map<Number640, Enum<?>> retVal = new HashMap<Number640, Enum<?>>();
 		final HashSet<Number480> keysToCheck = new HashSet<Number480>();
-		final RangeLock<Number640>.Range lock = lock(min, max);
+		final StripedRangeLock.Range lock = lock(min, max);
 		try {
 			for(Map.Entry<Number640, Data> entry: dataMap.entrySet()) {
 				Number640 key = entry.getKey();
@@ -225,7 +266,7 @@ public class StorageLayer implements DigestStorage {
 					}
 				}
 				
-				Data oldData = backend.put(key, newData);
+				Data oldData = putBackend(key, newData);
 				
 				long expiration = newData.expirationMillis();
 				// handle timeout
@@ -279,7 +320,8 @@ public class StorageLayer implements DigestStorage {
 	}
 
 	public Pair<Data, Enum<?>> remove(Number640 key, PublicKey publicKey, boolean returnData) {
-		RangeLock<Number640>.Range lock = lock(key);
+		final BatchedStorage batch = beginBatch();
+		StripedRangeLock.Range lock = lock(key);
 		try {
 			if (!canClaimDomain(key.locationAndDomainKey(), publicKey)) {
 				return new Pair<Data, Enum<?>>(null, PutStatus.FAILED_SECURITY);
@@ -291,7 +333,9 @@ public class StorageLayer implements DigestStorage {
 				return new Pair<Data, Enum<?>>(null, PutStatus.NOT_FOUND);
 			}
 			backend.removeTimeout(key);
-			Data removed = backend.remove(key, returnData);
+			// the range hashes need the removed value
+			Data removed = backend.remove(key, returnData || rangeHashTree != null);
+			updateIndexes(key, removed, null);
 			if(removed != null && returnData) {
 				removed.releaseAfterSend();
 			} else if(removed != null) {
@@ -300,11 +344,12 @@ public class StorageLayer implements DigestStorage {
 			return new Pair<Data, Enum<?>>(removed, PutStatus.OK);
 		} finally {
 			lock.unlock();
+			endBatch(batch);
 		}
 	}
 
 	public Data get(Number640 key) {
-		RangeLock<Number640>.Range lock = lock(key);
+		StripedRangeLock.Range lock = lock(key);
 		try {
 			return getInternal(key);
 		} finally {
@@ -322,7 +367,7 @@ public class StorageLayer implements DigestStorage {
 	}
 
 	public NavigableMap<Number640, Data> get(Number640 from, Number640 to, int limit, boolean ascending) {
-		RangeLock<Number640>.Range lock = rangeLock.lock(from, to);
+		StripedRangeLock.Range lock = rangeLock.lock(from, to);
 		try {
 			NavigableMap<Number640, Data> tmp = backend.subMap(from, to, limit, ascending);
 			removePrepared(tmp);
@@ -334,7 +379,7 @@ public class StorageLayer implements DigestStorage {
 	}
 
 	public NavigableMap<Number640, Data> getLatestVersion(Number640 key) {
-		RangeLock<Number640>.Range lock = lock(key.locationAndDomainAndContentKey());
+		StripedRangeLock.Range lock = lock(key.locationAndDomainAndContentKey());
 		try {
 			NavigableMap<Number640, Data> tmp = backend.subMap(key.minVersionKey(), key.maxVersionKey(), -1, true);
 			removePrepared(tmp);
@@ -404,7 +449,7 @@ public class StorageLayer implements DigestStorage {
 	}
 
 	public NavigableMap<Number640, Data> get() {
-		RangeLock<Number640>.Range lock = lock();
+		StripedRangeLock.Range lock = lock();
 		try {
 			return backend.map();
 		} finally {
@@ -412,8 +457,123 @@ public class StorageLayer implements DigestStorage {
 		}
 	}
 
+	/**
+	 * Returns the hash tree over the location keys of all entries, which is used to find the entries that differ
+	 * between replicas. The tree is built from all entries on the first call, and then maintained on every put and
+	 * remove.
+	 * 
+	 * @return The hash tree of this storage
+	 */
+	public RangeHashTree rangeHashTree() {
+		RangeHashTree tree = rangeHashTree;
+		if (tree != null) {
+			return tree;
+		}
+		// no modification can happen while we hold the lock for all keys
+		StripedRangeLock.Range lock = lock();
+		try {
+			if (rangeHashTree == null) {
+				tree = new RangeHashTree();
+				for (Map.Entry<Number640, Data> entry : backend.map().entrySet()) {
+					tree.add(entry.getKey(), entry.getValue());
+				}
+				rangeHashTree = tree;
+			}
+			return rangeHashTree;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the keys of all entries of one domain, without copying the entries. This is for extensions that store
+	 * their data under their own domain key and need to check it periodically. The keys of a domain are collected from
+	 * all entries on the first call, and then maintained on every put and remove.
+	 * 
+	 * @param domainKey
+	 *            The domain key
+	 * @return A copy of the keys of the entries with this domain key
+	 */
+	public NavigableSet<Number640> keys(Number160 domainKey) {
+		NavigableSet<Number640> index = domainIndexes.get(domainKey);
+		if (index == null) {
+			// no modification can happen while we hold the lock for all keys
+			StripedRangeLock.Range lock = lock();
+			try {
+				index = domainIndexes.get(domainKey);
+				if (index == null) {
+					index = new ConcurrentSkipListSet<Number640>();
+					for (Number640 key : backend.map().keySet()) {
+						if (key.domainKey().equals(domainKey)) {
+							index.add(key);
+						}
+					}
+					domainIndexes.put(domainKey, index);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return new TreeSet<Number640>(index);
+	}
+
+	/**
+	 * Puts the data into the backend and updates the indexes. An {@link EvictingStorage} may remove older versions
+	 * of the entry, e.g., if it keeps only maxVersions, which are removed from the indexes as well. Needs to be
+	 * called while holding the lock of the key.
+	 */
+	private Data putBackend(Number640 key, Data newData) {
+		if (!(backend instanceof EvictingStorage)) {
+			final Data oldData = backend.put(key, newData);
+			updateIndexes(key, oldData, newData);
+			return oldData;
+		}
+		final Map<Number640, Data> evicted = new HashMap<Number640, Data>();
+		final Data oldData = ((EvictingStorage) backend).put(key, newData, evicted);
+		for (Map.Entry<Number640, Data> entry : evicted.entrySet()) {
+			updateIndexes(entry.getKey(), entry.getValue(), null);
+			entry.getValue().release();
+		}
+		updateIndexes(key, oldData, newData);
+		return oldData;
+	}
+
+	/**
+	 * Releases the values of an in place update if the backend does not keep the objects, e.g., the
+	 * {@link StorageOffHeap}, which returns decoded copies that hold its direct buffers. A backend that keeps the
+	 * objects returns the updated value itself as the replaced one, which must not be released.
+	 */
+	private static void releaseCopies(final Data data, final Data oldData) {
+		if (oldData != null && oldData != data) {
+			oldData.release();
+			data.release();
+		}
+	}
+
+	/**
+	 * Updates the range hashes and the domain indexes, if they were built. Needs to be called while holding the lock of
+	 * the key.
+	 */
+	private void updateIndexes(Number640 key, Data oldData, Data newData) {
+		RangeHashTree tree = rangeHashTree;
+		if (tree != null) {
+			tree.remove(key, oldData);
+			tree.add(key, newData);
+		}
+		if (!domainIndexes.isEmpty()) {
+			final NavigableSet<Number640> index = domainIndexes.get(key.domainKey());
+			if (index != null) {
+				if (newData != null) {
+					index.add(key);
+				} else {
+					index.remove(key);
+				}
+			}
+		}
+	}
+
 	public boolean contains(Number640 key) {
-		RangeLock<Number640>.Range lock = lock(key);
+		StripedRangeLock.Range lock = lock(key);
 		try {
 			return backend.contains(key);
 		} finally {
@@ -424,7 +584,7 @@ public class StorageLayer implements DigestStorage {
 	public NavigableMap<Number640, Data> get(Number640 from, Number640 to, SimpleBloomFilter<Number160> contentKeyBloomFilter,
 	        SimpleBloomFilter<Number160> versionKeyBloomFilter, SimpleBloomFilter<Number160> contentBloomFilter, 
 	        int limit, boolean ascending, boolean isBloomFilterAnd) {
-		RangeLock<Number640>.Range lock = rangeLock.lock(from, to);
+		StripedRangeLock.Range lock = rangeLock.lock(from, to);
 		try {
 			NavigableMap<Number640, Data> tmp = backend.subMap(from, to, limit, ascending);
 			Iterator<Map.Entry<Number640, Data>> iterator = tmp.entrySet().iterator();
@@ -473,7 +633,8 @@ public class StorageLayer implements DigestStorage {
 	}
 
 	public NavigableMap<Number640, Data> removeReturnData(Number640 from, Number640 to, PublicKey publicKey) {
-		RangeLock<Number640>.Range lock = rangeLock.lock(from, to);
+		final BatchedStorage batch = beginBatch();
+		StripedRangeLock.Range lock = rangeLock.lock(from, to);
 		try {
 			Map<Number640, Data> tmp = backend.subMap(from, to, -1, true);
 			NavigableMap<Number640, Data> result = new TreeMap<Number640, Data>();
@@ -490,6 +651,7 @@ public class StorageLayer implements DigestStorage {
 					if (toRemove!= null && (toRemove.publicKey() == null || toRemove.publicKey().equals(publicKey))) {
 						backend.removeTimeout(key);
 						Data removed = backend.remove(key, true);
+						updateIndexes(key, removed, null);
 						removed.releaseAfterSend();
 						result.put(key, removed);
 					}
@@ -498,11 +660,13 @@ public class StorageLayer implements DigestStorage {
 			return result;
 		} finally {
 			lock.unlock();
+			endBatch(batch);
 		}
 	}
 
 	public SortedMap<Number640, Byte> removeReturnStatus(Number640 from, Number640 to, PublicKey publicKey) {
-		RangeLock<Number640>.Range lock = rangeLock.lock(from, to);
+		final BatchedStorage batch = beginBatch();
+		StripedRangeLock.Range lock = rangeLock.lock(from, to);
 		try {
 			Map<Number640, Data> tmp = backend.subMap(from, to, -1, true);
 			SortedMap<Number640, Byte> result = new TreeMap<Number640, Byte>();
@@ -516,24 +680,44 @@ public class StorageLayer implements DigestStorage {
 			return result;
 		} finally {
 			lock.unlock();
+			endBatch(batch);
 		}
 	}
 
 	public void checkTimeout() {
 		long time = System.currentTimeMillis();
 		Collection<Number640> toRemove = backend.subMapTimeout(time);
-		for (Number640 key : toRemove) {
-			RangeLock<Number640>.Range lock = lock(key);
+		if (toRemove.isEmpty()) {
+			return;
+		}
+		// sorted by location key, so that each location is locked once for all its expired keys
+		NavigableSet<Number640> sorted = new TreeSet<Number640>(toRemove);
+		final BatchedStorage batch = beginBatch();
+		try {
+			checkTimeout(sorted);
+		} finally {
+			endBatch(batch);
+		}
+	}
+
+	private void checkTimeout(final NavigableSet<Number640> sorted) {
+		while (!sorted.isEmpty()) {
+			Number160 locationKey = sorted.first().locationKey();
+			NavigableSet<Number640> keys = sorted.headSet(new Number640(locationKey, Number160.MAX_VALUE,
+			        Number160.MAX_VALUE, Number160.MAX_VALUE), true);
+			StripedRangeLock.Range lock = lock(locationKey);
 			try {
-				Data oldData = backend.remove(key, false);
-				if(oldData != null) {
-					oldData.release();
+				for (Number640 key : keys) {
+					Data oldData = backend.remove(key, rangeHashTree != null);
+					updateIndexes(key, oldData, null);
+					if (oldData != null) {
+						oldData.release();
+					}
+					backend.removeTimeout(key);
 				}
-				backend.removeTimeout(key);
 				// remove responsibility if we don't have any data stored under
 				// locationkey
-				Number160 locationKey = key.locationKey();
-				RangeLock<Number640>.Range lockResp= lockResponsibility(locationKey);
+				StripedRangeLock.Range lockResp = lockResponsibility(locationKey);
 				try {
 					if (isEmpty(locationKey)) {
 						backend.removeResponsibility(locationKey);
@@ -544,6 +728,7 @@ public class StorageLayer implements DigestStorage {
 			} finally {
 				lock.unlock();
 			}
+			keys.clear();
 		}
 	}
 
@@ -560,7 +745,7 @@ public class StorageLayer implements DigestStorage {
 	@Override
     public DigestInfo digest(Number640 from, Number640 to, int limit, boolean ascending) {
 		DigestInfo digestInfo = new DigestInfo();
-		RangeLock<Number640>.Range lock = rangeLock.lock(from, to);
+		StripedRangeLock.Range lock = rangeLock.lock(from, to);
 		try {
 			Map<Number640, Data> tmp = backend.subMap(from, to, limit, ascending);
 			for (Map.Entry<Number640, Data> entry : tmp.entrySet()) {
@@ -581,7 +766,7 @@ public class StorageLayer implements DigestStorage {
     public DigestInfo digest(Number320 locationAndDomainKey, SimpleBloomFilter<Number160> keyBloomFilter,
 	        SimpleBloomFilter<Number160> contentKeyBloomFilter, int limit, boolean ascending, boolean isBloomFilterAnd) {
 		DigestInfo digestInfo = new DigestInfo();
-		RangeLock<Number640>.Range lock = lock(locationAndDomainKey);
+		StripedRangeLock.Range lock = lock(locationAndDomainKey);
 		try {
 			Number640 from = new Number640(locationAndDomainKey, Number160.ZERO, Number160.ZERO);
 			Number640 to = new Number640(locationAndDomainKey, Number160.MAX_VALUE, Number160.MAX_VALUE);
@@ -618,7 +803,7 @@ public class StorageLayer implements DigestStorage {
     public DigestInfo digest(Collection<Number640> number640s) {
 		DigestInfo digestInfo = new DigestInfo();
 		for (Number640 number640 : number640s) {
-			RangeLock<Number640>.Range lock = lock(number640);
+			StripedRangeLock.Range lock = lock(number640);
 			try {
 				if (backend.contains(number640)) {
 					Data data = getInternal(number640);
@@ -738,12 +923,12 @@ public class StorageLayer implements DigestStorage {
 		return key.equals(Utils.makeSHAHash(publicKey.getEncoded()));
 	}
 
-	public RangeLock<Number640> rangeLock() {
+	public StripedRangeLock rangeLock() {
 		return rangeLock;
 	}
 
 	public Collection<Number160> findContentForResponsiblePeerID(Number160 peerID) {
-		RangeLock<Number640>.Range lockResp = lockResponsibility(peerID);
+		StripedRangeLock.Range lockResp = lockResponsibility(peerID);
 		try {
 			Collection<Number160> contentIDs = backend.findContentForResponsiblePeerID(peerID);
 			if (contentIDs == null) {
@@ -757,7 +942,7 @@ public class StorageLayer implements DigestStorage {
 	}
 	
 	public Number160 findPeerIDsForResponsibleContent(Number160 locationKey) {
-		RangeLock<Number640>.Range lockResp = lockResponsibility(locationKey);
+		StripedRangeLock.Range lockResp = lockResponsibility(locationKey);
 		try {
 			return backend.findPeerIDsForResponsibleContent(locationKey);
 		} finally {
@@ -766,26 +951,30 @@ public class StorageLayer implements DigestStorage {
 	}
 	
 	public boolean updateResponsibilities(Number160 locationKey, Number160 peerId) {
-		RangeLock<Number640>.Range lockResp1 = lockResponsibility(peerId);
-		RangeLock<Number640>.Range lockResp2 = lockResponsibility(locationKey);
+		final BatchedStorage batch = beginBatch();
+		StripedRangeLock.Range lockResp1 = lockResponsibility(peerId);
+		StripedRangeLock.Range lockResp2 = lockResponsibility(locationKey);
         try {
             return backend.updateResponsibilities(locationKey, peerId);
         } finally {
         	lockResp1.unlock();
         	lockResp2.unlock();
+        	endBatch(batch);
         }
 	}
 	
 	public void removeResponsibility(Number160 locationKey, boolean keepData) {
-		RangeLock<Number640>.Range lockResp = lockResponsibility(locationKey);
+		final BatchedStorage batch = beginBatch();
+		StripedRangeLock.Range lockResp = lockResponsibility(locationKey);
 		try {
 			if (!keepData) {
-				RangeLock<Number640>.Range lock = lock(locationKey);
+				StripedRangeLock.Range lock = lock(locationKey);
 				try {
 					final NavigableMap<Number640, Data> removed = backend.remove(
 						new Number640(locationKey, Number160.ZERO, Number160.ZERO, Number160.ZERO),
 						new Number640(locationKey, Number160.MAX_VALUE, Number160.MAX_VALUE, Number160.MAX_VALUE));
 					for(Map.Entry<Number640,Data> entry:removed.entrySet()) {
+						updateIndexes(entry.getKey(), entry.getValue(), null);
 						if(entry.getValue() != null) {
 							entry.getValue().release();
 						}
@@ -798,6 +987,7 @@ public class StorageLayer implements DigestStorage {
         	backend.removeResponsibility(locationKey);
         } finally {
         	lockResp.unlock();
+        	endBatch(batch);
         }
 	}
 
@@ -821,7 +1011,8 @@ public class StorageLayer implements DigestStorage {
 	}
 
 	public Enum<?> updateMeta(PublicKey publicKey, Number640 key, Data newData) {
-		RangeLock<Number640>.Range lock = lock(key);
+		final BatchedStorage batch = beginBatch();
+		StripedRangeLock.Range lock = lock(key);
 		try {
 			if (!securityEntryCheck(key.locationAndDomainAndContentKey(), publicKey, newData.publicKey(),
 			        newData.isProtectedEntry())) {
@@ -848,13 +1039,14 @@ public class StorageLayer implements DigestStorage {
 				// handle timeout
 				backend.addTimeout(key, expiration);
 				// no release of old data, as we just update it
-				backend.put(key, data);
+				releaseCopies(data, backend.put(key, data));
 				return PutStatus.OK;
 			} else {
 				return PutStatus.NOT_FOUND;
 			}
 		} finally {
 			lock.unlock();
+			endBatch(batch);
 		}
 	}
 
@@ -863,7 +1055,8 @@ public class StorageLayer implements DigestStorage {
     }
 
 	public Enum<?> putConfirm(PublicKey publicKey, Number640 key, Data newData) {
-		RangeLock<Number640>.Range lock = lock(key);
+		final BatchedStorage batch = beginBatch();
+		StripedRangeLock.Range lock = lock(key);
 		try {
 			if (!securityEntryCheck(key.locationAndDomainAndContentKey(), publicKey, newData.publicKey(),
 					newData.isProtectedEntry())) {
@@ -872,8 +1065,13 @@ public class StorageLayer implements DigestStorage {
 
 			final Data data = backend.get(key);
 			if (data != null) {
+				final boolean prepared = data.hasPrepareFlag();
 				// remove prepare flag
 				data.prepareFlag(false);
+				if (prepared) {
+					// the entry is part of the range hashes once confirmed
+					updateIndexes(key, null, data);
+				}
 
 				data.validFromMillis(newData.validFromMillis());
 				data.ttlSeconds(newData.ttlSeconds());
@@ -881,14 +1079,15 @@ public class StorageLayer implements DigestStorage {
 				long expiration = data.expirationMillis();
 				// handle timeout
 				backend.addTimeout(key, expiration);
-				Data oldData = backend.put(key, data);
 				//don't release data as we just update
+				releaseCopies(data, backend.put(key, data));
 				return PutStatus.OK;
 			} else {
 				return PutStatus.NOT_FOUND;
 			}
 		} finally {
 			lock.unlock();
+			endBatch(batch);
 		}
 		//TODO: check for FORKS!
 	}
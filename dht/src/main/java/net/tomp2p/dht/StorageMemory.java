@@ -17,15 +17,12 @@
 package net.tomp2p.dht;
 
 import java.security.PublicKey;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -39,7 +36,7 @@ import net.tomp2p.storage.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class StorageMemory implements Storage {
+public class StorageMemory implements EvictingStorage {
 
 	public static final int DEFAULT_STORAGE_CHECK_INTERVAL= 60 * 1000;
 	public static final int DEFAULT_MAX_VERSIONS= -1;
@@ -51,8 +48,7 @@ public class StorageMemory implements Storage {
     final private NavigableMap<Number640, Data> dataMap = new ConcurrentSkipListMap<Number640, Data>();
 
     // Maintenance
-    final private Map<Number640, Long> timeoutMap = new ConcurrentHashMap<Number640, Long>();
-    final private ConcurrentSkipListMap<Long, Set<Number640>> timeoutMapRev = new ConcurrentSkipListMap<Long, Set<Number640>>();
+    final private TimeoutWheel timeoutWheel = new TimeoutWheel();
 
     // Protection
     final private Map<Number320, PublicKey> protectedMap = new ConcurrentHashMap<Number320, PublicKey>();
@@ -81,6 +77,11 @@ public class StorageMemory implements Storage {
 	// Core
     @Override
     public Data put(Number640 key, Data value) {
+        return put(key, value, null);
+    }
+
+    @Override
+    public Data put(Number640 key, Data value, Map<Number640, Data> evicted) {
         final Data oldData = dataMap.put(key, value);
         if (maxVersions > 0) {
         	NavigableMap<Number640, Data> versions = dataMap.subMap(
@@ -91,9 +92,10 @@ public class StorageMemory implements Storage {
 			        && versions.firstKey().versionKey().timestamp() + maxVersions <= versions.lastKey().versionKey()
 			                .timestamp()) {
 				Map.Entry<Number640, Data> entry = versions.pollFirstEntry();
-				Data removed = remove(entry.getKey(), false);
-				if(removed != null) {
-					removed.release();
+				if (evicted != null) {
+					evicted.put(entry.getKey(), entry.getValue());
+				} else {
+					entry.getValue().release();
 				}
 				removeTimeout(entry.getKey());
 			}
@@ -230,43 +232,17 @@ public class StorageMemory implements Storage {
     // Maintenance
     @Override
     public void addTimeout(Number640 key, long expiration) {
-        Long oldExpiration = timeoutMap.put(key, expiration);
-        Set<Number640> tmp = putIfAbsent2(expiration,
-                Collections.newSetFromMap(new ConcurrentHashMap<Number640, Boolean>()));
-        tmp.add(key);
-        if (oldExpiration == null) {
-            return;
-        }
-        removeRevTimeout(key, oldExpiration);
+        timeoutWheel.add(key, expiration);
     }
 
     @Override
     public void removeTimeout(Number640 key) {
-        Long expiration = timeoutMap.remove(key);
-        if (expiration == null) {
-            return;
-        }
-        removeRevTimeout(key, expiration);
-    }
-
-    private void removeRevTimeout(Number640 key, Long expiration) {
-        Set<Number640> tmp = timeoutMapRev.get(expiration);
-        if (tmp != null) {
-            tmp.remove(key);
-            if (tmp.isEmpty()) {
-                timeoutMapRev.remove(expiration);
-            }
-        }
+        timeoutWheel.remove(key);
     }
 
     @Override
     public Collection<Number640> subMapTimeout(long to) {
-        SortedMap<Long, Set<Number640>> tmp = timeoutMapRev.subMap(0L, to);
-        Collection<Number640> toRemove = new ArrayList<Number640>();
-        for (Set<Number640> set : tmp.values()) {
-            toRemove.addAll(set);
-        }
-        return toRemove;
+        return timeoutWheel.expire(to);
     }
 
     // Protection
@@ -288,11 +264,6 @@ public class StorageMemory implements Storage {
         return retVal;
     }
 
-    private Set<Number640> putIfAbsent2(long expiration, Set<Number640> hashSet) {
-        Set<Number640> timeouts = timeoutMapRev.putIfAbsent(expiration, hashSet);
-        return timeouts == null ? hashSet : timeouts;
-    }
-
 	@Override
 	public Number160 findPeerIDsForResponsibleContent(Number160 locationKey) {
 		return responsibilityMap.get(locationKey);
@@ -351,8 +322,7 @@ public class StorageMemory implements Storage {
     public void close() {
         dataMap.clear();
         protectedMap.clear();
-        timeoutMap.clear();
-        timeoutMapRev.clear();
+        timeoutWheel.clear();
     }
 
 	@Override
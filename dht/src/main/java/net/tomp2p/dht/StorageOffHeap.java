@@ -0,0 +1,285 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.dht;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.SignatureException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.tomp2p.connection.DSASignatureFactory;
+import net.tomp2p.connection.SignatureFactory;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.AlternativeCompositeByteBuf;
+import net.tomp2p.storage.Data;
+
+/**
+ * A memory storage that keeps the values outside of the Java heap. Each value is stored with its header and signature
+ * in one direct buffer of a pooled allocator, thus, the heap only holds the keys. A {@link Data} object returned by
+ * this storage is decoded from the direct buffer and wraps the value without copying it. Such a data object holds a
+ * reference to the direct buffer, which is returned to the pool once the entry is removed or expired and all the data
+ * objects that wrap it are released.
+ * 
+ * Maintenance, protection, and responsibility are handled as in {@link StorageMemory}.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+public class StorageOffHeap extends StorageMemory {
+
+    // Core, the buffer holds validFromMillis, header, value, and signature
+    final private ConcurrentSkipListMap<Number640, ByteBuf> dataMap = new ConcurrentSkipListMap<Number640, ByteBuf>();
+
+    final private ByteBufAllocator allocator;
+    final private SignatureFactory signatureFactory;
+
+    public StorageOffHeap() {
+        this(DEFAULT_STORAGE_CHECK_INTERVAL, DEFAULT_MAX_VERSIONS);
+    }
+
+    public StorageOffHeap(int storageCheckIntervalMillis) {
+        this(storageCheckIntervalMillis, DEFAULT_MAX_VERSIONS);
+    }
+
+    public StorageOffHeap(int storageCheckIntervalMillis, int maxVersions) {
+        this(storageCheckIntervalMillis, maxVersions, PooledByteBufAllocator.DEFAULT, new DSASignatureFactory());
+    }
+
+    /**
+     * @param storageCheckIntervalMillis
+     *            The interval to check for expired entries
+     * @param maxVersions
+     *            The number of versions to keep for a key, or -1 to keep all
+     * @param allocator
+     *            The allocator for the direct buffers that hold the values
+     * @param signatureFactory
+     *            The factory to encode and decode the public keys and signatures of the values
+     */
+    public StorageOffHeap(int storageCheckIntervalMillis, int maxVersions, ByteBufAllocator allocator,
+            SignatureFactory signatureFactory) {
+        super(storageCheckIntervalMillis, maxVersions);
+        this.allocator = allocator;
+        this.signatureFactory = signatureFactory;
+    }
+
+    // Core
+    /**
+     * Stores the value as {@link StorageMemory#put(Number640, Data, Map)} does. The replaced value is decoded from
+     * its direct buffer and keeps that buffer from going back to the pool, thus the caller needs to release it. The
+     * evicted versions are only decoded if they are reported.
+     */
+    @Override
+    public Data put(Number640 key, Data value, Map<Number640, Data> evicted) {
+        final ByteBuf oldEntry = dataMap.put(key, encode(value));
+        final Data oldData = release(oldEntry);
+        if (maxVersions > 0) {
+            NavigableMap<Number640, ByteBuf> versions = dataMap.subMap(
+                    new Number640(key.locationKey(), key.domainKey(), key.contentKey(), Number160.ZERO), true,
+                    new Number640(key.locationKey(), key.domainKey(), key.contentKey(), Number160.MAX_VALUE), true);
+
+            while (!versions.isEmpty()
+                    && versions.firstKey().versionKey().timestamp() + maxVersions <= versions.lastKey().versionKey()
+                            .timestamp()) {
+                Map.Entry<Number640, ByteBuf> entry = versions.pollFirstEntry();
+                if (entry == null) {
+                    break;
+                }
+                if (evicted != null) {
+                    final Data data = release(entry.getValue());
+                    if (data != null) {
+                        evicted.put(entry.getKey(), data);
+                    }
+                } else {
+                    entry.getValue().release();
+                }
+                removeTimeout(entry.getKey());
+            }
+        }
+        return oldData;
+    }
+
+    @Override
+    public Data get(Number640 key) {
+        return decode(dataMap.get(key));
+    }
+
+    @Override
+    public boolean contains(Number640 key) {
+        return dataMap.containsKey(key);
+    }
+
+    @Override
+    public int contains(Number640 fromKey, Number640 toKey) {
+        return dataMap.subMap(fromKey, true, toKey, true).size();
+    }
+
+    /**
+     * Removes the entry. Without returnData, the direct buffer is released right away and null is returned, otherwise
+     * the caller needs to release the returned value.
+     */
+    @Override
+    public Data remove(Number640 key, boolean returnData) {
+        final ByteBuf entry = dataMap.remove(key);
+        if (!returnData) {
+            if (entry != null) {
+                entry.release();
+            }
+            return null;
+        }
+        return release(entry);
+    }
+
+    @Override
+    public NavigableMap<Number640, Data> remove(Number640 fromKey, Number640 toKey) {
+        final NavigableMap<Number640, ByteBuf> tmp = dataMap.subMap(fromKey, true, toKey, true);
+        final NavigableMap<Number640, Data> retVal = new ConcurrentSkipListMap<Number640, Data>();
+        // iterate instead of copy, see StorageMemory.remove
+        for (Iterator<Map.Entry<Number640, ByteBuf>> iterator = tmp.entrySet().iterator(); iterator.hasNext();) {
+            final Map.Entry<Number640, ByteBuf> entry = iterator.next();
+            if (tmp.remove(entry.getKey(), entry.getValue())) {
+                final Data data = release(entry.getValue());
+                if (data != null) {
+                    retVal.put(entry.getKey(), data);
+                }
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public NavigableMap<Number640, Data> subMap(Number640 fromKey, Number640 toKey, int limit, boolean ascending) {
+        final NavigableMap<Number640, ByteBuf> tmp = dataMap.subMap(fromKey, true, toKey, true);
+        final Iterator<Map.Entry<Number640, ByteBuf>> iterator = ascending ? tmp.entrySet().iterator() : tmp
+                .descendingMap().entrySet().iterator();
+        // the values are decoded, thus, we need to copy the map anyway
+        final NavigableMap<Number640, Data> retVal = new TreeMap<Number640, Data>();
+        for (int i = 0; iterator.hasNext() && (limit < 0 || i < limit);) {
+            final Map.Entry<Number640, ByteBuf> entry = iterator.next();
+            final Data data = decode(entry.getValue());
+            if (data != null) {
+                retVal.put(entry.getKey(), data);
+                i++;
+            }
+        }
+        return ascending ? retVal : retVal.descendingMap();
+    }
+
+    @Override
+    public NavigableMap<Number640, Data> map() {
+        final NavigableMap<Number640, Data> retVal = new TreeMap<Number640, Data>();
+        for (final Map.Entry<Number640, ByteBuf> entry : dataMap.entrySet()) {
+            final Data data = decode(entry.getValue());
+            if (data != null) {
+                retVal.put(entry.getKey(), data);
+            }
+        }
+        return retVal;
+    }
+
+    // Misc
+    @Override
+    public void close() {
+        for (Iterator<ByteBuf> iterator = dataMap.values().iterator(); iterator.hasNext();) {
+            final ByteBuf entry = iterator.next();
+            iterator.remove();
+            entry.release();
+        }
+        super.close();
+    }
+
+    /**
+     * Copies the value with its header and signature to a direct buffer. This is the only copy of the value.
+     */
+    private ByteBuf encode(final Data value) {
+        final AlternativeCompositeByteBuf acb = AlternativeCompositeByteBuf
+                .compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
+        try {
+            value.encodeHeader(acb, signatureFactory);
+            final int headerLength = acb.writerIndex();
+            value.encodeDone(acb, signatureFactory);
+            final ByteBuf entry = allocator.directBuffer(Long.SIZE / Byte.SIZE + acb.writerIndex() + value.length());
+            entry.writeLong(value.validFromMillis());
+            entry.writeBytes(acb, 0, headerLength);
+            for (final ByteBuffer buffer : value.toByteBuffers()) {
+                entry.writeBytes(buffer);
+            }
+            entry.writeBytes(acb, headerLength, acb.writerIndex() - headerLength);
+            return entry;
+        } catch (InvalidKeyException e) {
+            throw new RuntimeException(e);
+        } catch (SignatureException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            acb.release();
+        }
+    }
+
+    /**
+     * Decodes the data object from a direct buffer. The value of the data object is a slice of the direct buffer and
+     * holds a reference to it.
+     * 
+     * @return The data object, or null if the entry was released in the meantime
+     */
+    private Data decode(final ByteBuf entry) {
+        if (entry == null) {
+            return null;
+        }
+        try {
+            // a concurrent remove may release the entry while we decode
+            entry.retain();
+        } catch (IllegalReferenceCountException e) {
+            return null;
+        }
+        try {
+            final ByteBuf buf = entry.duplicate();
+            final long validFromMillis = buf.readLong();
+            final Data data = Data.decodeHeader(buf, signatureFactory);
+            data.decodeBuffer(buf);
+            data.decodeDone(buf, signatureFactory);
+            return data.validFromMillis(validFromMillis);
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Releases the reference of the storage to a removed entry.
+     * 
+     * @return The data object of the entry, which keeps the entry alive until it is released
+     */
+    private Data release(final ByteBuf entry) {
+        if (entry == null) {
+            return null;
+        }
+        final Data data = decode(entry);
+        entry.release();
+        return data;
+    }
+}
@@ -249,6 +249,50 @@ public class StorageRPC extends DispatchHandler {
 
     }
     
+    /**
+     * Stores data with possibly many location keys on a remote peer in one message. This is an RPC.
+     * 
+     * @param remotePeer
+     *            The remote peer to store the data
+     * @param putAllBuilder
+     *            The builder with the options
+     * @param dataMap
+     *            The part of the data that this peer is responsible for
+     * @param channelCreator
+     *            The channel creator
+     * @return FutureResponse that stores which keys have been stored.
+     */
+    public FutureResponse putAll(final PeerAddress remotePeer, final PutAllBuilder putAllBuilder,
+            final NavigableMap<Number640, Data> dataMap, final ChannelCreator channelCreator) {
+
+        Utils.nullCheck(remotePeer);
+
+        final Type type;
+        if (putAllBuilder.isPutIfAbsent()) {
+            type = putAllBuilder.isProtectDomain() ? Type.REQUEST_4 : Type.REQUEST_3;
+        } else {
+            type = putAllBuilder.isProtectDomain() ? Type.REQUEST_2 : Type.REQUEST_1;
+        }
+
+        final Message message = createMessage(remotePeer, RPC.Commands.PUT.getNr(), type);
+
+        if (putAllBuilder.isSign()) {
+            message.publicKeyAndSign(putAllBuilder.keyPair());
+        }
+
+        message.setDataMap(new DataMap(dataMap));
+
+        final FutureResponse futureResponse = new FutureResponse(message);
+        final RequestHandler<FutureResponse> request = new RequestHandler<FutureResponse>(futureResponse,
+                peerBean(), connectionBean(), putAllBuilder);
+
+        if (!putAllBuilder.isForceUDP()) {
+            return request.sendTCP(channelCreator);
+        } else {
+            return request.sendUDP(channelCreator);
+        }
+    }
+
     public FutureResponse putMeta(final PeerAddress remotePeer, final PutBuilder putBuilder, 
             final ChannelCreator channelCreator) {
 
@@ -485,6 +529,39 @@ public class StorageRPC extends DispatchHandler {
         }
     }
 
+    /**
+     * Gets data with possibly many location keys from a remote peer in one message. This is an RPC.
+     * 
+     * @param remotePeer
+     *            The remote peer to get the data from
+     * @param getAllBuilder
+     *            The builder with the options
+     * @param keys
+     *            The keys that this peer is responsible for
+     * @param channelCreator
+     *            The channel creator
+     * @return FutureResponse with the data that has been found
+     */
+    public FutureResponse getAll(final PeerAddress remotePeer, final GetAllBuilder getAllBuilder,
+            final Collection<Number640> keys, final ChannelCreator channelCreator) {
+        final Message message = createMessage(remotePeer, RPC.Commands.GET.getNr(), Type.REQUEST_1);
+
+        if (getAllBuilder.isSign()) {
+            message.publicKeyAndSign(getAllBuilder.keyPair());
+        }
+
+        message.keyCollection(new KeyCollection(keys));
+
+        final FutureResponse futureResponse = new FutureResponse(message);
+        final RequestHandler<FutureResponse> request = new RequestHandler<FutureResponse>(futureResponse,
+                peerBean(), connectionBean(), getAllBuilder);
+        if (!getAllBuilder.isForceUDP()) {
+            return request.sendTCP(channelCreator);
+        } else {
+            return request.sendUDP(channelCreator);
+        }
+    }
+
     public FutureResponse get(final PeerAddress remotePeer, final GetBuilder getBuilder,
             final ChannelCreator channelCreator) {
     	final Type type;
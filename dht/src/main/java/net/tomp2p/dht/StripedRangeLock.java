@@ -0,0 +1,224 @@
+/*
+ * Copyright 2009 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.tomp2p.dht;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
+/**
+ * A range lock for {@link Number640} keys that is striped by location key.
+ * Ranges within one location key, which is what almost all storage operations
+ * lock, only touch the stripe of that location key, so operations on different
+ * location keys do not contend. Each stripe has its own wait queue, thus an
+ * unlock only wakes up the threads waiting on the same stripe. Ranges that
+ * span several location keys are registered in all stripes at once.
+ * <p>
+ * As with {@link RangeLock}, the same thread can lock overlapping ranges
+ * several times.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+final public class StripedRangeLock {
+
+	public static final int DEFAULT_STRIPES = 64;
+
+	private final Stripe[] stripes;
+	private final int mask;
+	private final AtomicInteger size = new AtomicInteger(0);
+
+	private static final class Stripe {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition released = lock.newCondition();
+		private final List<StripedRangeLock.Range> ranges = new ArrayList<StripedRangeLock.Range>(2);
+		// increased on every unlock, used by wide locks to not miss a signal
+		private long version = 0;
+	}
+
+	final public class Range {
+		final private Number640 fromKey;
+		final private Number640 toKey;
+		final private long threadId;
+		// -1 if this range spans several location keys
+		final private int stripe;
+
+		private Range(final Number640 fromKey, final Number640 toKey, final long threadId, final int stripe) {
+			this.fromKey = fromKey;
+			this.toKey = toKey;
+			this.threadId = threadId;
+			this.stripe = stripe;
+		}
+
+		public void unlock() {
+			StripedRangeLock.this.unlock(this);
+		}
+
+		private boolean conflicts(final Range other) {
+			return threadId != other.threadId && fromKey.compareTo(other.toKey) <= 0
+			        && other.fromKey.compareTo(toKey) <= 0;
+		}
+	}
+
+	/**
+	 * Creates a range lock with {@link #DEFAULT_STRIPES} stripes.
+	 */
+	public StripedRangeLock() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param nrStripes
+	 *            The number of stripes, rounded up to the next power of two
+	 */
+	public StripedRangeLock(final int nrStripes) {
+		int n = 1;
+		while (n < nrStripes) {
+			n <<= 1;
+		}
+		this.stripes = new Stripe[n];
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new Stripe();
+		}
+		this.mask = n - 1;
+	}
+
+	/**
+	 * Locks the range from fromKey to toKey, both inclusive. Blocks until no
+	 * other thread holds an overlapping range.
+	 *
+	 * @param fromKey
+	 *            The start of the range
+	 * @param toKey
+	 *            The end of the range
+	 * @return The range to unlock
+	 */
+	public Range lock(final Number640 fromKey, final Number640 toKey) {
+		final long id = Thread.currentThread().getId();
+		final Number160 locationKey = fromKey.locationKey();
+		final Range range;
+		if (locationKey.equals(toKey.locationKey())) {
+			range = new Range(fromKey, toKey, id, stripe(locationKey));
+			lockStripe(range);
+		} else {
+			range = new Range(fromKey, toKey, id, -1);
+			lockAll(range);
+		}
+		size.incrementAndGet();
+		return range;
+	}
+
+	private void lockStripe(final Range range) {
+		final Stripe stripe = stripes[range.stripe];
+		stripe.lock.lock();
+		try {
+			while (hasConflict(stripe, range)) {
+				stripe.released.awaitUninterruptibly();
+			}
+			stripe.ranges.add(range);
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	private void lockAll(final Range range) {
+		while (true) {
+			Stripe conflicting = null;
+			long version = 0;
+			for (Stripe stripe : stripes) {
+				stripe.lock.lock();
+			}
+			try {
+				for (Stripe stripe : stripes) {
+					if (hasConflict(stripe, range)) {
+						conflicting = stripe;
+						version = stripe.version;
+						break;
+					}
+				}
+				if (conflicting == null) {
+					for (Stripe stripe : stripes) {
+						stripe.ranges.add(range);
+					}
+					return;
+				}
+			} finally {
+				for (int i = stripes.length - 1; i >= 0; i--) {
+					stripes[i].lock.unlock();
+				}
+			}
+			// wait until something was released in the conflicting stripe,
+			// then check all stripes again
+			conflicting.lock.lock();
+			try {
+				while (conflicting.version == version) {
+					conflicting.released.awaitUninterruptibly();
+				}
+			} finally {
+				conflicting.lock.unlock();
+			}
+		}
+	}
+
+	private static boolean hasConflict(final Stripe stripe, final Range range) {
+		for (Range other : stripe.ranges) {
+			if (range.conflicts(other)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void unlock(final Range range) {
+		if (range.stripe >= 0) {
+			release(stripes[range.stripe], range);
+		} else {
+			for (Stripe stripe : stripes) {
+				release(stripe, range);
+			}
+		}
+		size.decrementAndGet();
+	}
+
+	private static void release(final Stripe stripe, final Range range) {
+		stripe.lock.lock();
+		try {
+			stripe.ranges.remove(range);
+			stripe.version++;
+			stripe.released.signalAll();
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	private int stripe(final Number160 locationKey) {
+		final int h = locationKey.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * @return The number of ranges that are currently locked
+	 */
+	public int size() {
+		return size.get();
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.dht;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.tomp2p.peers.Number640;
+
+/**
+ * A hierarchical timing wheel that tracks the expiration of keys. Adding and removing a key takes constant time, and
+ * {@link #expire(long)} collects all expired keys at once. The wheel has 4 levels of 256 slots. A level 0 slot holds
+ * the keys of one tick, a slot of a higher level holds the keys of 256 slots of the level below, and is spread to the
+ * lower levels once its time comes. Keys that expire beyond the last level are kept in an overflow list, and keys that
+ * are added with a time the wheel has already passed are kept in a list that is checked on every expire.
+ * 
+ * A key expires at the end of the tick that contains its expiration time, thus, it may be reported up to one tick
+ * late, but never early.
+ * 
+ * @author Thomas Bocek
+ * 
+ */
+public class TimeoutWheel {
+
+    public static final int DEFAULT_TICK_MILLIS = 10;
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int OVERFLOW = LEVELS;
+    private static final int LATE = -1;
+    private static final long MAX_TICK = 1L << 62;
+
+    private final long tickMillis;
+    private final Node[][] wheel = new Node[LEVELS][SLOTS];
+    private final Map<Number640, Node> index = new HashMap<Number640, Node>();
+    private Node overflow;
+    private Node late;
+    // the next tick to process
+    private long currentTick;
+
+    public TimeoutWheel() {
+        this(DEFAULT_TICK_MILLIS);
+    }
+
+    public TimeoutWheel(final int tickMillis) {
+        this(tickMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * @param tickMillis
+     *            The time span of a level 0 slot
+     * @param startMillis
+     *            The time from which the wheel starts to turn
+     */
+    public TimeoutWheel(final int tickMillis, final long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick needs to be positive.");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Adds a key or replaces its expiration time.
+     * 
+     * @param key
+     *            The key
+     * @param expiration
+     *            The time in milliseconds when the key expires
+     * @return The previous expiration time or null if the key was not present
+     */
+    public synchronized Long add(final Number640 key, final long expiration) {
+        Node node = index.get(key);
+        final Long oldExpiration;
+        if (node == null) {
+            node = new Node(key);
+            index.put(key, node);
+            oldExpiration = null;
+        } else {
+            unlink(node);
+            oldExpiration = node.expiration;
+        }
+        node.expiration = expiration;
+        schedule(node);
+        return oldExpiration;
+    }
+
+    /**
+     * @param key
+     *            The key to remove
+     * @return The expiration time of the removed key or null if the key was not present
+     */
+    public synchronized Long remove(final Number640 key) {
+        final Node node = index.remove(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.expiration;
+    }
+
+    /**
+     * Removes and returns all keys that expire before the given time.
+     * 
+     * @param to
+     *            The time in milliseconds, exclusive
+     * @return The expired keys
+     */
+    public synchronized Collection<Number640> expire(final long to) {
+        if (index.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // stay clear of overflows, e.g., for Long.MAX_VALUE
+        final long lastTick = Math.min(to / tickMillis, MAX_TICK);
+        final Collection<Number640> expired = new ArrayList<Number640>();
+        for (Node node = late; node != null;) {
+            final Node next = node.next;
+            if (node.expiration < to) {
+                unlink(node);
+                index.remove(node.key);
+                expired.add(node.key);
+            }
+            node = next;
+        }
+        while (currentTick <= lastTick) {
+            // first bring the keys of this tick down from the higher levels
+            if ((currentTick & ((1L << (SLOT_BITS * OVERFLOW)) - 1)) == 0) {
+                cascade(detachOverflow());
+            }
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(detach(level, slot(currentTick, level)));
+                }
+            }
+            Node node = detach(0, slot(currentTick, 0));
+            currentTick++;
+            while (node != null) {
+                final Node next = node.next;
+                node.next = null;
+                if (node.expiration < to) {
+                    index.remove(node.key);
+                    expired.add(node.key);
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+            skipEmpty(lastTick);
+        }
+        return expired;
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public synchronized void clear() {
+        for (Node[] slots : wheel) {
+            Arrays.fill(slots, null);
+        }
+        overflow = null;
+        late = null;
+        index.clear();
+    }
+
+    /**
+     * @return The number of keys in this wheel
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private void cascade(Node node) {
+        while (node != null) {
+            final Node next = node.next;
+            node.next = null;
+            schedule(node);
+            node = next;
+        }
+    }
+
+    /**
+     * Moves currentTick past the ticks for which there is nothing to expire or to cascade, level by level. This keeps
+     * the cost of {@link #expire(long)} independent of the time since the last call.
+     */
+    private void skipEmpty(final long lastTick) {
+        for (int level = 0; level < LEVELS && currentTick <= lastTick; level++) {
+            if (hasWork(currentTick)) {
+                return;
+            }
+            final int shift = SLOT_BITS * level;
+            final int current = slot(currentTick, level);
+            for (int slot = current + 1; slot < SLOTS; slot++) {
+                if (wheel[level][slot] != null) {
+                    // the levels below are empty, continue where this slot starts
+                    currentTick = Math.min(((currentTick >>> shift) + slot - current) << shift, lastTick + 1);
+                    return;
+                }
+            }
+            // this level is empty until its block ends, continue at the next block
+            currentTick = Math.min(((currentTick >>> (shift + SLOT_BITS)) + 1) << (shift + SLOT_BITS), lastTick + 1);
+        }
+        if (currentTick <= lastTick && !hasWork(currentTick)) {
+            // all levels are empty, continue where the next overflow block starts
+            long next = lastTick + 1;
+            for (Node node = overflow; node != null; node = node.next) {
+                next = Math.min(next, ((node.expiration / tickMillis + 1) >>> (SLOT_BITS * OVERFLOW)) << (SLOT_BITS * OVERFLOW));
+            }
+            currentTick = Math.max(currentTick, next);
+        }
+    }
+
+    /**
+     * @return True if there are keys to expire or to cascade at the given tick
+     */
+    private boolean hasWork(final long tick) {
+        if (wheel[0][slot(tick, 0)] != null) {
+            return true;
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return false;
+            }
+            if (wheel[level][slot(tick, level)] != null) {
+                return true;
+            }
+        }
+        return overflow != null && (tick & ((1L << (SLOT_BITS * OVERFLOW)) - 1)) == 0;
+    }
+
+    private void schedule(final Node node) {
+        node.previous = null;
+        final long tick = node.expiration / tickMillis + 1;
+        if (tick < currentTick) {
+            node.level = LATE;
+            node.next = late;
+            late = link(node);
+            return;
+        }
+        // the level is the lowest one above which tick and currentTick are equal, thus, the slot is reached before
+        // the tick
+        int level = 0;
+        while (level < LEVELS && (tick >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        node.level = level;
+        if (level == OVERFLOW) {
+            node.next = overflow;
+            overflow = link(node);
+        } else {
+            final int slot = slot(tick, level);
+            node.slot = slot;
+            node.next = wheel[level][slot];
+            wheel[level][slot] = link(node);
+        }
+    }
+
+    private static Node link(final Node head) {
+        if (head.next != null) {
+            head.next.previous = head;
+        }
+        return head;
+    }
+
+    private void unlink(final Node node) {
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else if (node.level == OVERFLOW) {
+            overflow = node.next;
+        } else if (node.level == LATE) {
+            late = node.next;
+        } else {
+            wheel[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+    }
+
+    private Node detach(final int level, final int slot) {
+        final Node node = wheel[level][slot];
+        wheel[level][slot] = null;
+        if (node != null) {
+            node.previous = null;
+        }
+        return node;
+    }
+
+    private Node detachOverflow() {
+        final Node node = overflow;
+        overflow = null;
+        return node;
+    }
+
+    private static int slot(final long tick, final int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & MASK);
+    }
+
+    private static final class Node {
+        private final Number640 key;
+        private long expiration;
+        private int level;
+        private int slot;
+        private Node previous;
+        private Node next;
+
+        private Node(final Number640 key) {
+            this.key = key;
+        }
+    }
+}
@@ -13,12 +13,14 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +43,7 @@ import net.tomp2p.p2p.AutomaticFuture;
 import net.tomp2p.p2p.Peer;
 import net.tomp2p.p2p.PeerBuilder;
 import net.tomp2p.p2p.RequestP2PConfiguration;
+import net.tomp2p.p2p.RoutingCache;
 import net.tomp2p.p2p.RoutingConfiguration;
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.Number320;
@@ -145,6 +148,99 @@ public class TestDHT {
 
 	}
 
+	@Test
+	public void testPutAllGetAll() throws Exception {
+		PeerDHT master = null;
+		try {
+			PeerDHT[] peers = UtilsDHT2.createNodes(100, rnd, 4001);
+			master = peers[0];
+			UtilsDHT2.perfectRouting(peers);
+			final NavigableMap<Number640, Data> dataMap = new TreeMap<Number640, Data>();
+			for (int i = 0; i < 50; i++) {
+				dataMap.put(new Number640(Number160.createHash("test" + i), Number160.ZERO, Number160.ZERO,
+				        Number160.ZERO), new Data("value" + i));
+			}
+			FuturePutAll futurePut = master.putAll(dataMap).start();
+			futurePut.awaitUninterruptibly();
+			Assert.assertEquals(true, futurePut.isSuccess());
+			Assert.assertEquals(0, futurePut.failedKeys().size());
+			// one message per peer, not per key, with the keys for which the peer is one of the three closest
+			final Map<PeerAddress, Integer> expected = new HashMap<PeerAddress, Integer>();
+			for (Number640 key : dataMap.keySet()) {
+				final TreeSet<PeerAddress> closest = new TreeSet<PeerAddress>(
+				        PeerMap.createXORAddressComparator(key.locationKey()));
+				for (PeerDHT peer : peers) {
+					closest.add(peer.peerAddress());
+				}
+				for (int i = 0; i < 3; i++) {
+					final PeerAddress peerAddress = closest.pollFirst();
+					final Integer count = expected.get(peerAddress);
+					expected.put(peerAddress, count == null ? 1 : count + 1);
+				}
+			}
+			Assert.assertEquals(expected.keySet(), futurePut.rawResult().keySet());
+			for (Entry<PeerAddress, Map<Number640, Byte>> entry : futurePut.rawResult().entrySet()) {
+				Assert.assertEquals(expected.get(entry.getKey()).intValue(), entry.getValue().size());
+			}
+			for (Number640 key : dataMap.keySet()) {
+				Assert.assertEquals(Integer.valueOf(3), futurePut.result().get(key));
+			}
+
+			List<Number640> keys = new ArrayList<Number640>(dataMap.keySet());
+			Number640 missing = new Number640(Number160.createHash("missing"), Number160.ZERO, Number160.ZERO,
+			        Number160.ZERO);
+			keys.add(missing);
+			FutureGetAll futureGet = peers[1].getAll(keys).start();
+			futureGet.awaitUninterruptibly();
+			Assert.assertEquals(true, futureGet.isSuccess());
+			Assert.assertEquals(dataMap.size(), futureGet.dataMap().size());
+			Assert.assertEquals(1, futureGet.notFound().size());
+			Assert.assertEquals(missing, futureGet.notFound().get(0));
+			Assert.assertEquals("value7", futureGet.dataMap().get(new Number640(Number160.createHash("test7"),
+			        Number160.ZERO, Number160.ZERO, Number160.ZERO)).object());
+		} finally {
+			if (master != null) {
+				master.shutdown().await();
+			}
+		}
+	}
+
+	@Test
+	public void testCachedRoutingGetAfterPut() throws Exception {
+		PeerDHT master = null;
+		try {
+			PeerDHT[] peers = UtilsDHT2.createNodes(20, rnd, 4001);
+			master = peers[0];
+			final RoutingCache routingCache = new RoutingCache();
+			final PeerDHT cached = new PeerBuilderDHT(new PeerBuilder(new Number160(rnd)).masterPeer(master.peer())
+			        .routingCache(routingCache).start()).start();
+			final PeerDHT[] all = Arrays.copyOf(peers, peers.length + 1);
+			all[peers.length] = cached;
+			UtilsDHT2.perfectRouting(all);
+			final Number160 locationKey = Number160.createHash("cached");
+
+			// nothing is stored yet, the lookup finds no direct hits
+			FutureGet futureGet = cached.get(locationKey).cachedRouting(true).start();
+			futureGet.awaitUninterruptibly();
+			Assert.assertNull(futureGet.data());
+
+			FuturePut futurePut = peers[1].put(locationKey).data(new Data("value")).start();
+			futurePut.awaitUninterruptibly();
+			Assert.assertEquals(true, futurePut.isSuccess());
+
+			// the direct hits of the first lookup are not reused
+			futureGet = cached.get(locationKey).cachedRouting(true).start();
+			futureGet.awaitUninterruptibly();
+			Assert.assertEquals(true, futureGet.isSuccess());
+			Assert.assertEquals("value", futureGet.data().object());
+			Assert.assertEquals(0, routingCache.hits());
+		} finally {
+			if (master != null) {
+				master.shutdown().await();
+			}
+		}
+	}
+
 	@Test
 	public void testPutVersion() throws Exception {
 		final Random rnd = new Random(42L);
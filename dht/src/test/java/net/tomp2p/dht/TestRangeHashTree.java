@@ -0,0 +1,141 @@
+package net.tomp2p.dht;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRangeHashTree {
+
+	@Test
+	public void testNodes() {
+		final Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			final Number160 locationKey = new Number160(random);
+			for (int level = 0; level <= RangeHashTree.DEPTH; level++) {
+				final int index = RangeHashTree.index(locationKey, level);
+				Assert.assertTrue(RangeHashTree.fromKey(level, index).compareTo(locationKey) <= 0);
+				Assert.assertTrue(RangeHashTree.toKey(level, index).compareTo(locationKey) >= 0);
+				if (level > 0) {
+					Assert.assertEquals(RangeHashTree.index(locationKey, level - 1), index >>> RangeHashTree.BITS_PER_LEVEL);
+					Assert.assertEquals(index, RangeHashTree.childIndex(index >>> RangeHashTree.BITS_PER_LEVEL,
+					        index & (RangeHashTree.FAN_OUT - 1)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testOrder() throws IOException {
+		final Number640 key1 = new Number640(new Number160(1), Number160.ZERO, Number160.ZERO, Number160.ZERO);
+		final Number640 key2 = new Number640(Number160.MAX_VALUE, Number160.ZERO, Number160.ZERO, Number160.ZERO);
+		final Data data1 = new Data("test1");
+		final Data data2 = new Data("test2");
+
+		final RangeHashTree tree1 = new RangeHashTree();
+		tree1.add(key1, data1);
+		tree1.add(key2, data2);
+		final RangeHashTree tree2 = new RangeHashTree();
+		tree2.add(key2, data2);
+		tree2.add(key1, data1);
+		Assert.assertEquals(tree1.hash(0, 0), tree2.hash(0, 0));
+		Assert.assertFalse(tree1.hash(0, 0).isZero());
+
+		// a different value changes the nodes on the path of its key only
+		tree2.remove(key2, data2);
+		tree2.add(key2, new Data("test3"));
+		Assert.assertFalse(tree1.hash(0, 0).equals(tree2.hash(0, 0)));
+		final int leaf1 = RangeHashTree.index(key1.locationKey(), RangeHashTree.DEPTH);
+		final int leaf2 = RangeHashTree.index(key2.locationKey(), RangeHashTree.DEPTH);
+		Assert.assertEquals(tree1.hash(RangeHashTree.DEPTH, leaf1), tree2.hash(RangeHashTree.DEPTH, leaf1));
+		Assert.assertFalse(tree1.hash(RangeHashTree.DEPTH, leaf2).equals(tree2.hash(RangeHashTree.DEPTH, leaf2)));
+
+		// prepared entries are not part of the hashes
+		tree1.remove(key1, data1);
+		tree1.remove(key2, data2);
+		tree1.add(key1, new Data("test4").prepareFlag());
+		Assert.assertTrue(tree1.hash(0, 0).isZero());
+	}
+
+	@Test
+	public void testLocationKeys() throws IOException {
+		final Number160 locationKey1 = new Number160(1);
+		final Number160 locationKey2 = new Number160(2);
+		final Number160 unrelated = new Number160(3);
+		final RangeHashTree tree1 = new RangeHashTree();
+		tree1.add(new Number640(locationKey1, Number160.ZERO, Number160.ZERO, Number160.ZERO), new Data("test1"));
+		tree1.add(new Number640(locationKey2, Number160.ZERO, Number160.ZERO, Number160.ZERO), new Data("test2"));
+		final RangeHashTree tree2 = new RangeHashTree();
+		tree2.add(new Number640(locationKey1, Number160.ZERO, Number160.ZERO, Number160.ZERO), new Data("test1"));
+		tree2.add(new Number640(locationKey2, Number160.ZERO, Number160.ZERO, Number160.ZERO), new Data("test2"));
+		// a location key in the same leaf that only the second tree stores
+		tree2.add(new Number640(unrelated, Number160.ZERO, Number160.ZERO, Number160.ZERO), new Data("test3"));
+
+		final List<Number160> locationKeys = Arrays.asList(locationKey1, locationKey2);
+		for (int level = 0; level <= RangeHashTree.DEPTH; level++) {
+			Assert.assertFalse(tree1.hash(level, 0).equals(tree2.hash(level, 0)));
+			final Map<Integer, Number160> hashes = tree1.hashes(level, locationKeys);
+			Assert.assertEquals(1, hashes.size());
+			Assert.assertEquals(hashes, tree2.hashes(level, locationKeys));
+		}
+		Assert.assertEquals(tree1.hash(locationKey1).xor(tree1.hash(locationKey2)), tree1.hashes(0, locationKeys)
+		        .get(0));
+		Assert.assertTrue(tree1.hash(unrelated).isZero());
+
+		tree2.add(new Number640(locationKey2, Number160.ZERO, Number160.ONE, Number160.ZERO), new Data("test4"));
+		Assert.assertFalse(tree1.hashes(0, locationKeys).equals(tree2.hashes(0, locationKeys)));
+		Assert.assertEquals(tree1.hash(locationKey1), tree2.hash(locationKey1));
+	}
+
+	@Test
+	public void testStorageLayer() throws IOException {
+		final StorageLayer storageLayer = new StorageLayer(new StorageMemory());
+		final Number640 key1 = new Number640(new Number160(1), Number160.ZERO, Number160.ZERO, Number160.ZERO);
+		final Number640 key2 = new Number640(new Number160(2), Number160.ZERO, Number160.ZERO, Number160.ZERO);
+		storageLayer.put(key1, new Data("test1"), null, false, false, false);
+		// built from the entries on first use
+		final RangeHashTree tree = storageLayer.rangeHashTree();
+		final Number160 hash1 = tree.hash(0, 0);
+		Assert.assertFalse(hash1.isZero());
+		storageLayer.put(key2, new Data("test2"), null, false, false, false);
+		Assert.assertFalse(hash1.equals(tree.hash(0, 0)));
+		storageLayer.remove(key2, null, false);
+		Assert.assertEquals(hash1, tree.hash(0, 0));
+		storageLayer.remove(key1, null, false);
+		Assert.assertTrue(tree.hash(0, 0).isZero());
+	}
+
+	@Test
+	public void testMaxVersions() throws IOException {
+		testMaxVersions(new StorageMemory(StorageMemory.DEFAULT_STORAGE_CHECK_INTERVAL, 2));
+		testMaxVersions(new StorageOffHeap(StorageMemory.DEFAULT_STORAGE_CHECK_INTERVAL, 2));
+	}
+
+	private void testMaxVersions(final Storage storage) throws IOException {
+		final StorageLayer storageLayer = new StorageLayer(storage);
+		final Number640[] keys = new Number640[3];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new Number640(new Number160(1), Number160.ZERO, Number160.ZERO, new Number160(i + 1,
+			        Number160.ZERO));
+		}
+		storageLayer.put(keys[0], new Data("test1"), null, false, false, false);
+		storageLayer.put(keys[1], new Data("test2"), null, false, false, false);
+		final RangeHashTree tree = storageLayer.rangeHashTree();
+		// the backend keeps two versions and removes the first one
+		storageLayer.put(keys[2], new Data("test3"), null, false, false, false);
+		Assert.assertFalse(storageLayer.contains(keys[0]));
+
+		final RangeHashTree expected = new RangeHashTree();
+		expected.add(keys[1], new Data("test2"));
+		expected.add(keys[2], new Data("test3"));
+		Assert.assertEquals(expected.hash(0, 0), tree.hash(0, 0));
+	}
+}
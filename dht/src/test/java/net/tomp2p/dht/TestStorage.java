@@ -68,6 +68,26 @@ public class TestStorage {
         Assert.assertTrue(PutStatus.OK == store || PutStatus.OK_UNCHANGED == store);
     }
 
+    @Test
+    public void testKeys() throws Exception {
+        Storage storageM = createStorage();
+        StorageLayer storage = new StorageLayer(storageM);
+        store(storage);
+        Number640 other = new Number640(locationKey, new Number160(21), content3, Number160.ZERO);
+        storage.put(other, new Data("test3"), null, false, false, false);
+        // collected on the first call
+        Assert.assertEquals(2, storage.keys(domainKey).size());
+        Assert.assertTrue(storage.keys(domainKey).contains(key1));
+        // maintained afterwards
+        storage.put(key3, new Data("test3"), null, false, false, false);
+        storage.remove(key1, null, false);
+        Assert.assertEquals(2, storage.keys(domainKey).size());
+        Assert.assertFalse(storage.keys(domainKey).contains(key1));
+        Assert.assertTrue(storage.keys(domainKey).contains(key3));
+        Assert.assertEquals(1, storage.keys(other.domainKey()).size());
+        storageM.close();
+    }
+
     @Test
     public void testGet() throws Exception {
         Storage storageM = createStorage();
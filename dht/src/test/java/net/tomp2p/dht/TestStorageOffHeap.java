@@ -0,0 +1,79 @@
+package net.tomp2p.dht;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import java.io.IOException;
+
+import net.tomp2p.connection.DSASignatureFactory;
+import net.tomp2p.dht.StorageLayer.PutStatus;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the storage tests with the values stored off-heap.
+ */
+public class TestStorageOffHeap extends TestStorage {
+
+    public Storage createStorage() throws IOException {
+        return new StorageOffHeap();
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+        Storage storage = createStorage();
+        Number640 key = new Number640(new Number160(10), Number160.ZERO, new Number160(1), Number160.ZERO);
+        byte[] me = new byte[1000];
+        for (int i = 0; i < me.length; i++) {
+            me[i] = (byte) i;
+        }
+        storage.put(key, new Data(me).ttlSeconds(100));
+        Data data = storage.get(key);
+        Assert.assertTrue(data.buffer().isDirect());
+        Assert.assertArrayEquals(me, data.toBytes());
+        Assert.assertEquals(100, data.ttlSeconds());
+        // the removed data stays valid until it is released
+        Data removed = storage.remove(key, true);
+        Assert.assertFalse(storage.contains(key));
+        Assert.assertArrayEquals(me, removed.toBytes());
+        Assert.assertArrayEquals(me, data.toBytes());
+        removed.release();
+        data.release();
+        storage.close();
+    }
+
+    @Test
+    public void testReleaseOnRemoveAndExpiry() throws Exception {
+        // unpooled, so that the used memory drops as soon as a buffer is released
+        final UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        final Storage storage = new StorageOffHeap(StorageMemory.DEFAULT_STORAGE_CHECK_INTERVAL,
+                StorageMemory.DEFAULT_MAX_VERSIONS, allocator, new DSASignatureFactory());
+        final StorageLayer storageLayer = new StorageLayer(storage);
+        final Number640 key = new Number640(new Number160(10), Number160.ZERO, new Number160(1), Number160.ZERO);
+        Assert.assertEquals(PutStatus.OK, storageLayer.put(key, new Data(new byte[1000]).ttlSeconds(100), null,
+                false, false, false));
+        final long used = allocator.metric().usedDirectMemory();
+        Assert.assertTrue(used >= 1000);
+
+        // the replaced value is released
+        Assert.assertEquals(PutStatus.OK, storageLayer.put(key, new Data(new byte[1000]).ttlSeconds(100), null,
+                false, false, false));
+        Assert.assertEquals(used, allocator.metric().usedDirectMemory());
+
+        storageLayer.remove(key, null, false);
+        Assert.assertEquals(0, allocator.metric().usedDirectMemory());
+
+        // already expired when it is put
+        final Data expired = new Data(new byte[1000]).ttlSeconds(1);
+        expired.validFromMillis(System.currentTimeMillis() - 10 * 1000);
+        Assert.assertEquals(PutStatus.OK, storageLayer.put(key, expired, null, false, false, false));
+        Assert.assertEquals(used, allocator.metric().usedDirectMemory());
+        storageLayer.checkTimeout();
+        Assert.assertFalse(storage.contains(key));
+        Assert.assertEquals(0, allocator.metric().usedDirectMemory());
+        storage.close();
+    }
+}
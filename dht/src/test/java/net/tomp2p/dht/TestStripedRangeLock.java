@@ -0,0 +1,103 @@
+package net.tomp2p.dht;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStripedRangeLock {
+
+	private static Number640 key(int location, int content) {
+		return new Number640(new Number160(location), Number160.ZERO, new Number160(content), Number160.ZERO);
+	}
+
+	@Test
+	public void testRangeLockOverlapping() throws InterruptedException {
+		final CountDownLatch cd = new CountDownLatch(1);
+		final AtomicBoolean locked = new AtomicBoolean(false);
+		final StripedRangeLock r = new StripedRangeLock();
+
+		StripedRangeLock.Range lock = r.lock(key(1, 1), key(1, 2));
+		Assert.assertEquals(1, r.size());
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				StripedRangeLock.Range rr = r.lock(key(1, 2), key(1, 3));
+				locked.set(true);
+				rr.unlock();
+				cd.countDown();
+			}
+		}).start();
+		Thread.sleep(500);
+		Assert.assertFalse(locked.get());
+		lock.unlock();
+		cd.await();
+		Assert.assertEquals(0, r.size());
+	}
+
+	@Test
+	public void testRangeLockNonOverlapping() throws InterruptedException {
+		final CountDownLatch cd = new CountDownLatch(1);
+		final StripedRangeLock r = new StripedRangeLock();
+
+		StripedRangeLock.Range lock = r.lock(key(1, 1), key(1, 2));
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				// same location key, different content key
+				StripedRangeLock.Range rr1 = r.lock(key(1, 3), key(1, 4));
+				// different location key
+				StripedRangeLock.Range rr2 = r.lock(key(2, 1), key(2, 2));
+				Assert.assertEquals(3, r.size());
+				rr2.unlock();
+				rr1.unlock();
+				cd.countDown();
+			}
+		}).start();
+		Assert.assertTrue(cd.await(5, TimeUnit.SECONDS));
+		lock.unlock();
+		Assert.assertEquals(0, r.size());
+	}
+
+	@Test
+	public void testRangeLockWide() throws InterruptedException {
+		final CountDownLatch cd = new CountDownLatch(1);
+		final AtomicBoolean locked = new AtomicBoolean(false);
+		final StripedRangeLock r = new StripedRangeLock();
+
+		StripedRangeLock.Range lock = r.lock(key(5, 1), key(5, 1));
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				// spans location keys 1 to 10
+				StripedRangeLock.Range rr = r.lock(key(1, 0), key(10, 0));
+				locked.set(true);
+				rr.unlock();
+				cd.countDown();
+			}
+		}).start();
+		Thread.sleep(500);
+		Assert.assertFalse(locked.get());
+		lock.unlock();
+		cd.await();
+		Assert.assertEquals(0, r.size());
+	}
+
+	@Test
+	public void testRangeLockReentrant() {
+		final StripedRangeLock r = new StripedRangeLock();
+		StripedRangeLock.Range lock1 = r.lock(key(1, 0), key(10, 0));
+		StripedRangeLock.Range lock2 = r.lock(key(5, 1), key(5, 1));
+		StripedRangeLock.Range lock3 = r.lock(key(5, 1), key(5, 1));
+		Assert.assertEquals(3, r.size());
+		lock3.unlock();
+		lock2.unlock();
+		lock1.unlock();
+		Assert.assertEquals(0, r.size());
+	}
+}
@@ -0,0 +1,84 @@
+package net.tomp2p.dht;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTimeoutWheel {
+
+	private static Number640 key(int nr) {
+		return new Number640(new Number160(nr), Number160.ZERO, Number160.ZERO, Number160.ZERO);
+	}
+
+	@Test
+	public void testExpire() {
+		TimeoutWheel wheel = new TimeoutWheel(10, 0);
+		wheel.add(key(1), 100);
+		wheel.add(key(2), 200);
+		wheel.add(key(3), 1000 * 1000);
+		Assert.assertEquals(0, wheel.expire(100).size());
+		Assert.assertEquals(3, wheel.size());
+		Collection<Number640> expired = wheel.expire(150);
+		Assert.assertEquals(1, expired.size());
+		Assert.assertTrue(expired.contains(key(1)));
+		// replace and remove
+		Assert.assertEquals(Long.valueOf(200), wheel.add(key(2), 5000));
+		Assert.assertEquals(0, wheel.expire(1000).size());
+		Assert.assertEquals(Long.valueOf(5000), wheel.remove(key(2)));
+		Assert.assertNull(wheel.remove(key(2)));
+		expired = wheel.expire(Long.MAX_VALUE);
+		Assert.assertEquals(1, expired.size());
+		Assert.assertTrue(expired.contains(key(3)));
+		Assert.assertEquals(0, wheel.size());
+		// the wheel has passed this time, but the key expires nevertheless
+		wheel.add(key(4), 20);
+		Assert.assertEquals(1, wheel.expire(30).size());
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(42);
+		long now = 123456789L;
+		TimeoutWheel wheel = new TimeoutWheel(7, now);
+		Map<Number640, Long> expected = new HashMap<Number640, Long>();
+		for (int i = 0; i < 10000; i++) {
+			Number640 key = key(random.nextInt(1000));
+			switch (random.nextInt(4)) {
+			case 0:
+				// far beyond the last level
+				long far = now + (long) (random.nextDouble() * 1e11);
+				Assert.assertEquals(expected.put(key, far), wheel.add(key, far));
+				break;
+			case 1:
+				long near = now + random.nextInt(100000);
+				Assert.assertEquals(expected.put(key, near), wheel.add(key, near));
+				break;
+			case 2:
+				Assert.assertEquals(expected.remove(key), wheel.remove(key));
+				break;
+			default:
+				now += random.nextInt(10) == 0 ? (long) (random.nextDouble() * 1e10) : random.nextInt(10000);
+				Set<Number640> expired = new HashSet<Number640>(wheel.expire(now));
+				for (Map.Entry<Number640, Long> entry : expected.entrySet()) {
+					// never early, at most one tick late
+					if (expired.contains(entry.getKey())) {
+						Assert.assertTrue(entry.getValue() < now);
+					} else {
+						Assert.assertTrue(entry.getValue() >= now - 7);
+					}
+				}
+				expected.keySet().removeAll(expired);
+			}
+			Assert.assertEquals(expected.size(), wheel.size());
+		}
+	}
+}
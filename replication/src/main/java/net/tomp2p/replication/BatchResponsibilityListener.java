@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.replication;
+
+import java.util.Collection;
+
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+
+/**
+ * A responsibility listener that gets the location keys of a churn event in one call, so that the data for one peer
+ * can be sent together. {@link Replication} calls the methods of {@link ResponsibilityListener} for each location key
+ * if a listener does not implement this interface.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public interface BatchResponsibilityListener extends ResponsibilityListener {
+
+    /**
+     * The responsibility changed to our peer for all these location keys.
+     *
+     * @param locationKeys
+     *            The location keys
+     */
+    FutureDone<?> meResponsible(Collection<Number160> locationKeys);
+
+    /**
+     * We are responsible for all these location keys and the new peer needs a replica.
+     *
+     * @param locationKeys
+     *            The location keys
+     * @param newPeer
+     *            The peer that joined the replica set of the location keys
+     */
+    FutureDone<?> meResponsible(Collection<Number160> locationKeys, PeerAddress newPeer);
+
+    /**
+     * An other peer is responsible for all these location keys and we need to transfer the data.
+     *
+     * @param locationKeys
+     *            The location keys
+     * @param other
+     *            The other peer that is responsible for the location keys
+     */
+    FutureDone<?> otherResponsible(Collection<Number160> locationKeys, PeerAddress other);
+}
@@ -0,0 +1,704 @@
+/*
+ * Copyright 2012 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.replication;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.dht.FutureDigest;
+import net.tomp2p.dht.FutureGet;
+import net.tomp2p.dht.FuturePut;
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.BaseFuture;
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.p2p.RequestP2PConfiguration;
+import net.tomp2p.p2p.Shutdown;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.peers.PeerMap;
+import net.tomp2p.peers.PeerMapChangeListener;
+import net.tomp2p.peers.PeerStatistic;
+import net.tomp2p.rpc.DigestResult;
+import net.tomp2p.storage.Data;
+import net.tomp2p.utils.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores values erasure coded instead of as full copies. A value is encoded with {@link ReedSolomon} into
+ * {@link #fragments()} fragments, of which any {@link #dataFragments()} restore the value. Fragment i is stored on the
+ * closest peer to the location key {@link #fragmentKey(Number160, int)}, so the fragments end up on different peers,
+ * and the storage overhead is n / k instead of the replication factor.
+ * <p>
+ * A fragment carries a header with the location key, the hash, the length and the expiration time of the value, so
+ * that the peer storing it can find the other fragments, and a repaired fragment expires with the value. If a peer leaves that may have stored an other fragment of a value, the peers
+ * storing fragments of this value check which fragments are still available. The peer with the lowest available
+ * fragment fetches k fragments and stores only the lost ones again. If a closer peer joins, the fragment is stored
+ * again, so that it is found on the closest peer.
+ * </p>
+ * <p>
+ * The fragments are stored on one peer each. {@link IndirectReplication} copies them like any other data, which adds
+ * full replicas on top of the parity.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class ErasureCoding implements PeerMapChangeListener, Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(ErasureCoding.class);
+
+    /**
+     * The domain key of the fragments, so that they do not collide with other data on the derived location keys.
+     */
+    public static final Number160 DOMAIN_KEY = Number160.createHash("erasure-coding");
+
+    // location key, value hash, expiration millis, value length, data fragments, fragments, index
+    private static final int HEADER_SIZE = (2 * Number160.BYTE_ARRAY_SIZE) + 8 + 4 + 3;
+    // each fragment is stored on the closest peer only
+    private static final RequestP2PConfiguration ONE_PEER = new RequestP2PConfiguration(1, 5, 0);
+
+    private final PeerDHT peer;
+
+    private int dataFragments = 4;
+    private int fragments = 6;
+    private int delayMillis = -1;
+    private ReedSolomon reedSolomon;
+
+    // guarded by this
+    private final List<PeerAddress> removedPeers = new ArrayList<PeerAddress>();
+    private final List<PeerAddress> insertedPeers = new ArrayList<PeerAddress>();
+    private ScheduledFuture<?> scheduledFuture;
+
+    public ErasureCoding(final PeerDHT peer) {
+        this.peer = peer;
+
+        peer.peer().addShutdownListener(new Shutdown() {
+            @Override
+            public BaseFuture shutdown() {
+                ErasureCoding.this.shutdown();
+                return new FutureDone<Void>().done();
+            }
+        });
+    }
+
+    public int dataFragments() {
+        return dataFragments;
+    }
+
+    /**
+     * @param dataFragments
+     *            The number of fragments k that are needed to restore a value. The default is 4
+     * @return This class
+     */
+    public ErasureCoding dataFragments(final int dataFragments) {
+        this.dataFragments = dataFragments;
+        return this;
+    }
+
+    public int fragments() {
+        return fragments;
+    }
+
+    /**
+     * @param fragments
+     *            The number of fragments n a value is stored as, at most 256. The default is 6, so 2 peers can fail
+     * @return This class
+     */
+    public ErasureCoding fragments(final int fragments) {
+        this.fragments = fragments;
+        return this;
+    }
+
+    public int delayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * @param delayMillis
+     *            The time to wait after a churn event before the fragments are checked, so that the events of this
+     *            time are checked together. The default is 5 seconds
+     * @return This class
+     */
+    public ErasureCoding delayMillis(final int delayMillis) {
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    public ErasureCoding start() {
+        if (delayMillis == -1) {
+            delayMillis = 5 * 1000;
+        }
+        reedSolomon = new ReedSolomon(dataFragments, fragments);
+        peer.peerBean().peerMap().addPeerMapChangeListener(this);
+        return this;
+    }
+
+    /**
+     * Stores a value as fragments.
+     *
+     * @param locationKey
+     *            The location key of the value
+     * @param contentKey
+     *            The content key of the value
+     * @param data
+     *            The value, the time to live is used for the fragments as well
+     * @return The future that is done when all fragments were stored, or failed if one could not be stored
+     */
+    public FutureDone<Void> put(final Number160 locationKey, final Number160 contentKey, final Data data) {
+        final byte[] value = data.toBytes();
+        final Number160 valueHash = Utils.makeSHAHash(value);
+        final byte[][] encoded = reedSolomon.encode(value);
+        final List<FutureDone<?>> futures = new ArrayList<FutureDone<?>>(fragments);
+        for (int i = 0; i < fragments; i++) {
+            final Data fragment = encodeFragment(locationKey, valueHash, data.expirationMillis(), value.length, i,
+                    encoded[i]);
+            futures.add(putFragment(fragmentKey(locationKey, i), contentKey, fragment));
+        }
+        return IndirectReplication.whenAll(futures);
+    }
+
+    /**
+     * Restores a value from its fragments. The first {@link #dataFragments()} fragments are fetched in parallel, and
+     * for each one that is missing, the next fragment is fetched.
+     *
+     * @param locationKey
+     *            The location key of the value
+     * @param contentKey
+     *            The content key of the value
+     * @return The future with the value, or failed if less than {@link #dataFragments()} fragments were found
+     */
+    public FutureDone<Data> get(final Number160 locationKey, final Number160 contentKey) {
+        final FutureDone<Data> futureDone = new FutureDone<Data>();
+        final List<Integer> indexes = new ArrayList<Integer>(fragments);
+        for (int i = 0; i < fragments; i++) {
+            indexes.add(i);
+        }
+        final Fetch fetch = new Fetch(locationKey, contentKey, indexes);
+        fetch.start().addListener(new BaseFutureAdapter<FutureDone<byte[][]>>() {
+            @Override
+            public void operationComplete(final FutureDone<byte[][]> future) throws Exception {
+                if (future.isSuccess()) {
+                    futureDone.done(new Data(fetch.value));
+                } else {
+                    futureDone.failed(future);
+                }
+            }
+        });
+        return futureDone;
+    }
+
+    /**
+     * Checks which fragments of a value are available and stores the missing ones again.
+     *
+     * @param locationKey
+     *            The location key of the value
+     * @param contentKey
+     *            The content key of the value
+     * @return The future with the number of fragments that were stored again
+     */
+    public FutureDone<Integer> repair(final Number160 locationKey, final Number160 contentKey) {
+        final FutureDone<Integer> futureDone = new FutureDone<Integer>();
+        available(locationKey, contentKey).addListener(new BaseFutureAdapter<FutureDone<boolean[]>>() {
+            @Override
+            public void operationComplete(final FutureDone<boolean[]> future) throws Exception {
+                repair(locationKey, contentKey, future.object(), futureDone);
+            }
+        });
+        return futureDone;
+    }
+
+    /**
+     * @param locationKey
+     *            The location key of the value
+     * @param index
+     *            The index of the fragment
+     * @return The location key of the fragment
+     */
+    public static Number160 fragmentKey(final Number160 locationKey, final int index) {
+        final byte[] me = new byte[Number160.BYTE_ARRAY_SIZE + 1];
+        locationKey.toByteArray(me, 0);
+        me[Number160.BYTE_ARRAY_SIZE] = (byte) index;
+        return Utils.makeSHAHash(me);
+    }
+
+    @Override
+    public void peerInserted(final PeerAddress peerAddress, final boolean verified) {
+        if (verified) {
+            churn(insertedPeers, peerAddress);
+        }
+    }
+
+    @Override
+    public void peerRemoved(final PeerAddress peerAddress, final PeerStatistic storedPeerAddress) {
+        churn(removedPeers, peerAddress);
+    }
+
+    @Override
+    public void peerUpdated(final PeerAddress peerAddress, final PeerStatistic storedPeerAddress) {
+        // nothing to do
+    }
+
+    /**
+     * Checks the fragments this peer stores against the peers that joined and left since the last run.
+     */
+    @Override
+    public void run() {
+        try {
+            final List<PeerAddress> inserted;
+            final List<PeerAddress> removed;
+            synchronized (this) {
+                inserted = new ArrayList<PeerAddress>(insertedPeers);
+                removed = new ArrayList<PeerAddress>(removedPeers);
+                insertedPeers.clear();
+                removedPeers.clear();
+                scheduledFuture = null;
+            }
+            // the values that may have lost a fragment, with the index of the fragment this peer has
+            final Map<Number640, Integer> check = new LinkedHashMap<Number640, Integer>();
+            for (Number640 key : peer.storageLayer().keys(DOMAIN_KEY)) {
+                final Data data = peer.storageLayer().get(key);
+                final Fragment fragment = decodeHeader(data);
+                if (fragment == null || fragment.dataFragments != dataFragments || fragment.fragments != fragments) {
+                    continue;
+                }
+                for (PeerAddress peerAddress : inserted) {
+                    if (PeerMap.isKadCloser(key.locationKey(), peerAddress.peerId(), peer.peerID()) < 0) {
+                        LOG.debug("hand off fragment {} of {} to {}", fragment.index, fragment.locationKey,
+                                peerAddress);
+                        handOff(key, data);
+                        break;
+                    }
+                }
+                if (mayHaveLost(fragment, removed)) {
+                    check.put(new Number640(fragment.locationKey, DOMAIN_KEY, key.contentKey(), Number160.ZERO),
+                            fragment.index);
+                }
+            }
+            for (final Map.Entry<Number640, Integer> entry : check.entrySet()) {
+                final Number160 locationKey = entry.getKey().locationKey();
+                final Number160 contentKey = entry.getKey().contentKey();
+                available(locationKey, contentKey).addListener(new BaseFutureAdapter<FutureDone<boolean[]>>() {
+                    @Override
+                    public void operationComplete(final FutureDone<boolean[]> future) throws Exception {
+                        final boolean[] available = future.object();
+                        int lowest = 0;
+                        while (lowest < available.length && !available[lowest]) {
+                            lowest++;
+                        }
+                        // only one peer repairs, the others see the same fragments
+                        if (lowest == entry.getValue()) {
+                            repair(locationKey, contentKey, available, new FutureDone<Integer>());
+                        }
+                    }
+                });
+            }
+        } catch (Throwable t) {
+            LOG.error("could not check the fragments", t);
+        }
+    }
+
+    public void shutdown() {
+        peer.peerBean().peerMap().removePeerMapChangeListener(this);
+        synchronized (this) {
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+                scheduledFuture = null;
+            }
+        }
+    }
+
+    private synchronized void churn(final List<PeerAddress> peerAddresses, final PeerAddress peerAddress) {
+        peerAddresses.add(peerAddress);
+        if (scheduledFuture == null) {
+            scheduledFuture = peer.peer().connectionBean().timer()
+                    .schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return True if one of the removed peers was closer to an other fragment of this value than any peer we know,
+     *         in which case it may have stored it
+     */
+    private boolean mayHaveLost(final Fragment fragment, final List<PeerAddress> removed) {
+        if (removed.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < fragments; i++) {
+            if (i == fragment.index) {
+                continue;
+            }
+            final Number160 fragmentKey = fragmentKey(fragment.locationKey, i);
+            Number160 closest = peer.peerID();
+            final NavigableSet<PeerStatistic> closePeers = peer.peerBean().peerMap().closePeers(fragmentKey, 1);
+            if (!closePeers.isEmpty()
+                    && PeerMap.isKadCloser(fragmentKey, closePeers.first().peerAddress().peerId(), closest) < 0) {
+                closest = closePeers.first().peerAddress().peerId();
+            }
+            for (PeerAddress peerAddress : removed) {
+                if (PeerMap.isKadCloser(fragmentKey, peerAddress.peerId(), closest) < 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Asks the closest peer of each fragment whether it stores the fragment.
+     *
+     * @return The future with a flag per fragment, which is never failed
+     */
+    private FutureDone<boolean[]> available(final Number160 locationKey, final Number160 contentKey) {
+        final boolean[] available = new boolean[fragments];
+        final List<FutureDone<?>> futures = new ArrayList<FutureDone<?>>(fragments);
+        for (int i = 0; i < fragments; i++) {
+            final int index = i;
+            final FutureDone<Void> futureDone = new FutureDone<Void>();
+            futures.add(futureDone);
+            final FutureDigest futureDigest = peer.digest(fragmentKey(locationKey, i)).domainKey(DOMAIN_KEY)
+                    .contentKey(contentKey).requestP2PConfiguration(ONE_PEER).start();
+            futureDigest.addListener(new BaseFutureAdapter<FutureDigest>() {
+                @Override
+                public void operationComplete(final FutureDigest future) throws Exception {
+                    final DigestResult digest = future.isSuccess() ? future.digest() : null;
+                    if (digest != null && digest.keyDigest() != null && !digest.keyDigest().isEmpty()) {
+                        synchronized (available) {
+                            available[index] = true;
+                        }
+                    }
+                    futureDone.done();
+                }
+            });
+        }
+        final FutureDone<boolean[]> futureDone = new FutureDone<boolean[]>();
+        FutureDone.whenAll(futures).addListener(new BaseFutureAdapter<FutureDone<List<FutureDone<?>>>>() {
+            @Override
+            public void operationComplete(final FutureDone<List<FutureDone<?>>> future) throws Exception {
+                synchronized (available) {
+                    futureDone.done(available.clone());
+                }
+            }
+        });
+        return futureDone;
+    }
+
+    /**
+     * Fetches {@link #dataFragments()} of the available fragments and stores the ones that are not available again.
+     */
+    private void repair(final Number160 locationKey, final Number160 contentKey, final boolean[] available,
+            final FutureDone<Integer> futureDone) {
+        final List<Integer> indexes = new ArrayList<Integer>(fragments);
+        final List<Integer> missing = new ArrayList<Integer>(fragments);
+        for (int i = 0; i < fragments; i++) {
+            if (available[i]) {
+                indexes.add(i);
+            } else {
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            futureDone.done(0);
+            return;
+        }
+        if (indexes.size() < dataFragments) {
+            futureDone.failed("Only " + indexes.size() + " of " + fragments + " fragments of " + locationKey
+                    + " are available, need " + dataFragments);
+            return;
+        }
+        LOG.debug("repair fragments {} of {}", missing, locationKey);
+        final Fetch fetch = new Fetch(locationKey, contentKey, indexes);
+        fetch.start().addListener(new BaseFutureAdapter<FutureDone<byte[][]>>() {
+            @Override
+            public void operationComplete(final FutureDone<byte[][]> future) throws Exception {
+                if (future.isFailed()) {
+                    futureDone.failed(future);
+                    return;
+                }
+                if (fetch.expirationMillis <= System.currentTimeMillis()) {
+                    LOG.debug("value {} expired, no repair", locationKey);
+                    futureDone.done(0);
+                    return;
+                }
+                final List<FutureDone<?>> futures = new ArrayList<FutureDone<?>>(missing.size());
+                for (int index : missing) {
+                    final Data fragment = encodeFragment(locationKey, fetch.valueHash, fetch.expirationMillis,
+                            fetch.length, index, future.object()[index]);
+                    futures.add(putFragment(fragmentKey(locationKey, index), contentKey, fragment));
+                }
+                IndirectReplication.whenAll(futures).addListener(new BaseFutureAdapter<FutureDone<Void>>() {
+                    @Override
+                    public void operationComplete(final FutureDone<Void> future) throws Exception {
+                        if (future.isSuccess()) {
+                            futureDone.done(missing.size());
+                        } else {
+                            futureDone.failed(future);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stores a fragment on the closer peer and removes the local copy once it is stored there.
+     */
+    private void handOff(final Number640 key, final Data fragment) {
+        final FuturePut futurePut = peer.put(key.locationKey()).domainKey(DOMAIN_KEY).data(key.contentKey(), fragment)
+                .requestP2PConfiguration(ONE_PEER).start();
+        futurePut.addListener(new BaseFutureAdapter<FuturePut>() {
+            @Override
+            public void operationComplete(final FuturePut future) throws Exception {
+                // the routing may still end on this peer, then it stays
+                if (future.isSuccess() && !future.rawResult().containsKey(peer.peerAddress())) {
+                    peer.storageLayer().remove(key, null, false);
+                }
+            }
+        });
+        peer.peer().notifyAutomaticFutures(futurePut);
+    }
+
+    private FutureDone<Void> putFragment(final Number160 fragmentKey, final Number160 contentKey, final Data fragment) {
+        final FutureDone<Void> futureDone = new FutureDone<Void>();
+        final FuturePut futurePut = peer.put(fragmentKey).domainKey(DOMAIN_KEY).data(contentKey, fragment)
+                .requestP2PConfiguration(ONE_PEER).start();
+        futurePut.addListener(new BaseFutureAdapter<FuturePut>() {
+            @Override
+            public void operationComplete(final FuturePut future) throws Exception {
+                if (future.isSuccess()) {
+                    futureDone.done();
+                } else {
+                    futureDone.failed(future);
+                }
+            }
+        });
+        return futureDone;
+    }
+
+    /**
+     * @param expirationMillis
+     *            The time the value expires, Long.MAX_VALUE if it does not
+     */
+    private Data encodeFragment(final Number160 locationKey, final Number160 valueHash, final long expirationMillis,
+            final int length, final int index, final byte[] encoded) {
+        final byte[] me = new byte[HEADER_SIZE + encoded.length];
+        int offset = locationKey.toByteArray(me, 0);
+        offset = valueHash.toByteArray(me, offset);
+        ByteBuffer.wrap(me, offset, 12).putLong(expirationMillis).putInt(length);
+        offset += 12;
+        me[offset++] = (byte) (dataFragments - 1);
+        me[offset++] = (byte) (fragments - 1);
+        me[offset++] = (byte) index;
+        System.arraycopy(encoded, 0, me, offset, encoded.length);
+        final Data fragment = new Data(me);
+        if (expirationMillis != Long.MAX_VALUE) {
+            // a repaired fragment expires with the value, not one time to live after the repair
+            final long remainingMillis = expirationMillis - System.currentTimeMillis();
+            fragment.ttlSeconds((int) Math.max(1, (remainingMillis + 999) / 1000));
+        }
+        return fragment;
+    }
+
+    /**
+     * @return The fragment, or null if the data is not a fragment
+     */
+    private static Fragment decodeFragment(final Data data) {
+        final Fragment fragment = decodeHeader(data);
+        if (fragment != null) {
+            fragment.encoded = new byte[data.length() - HEADER_SIZE];
+            read(data, HEADER_SIZE, fragment.encoded);
+        }
+        return fragment;
+    }
+
+    /**
+     * @return The fragment without the encoded part, or null if the data is not a fragment
+     */
+    private static Fragment decodeHeader(final Data data) {
+        if (data == null || data.length() < HEADER_SIZE) {
+            return null;
+        }
+        final byte[] me = new byte[HEADER_SIZE];
+        read(data, 0, me);
+        final Fragment fragment = new Fragment();
+        fragment.locationKey = new Number160(me, 0, Number160.BYTE_ARRAY_SIZE);
+        fragment.valueHash = new Number160(me, Number160.BYTE_ARRAY_SIZE, Number160.BYTE_ARRAY_SIZE);
+        int offset = 2 * Number160.BYTE_ARRAY_SIZE;
+        final ByteBuffer buffer = ByteBuffer.wrap(me, offset, 12);
+        fragment.expirationMillis = buffer.getLong();
+        fragment.length = buffer.getInt();
+        offset += 12;
+        fragment.dataFragments = (me[offset++] & 0xFF) + 1;
+        fragment.fragments = (me[offset++] & 0xFF) + 1;
+        fragment.index = me[offset] & 0xFF;
+        return fragment;
+    }
+
+    /**
+     * Copies a part of the value without copying all of it.
+     */
+    private static void read(final Data data, final int offset, final byte[] me) {
+        int skip = offset;
+        int written = 0;
+        for (ByteBuffer buffer : data.toByteBuffers()) {
+            if (written == me.length) {
+                break;
+            }
+            if (skip >= buffer.remaining()) {
+                skip -= buffer.remaining();
+                continue;
+            }
+            buffer.position(buffer.position() + skip);
+            skip = 0;
+            final int length = Math.min(buffer.remaining(), me.length - written);
+            buffer.get(me, written, length);
+            written += length;
+        }
+    }
+
+    /**
+     * A fragment with the header of its value.
+     */
+    private static class Fragment {
+        private Number160 locationKey;
+        private Number160 valueHash;
+        private long expirationMillis;
+        private int length;
+        private int dataFragments;
+        private int fragments;
+        private int index;
+        private byte[] encoded;
+    }
+
+    /**
+     * Fetches fragments of a value until {@link #dataFragments()} fragments of the same value were found, which are
+     * then used to restore the value and all fragments.
+     */
+    private class Fetch {
+        private final Number160 locationKey;
+        private final Number160 contentKey;
+        private final Iterator<Integer> indexes;
+        private final byte[][] encoded = new byte[fragments][];
+        private final FutureDone<byte[][]> futureDone = new FutureDone<byte[][]>();
+
+        // guarded by this, set with the first fragment
+        private Number160 valueHash;
+        private long expirationMillis;
+        private int length;
+        private int found = 0;
+        private int pending = 0;
+        private boolean done = false;
+        // set before the future is done
+        private byte[] value;
+
+        private Fetch(final Number160 locationKey, final Number160 contentKey, final List<Integer> indexes) {
+            this.locationKey = locationKey;
+            this.contentKey = contentKey;
+            this.indexes = indexes.iterator();
+        }
+
+        private FutureDone<byte[][]> start() {
+            final List<Integer> first = new ArrayList<Integer>(dataFragments);
+            synchronized (this) {
+                while (first.size() < dataFragments && indexes.hasNext()) {
+                    first.add(indexes.next());
+                }
+                pending = first.size();
+            }
+            for (int index : first) {
+                fetch(index);
+            }
+            return futureDone;
+        }
+
+        private void fetch(final int index) {
+            final FutureGet futureGet = peer.get(fragmentKey(locationKey, index)).domainKey(DOMAIN_KEY)
+                    .contentKey(contentKey).requestP2PConfiguration(ONE_PEER).start();
+            futureGet.addListener(new BaseFutureAdapter<FutureGet>() {
+                @Override
+                public void operationComplete(final FutureGet future) throws Exception {
+                    fetched(index, future.isSuccess() ? decodeFragment(future.data()) : null);
+                }
+            });
+        }
+
+        private void fetched(final int index, final Fragment fragment) {
+            int next = -1;
+            boolean complete = false;
+            boolean failed = false;
+            synchronized (this) {
+                pending--;
+                if (done) {
+                    return;
+                }
+                if (matches(index, fragment)) {
+                    encoded[index] = fragment.encoded;
+                    found++;
+                } else if (indexes.hasNext()) {
+                    next = indexes.next();
+                    pending++;
+                }
+                if (found == dataFragments) {
+                    complete = true;
+                } else if (pending == 0) {
+                    failed = true;
+                }
+                done = complete || failed;
+            }
+            if (complete) {
+                value = reedSolomon.decode(encoded, length);
+                if (!Utils.makeSHAHash(value).equals(valueHash)) {
+                    futureDone.failed("The fragments of " + locationKey + " do not restore the value");
+                } else {
+                    futureDone.done(encoded);
+                }
+            } else if (failed) {
+                futureDone.failed("Only " + found + " fragments of " + locationKey + " found, need "
+                        + dataFragments);
+            } else if (next != -1) {
+                fetch(next);
+            }
+        }
+
+        /**
+         * @return True if the fragment belongs to the value of the fragments found so far
+         */
+        private boolean matches(final int index, final Fragment fragment) {
+            if (fragment == null || fragment.index != index || !locationKey.equals(fragment.locationKey)
+                    || fragment.dataFragments != dataFragments || fragment.fragments != fragments
+                    || fragment.encoded.length != reedSolomon.fragmentLength(fragment.length)) {
+                return false;
+            }
+            if (valueHash == null) {
+                valueHash = fragment.valueHash;
+                expirationMillis = fragment.expirationMillis;
+                length = fragment.length;
+                return true;
+            }
+            return valueHash.equals(fragment.valueHash);
+        }
+    }
+}
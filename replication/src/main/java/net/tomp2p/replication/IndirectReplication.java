@@ -18,7 +18,9 @@ package net.tomp2p.replication;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -39,21 +41,26 @@ import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.Number640;
 import net.tomp2p.peers.PeerAddress;
 import net.tomp2p.peers.PeerStatistic;
+import net.tomp2p.replication.ReplicationScheduler.Priority;
 import net.tomp2p.storage.Data;
 import net.tomp2p.synchronization.PeerSync;
+import net.tomp2p.synchronization.SyncStat;
 import net.tomp2p.utils.Utils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This implements the default indirect replication.
+ * This implements the default indirect replication. All data that is sent to the replica peers, after a churn event, by
+ * the periodic refresh and by the anti-entropy, is queued in a {@link ReplicationScheduler} and sent by a
+ * {@link ReplicationSender}. To change how the data is sent, set a sender with
+ * {@link #replicationSender(ReplicationSender)}.
  * 
  * @author Thomas Bocek
  * @author Maxat Pernebayev
  * 
  */
-public class IndirectReplication implements ResponsibilityListener, Runnable {
+public class IndirectReplication implements BatchResponsibilityListener, Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(IndirectReplication.class);
     private static final int DEFAULT_REPLICATION_FACTOR = 6;
 
@@ -64,8 +71,13 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
     private int delayMillis = -1;
     private int intervalMillis = -1;
     private boolean rsync = false;
+    private boolean antiEntropy = false;
     private int blockSize = -1;
+    private int batchSize = -1;
+    private int bytesPerSecond = -1;
     private ReplicationSender replicationSender;
+    private ReplicationScheduler replicationScheduler;
+    private PeerSync peerSync;
     private boolean nRoot = false;
     private boolean keepData = false;
     private Replication replication;
@@ -115,6 +127,28 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
     	return this;
     }
     
+    public boolean isAntiEntropy() {
+    	return antiEntropy;
+    }
+    
+    /**
+     * @param antiEntropy
+     *            If true, the periodic replication compares the range hashes with each replica peer and only sends
+     *            the location keys that differ, instead of sending all data. They are sent with the replication
+     *            sender, with {@link #rsync()} only the differences of the values. The replica peers need to use this
+     *            as well
+     * @return This class
+     */
+    public IndirectReplication antiEntropy(boolean antiEntropy) {
+    	this.antiEntropy = antiEntropy;
+    	return this;
+    }
+    
+    public IndirectReplication antiEntropy() {
+    	this.antiEntropy = true;
+    	return this;
+    }
+    
     public boolean isNRoot() {
     	return nRoot;
     }
@@ -191,6 +225,59 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
     	return blockSize;
     }
     
+    /**
+     * @param batchSize
+     *            The maximum number of location keys that are sent to a peer in one message. The
+     *            default is 100
+     * @return This class
+     */
+    public IndirectReplication batchSize(int batchSize) {
+    	this.batchSize = batchSize;
+    	return this;
+    }
+    
+    public int batchSize() {
+    	return batchSize;
+    }
+    
+    /**
+     * @param bytesPerSecond
+     *            The bytes of data that replication sends per second, so that a churn event does not starve the other
+     *            traffic. The default is -1, no limit
+     * @return This class
+     */
+    public IndirectReplication bytesPerSecond(int bytesPerSecond) {
+    	this.bytesPerSecond = bytesPerSecond;
+    	return this;
+    }
+    
+    public int bytesPerSecond() {
+    	return bytesPerSecond;
+    }
+    
+    /**
+     * @param replicationSender
+     *            Sends the data of the location keys that the {@link ReplicationScheduler} takes from its queues. This
+     *            is the place to change how the data is sent to the replica peers. With {@link #rsync()}, the rsync
+     *            sender is used. The default stores the data with a put
+     * @return This class
+     */
+    public IndirectReplication replicationSender(ReplicationSender replicationSender) {
+    	this.replicationSender = replicationSender;
+    	return this;
+    }
+    
+    public ReplicationSender replicationSender() {
+    	return replicationSender;
+    }
+    
+    /**
+     * @return The scheduler that queues the replication traffic, which is set in {@link #start()}
+     */
+    public ReplicationScheduler replicationScheduler() {
+    	return replicationScheduler;
+    }
+    
 	public IndirectReplication addReplicationFilter(ReplicationFilter filter) {
 		if (replicationFilters == null) {
 			replicationFilters = new HashSet<ReplicationFilter>(1);
@@ -219,6 +306,9 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
 		if (blockSize == -1) {
 			blockSize = 700;
 		}
+		if (batchSize == -1) {
+			batchSize = 100;
+		}
     	
     	if(autoReplication) {
     		replicationFactor = new AutoReplication(peer.peer()); 
@@ -245,11 +335,16 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
     	}
     	peer.storeRPC().replicationListener(replication);
     	
+		if(rsync || antiEntropy) {
+			peerSync = new PeerSync(peer, replication, blockSize);
+		}
 		if(rsync) {
-			replicationSender = new PeerSync(peer, replication, blockSize);
+			replicationSender = peerSync;
 		} else if (replicationSender == null) {
 			replicationSender = new DefaultReplicationSender(peer);
 		}
+		replicationScheduler = new ReplicationScheduler(peer, replicationSender).batchSize(batchSize)
+				.bytesPerSecond(bytesPerSecond);
     	
     	scheduledFuture = peer.peer().connectionBean().timer().scheduleAtFixedRate(
     			this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
@@ -285,13 +380,8 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
     public FutureDone<?> otherResponsible(final Number160 locationKey, final PeerAddress other) {
 
         LOG.debug("Other peer {} is responsible for {}. I'm {}", other, locationKey, peer.peerAddress());
-        
-        Number640 min = new Number640(locationKey, Number160.ZERO, Number160.ZERO, Number160.ZERO);
-        Number640 max = new Number640(locationKey, Number160.MAX_VALUE, Number160.MAX_VALUE,
-        		Number160.MAX_VALUE);
-        final NavigableMap<Number640, Data> dataMap = peer.storageLayer().get(min, max, -1, true);
-        LOG.debug("transfer from {} to {} for key {}", peer.peerAddress(), other, locationKey);
-        return replicationSender.sendDirect(other, locationKey, dataMap);
+        return replicationScheduler.schedule(other, Collections.singletonList(locationKey),
+                Priority.UNDER_REPLICATED);
     }
 
     @Override
@@ -303,11 +393,34 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
     @Override
     public FutureDone<?> meResponsible(final Number160 locationKey, PeerAddress newPeer) {
         LOG.debug("I ({}) sync {} to {}", peer.peerAddress(), locationKey, newPeer);
-        Number640 min = new Number640(locationKey, Number160.ZERO, Number160.ZERO, Number160.ZERO);
-        Number640 max = new Number640(locationKey, Number160.MAX_VALUE, Number160.MAX_VALUE,
-                Number160.MAX_VALUE);
-        final NavigableMap<Number640, Data> dataMap = peer.storageLayer().get(min, max, -1, true);
-        return replicationSender.sendDirect(newPeer, locationKey, dataMap);
+        return replicationScheduler.schedule(newPeer, Collections.singletonList(locationKey),
+                Priority.UNDER_REPLICATED);
+    }
+
+    @Override
+    public FutureDone<?> otherResponsible(final Collection<Number160> locationKeys, final PeerAddress other) {
+        LOG.debug("Other peer {} is responsible for {}. I'm {}", other, locationKeys, peer.peerAddress());
+        return replicationScheduler.schedule(other, locationKeys, Priority.UNDER_REPLICATED);
+    }
+
+    @Override
+    public FutureDone<?> meResponsible(final Collection<Number160> locationKeys) {
+        LOG.debug("I ({}) now responsible for {}", peer.peerAddress(), locationKeys);
+        final Map<PeerAddress, List<Number160>> replicas = replicas(locationKeys);
+        List<FutureDone<?>> retVal = new ArrayList<FutureDone<?>>(replicas.size());
+        for (Map.Entry<PeerAddress, List<Number160>> entry : replicas.entrySet()) {
+            LOG.debug("[storage refresh] I ({}) restore {} to {}", peer.peerAddress(), entry.getValue(),
+                    entry.getKey());
+            retVal.add(replicationScheduler.schedule(entry.getKey(), entry.getValue(),
+                    Priority.UNDER_REPLICATED));
+        }
+        return whenAll(retVal);
+    }
+
+    @Override
+    public FutureDone<?> meResponsible(final Collection<Number160> locationKeys, final PeerAddress newPeer) {
+        LOG.debug("I ({}) sync {} to {}", peer.peerAddress(), locationKeys, newPeer);
+        return replicationScheduler.schedule(newPeer, locationKeys, Priority.UNDER_REPLICATED);
     }
 
     @Override
@@ -318,12 +431,29 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
     		// publish it again... The good way is to do a diff
     		Collection<Number160> locationKeys = peer.storageLayer().findContentForResponsiblePeerID(peer.peerID());
         
-    		for (Number160 locationKey : locationKeys) {
-    			synchronizeData(locationKey);
+    		if (antiEntropy) {
+    			// compare the range hashes with each replica, so that data is only sent if it differs, and then
+    			// queued like the refresh
+    			for (Map.Entry<PeerAddress, List<Number160>> entry : replicas(locationKeys).entrySet()) {
+    				FutureDone<SyncStat> futureSync = peerSync.synchronizeTree(entry.getKey())
+    						.locationKeys(entry.getValue()).replicationScheduler(replicationScheduler).start();
+    				peer.peer().notifyAutomaticFutures(futureSync);
+    			}
+    		} else {
+    			// queued behind the replicas that are missing after a churn event
+    			for (Map.Entry<PeerAddress, List<Number160>> entry : replicas(locationKeys).entrySet()) {
+    				replicationScheduler.schedule(entry.getKey(), entry.getValue(), Priority.REFRESH);
+    			}
     		}
     		// recalculate replication factor
     		int replicationFactor = IndirectReplication.this.replicationFactor.replicationFactor();
-    		replication.replicationFactor(replicationFactor);
+    		if (replicationFactor != replication.replicationFactor()) {
+    			// this rebuilds the responsibility index
+    			replication.replicationFactor(replicationFactor);
+    		} else {
+    			// pick up the responsibilities that changed in the storage, e.g., expired ones
+    			replication.updateResponsibilityIndex();
+    		}
     	} catch (Throwable t) {
     		t.printStackTrace();
     	}
@@ -344,53 +474,92 @@ public class IndirectReplication implements ResponsibilityListener, Runnable {
      *            The location key.
      */
     private FutureDone<?> synchronizeData(final Number160 locationKey) {
-        Number640 min = new Number640(locationKey, Number160.ZERO, Number160.ZERO, Number160.ZERO);
-        Number640 max = new Number640(locationKey, Number160.MAX_VALUE, Number160.MAX_VALUE,
-                Number160.MAX_VALUE);
-        final NavigableMap<Number640, Data> dataMap = peer.storageLayer().get(min, max, -1, true);
-        return send(locationKey, dataMap);
-        
+        List<PeerAddress> closePeers = replicaPeers(locationKey);
+        List<FutureDone<?>> retVal = new ArrayList<FutureDone<?>>(closePeers.size());
+        for (PeerAddress closePeer : closePeers) {
+            retVal.add(replicationScheduler.schedule(closePeer, Collections.singletonList(locationKey),
+                    Priority.UNDER_REPLICATED));
+        }
+        LOG.debug("[storage refresh] I ({}) restore {} to {}", peer.peerAddress(),
+                locationKey, closePeers);
+        return FutureDone.whenAll(retVal);
     }
 
     /**
-     * If my peer is responsible, I'll issue a put if absent to make sure all replicas are stored.
+     * Groups the location keys by the close peers that should store a replica.
      * 
+     * @param locationKeys
+     *            The location keys
+     * @return The location keys for each close peer
+     */
+    private Map<PeerAddress, List<Number160>> replicas(final Collection<Number160> locationKeys) {
+        final Map<PeerAddress, List<Number160>> replicas = new LinkedHashMap<PeerAddress, List<Number160>>();
+        for (Number160 locationKey : locationKeys) {
+            for (PeerAddress closePeer : replicaPeers(locationKey)) {
+                List<Number160> closePeerLocationKeys = replicas.get(closePeer);
+                if (closePeerLocationKeys == null) {
+                    closePeerLocationKeys = new ArrayList<Number160>();
+                    replicas.put(closePeer, closePeerLocationKeys);
+                }
+                closePeerLocationKeys.add(locationKey);
+            }
+        }
+        return replicas;
+    }
+
+    /**
      * @param locationKey
      *            The location key
-     * @param domainKey
-     *            The domain key
-     * @param dataMapConverted
-     *            The data to store
-     * @return The future of the put
+     * @return The close peers that should store a replica besides my peer
      */
-    protected FutureDone<?> send(final Number160 locationKey, final NavigableMap<Number640, Data> dataMap) {
+    private List<PeerAddress> replicaPeers(final Number160 locationKey) {
         int replicationFactor = replication.replicationFactor() - 1;
-        List<PeerAddress> closePeers = new ArrayList<PeerAddress>();
+        List<PeerAddress> closePeers = new ArrayList<PeerAddress>(replicationFactor);
         SortedSet<PeerStatistic> sortedSet = peer.peerBean().peerMap()
                 .closePeers(locationKey, replicationFactor);
-        int count = 0;
-        List<FutureDone<?>> retVal = new ArrayList<FutureDone<?>>(replicationFactor);
         for (PeerStatistic peerStatistic : sortedSet) {
+        	if (closePeers.size() == replicationFactor) {
+        		break;
+        	}
         	if(replication.rejectReplication(peerStatistic.peerAddress())) {
         		continue;
         	}
-        	
-            count++;
             closePeers.add(peerStatistic.peerAddress());
-            retVal.add(replicationSender.sendDirect(peerStatistic.peerAddress(), locationKey, dataMap));
-            if (count == replicationFactor) {
-                break;
-            }
         }
-        LOG.debug("[storage refresh] I ({}) restore {} to {}", peer.peerAddress(),
-                locationKey, closePeers);
-        return FutureDone.whenAll(retVal);
+        return closePeers;
+    }
+
+    /**
+     * Like {@link FutureDone#whenAll(List)}, but fails if one of the futures failed, so that a responsibility is only
+     * handed off if all data was transferred.
+     */
+    static FutureDone<Void> whenAll(final List<FutureDone<?>> all) {
+        final FutureDone<Void> retVal = new FutureDone<Void>();
+        if (all.isEmpty()) {
+            return retVal.done();
+        }
+        FutureDone.whenAll(all).addListener(new BaseFutureAdapter<FutureDone<List<FutureDone<?>>>>() {
+            @Override
+            public void operationComplete(final FutureDone<List<FutureDone<?>>> future) throws Exception {
+                for (FutureDone<?> futureDone : future.object()) {
+                    if (futureDone.isFailed()) {
+                        retVal.failed(futureDone);
+                        return;
+                    }
+                }
+                retVal.done();
+            }
+        });
+        return retVal;
     }
     
     public void shutdown() {
     	if(scheduledFuture!=null) {
     		scheduledFuture.cancel(false);
     	}
+    	if(replicationScheduler!=null) {
+    		replicationScheduler.shutdown();
+    	}
     }
 
     private static class DefaultReplicationSender implements ReplicationSender {
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2012 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.replication;
+
+/**
+ * A systematic Reed-Solomon code over GF(2^8) in pure Java. A value is split into k data fragments, and n - k parity
+ * fragments are added, so that any k of the n fragments can restore the value. The first k fragments are the value
+ * itself, so a value whose data fragments are all available is restored by copying.
+ * <p>
+ * The encoding matrix is a Vandermonde matrix, multiplied by the inverse of its first k rows. Every k x k sub-matrix of
+ * it can be inverted, which is what makes any k fragments sufficient.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class ReedSolomon {
+
+    // the primitive polynomial x^8 + x^4 + x^3 + x^2 + 1
+    private static final int POLYNOMIAL = 0x11D;
+    private static final int FIELD_SIZE = 256;
+
+    private static final byte[] EXP = new byte[FIELD_SIZE * 2];
+    private static final int[] LOG = new int[FIELD_SIZE];
+    private static final byte[][] MUL = new byte[FIELD_SIZE][FIELD_SIZE];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < FIELD_SIZE - 1; i++) {
+            EXP[i] = (byte) x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= FIELD_SIZE) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        // so that the sum of two logarithms needs no modulo
+        for (int i = FIELD_SIZE - 1; i < EXP.length; i++) {
+            EXP[i] = EXP[i - (FIELD_SIZE - 1)];
+        }
+        for (int a = 1; a < FIELD_SIZE; a++) {
+            for (int b = 1; b < FIELD_SIZE; b++) {
+                MUL[a][b] = EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int dataFragments;
+    private final int fragments;
+    // fragments x dataFragments, the first dataFragments rows are the identity
+    private final byte[][] matrix;
+
+    /**
+     * Constructor.
+     *
+     * @param dataFragments
+     *            The number of fragments k that are needed to restore a value
+     * @param fragments
+     *            The number of fragments n a value is encoded into, at most 256
+     */
+    public ReedSolomon(final int dataFragments, final int fragments) {
+        if (dataFragments <= 0 || fragments < dataFragments || fragments > FIELD_SIZE) {
+            throw new IllegalArgumentException("Need 0 < data fragments <= fragments <= " + FIELD_SIZE);
+        }
+        this.dataFragments = dataFragments;
+        this.fragments = fragments;
+        final byte[][] vandermonde = new byte[fragments][dataFragments];
+        for (int row = 0; row < fragments; row++) {
+            for (int column = 0; column < dataFragments; column++) {
+                vandermonde[row][column] = power(row, column);
+            }
+        }
+        final byte[][] top = new byte[dataFragments][];
+        System.arraycopy(vandermonde, 0, top, 0, dataFragments);
+        this.matrix = multiply(vandermonde, invert(top));
+    }
+
+    /**
+     * @return The number of fragments k that are needed to restore a value
+     */
+    public int dataFragments() {
+        return dataFragments;
+    }
+
+    /**
+     * @return The number of fragments n a value is encoded into
+     */
+    public int fragments() {
+        return fragments;
+    }
+
+    /**
+     * @param length
+     *            The length of the value
+     * @return The length of each fragment of a value with this length
+     */
+    public int fragmentLength(final int length) {
+        return Math.max((length + dataFragments - 1) / dataFragments, 1);
+    }
+
+    /**
+     * Encodes a value into {@link #fragments()} fragments of the same length. The last data fragment is padded with
+     * zeros.
+     *
+     * @param value
+     *            The value
+     * @return The fragments, the first {@link #dataFragments()} are the value
+     */
+    public byte[][] encode(final byte[] value) {
+        final int fragmentLength = fragmentLength(value.length);
+        final byte[][] encoded = new byte[fragments][fragmentLength];
+        for (int i = 0; i < dataFragments; i++) {
+            final int offset = i * fragmentLength;
+            if (offset < value.length) {
+                System.arraycopy(value, offset, encoded[i], 0, Math.min(fragmentLength, value.length - offset));
+            }
+        }
+        for (int row = dataFragments; row < fragments; row++) {
+            encode(matrix[row], encoded, encoded[row]);
+        }
+        return encoded;
+    }
+
+    /**
+     * Restores the missing fragments.
+     *
+     * @param encoded
+     *            The {@link #fragments()} fragments, null for the missing ones. The missing fragments are set
+     * @throws IllegalArgumentException
+     *             If less than {@link #dataFragments()} fragments are available or they have different lengths
+     */
+    public void reconstruct(final byte[][] encoded) {
+        if (encoded.length != fragments) {
+            throw new IllegalArgumentException("Expected " + fragments + " fragments, got " + encoded.length);
+        }
+        // the first k available fragments, preferring the data fragments
+        final int[] available = new int[dataFragments];
+        int nr = 0;
+        int fragmentLength = -1;
+        boolean complete = true;
+        for (int i = 0; i < fragments; i++) {
+            if (encoded[i] == null) {
+                complete = complete && i >= dataFragments;
+                continue;
+            }
+            if (fragmentLength == -1) {
+                fragmentLength = encoded[i].length;
+            } else if (fragmentLength != encoded[i].length) {
+                throw new IllegalArgumentException("The fragments need to have the same length");
+            }
+            if (nr < dataFragments) {
+                available[nr++] = i;
+            }
+        }
+        if (nr < dataFragments) {
+            throw new IllegalArgumentException("Need " + dataFragments + " fragments, got " + nr);
+        }
+        if (!complete) {
+            // the rows of the available fragments map the data fragments to them, the inverse maps them back
+            final byte[][] rows = new byte[dataFragments][];
+            final byte[][] inputs = new byte[dataFragments][];
+            for (int i = 0; i < dataFragments; i++) {
+                rows[i] = matrix[available[i]];
+                inputs[i] = encoded[available[i]];
+            }
+            final byte[][] decode = invert(rows);
+            for (int i = 0; i < dataFragments; i++) {
+                if (encoded[i] == null) {
+                    encoded[i] = new byte[fragmentLength];
+                    encode(decode[i], inputs, encoded[i]);
+                }
+            }
+        }
+        for (int row = dataFragments; row < fragments; row++) {
+            if (encoded[row] == null) {
+                encoded[row] = new byte[fragmentLength];
+                encode(matrix[row], encoded, encoded[row]);
+            }
+        }
+    }
+
+    /**
+     * Restores a value from its fragments.
+     *
+     * @param encoded
+     *            The {@link #fragments()} fragments, null for the missing ones. The missing fragments are set
+     * @param length
+     *            The length of the value
+     * @return The value
+     */
+    public byte[] decode(final byte[][] encoded, final int length) {
+        reconstruct(encoded);
+        final byte[] value = new byte[length];
+        final int fragmentLength = encoded[0].length;
+        for (int i = 0; i < dataFragments; i++) {
+            final int offset = i * fragmentLength;
+            if (offset < length) {
+                System.arraycopy(encoded[i], 0, value, offset, Math.min(fragmentLength, length - offset));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Sets the output to the sum of the first {@link #dataFragments()} inputs multiplied by the coefficients.
+     */
+    private void encode(final byte[] coefficients, final byte[][] inputs, final byte[] output) {
+        for (int i = 0; i < dataFragments; i++) {
+            final byte[] mul = MUL[coefficients[i] & 0xFF];
+            final byte[] input = inputs[i];
+            if (i == 0) {
+                for (int j = 0; j < output.length; j++) {
+                    output[j] = mul[input[j] & 0xFF];
+                }
+            } else {
+                for (int j = 0; j < output.length; j++) {
+                    output[j] ^= mul[input[j] & 0xFF];
+                }
+            }
+        }
+    }
+
+    private static byte power(final int a, final int n) {
+        if (n == 0) {
+            return 1;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        return EXP[(LOG[a] * n) % (FIELD_SIZE - 1)];
+    }
+
+    private static byte[][] multiply(final byte[][] left, final byte[][] right) {
+        final byte[][] result = new byte[left.length][right[0].length];
+        for (int row = 0; row < left.length; row++) {
+            for (int column = 0; column < right[0].length; column++) {
+                int value = 0;
+                for (int i = 0; i < right.length; i++) {
+                    value ^= MUL[left[row][i] & 0xFF][right[i][column] & 0xFF];
+                }
+                result[row][column] = (byte) value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inverts a square matrix with Gauss-Jordan elimination.
+     */
+    private static byte[][] invert(final byte[][] matrix) {
+        final int size = matrix.length;
+        // the matrix with the identity on the right
+        final byte[][] work = new byte[size][size * 2];
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(matrix[row], 0, work[row], 0, size);
+            work[row][size + row] = 1;
+        }
+        for (int column = 0; column < size; column++) {
+            int pivot = column;
+            while (pivot < size && work[pivot][column] == 0) {
+                pivot++;
+            }
+            if (pivot == size) {
+                throw new IllegalArgumentException("Matrix is singular");
+            }
+            final byte[] swap = work[pivot];
+            work[pivot] = work[column];
+            work[column] = swap;
+            // scale the pivot to 1
+            final byte[] scale = MUL[EXP[FIELD_SIZE - 1 - LOG[work[column][column] & 0xFF]] & 0xFF];
+            for (int i = 0; i < size * 2; i++) {
+                work[column][i] = scale[work[column][i] & 0xFF];
+            }
+            for (int row = 0; row < size; row++) {
+                if (row != column && work[row][column] != 0) {
+                    final byte[] factor = MUL[work[row][column] & 0xFF];
+                    for (int i = 0; i < size * 2; i++) {
+                        work[row][i] ^= factor[work[column][i] & 0xFF];
+                    }
+                }
+            }
+        }
+        final byte[][] inverse = new byte[size][size];
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(work[row], size, inverse[row], 0, size);
+        }
+        return inverse;
+    }
+}
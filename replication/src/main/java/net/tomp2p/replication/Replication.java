@@ -18,8 +18,15 @@ package net.tomp2p.replication;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
@@ -40,7 +47,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class has 3 methods that are called from outside eventes: check, peerInsert, peerRemoved.
+ * This class has 3 methods that are called from outside eventes: check, peerInsert, peerRemoved. A churn event only
+ * checks the location keys whose replica set can change, see {@link ResponsibilityIndex}, and notifies the listeners
+ * per peer.
  */
 public class Replication implements PeerMapChangeListener, ReplicationListener {
     private static final Logger LOG = LoggerFactory.getLogger(Replication.class);
@@ -63,6 +72,8 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
 
 	private final Collection<ReplicationFilter> filters;
 
+    private final ResponsibilityIndex responsibilityIndex = new ResponsibilityIndex();
+
     /**
      * Constructor.
      * 
@@ -88,6 +99,7 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
         this.replicationFactor = replicationFactor;
         this.nRootReplication = nRoot;
         this.keepData = keepData;
+        updateResponsibilityIndex();
         peerMap.addPeerMapChangeListener(this);
     }
     
@@ -96,7 +108,11 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
      * @return The replication factor.
      */
     public Replication replicationFactor(int replicationFactor) {
-        this.replicationFactor = replicationFactor;
+        if (this.replicationFactor != replicationFactor) {
+            this.replicationFactor = replicationFactor;
+            // the replica sets changed
+            updateResponsibilityIndex();
+        }
         return this;
     }
 
@@ -197,27 +213,37 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
      *            The location key.
      */
 	private FutureForkJoin<FutureDone<Void>> notifyMeResponsible(final Number160 locationKey) {
-		final FutureDone[] futureDones = new FutureDone[listeners.size()];
-		int index = 0;
+		return notifyMeResponsible(Collections.singletonList(locationKey));
+	}
+
+	private FutureForkJoin<FutureDone<Void>> notifyMeResponsible(final Collection<Number160> locationKeys) {
+		final List<FutureDone<?>> futureDones = new ArrayList<FutureDone<?>>(listeners.size());
 		for (ResponsibilityListener responsibilityListener : listeners) {
-			futureDones[index++] = responsibilityListener.meResponsible(locationKey);
+			if (responsibilityListener instanceof BatchResponsibilityListener) {
+				futureDones.add(((BatchResponsibilityListener) responsibilityListener).meResponsible(locationKeys));
+			} else {
+				for (Number160 locationKey : locationKeys) {
+					futureDones.add(responsibilityListener.meResponsible(locationKey));
+				}
+			}
 		}
-		final FutureForkJoin<FutureDone<Void>> retVal = new FutureForkJoin<FutureDone<Void>>(
-		        new AtomicReferenceArray<FutureDone<Void>>(futureDones));
-		peer.peer().notifyAutomaticFutures(retVal);
-		return retVal;
+		return forkJoin(futureDones);
 	}
-    
-	private FutureForkJoin<FutureDone<Void>> notifyMeResponsible(final Number160 locationKey, PeerAddress newPeer) {
-		final FutureDone[] futureDones = new FutureDone[listeners.size()];
-		int index = 0;
+
+	private FutureForkJoin<FutureDone<Void>> notifyMeResponsible(final Collection<Number160> locationKeys,
+	        final PeerAddress newPeer) {
+		final List<FutureDone<?>> futureDones = new ArrayList<FutureDone<?>>(listeners.size());
 		for (ResponsibilityListener responsibilityListener : listeners) {
-			futureDones[index++] = responsibilityListener.meResponsible(locationKey, newPeer);
+			if (responsibilityListener instanceof BatchResponsibilityListener) {
+				futureDones.add(((BatchResponsibilityListener) responsibilityListener).meResponsible(locationKeys,
+				        newPeer));
+			} else {
+				for (Number160 locationKey : locationKeys) {
+					futureDones.add(responsibilityListener.meResponsible(locationKey, newPeer));
+				}
+			}
 		}
-		final FutureForkJoin<FutureDone<Void>> retVal = new FutureForkJoin<FutureDone<Void>>(
-		        new AtomicReferenceArray<FutureDone<Void>>(futureDones));
-		peer.peer().notifyAutomaticFutures(retVal);
-		return retVal;
+		return forkJoin(futureDones);
 	}
 
     /**
@@ -227,20 +253,66 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
      *            The location key.
      * @param other
      *            The other peer.
-     * @param delayed Indicates if the other peer should get notified immediately or delayed. The case for delayed is that
-     *            multiple non responsible peers may call this and a delayed call in that case may be better.
      */
 	private FutureForkJoin<FutureDone<Void>> notifyOtherResponsible(final Number160 locationKey, final PeerAddress other) {
-		final FutureDone[] futureDones = new FutureDone[listeners.size()];
-		int index = 0;
+		return notifyOtherResponsible(Collections.singletonList(locationKey), other);
+	}
+
+	private FutureForkJoin<FutureDone<Void>> notifyOtherResponsible(final Collection<Number160> locationKeys,
+	        final PeerAddress other) {
+		final List<FutureDone<?>> futureDones = new ArrayList<FutureDone<?>>(listeners.size());
 		for (ResponsibilityListener responsibilityListener : listeners) {
-			futureDones[index++] = responsibilityListener.otherResponsible(locationKey, other);
+			if (responsibilityListener instanceof BatchResponsibilityListener) {
+				futureDones.add(((BatchResponsibilityListener) responsibilityListener).otherResponsible(locationKeys,
+				        other));
+			} else {
+				for (Number160 locationKey : locationKeys) {
+					futureDones.add(responsibilityListener.otherResponsible(locationKey, other));
+				}
+			}
 		}
+		return forkJoin(futureDones);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private FutureForkJoin<FutureDone<Void>> forkJoin(final List<FutureDone<?>> futureDones) {
+		final FutureDone[] array = futureDones.toArray(new FutureDone[futureDones.size()]);
 		final FutureForkJoin<FutureDone<Void>> retVal = new FutureForkJoin<FutureDone<Void>>(
-		        new AtomicReferenceArray<FutureDone<Void>>(futureDones));
+		        new AtomicReferenceArray<FutureDone<Void>>(array));
 		peer.peer().notifyAutomaticFutures(retVal);
 		return retVal;
 	}
+
+	/**
+	 * Removes the responsibility for the location keys once the other peer has been notified. If notifying fails, we
+	 * keep the responsibility and try again with the next churn event.
+	 */
+	private void removeResponsibilityOnSuccess(final FutureForkJoin<FutureDone<Void>> futureForkJoin,
+	        final Collection<Number160> locationKeys, final PeerAddress other) {
+		futureForkJoin.addListener(new BaseFutureListener<BaseFuture>() {
+			@Override
+			public void operationComplete(BaseFuture future) throws Exception {
+				if (future.isSuccess()) {
+					for (Number160 locationKey : locationKeys) {
+						removeResponsibility(locationKey);
+					}
+				} else {
+					LOG.debug("I {} couldn't notify newly joined peer {} about responsibility for {}."
+					        + " I keep responsibility.", selfAddress, other, locationKeys);
+				}
+			}
+
+			@Override
+			public void exceptionCaught(Throwable t) throws Exception {
+				LOG.error("Unexcepted exception ocurred.", t);
+			}
+		});
+	}
+
+	private void removeResponsibility(final Number160 locationKey) {
+		backend.removeResponsibility(locationKey, keepData);
+		updateResponsibilityIndex(locationKey);
+	}
     
     @Override
     public void dataRemoved(Number160 locationKey) {
@@ -292,31 +364,11 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
 				FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyOtherResponsible(
 						locationKey, closest);
 				// Remove responsibility after successful notifying.
-				futureForkJoin
-						.addListener(new BaseFutureListener<BaseFuture>() {
-							@Override
-							public void operationComplete(BaseFuture future) throws Exception {
-								if (future.isSuccess()) {
-									backend.removeResponsibility(
-											locationKey,
-											keepData);
-								} else {
-									LOG.debug(
-											"I {} couldn't notify newly joined peer {} about responsibility for {}."
-													+ " I keep responsibility.",
-											selfAddress, closest,
-											locationKey);
-								}
-							}
-							@Override
-							public void exceptionCaught(Throwable t)
-									throws Exception {
-								LOG.error("Unexcepted exception ocurred.", t);
-							}
-						});
+				removeResponsibilityOnSuccess(futureForkJoin, Collections.singletonList(locationKey), closest);
 				peer.peer().notifyAutomaticFutures(futureForkJoin);
 			}
 		}
+        updateResponsibilityIndex(locationKey);
     }
 
     @Override
@@ -325,12 +377,17 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
             return;
         }
         LOG.debug("The peer {} was inserted in my map. I'm {}", peerAddress, selfAddress);
-        // check if we should change responsibility.
-        Collection<Number160> myResponsibleLocations = backend.findContentForResponsiblePeerID(selfAddress
-                .peerId());
+        // check if we should change responsibility, only the keys where the new peer is closer than a replica can
+        // change.
+        Collection<Number160> myResponsibleLocations = responsibilityIndex.affectedByInsert(peerAddress.peerId());
         LOG.debug("I {} have to check replication responsibilities for {}.", selfAddress, myResponsibleLocations);
-        
+        final Notifications notifications = new Notifications();
         for (final Number160 myResponsibleLocation : myResponsibleLocations) {
+			if (!isMeResponsible(myResponsibleLocation)) {
+				// responsibility was removed in the meantime
+				updateResponsibilityIndex(myResponsibleLocation);
+				continue;
+			}
 			if (!nRootReplication) {
 				// use 0-root replication strategy
 				PeerAddress closest = closest(myResponsibleLocation);
@@ -341,20 +398,16 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
     								myResponsibleLocation);
     						// notify that someone else is now responsible for the
     						// content with key responsibleLocations
-    						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyOtherResponsible(myResponsibleLocation, closest);
-    						peer.peer().notifyAutomaticFutures(futureForkJoin);
-    						// cancel any pending notifyMeResponsible*, as we are
-    						// not responsible anymore.
+    						notifications.otherResponsible(myResponsibleLocation, closest);
     					} else {
     						LOG.debug("I {} know already that {} is responsible for {}.", selfAddress, closest,
     								myResponsibleLocation);
     					}
 					} else {
 						// notify closest replica node about responsibility
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyOtherResponsible(myResponsibleLocation, closest);
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+						notifications.otherResponsible(myResponsibleLocation, closest);
 						LOG.debug("I {} am no more in the replica set of {}.", selfAddress, myResponsibleLocation);
-						backend.removeResponsibility(myResponsibleLocation, keepData);
+						removeResponsibility(myResponsibleLocation);
 					}
 				} else if (isInReplicationRange(myResponsibleLocation, peerAddress, replicationFactor)) {
 					LOG.debug("{} is in the replica set for {}.", peerAddress, myResponsibleLocation);
@@ -367,15 +420,13 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
 								myResponsibleLocation);
 						// I figured out I'm the new responsible, so check all
 						// my peer in the replication range
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyMeResponsible(myResponsibleLocation);
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+						notifications.meResponsible(myResponsibleLocation);
 					} else {
 						LOG.debug("I {} already know that I'm responsible for {}.", selfAddress,
 								myResponsibleLocation);
 						// new peer joined, I'm responsible, so replicate to
 						// that peer
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyMeResponsible(myResponsibleLocation, peerAddress);
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+						notifications.meResponsible(myResponsibleLocation, peerAddress);
 					}
 				}
 			} else {
@@ -386,40 +437,14 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
 						LOG.debug("I {} and newly joined peer {} have replication responibility for {}.",
 								selfAddress, peerAddress, myResponsibleLocation);
 						// newly joined peer has to get notified
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyMeResponsible(myResponsibleLocation, peerAddress);
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+						notifications.meResponsible(myResponsibleLocation, peerAddress);
 					} else {
 						LOG.debug("I {} lose and newly joined peer {} gets replication responsibility for {}.",
 								selfAddress, peerAddress, myResponsibleLocation);
-						// newly joined peer has to get notified
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyOtherResponsible(
-								myResponsibleLocation, peerAddress);
-						// I'm not in replication range, I don't need to know
-						// about all responsibility entries to the given key.
-						// Remove responsibility after notifying newly joined peer.
-						futureForkJoin.addListener(new BaseFutureListener<BaseFuture>() {
-							@Override
-							public void operationComplete(BaseFuture future)
-									throws Exception {
-										if (future.isSuccess()) {
-											backend.removeResponsibility(
-													myResponsibleLocation,
-													keepData);
-										} else {
-											LOG.debug(
-													"I {} couldn't notify newly joined peer {} about responsibility for {}."
-															+ " I keep responsibility.",
-													selfAddress, peerAddress,
-													myResponsibleLocation);
-										}
-							}
-							@Override
-							public void exceptionCaught(Throwable t)
-									throws Exception {
-								LOG.error("Unexcepted exception ocurred.", t);
-							}
-						});
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+						// newly joined peer has to get notified. I'm not in replication range, I don't need to
+						// know about all responsibility entries to the given key. Remove responsibility after
+						// notifying newly joined peer.
+						notifications.handOff(myResponsibleLocation, peerAddress);
 					}
 				} else {
 					// check if I still have to replicate
@@ -429,39 +454,16 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
 								"I {} and newly joined peer {} don't have to replicate {}.",
 								selfAddress, peerAddress, myResponsibleLocation);
 						// I'm not in replication range, I don't need to know
-						// about all responsibility entries to the given key
-						final PeerAddress closest = closest(myResponsibleLocation);
-						// Try to notify another replica node.
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyOtherResponsible(
-								myResponsibleLocation, closest);
-						// Remove responsibility after successful notifying.
-						futureForkJoin
-								.addListener(new BaseFutureListener<BaseFuture>() {
-									@Override
-									public void operationComplete(BaseFuture future) throws Exception {
-										if (future.isSuccess()) {
-											backend.removeResponsibility(
-													myResponsibleLocation,
-													keepData);
-										} else {
-											LOG.debug(
-													"I {} couldn't notify newly joined peer {} about responsibility for {}."
-															+ " I keep responsibility.",
-													selfAddress, closest,
-													myResponsibleLocation);
-										}
-									}
-									@Override
-									public void exceptionCaught(Throwable t)
-											throws Exception {
-										LOG.error("Unexcepted exception ocurred.", t);
-									}
-								});
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+						// about all responsibility entries to the given key.
+						// Try to notify another replica node and remove
+						// responsibility after successful notifying.
+						notifications.handOff(myResponsibleLocation, closest(myResponsibleLocation));
 					}
 				}
 			}
+			updateResponsibilityIndex(myResponsibleLocation);
 		}
+        notifications.notifyListeners();
     }
 
     @Override
@@ -474,9 +476,11 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
         Collection<Number160> otherResponsibleLocations = backend
                 .findContentForResponsiblePeerID(peerAddress.peerId());
         LOG.debug("I {} know that {} has to replicate {}.", selfAddress, peerAddress, otherResponsibleLocations);
-        Collection<Number160> myResponsibleLocations = backend.findContentForResponsiblePeerID(selfAddress
-                .peerId());
-        LOG.debug("I {} have to replicate {}.", selfAddress, myResponsibleLocations);
+        // only the keys where the peer that left was a replica can change
+        Collection<Number160> myResponsibleLocations = new LinkedHashSet<Number160>(
+                responsibilityIndex.affectedByRemove(peerAddress.peerId()));
+        LOG.debug("I {} have to check replication responsibilities for {}.", selfAddress, myResponsibleLocations);
+        final Notifications notifications = new Notifications();
 		if (!nRootReplication) {
 			// check if we are now responsible for content where the other peer
 			// was responsible
@@ -486,62 +490,70 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
 					if (backend.updateResponsibilities(otherResponsibleLocation,
 							closest.peerId())) {
 						LOG.debug("I {} am responsible for {} after leaving of {}.", selfAddress,
-								otherResponsibleLocations, peerAddress);
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyMeResponsible(otherResponsibleLocation);
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+								otherResponsibleLocation, peerAddress);
+						notifications.meResponsible(otherResponsibleLocation);
 						// we don't need to check this again, so remove it from
 						// the list if present
 						myResponsibleLocations.remove(otherResponsibleLocation);
 					} else {
 						LOG.debug("I {} already know that I'm responsible for {} after leaving of {}.",
-								selfAddress, otherResponsibleLocations, peerAddress);
+								selfAddress, otherResponsibleLocation, peerAddress);
 					}
 				} else {
 					if (backend.updateResponsibilities(otherResponsibleLocation,
 							closest.peerId())) {
 						LOG.debug("We should check if the closer peer has the content");
-						FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyOtherResponsible(otherResponsibleLocation, closest);
-						peer.peer().notifyAutomaticFutures(futureForkJoin);
+						notifications.otherResponsible(otherResponsibleLocation, closest);
 						// we don't need to check this again, so remove it from
 						// the list if present
 						myResponsibleLocations.remove(otherResponsibleLocation);
 					}
 				}
+				updateResponsibilityIndex(otherResponsibleLocation);
 			}
 			// now check for our responsibilities. If a peer is gone and it was
 			// in the replication range, we need make sure
 			// we have enough copies
 			for (Number160 myResponsibleLocation : myResponsibleLocations) {
+				if (!isMeResponsible(myResponsibleLocation)) {
+					updateResponsibilityIndex(myResponsibleLocation);
+					continue;
+				}
 				if (isInReplicationRange(myResponsibleLocation, peerAddress, replicationFactor)) {
 					LOG.debug(
 							"Leaving {} affects my {} replication responsiblity for {}.",
 							selfAddress, peerAddress, myResponsibleLocation);
-					FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyMeResponsible(myResponsibleLocation);
-					peer.peer().notifyAutomaticFutures(futureForkJoin);
+					notifications.meResponsible(myResponsibleLocation);
 				} else {
 					LOG.debug("Leaving {} doesn't affect my {} replication responsibility for {}.",
 							peerAddress, selfAddress, myResponsibleLocation);
 				}
+				updateResponsibilityIndex(myResponsibleLocation);
 			}
 		} else {
             // Check for our responsibilities. If a peer is gone and it was
             // in the replication range, we need make sure we have enough copies
             for (Number160 myResponsibleLocation : myResponsibleLocations) {
+                if (!isMeResponsible(myResponsibleLocation)) {
+                    updateResponsibilityIndex(myResponsibleLocation);
+                    continue;
+                }
                 if (isInReplicationRange(myResponsibleLocation, peerAddress,
                         replicationFactor)) {
                     LOG.debug(
                             "I {} realized that leaving {} had also replication responsibility for {}."
                                     + " The replica set has to get notified about the leaving replica node.",
                             selfAddress, peerAddress, myResponsibleLocation);
-                    FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyMeResponsible(myResponsibleLocation);
-                    peer.peer().notifyAutomaticFutures(futureForkJoin);
+                    notifications.meResponsible(myResponsibleLocation);
                 } else {
                     LOG.debug(
                             "Leaving {} doesn't affect my {} replication responsibility for {}.",
                             peerAddress, selfAddress, myResponsibleLocation);
                 }
+                updateResponsibilityIndex(myResponsibleLocation);
             }
         }
+        notifications.notifyListeners();
     }
 
     @Override
@@ -592,11 +604,148 @@ public class Replication implements PeerMapChangeListener, ReplicationListener {
 			return false;
 		}
     	
-        SortedSet<PeerStatistic> tmp = peerMap.closePeers(locationKey, replicationFactor);
-        PeerStatistic peerAddressStatistic = new PeerStatistic(peerAddress);
-        PeerStatistic selfStatistic = new PeerStatistic(selfAddress);
-        tmp.add(selfStatistic);
-        SortedSet<PeerStatistic> tmp2 = tmp.headSet(peerAddressStatistic);
-        return tmp2.size() < replicationFactor;
-    }	
+        // count the peers that are closer than peerAddress, including ourselfs
+        final Number160 peerId = peerAddress.peerId();
+        int closer = Number160.compareDistance(locationKey, selfAddress.peerId(), peerId) < 0 ? 1 : 0;
+        for (PeerStatistic peerStatistic : peerMap.closePeers(locationKey, replicationFactor)) {
+            if (closer >= replicationFactor) {
+                return false;
+            }
+            if (Number160.compareDistance(locationKey, peerStatistic.peerAddress().peerId(), peerId) < 0) {
+                closer++;
+            }
+        }
+        return closer < replicationFactor;
+    }
+
+    /**
+     * Rebuilds the index of the location keys this peer is responsible for. Churn events only look at the location
+     * keys in this index, so this needs to be called if responsibilities are changed outside of this class, e.g., if
+     * they expire in the storage.
+     */
+    public void updateResponsibilityIndex() {
+        // updated key by key, so that the churn events that run at the same time are not lost
+        final Set<Number160> locationKeys = new HashSet<Number160>(
+                backend.findContentForResponsiblePeerID(selfAddress.peerId()));
+        for (Number160 locationKey : locationKeys) {
+            updateResponsibilityIndex(locationKey);
+        }
+        for (Number160 locationKey : responsibilityIndex.locationKeys()) {
+            if (!locationKeys.contains(locationKey)) {
+                updateResponsibilityIndex(locationKey);
+            }
+        }
+    }
+
+    /**
+     * @return The index of the location keys this peer is responsible for
+     */
+    public ResponsibilityIndex responsibilityIndex() {
+        return responsibilityIndex;
+    }
+
+    /**
+     * Checks the responsibility in the storage and updates the index. The check and the update are atomic, so that an
+     * older check cannot overwrite the result of a newer one.
+     */
+    private void updateResponsibilityIndex(final Number160 locationKey) {
+        synchronized (responsibilityIndex) {
+            if (isMeResponsible(locationKey)) {
+                responsibilityIndex.put(locationKey, replicaBoundary(locationKey));
+            } else {
+                responsibilityIndex.remove(locationKey);
+            }
+        }
+    }
+
+    private boolean isMeResponsible(final Number160 locationKey) {
+        return selfAddress.peerId().equals(backend.findPeerIDsForResponsibleContent(locationKey));
+    }
+
+    /**
+     * Returns the farthest peer of the replica set of a location key (including myself).
+     * 
+     * @param locationKey
+     *            The location key
+     * @return The peer ID of the replica with the largest distance to the location key, or null if there are not
+     *         enough peers or if I am not in the replica set
+     */
+    private Number160 replicaBoundary(final Number160 locationKey) {
+        final List<Number160> peerIds = new ArrayList<Number160>(replicationFactor + 1);
+        peerIds.add(selfAddress.peerId());
+        for (PeerStatistic peerStatistic : peerMap.closePeers(locationKey, replicationFactor)) {
+            peerIds.add(peerStatistic.peerAddress().peerId());
+        }
+        if (peerIds.size() < replicationFactor) {
+            return null;
+        }
+        Collections.sort(peerIds, new Comparator<Number160>() {
+            @Override
+            public int compare(final Number160 o1, final Number160 o2) {
+                return Number160.compareDistance(locationKey, o1, o2);
+            }
+        });
+        final Number160 boundary = peerIds.get(replicationFactor - 1);
+        if (Number160.compareDistance(locationKey, selfAddress.peerId(), boundary) > 0) {
+            return null;
+        }
+        return boundary;
+    }
+
+    /**
+     * Collects the notifications of a churn event, so that the listeners get the location keys per peer.
+     */
+    private class Notifications {
+        private final List<Number160> meResponsible = new ArrayList<Number160>();
+        private final Map<PeerAddress, List<Number160>> meResponsibleNewPeer = new LinkedHashMap<PeerAddress, List<Number160>>();
+        private final Map<PeerAddress, List<Number160>> otherResponsible = new LinkedHashMap<PeerAddress, List<Number160>>();
+        private final Map<PeerAddress, List<Number160>> handOff = new LinkedHashMap<PeerAddress, List<Number160>>();
+
+        private void meResponsible(final Number160 locationKey) {
+            meResponsible.add(locationKey);
+        }
+
+        private void meResponsible(final Number160 locationKey, final PeerAddress newPeer) {
+            add(meResponsibleNewPeer, newPeer, locationKey);
+        }
+
+        private void otherResponsible(final Number160 locationKey, final PeerAddress other) {
+            add(otherResponsible, other, locationKey);
+        }
+
+        /**
+         * Notifies the other peer and removes the responsibility once this was successful.
+         */
+        private void handOff(final Number160 locationKey, final PeerAddress other) {
+            add(handOff, other, locationKey);
+        }
+
+        private void notifyListeners() {
+            if (!meResponsible.isEmpty()) {
+                peer.peer().notifyAutomaticFutures(notifyMeResponsible(meResponsible));
+            }
+            for (Map.Entry<PeerAddress, List<Number160>> entry : meResponsibleNewPeer.entrySet()) {
+                peer.peer().notifyAutomaticFutures(notifyMeResponsible(entry.getValue(), entry.getKey()));
+            }
+            for (Map.Entry<PeerAddress, List<Number160>> entry : otherResponsible.entrySet()) {
+                peer.peer().notifyAutomaticFutures(notifyOtherResponsible(entry.getValue(), entry.getKey()));
+            }
+            for (Map.Entry<PeerAddress, List<Number160>> entry : handOff.entrySet()) {
+                final FutureForkJoin<FutureDone<Void>> futureForkJoin = notifyOtherResponsible(entry.getValue(),
+                        entry.getKey());
+                removeResponsibilityOnSuccess(futureForkJoin, entry.getValue(), entry.getKey());
+                peer.peer().notifyAutomaticFutures(futureForkJoin);
+            }
+        }
+
+        private void add(final Map<PeerAddress, List<Number160>> map, final PeerAddress peerAddress,
+                final Number160 locationKey) {
+            List<Number160> locationKeys = map.get(peerAddress);
+            if (locationKeys == null) {
+                locationKeys = new ArrayList<Number160>();
+                map.put(peerAddress, locationKeys);
+            }
+            locationKeys.add(locationKey);
+        }
+    }
 }
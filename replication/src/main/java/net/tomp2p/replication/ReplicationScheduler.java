@@ -0,0 +1,515 @@
+/*
+ * Copyright 2012 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.replication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.BaseFuture;
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.storage.Data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues the replication traffic of a peer, so that a churn event does not use up the whole uplink. The location keys
+ * are queued per destination peer, and the keys queued for a peer are sent together, with up to
+ * {@link #batchSize()} location keys per message and one message in flight per peer. Location keys that miss a replica
+ * are sent before the periodic refresh, and the bytes sent per second can be limited.
+ * <p>
+ * The data is read from the storage when it is sent, not when it is queued, so a location key that is queued twice
+ * for the same peer is only sent once.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class ReplicationScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationScheduler.class);
+
+    /**
+     * The priority of a location key, the first one is sent first.
+     */
+    public enum Priority {
+        /**
+         * A replica peer misses the data, e.g., after a peer joined or left.
+         */
+        UNDER_REPLICATED,
+        /**
+         * The periodic refresh of the replicas.
+         */
+        REFRESH
+    }
+
+    private final PeerDHT peer;
+    private final ReplicationSender replicationSender;
+    private final ScheduledExecutorService timer;
+
+    // the queues per destination peer, in the order the peers were added
+    private final Map<PeerAddress, Destination> destinations = new LinkedHashMap<PeerAddress, Destination>();
+    private final Runnable dispatcher = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                dispatch();
+            } catch (Throwable t) {
+                LOG.error("could not dispatch replication traffic", t);
+            }
+        }
+    };
+
+    private int batchSize = 100;
+    private int bytesPerSecond = -1;
+
+    // guarded by this
+    private int queueLength = 0;
+    private double budget = 0;
+    private long budgetNanos = System.nanoTime();
+    private long bytesSent = 0;
+    private ScheduledFuture<?> dispatchFuture = null;
+    private boolean shutdown = false;
+
+    /**
+     * Constructor.
+     *
+     * @param peer
+     *            The peer that sends the data
+     * @param replicationSender
+     *            The sender that transfers the data of a batch
+     */
+    public ReplicationScheduler(final PeerDHT peer, final ReplicationSender replicationSender) {
+        this.peer = peer;
+        this.replicationSender = replicationSender;
+        this.timer = peer.peer().connectionBean().timer();
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize
+     *            The maximum number of location keys that are sent to a peer in one message. The default is 100
+     * @return This class
+     */
+    public ReplicationScheduler batchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size needs to be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public synchronized int bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @param bytesPerSecond
+     *            The bytes of data that are sent per second to all peers, with bursts of up to one second. A message
+     *            that exceeds the budget is sent, and the next message waits until the budget is paid back. -1, the
+     *            default, sends without a limit
+     * @return This class
+     */
+    public synchronized ReplicationScheduler bytesPerSecond(final int bytesPerSecond) {
+        if (bytesPerSecond == 0 || bytesPerSecond < -1) {
+            throw new IllegalArgumentException("The bytes per second need to be positive or -1");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.budget = Math.max(bytesPerSecond, 0);
+        this.budgetNanos = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * Queues the location keys for a peer. A location key that is already queued for this peer is not queued again,
+     * but moves up if the new priority is higher.
+     *
+     * @param other
+     *            The peer that should get the data
+     * @param locationKeys
+     *            The location keys
+     * @param priority
+     *            The priority of the location keys
+     * @return The future that is done when the data of all location keys was sent, or failed if one message failed
+     */
+    public FutureDone<Void> schedule(final PeerAddress other, final Collection<Number160> locationKeys,
+            final Priority priority) {
+        final FutureDone<Void> futureDone = new FutureDone<Void>();
+        if (locationKeys.isEmpty()) {
+            return futureDone.done();
+        }
+        final Request request = new Request(futureDone, locationKeys.size());
+        synchronized (this) {
+            if (shutdown) {
+                return futureDone.failed("replication scheduler - peer is shutting down");
+            }
+            Destination destination = destinations.get(other);
+            if (destination == null) {
+                destination = new Destination(other);
+                destinations.put(other, destination);
+            }
+            final long now = System.currentTimeMillis();
+            for (Number160 locationKey : locationKeys) {
+                if (destination.add(locationKey, priority, request, now)) {
+                    queueLength++;
+                }
+            }
+            scheduleDispatch(0);
+        }
+        return futureDone;
+    }
+
+    /**
+     * @return The number of location keys that wait to be sent, counted once per destination peer
+     */
+    public synchronized int queueLength() {
+        return queueLength;
+    }
+
+    /**
+     * @param other
+     *            The destination peer
+     * @return The number of location keys that wait to be sent to this peer
+     */
+    public synchronized int queueLength(final PeerAddress other) {
+        final Destination destination = destinations.get(other);
+        return destination == null ? 0 : destination.size();
+    }
+
+    /**
+     * @return The time in milliseconds the oldest queued location key waits, or 0 if nothing is queued
+     */
+    public synchronized long lagMillis() {
+        long oldest = Long.MAX_VALUE;
+        for (Destination destination : destinations.values()) {
+            oldest = Math.min(oldest, destination.oldest());
+        }
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(System.currentTimeMillis() - oldest, 0);
+    }
+
+    /**
+     * @return The bytes of data that were handed to the replication sender
+     */
+    public synchronized long bytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Stops sending and fails the futures of the location keys that are still queued.
+     */
+    public void shutdown() {
+        final List<Request> requests = new ArrayList<Request>();
+        synchronized (this) {
+            shutdown = true;
+            if (dispatchFuture != null) {
+                dispatchFuture.cancel(false);
+                dispatchFuture = null;
+            }
+            for (Destination destination : destinations.values()) {
+                for (Entry entry : destination.poll(Integer.MAX_VALUE)) {
+                    requests.addAll(entry.requests);
+                }
+            }
+            destinations.clear();
+            queueLength = 0;
+        }
+        for (Request request : requests) {
+            request.futureDone.failed("replication scheduler - peer is shutting down");
+        }
+    }
+
+    /**
+     * Sends the next batches until nothing is queued, every destination has a message in flight, or the budget is
+     * used up.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            dispatchFuture = null;
+        }
+        while (true) {
+            final Destination destination;
+            final List<Entry> batch;
+            synchronized (this) {
+                if (shutdown) {
+                    return;
+                }
+                if (bytesPerSecond > 0) {
+                    final long now = System.nanoTime();
+                    budget = Math.min(bytesPerSecond, budget + (now - budgetNanos) * (bytesPerSecond / 1e9));
+                    budgetNanos = now;
+                    if (budget <= 0) {
+                        // wait until the budget is paid back
+                        scheduleDispatch((long) Math.ceil(-budget * 1000 / bytesPerSecond) + 1);
+                        return;
+                    }
+                }
+                destination = next();
+                if (destination == null) {
+                    return;
+                }
+                batch = destination.poll(batchSize);
+                queueLength -= batch.size();
+                destination.inFlight = true;
+            }
+            try {
+                send(destination, batch);
+            } catch (RuntimeException e) {
+                // e.g., the storage is closed, the destination must not stay in flight
+                LOG.warn("could not send to {}", destination.peerAddress, e);
+                done(destination, batch, new FutureDone<Void>().failed(e));
+            }
+        }
+    }
+
+    /**
+     * Sends the data of a batch in one message and calls {@link #done(Destination, List, BaseFuture)} once the
+     * message is answered.
+     */
+    private void send(final Destination destination, final List<Entry> batch) {
+        final NavigableMap<Number640, Data> dataMap = new TreeMap<Number640, Data>();
+        for (Entry entry : batch) {
+            dataMap.putAll(dataMap(entry.locationKey));
+        }
+        long bytes = 0;
+        for (Data data : dataMap.values()) {
+            bytes += data.length();
+        }
+        synchronized (this) {
+            budget -= bytes;
+            bytesSent += bytes;
+        }
+        if (dataMap.isEmpty()) {
+            // the data was removed in the meantime, nothing to send
+            done(destination, batch, null);
+            return;
+        }
+        final Number160 first = batch.get(0).locationKey;
+        LOG.debug("transfer from {} to {} for {} keys starting with {}", peer.peerAddress(),
+                destination.peerAddress, batch.size(), first);
+        replicationSender.sendDirect(destination.peerAddress, first, dataMap).addListener(
+                new BaseFutureAdapter<FutureDone<?>>() {
+                    @Override
+                    public void operationComplete(final FutureDone<?> future) throws Exception {
+                        done(destination, batch, future);
+                    }
+                });
+    }
+
+    /**
+     * Notifies the requests of a batch and continues with the next message for this destination.
+     */
+    private void done(final Destination destination, final List<Entry> batch, final BaseFuture future) {
+        synchronized (this) {
+            destination.inFlight = false;
+            if (destination.size() == 0 && destinations.get(destination.peerAddress) == destination) {
+                destinations.remove(destination.peerAddress);
+            } else {
+                scheduleDispatch(0);
+            }
+        }
+        for (Entry entry : batch) {
+            for (Request request : entry.requests) {
+                if (future == null || future.isSuccess()) {
+                    request.sent();
+                } else {
+                    request.futureDone.failed(future);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The destination without a message in flight that has the location key with the highest priority, the
+     *         one that waits longest if more have the same priority, or null if there is none
+     */
+    private Destination next() {
+        Destination next = null;
+        Priority nextPriority = null;
+        long nextOldest = 0;
+        for (Destination destination : destinations.values()) {
+            if (destination.inFlight) {
+                continue;
+            }
+            final Priority priority = destination.priority();
+            if (priority == null) {
+                continue;
+            }
+            final long oldest = destination.oldest();
+            if (next == null || priority.compareTo(nextPriority) < 0
+                    || (priority == nextPriority && oldest < nextOldest)) {
+                next = destination;
+                nextPriority = priority;
+                nextOldest = oldest;
+            }
+        }
+        return next;
+    }
+
+    private void scheduleDispatch(final long delayMillis) {
+        if (dispatchFuture == null && !shutdown) {
+            dispatchFuture = timer.schedule(dispatcher, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private NavigableMap<Number640, Data> dataMap(final Number160 locationKey) {
+        Number640 min = new Number640(locationKey, Number160.ZERO, Number160.ZERO, Number160.ZERO);
+        Number640 max = new Number640(locationKey, Number160.MAX_VALUE, Number160.MAX_VALUE,
+                Number160.MAX_VALUE);
+        return peer.storageLayer().get(min, max, -1, true);
+    }
+
+    /**
+     * The future of one call to {@link ReplicationScheduler#schedule(PeerAddress, Collection, Priority)}.
+     */
+    private static class Request {
+        private final FutureDone<Void> futureDone;
+        private final AtomicInteger remaining;
+
+        private Request(final FutureDone<Void> futureDone, final int locationKeys) {
+            this.futureDone = futureDone;
+            this.remaining = new AtomicInteger(locationKeys);
+        }
+
+        private void sent() {
+            if (remaining.decrementAndGet() == 0) {
+                futureDone.done();
+            }
+        }
+    }
+
+    /**
+     * A queued location key and the requests that wait for it.
+     */
+    private static class Entry {
+        private final Number160 locationKey;
+        private final long queuedMillis;
+        private final List<Request> requests = new ArrayList<Request>(1);
+
+        private Entry(final Number160 locationKey, final long queuedMillis) {
+            this.locationKey = locationKey;
+            this.queuedMillis = queuedMillis;
+        }
+    }
+
+    /**
+     * The queues of one destination peer, one per priority in the order the location keys were added.
+     */
+    private static class Destination {
+        private final PeerAddress peerAddress;
+        private final Map<Priority, LinkedHashMap<Number160, Entry>> queues =
+                new EnumMap<Priority, LinkedHashMap<Number160, Entry>>(Priority.class);
+        private boolean inFlight = false;
+
+        private Destination(final PeerAddress peerAddress) {
+            this.peerAddress = peerAddress;
+            for (Priority priority : Priority.values()) {
+                queues.put(priority, new LinkedHashMap<Number160, Entry>());
+            }
+        }
+
+        /**
+         * @return True if the location key was not queued yet
+         */
+        private boolean add(final Number160 locationKey, final Priority priority, final Request request,
+                final long now) {
+            for (Map.Entry<Priority, LinkedHashMap<Number160, Entry>> queue : queues.entrySet()) {
+                final Entry entry = queue.getValue().get(locationKey);
+                if (entry == null) {
+                    continue;
+                }
+                if (queue.getKey().compareTo(priority) > 0) {
+                    queue.getValue().remove(locationKey);
+                    queues.get(priority).put(locationKey, entry);
+                }
+                entry.requests.add(request);
+                return false;
+            }
+            final Entry entry = new Entry(locationKey, now);
+            entry.requests.add(request);
+            queues.get(priority).put(locationKey, entry);
+            return true;
+        }
+
+        /**
+         * @return Up to max location keys, the ones with the highest priority first
+         */
+        private List<Entry> poll(final int max) {
+            final List<Entry> batch = new ArrayList<Entry>(Math.min(max, size()));
+            for (LinkedHashMap<Number160, Entry> queue : queues.values()) {
+                for (Iterator<Entry> iterator = queue.values().iterator(); iterator.hasNext()
+                        && batch.size() < max;) {
+                    batch.add(iterator.next());
+                    iterator.remove();
+                }
+            }
+            return batch;
+        }
+
+        /**
+         * @return The highest priority of the queued location keys, or null if nothing is queued
+         */
+        private Priority priority() {
+            for (Map.Entry<Priority, LinkedHashMap<Number160, Entry>> queue : queues.entrySet()) {
+                if (!queue.getValue().isEmpty()) {
+                    return queue.getKey();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return The time the first location key of each queue was added, the smallest of them, or
+         *         {@link Long#MAX_VALUE} if nothing is queued
+         */
+        private long oldest() {
+            long oldest = Long.MAX_VALUE;
+            for (LinkedHashMap<Number160, Entry> queue : queues.values()) {
+                if (!queue.isEmpty()) {
+                    oldest = Math.min(oldest, queue.values().iterator().next().queuedMillis);
+                }
+            }
+            return oldest;
+        }
+
+        private int size() {
+            int size = 0;
+            for (LinkedHashMap<Number160, Entry> queue : queues.values()) {
+                size += queue.size();
+            }
+            return size;
+        }
+    }
+}
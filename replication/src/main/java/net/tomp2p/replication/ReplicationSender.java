@@ -9,5 +9,17 @@ import net.tomp2p.peers.PeerAddress;
 import net.tomp2p.storage.Data;
 
 public interface ReplicationSender {
+	/**
+	 * Sends data to a peer that is responsible for it.
+	 * 
+	 * @param other
+	 *            The peer that gets the data
+	 * @param locationKey
+	 *            The location key of the data. After a churn event, the data map may contain more location keys, in
+	 *            which case this is the first one
+	 * @param dataMap
+	 *            The data to send
+	 * @return The future that is done when the data was sent
+	 */
 	FutureDone<?> sendDirect(final PeerAddress other, final Number160 locationKey, final NavigableMap<Number640, Data> dataMap);
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.replication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import net.tomp2p.peers.Number160;
+
+/**
+ * Indexes the location keys this peer is responsible for by the XOR distance of their replica set. For every key, the
+ * index stores the boundary of the replica set, which is the peer ID of the farthest replica. A joining peer changes
+ * the replica set of a key only if it is closer to the key than the boundary, and a leaving peer only if it is not
+ * farther. Thus, a churn event has to look at the keys returned by {@link #affectedByInsert(Number160)} or
+ * {@link #affectedByRemove(Number160)} and not at all keys.
+ * <p>
+ * The keys are grouped by the bit length of the distance to their boundary. A peer can only be closer than the boundary
+ * of a key in group b if it shares the first 160 - b bits with the key, so each group is a sorted set that is searched
+ * for this prefix. A key without a boundary, e.g., if there are not enough peers or if the key is about to be handed
+ * off, is affected by every churn event.
+ * </p>
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class ResponsibilityIndex {
+
+    private static final int BITS = Number160.BITS;
+
+    private static final int INT_ARRAY_SIZE = Number160.INT_ARRAY_SIZE;
+
+    // location key -> peer ID of the farthest replica, null if unknown
+    private final Map<Number160, Number160> boundaries = new HashMap<Number160, Number160>();
+
+    // the location keys sorted by the bit length of the distance to their boundary, the last one has no boundary
+    private final List<NavigableSet<Number160>> groups = new ArrayList<NavigableSet<Number160>>(BITS + 1);
+
+    public ResponsibilityIndex() {
+        for (int i = 0; i <= BITS; i++) {
+            groups.add(new TreeSet<Number160>());
+        }
+    }
+
+    /**
+     * Adds a location key or updates its boundary.
+     *
+     * @param locationKey
+     *            The location key this peer is responsible for
+     * @param boundary
+     *            The peer ID of the farthest replica of the location key, or null if every churn event may affect it
+     */
+    public synchronized void put(final Number160 locationKey, final Number160 boundary) {
+        if (boundaries.containsKey(locationKey)) {
+            groups.get(group(locationKey, boundaries.get(locationKey))).remove(locationKey);
+        }
+        boundaries.put(locationKey, boundary);
+        groups.get(group(locationKey, boundary)).add(locationKey);
+    }
+
+    /**
+     * Removes a location key, e.g., if this peer is not responsible anymore.
+     *
+     * @param locationKey
+     *            The location key
+     * @return True if the location key was indexed
+     */
+    public synchronized boolean remove(final Number160 locationKey) {
+        if (!boundaries.containsKey(locationKey)) {
+            return false;
+        }
+        groups.get(group(locationKey, boundaries.remove(locationKey))).remove(locationKey);
+        return true;
+    }
+
+    /**
+     * @param peerId
+     *            The ID of the peer that joined
+     * @return The location keys where the joined peer is closer than the farthest replica
+     */
+    public Collection<Number160> affectedByInsert(final Number160 peerId) {
+        return affected(peerId, false);
+    }
+
+    /**
+     * @param peerId
+     *            The ID of the peer that left
+     * @return The location keys where the peer that left may have been a replica
+     */
+    public Collection<Number160> affectedByRemove(final Number160 peerId) {
+        return affected(peerId, true);
+    }
+
+    /**
+     * @return A copy of the indexed location keys
+     */
+    public synchronized Collection<Number160> locationKeys() {
+        return new ArrayList<Number160>(boundaries.keySet());
+    }
+
+    /**
+     * @return The number of indexed location keys
+     */
+    public synchronized int size() {
+        return boundaries.size();
+    }
+
+    /**
+     * Removes all location keys.
+     */
+    public synchronized void clear() {
+        boundaries.clear();
+        for (NavigableSet<Number160> group : groups) {
+            group.clear();
+        }
+    }
+
+    private synchronized Collection<Number160> affected(final Number160 peerId, final boolean inclusive) {
+        final List<Number160> affected = new ArrayList<Number160>();
+        for (int bits = 0; bits <= BITS; bits++) {
+            final NavigableSet<Number160> group = groups.get(bits);
+            if (group.isEmpty()) {
+                continue;
+            }
+            final NavigableSet<Number160> prefix = group.subSet(prefix(peerId, bits, 0), true,
+                    prefix(peerId, bits, -1), true);
+            for (Number160 locationKey : prefix) {
+                final Number160 boundary = boundaries.get(locationKey);
+                if (boundary == null) {
+                    affected.add(locationKey);
+                    continue;
+                }
+                final int compare = Number160.compareDistance(locationKey, peerId, boundary);
+                if (compare < 0 || (inclusive && compare == 0)) {
+                    affected.add(locationKey);
+                }
+            }
+        }
+        return affected;
+    }
+
+    private static int group(final Number160 locationKey, final Number160 boundary) {
+        return boundary == null ? BITS : Number160.distanceBitLength(locationKey, boundary);
+    }
+
+    /**
+     * @return The peer ID with the last bits replaced by the fill, e.g., 0 for the lowest and -1 for the highest key
+     *         with the same prefix
+     */
+    private static Number160 prefix(final Number160 peerId, final int bits, final int fill) {
+        final int[] val = peerId.toIntArray();
+        for (int i = INT_ARRAY_SIZE - 1, remaining = bits; i >= 0 && remaining > 0; i--, remaining -= Integer.SIZE) {
+            final int mask = remaining >= Integer.SIZE ? -1 : (1 << remaining) - 1;
+            val[i] = (val[i] & ~mask) | (fill & mask);
+        }
+        return new Number160(val);
+    }
+}
@@ -71,6 +71,17 @@ public class PeerSync implements ReplicationSender {
 	public SyncBuilder synchronize(PeerAddress other) {
 		return new SyncBuilder(this, other, blockSize);
 	}
+
+	/**
+	 * Compares the range hashes with the other peer first, and only synchronizes the entries that may differ.
+	 * 
+	 * @param other
+	 *            The replica peer
+	 * @return The builder, which needs the location keys to synchronize
+	 */
+	public TreeSyncBuilder synchronizeTree(PeerAddress other) {
+		return new TreeSyncBuilder(this, other);
+	}
 	
 	@Override
     public FutureDone<SyncStat> sendDirect(PeerAddress other, Number160 locationKey, NavigableMap<Number640, Data> dataMap) {
@@ -16,13 +16,17 @@
 
 package net.tomp2p.synchronization;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import net.tomp2p.storage.DataBuffer;
-import net.tomp2p.utils.Utils;
 
 /**
  * Synchronization class is responsible for efficient and optimal
@@ -38,59 +42,55 @@ import net.tomp2p.utils.Utils;
  */
 final public class RSync {
 
+	/**
+	 * Gets the instructions while they are created, so that they can be
+	 * encoded without collecting them first.
+	 */
+	public interface InstructionListener {
+		/**
+		 * @param instruction
+		 *            Either a reference to a block of the other value or
+		 *            literal data, in the order of the value
+		 */
+		void instruction(Instruction instruction);
+	}
+
 	/**
 	 * It returns an array of weak and strong checksums for the value.
 	 * 
 	 * @param value
 	 *            The value
-	 * @param size
+	 * @param blockSize
 	 *            The offset size
 	 * @return The array of checksums
-	 * @throws NoSuchAlgorithmException
 	 */
 	public static List<Checksum> checksums(final byte[] value, final int blockSize) {
-		final int numberOfBlocks = (value.length + blockSize - 1) / blockSize;
-		final ArrayList<Checksum> checksums = new ArrayList<Checksum>(numberOfBlocks);
-		final RollingChecksum adler = new RollingChecksum();
-
-		for (int i = 0; i < numberOfBlocks; i++) {
-			int remaining = Math.min(blockSize, value.length - (i * blockSize));
-			adler.reset().update(value, i * blockSize, remaining);
-
-			final int weakChecksum = adler.value();
-			final byte[] strongChecksum = Utils.makeMD5Hash(value, i * blockSize, remaining);
-			checksums.add(new Checksum(weakChecksum, strongChecksum));
-		}
-		return checksums;
+		return checksums(new ByteBuffer[] { ByteBuffer.wrap(value) }, blockSize);
 	}
 
 	/**
-	 * It checks whether a match is found or not. If it is found returns
-	 * reference otherwise -1.
+	 * It returns an array of weak and strong checksums for the value without
+	 * copying it, e.g., for {@link net.tomp2p.storage.Data#toByteBuffers()}.
 	 * 
-	 * @param wcs
-	 *            The weak checksum of offset
-	 * @param offset
-	 *            The offset
-	 * @param checksums
-	 *            The checksums
-	 * @return either the reference or -1
+	 * @param value
+	 *            The buffers of the value
+	 * @param blockSize
+	 *            The offset size
+	 * @return The array of checksums
 	 */
-	private static int matches(int wcs, byte[] buffer, int offset, int length, List<Checksum> checksums) {
-		int checksumSize = checksums.size();
-		//TODO: hashing might be a better idea, for now it works
-		for (int i = 0; i < checksumSize; i++) {
-			int weakChecksum = checksums.get(i).weakChecksum();
-			if (weakChecksum == wcs) {
-				byte[] md5 = Utils.makeMD5Hash(buffer, offset, length);
-				byte[] strongChecksum = checksums.get(i).strongChecksum();
-				if (Arrays.equals(strongChecksum, md5)) {
-					return i;
-				}
-			}
+	public static List<Checksum> checksums(final ByteBuffer[] value, final int blockSize) {
+		final Buffers buffers = new Buffers(value);
+		final int length = buffers.length();
+		final int numberOfBlocks = (length + blockSize - 1) / blockSize;
+		final ArrayList<Checksum> checksums = new ArrayList<Checksum>(numberOfBlocks);
+		final MessageDigest md5 = md5();
+
+		for (int i = 0; i < numberOfBlocks; i++) {
+			final int offset = i * blockSize;
+			final int remaining = Math.min(blockSize, length - offset);
+			checksums.add(new Checksum(buffers.weakChecksum(offset, remaining), buffers.md5(md5, offset, remaining)));
 		}
-		// no match found, content is different
-		return -1;
+		return checksums;
 	}
 
 	/**
@@ -105,26 +105,55 @@ final public class RSync {
 	 *            The block size
 	 * @return The sequence of instructions
 	 */
-	public static List<Instruction> instructions(byte[] array, List<Checksum> checksums, int blockSize) {
-
+	public static List<Instruction> instructions(final byte[] array, final List<Checksum> checksums,
+			final int blockSize) {
 		final List<Instruction> result = new ArrayList<Instruction>(checksums.size());
-		final RollingChecksum adler = new RollingChecksum();
-		final int length = array.length;
+		instructions(new ByteBuffer[] { ByteBuffer.wrap(array) }, checksums, blockSize, new InstructionListener() {
+			@Override
+			public void instruction(final Instruction instruction) {
+				result.add(instruction);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Creates the instructions to transform the value of the other peer into
+	 * this value. The value is not copied, the literals are slices of the
+	 * given buffers. The checksums are looked up in a hash table by their weak
+	 * checksum, and the strong checksum is only calculated if the weak
+	 * checksum matches, so the time grows linear with the size of the value.
+	 * 
+	 * @param value
+	 *            The buffers of the value at responsible peer
+	 * @param checksums
+	 *            The checksums of the value of the other peer
+	 * @param blockSize
+	 *            The block size
+	 * @param instructionListener
+	 *            Gets the instructions as soon as they are known
+	 */
+	public static void instructions(final ByteBuffer[] value, final List<Checksum> checksums, final int blockSize,
+			final InstructionListener instructionListener) {
+		final ChecksumIndex index = new ChecksumIndex(checksums);
+		final MessageDigest md5 = md5();
+		// the window needs the first and the next byte, each cursor moves forward only
+		final Buffers window = new Buffers(value);
+		final Buffers head = new Buffers(value);
+		final int length = window.length();
 
 		int offset = 0;
 		int lastRefFound = 0;
-		int remaining = Math.min(blockSize, length - offset);
-
-		adler.update(array, offset, remaining);
+		int remaining = Math.min(blockSize, length);
+		int weakChecksum = window.weakChecksum(offset, remaining);
 
 		for (;;) {
-			final int wcs = adler.value();
-			final int reference = matches(wcs, array, offset, remaining, checksums);
+			final int reference = index.find(weakChecksum, window, md5, offset, remaining);
 			if (reference != -1) {
 				if (offset > lastRefFound) {
-					result.add(new Instruction(new DataBuffer(array, lastRefFound, offset - lastRefFound)));
+					instructionListener.instruction(new Instruction(window.slice(lastRefFound, offset - lastRefFound)));
 				}
-				result.add(new Instruction(reference));
+				instructionListener.instruction(new Instruction(reference));
 
 				offset += remaining;
 				lastRefFound = offset;
@@ -132,21 +161,20 @@ final public class RSync {
 				if (remaining == 0) {
 					break;
 				}
-				adler.reset().update(array, offset, remaining);
+				weakChecksum = window.weakChecksum(offset, remaining);
 			} else {
 				offset++;
 				if (blockSize > length - offset) {
 					break;
 				}
-				adler.updateRolling(array);
+				weakChecksum = RollingChecksum.roll(weakChecksum, remaining, window.get(offset - 1),
+						head.get(offset - 1 + remaining));
 			}
 		}
 
 		if (length > lastRefFound) {
-			result.add(new Instruction(new DataBuffer(array, lastRefFound, length - lastRefFound)));
+			instructionListener.instruction(new Instruction(window.slice(lastRefFound, length - lastRefFound)));
 		}
-
-		return result;
 	}
 
 	/**
@@ -175,7 +203,187 @@ final public class RSync {
 		}
 		return result;
 	}
-	
+
+	private static MessageDigest md5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support MD5
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The checksums of the other peer, indexed by their weak checksum. The
+	 * blocks with the same weak checksum are chained, the lowest block first.
+	 */
+	private static final class ChecksumIndex {
+		private final int[] weakChecksums;
+		private final byte[][] strongChecksums;
+		private final int[] heads;
+		private final int[] next;
+		private final int mask;
+
+		ChecksumIndex(final List<Checksum> checksums) {
+			final int size = checksums.size();
+			int capacity = 2;
+			while (capacity < size * 2) {
+				capacity <<= 1;
+			}
+			mask = capacity - 1;
+			heads = new int[capacity];
+			Arrays.fill(heads, -1);
+			next = new int[size];
+			weakChecksums = new int[size];
+			strongChecksums = new byte[size][];
+			for (int i = size - 1; i >= 0; i--) {
+				final Checksum checksum = checksums.get(i);
+				weakChecksums[i] = checksum.weakChecksum();
+				strongChecksums[i] = checksum.strongChecksum();
+				final int slot = slot(weakChecksums[i]);
+				next[i] = heads[slot];
+				heads[slot] = i;
+			}
+		}
+
+		private int slot(final int weakChecksum) {
+			// the lower bits of the weak checksum only cover the sum of the bytes
+			final int hash = weakChecksum * 0x9E3779B9;
+			return (hash ^ (hash >>> 16)) & mask;
+		}
+
+		/**
+		 * @return The first block that has the same weak and strong checksum as
+		 *         the window, or -1
+		 */
+		int find(final int weakChecksum, final Buffers buffers, final MessageDigest md5, final int offset,
+				final int length) {
+			byte[] strongChecksum = null;
+			for (int i = heads[slot(weakChecksum)]; i != -1; i = next[i]) {
+				if (weakChecksums[i] != weakChecksum) {
+					continue;
+				}
+				if (strongChecksum == null) {
+					strongChecksum = buffers.md5(md5, offset, length);
+				}
+				if (Arrays.equals(strongChecksums[i], strongChecksum)) {
+					return i;
+				}
+			}
+			// no match found, content is different
+			return -1;
+		}
+	}
+
+	/**
+	 * The buffers of a value seen as one array. Looking up a byte is fast if
+	 * the index does not go backwards, otherwise its buffer is searched.
+	 */
+	private static final class Buffers {
+		private final ByteBuffer[] buffers;
+		// the index in the value of the first byte of each buffer
+		private final int[] starts;
+		private final int length;
+		// the buffer with the last index looked up, and its index in the value
+		private int current = 0;
+		private int currentStart = 0;
+
+		Buffers(final ByteBuffer[] buffers) {
+			this.buffers = buffers;
+			this.starts = new int[buffers.length];
+			int length = 0;
+			for (int i = 0; i < buffers.length; i++) {
+				starts[i] = length;
+				length += buffers[i].remaining();
+			}
+			this.length = length;
+		}
+
+		int length() {
+			return length;
+		}
+
+		int get(final int index) {
+			if (index < currentStart) {
+				current = buffer(index);
+				currentStart = starts[current];
+			}
+			while (index >= currentStart + buffers[current].remaining()) {
+				currentStart += buffers[current].remaining();
+				current++;
+			}
+			final ByteBuffer buffer = buffers[current];
+			return buffer.get(buffer.position() + index - currentStart) & 0xff;
+		}
+
+		/**
+		 * @return The last buffer that starts at or before the index, which is
+		 *         the one that has the byte at this index
+		 */
+		private int buffer(final int index) {
+			int low = 0;
+			int high = starts.length - 1;
+			while (low < high) {
+				final int middle = (low + high + 1) >>> 1;
+				if (starts[middle] <= index) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return low;
+		}
+
+		int weakChecksum(final int offset, final int length) {
+			int a = 1;
+			int b = 0;
+			for (int i = 0; i < length; i++) {
+				a = (a + get(offset + i)) & 0xffff;
+				b = (b + a) & 0xffff;
+			}
+			return (b << 16) | a;
+		}
+
+		byte[] md5(final MessageDigest md5, final int offset, final int length) {
+			for (ByteBuffer part : range(offset, length)) {
+				md5.update(part);
+			}
+			return md5.digest();
+		}
+
+		DataBuffer slice(final int offset, final int length) {
+			final ByteBuf buf = Unpooled.wrappedBuffer(range(offset, length));
+			final DataBuffer dataBuffer = new DataBuffer(buf);
+			// the data buffer has retained it
+			buf.release();
+			return dataBuffer;
+		}
+
+		private ByteBuffer[] range(final int offset, final int length) {
+			final List<ByteBuffer> parts = new ArrayList<ByteBuffer>(1);
+			if (length == 0) {
+				return new ByteBuffer[0];
+			}
+			for (int i = buffer(offset); i < buffers.length; i++) {
+				final ByteBuffer buffer = buffers[i];
+				final int start = starts[i];
+				final int remaining = buffer.remaining();
+				final int from = Math.max(offset, start);
+				final int to = Math.min(offset + length, start + remaining);
+				if (from < to) {
+					final ByteBuffer part = buffer.duplicate();
+					part.position(buffer.position() + from - start);
+					part.limit(buffer.position() + to - start);
+					parts.add(part);
+				}
+				if (start + remaining >= offset + length) {
+					break;
+				}
+			}
+			return parts.toArray(new ByteBuffer[parts.size()]);
+		}
+	}
+
 	/**
 	 * Variation of Adler as used in Rsync. Inspired by:
 	 * 
@@ -263,9 +471,27 @@ final public class RSync {
 			final int removeIndex = offset;
 			final int addIndex = offset + length;
 			offset++;
-			a = (a - (array[removeIndex] & 0xff) + (array[addIndex] & 0xff)) & 0xffff;
-			b = (b - (length * (array[removeIndex] & 0xff)) + a - 1) & 0xffff;
+			value(roll(value(), length, array[removeIndex] & 0xff, array[addIndex] & 0xff));
 			return this;
 		}
+
+		/**
+		 * Slides the window of a checksum by 1.
+		 * 
+		 * @param checksum
+		 *            The checksum of the window
+		 * @param length
+		 *            The length of the window
+		 * @param remove
+		 *            The unsigned first byte of the window
+		 * @param add
+		 *            The unsigned byte after the window
+		 * @return The checksum of the next window
+		 */
+		public static int roll(final int checksum, final int length, final int remove, final int add) {
+			final int a = ((checksum & 0xffff) - remove + add) & 0xffff;
+			final int b = ((checksum >>> 16) - (length * remove) + a - 1) & 0xffff;
+			return (b << 16) | a;
+		}
 	}
 }
@@ -256,13 +256,11 @@ public class SyncBuilder extends DHTBuilder<SyncBuilder> {
              
                         		List<Checksum> checksums = SyncUtils.decodeChecksums(buffer);
                         		buffer.release();
-                        		// TODO: don't copy data, toBytes does a copy!
-                        		List<Instruction> instructions = RSync.instructions(
-                                         data2.toBytes(), checksums, blockSize);
-                        		
                         		AlternativeCompositeByteBuf abuf = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
-                        		
-                        		dataCopy += SyncUtils.encodeInstructions(instructions, versionKey, hash, abuf);
+                        		// the literals are slices of data2, they are encoded as they are found
+                        		SyncUtils.InstructionEncoder encoder = new SyncUtils.InstructionEncoder(versionKey, hash, abuf);
+                        		RSync.instructions(data2.toByteBuffers(), checksums, blockSize, encoder);
+                        		dataCopy += encoder.size();
                         		DataBuffer dataBuffer = new DataBuffer(abuf);
                         		abuf.release();
                         		//diff
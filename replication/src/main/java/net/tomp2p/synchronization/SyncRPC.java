@@ -17,12 +17,14 @@
 package net.tomp2p.synchronization;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,10 +37,12 @@ import net.tomp2p.connection.PeerBean;
 import net.tomp2p.connection.PeerConnection;
 import net.tomp2p.connection.RequestHandler;
 import net.tomp2p.connection.Responder;
+import net.tomp2p.dht.RangeHashTree;
 import net.tomp2p.dht.ReplicationListener;
 import net.tomp2p.dht.StorageLayer;
 import net.tomp2p.dht.StorageLayer.PutStatus;
 import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.message.Buffer;
 import net.tomp2p.message.DataMap;
 import net.tomp2p.message.KeyCollection;
 import net.tomp2p.message.KeyMap640Keys;
@@ -70,6 +74,7 @@ public class SyncRPC extends DispatchHandler {
 
     public static final byte INFO_COMMAND = RPC.Commands.SYNC_INFO.getNr();
     public static final byte SYNC_COMMAND = RPC.Commands.SYNC.getNr();
+    public static final byte TREE_COMMAND = RPC.Commands.SYNC_TREE.getNr();
     
     private final int blockSize;
     private final StorageLayer storageLayer;
@@ -86,7 +91,7 @@ public class SyncRPC extends DispatchHandler {
      */
     public SyncRPC(final PeerBean peerBean, final ConnectionBean connectionBean, final int blockSize, StorageLayer storageLayer, ReplicationListener replicationListener) {
         super(peerBean, connectionBean);
-        register(INFO_COMMAND, SYNC_COMMAND);
+        register(INFO_COMMAND, SYNC_COMMAND, TREE_COMMAND);
         this.blockSize = blockSize;
         this.storageLayer = storageLayer;
         this.replicationListener = replicationListener;
@@ -154,9 +159,65 @@ public class SyncRPC extends DispatchHandler {
         return requestHandler.sendTCP(channelCreator);
     }
 
+    /**
+     * Sends the hashes of nodes of the range hash tree, to find out which ones differ on the replica peer. This is an
+     * RPC.
+     * 
+     * @param remotePeer
+     *            The remote peer to send this message
+     * @param treeSyncBuilder
+     *            Used for keeping parameters that are sent
+     * @param nodes
+     *            The nodes with their hashes, see {@link #encodeNode(int, int)}
+     * @param locationKeys
+     *            The location keys the hashes of the nodes cover, see {@link RangeHashTree#hashes(int, Collection)}
+     * @param channelCreator
+     *            The channel creator that creates connections
+     * @return The future response, its key collection contains the nodes that differ
+     */
+    public FutureResponse treeMessage(final PeerAddress remotePeer, final TreeSyncBuilder treeSyncBuilder,
+            final NavigableMap<Number640, Collection<Number160>> nodes, final Collection<Number160> locationKeys,
+            final ChannelCreator channelCreator) {
+        final Message message = createMessage(remotePeer, TREE_COMMAND, Type.REQUEST_1);
+
+        if (treeSyncBuilder.isSign()) {
+            message.publicKeyAndSign(treeSyncBuilder.keyPair());
+        }
+
+        message.keyMap640Keys(new KeyMap640Keys(nodes));
+        // the location keys only, without domain, content, and version key
+        final byte[] me = new byte[locationKeys.size() * Number160.BYTE_ARRAY_SIZE];
+        int offset = 0;
+        for (Number160 locationKey : locationKeys) {
+            offset = locationKey.toByteArray(me, offset);
+        }
+        message.buffer(new Buffer(Unpooled.wrappedBuffer(me)));
+
+        FutureResponse futureResponse = new FutureResponse(message);
+        final RequestHandler<FutureResponse> requestHandler = new RequestHandler<FutureResponse>(
+                futureResponse, peerBean(), connectionBean(), treeSyncBuilder);
+        LOG.debug("Tree sent {}", message);
+        return requestHandler.sendTCP(channelCreator);
+    }
+
+    /**
+     * A node of the range hash tree is sent as the smallest location key it covers and its level as the domain key.
+     * 
+     * @param level
+     *            The level of the node
+     * @param index
+     *            The index of the node within its level
+     * @return The node as a key
+     */
+    public static Number640 encodeNode(final int level, final int index) {
+        return new Number640(RangeHashTree.fromKey(level, index), new Number160(level), Number160.ZERO,
+                Number160.ZERO);
+    }
+
     @Override
     public void handleResponse(final Message message, PeerConnection peerConnection, final boolean sign, Responder responder) throws Exception {
-        if (!(message.command() == INFO_COMMAND || message.command() == SYNC_COMMAND)) {
+        if (!(message.command() == INFO_COMMAND || message.command() == SYNC_COMMAND
+                || message.command() == TREE_COMMAND)) {
             throw new IllegalArgumentException("Message content is wrong");
         }
         final Message responseMessage = createResponseMessage(message, Type.OK);
@@ -164,6 +225,8 @@ public class SyncRPC extends DispatchHandler {
             handleInfo(message, responseMessage, responder);
         } else if (message.command() == SYNC_COMMAND) {
             handleSync(message, responseMessage, responder);
+        } else if (message.command() == TREE_COMMAND) {
+            handleTree(message, responseMessage, responder);
         } else {
             throw new IllegalArgumentException("Message content is wrong");
         }
@@ -201,8 +264,7 @@ public class SyncRPC extends DispatchHandler {
                     LOG.debug("no sync required");
                 } else {
                     // get the checksums
-                	// TODO: don't copy data, toBytes does a copy!
-                    List<Checksum> checksums = RSync.checksums(data.toBytes(), blockSize);
+                    List<Checksum> checksums = RSync.checksums(data.toByteBuffers(), blockSize);
                     AlternativeCompositeByteBuf abuf = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
                     DataBuffer dataBuffer = SyncUtils.encodeChecksum(checksums, entry.getKey().versionKey(), data.hash(), abuf);
                     //here we can release this buffer as encodeChecksum calls retain
@@ -215,8 +277,7 @@ public class SyncRPC extends DispatchHandler {
             		//TODO: the client could send us his history to figure out what the latest version in this history is
             		Entry<Number640, Data> latest = storageLayer.
             				get(entry.getKey().minVersionKey(), entry.getKey().maxVersionKey(), 1, false).lastEntry();
-            		// TODO: don't copy data, toBytes does a copy!
-            		List<Checksum> checksums = RSync.checksums(latest.getValue().toBytes(), blockSize);
+            		List<Checksum> checksums = RSync.checksums(latest.getValue().toByteBuffers(), blockSize);
             		AlternativeCompositeByteBuf abuf = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
                     DataBuffer dataBuffer = SyncUtils.encodeChecksum(checksums, latest.getKey().versionKey(), 
                     		latest.getValue().hash(), abuf);
@@ -235,6 +296,52 @@ public class SyncRPC extends DispatchHandler {
         responder.response(responseMessage);
     }
 
+    /**
+     * Handles the tree message by comparing the hashes of the nodes with the ones of our range hash tree, over the
+     * entries of the location keys that were sent only. This is an RPC.
+     * 
+     * @param message
+     *            The message from a responsible peer
+     * @param responseMessage
+     *            The response message to a responsible peer, with the nodes that differ
+     */
+    private void handleTree(final Message message, final Message responseMessage, Responder responder) {
+        LOG.debug("Tree received from {} -> I'm {}", message.sender().peerId(), message.recipient()
+                .peerId());
+        final KeyMap640Keys nodes = message.keyMap640Keys(0);
+        final Buffer buffer = message.buffer(0);
+        if (nodes == null || buffer == null || buffer.length() % Number160.BYTE_ARRAY_SIZE != 0) {
+            throw new IllegalArgumentException("Message content is wrong");
+        }
+        final byte[] me = new byte[buffer.length()];
+        buffer.buffer().getBytes(buffer.buffer().readerIndex(), me);
+        final List<Number160> locationKeys = new ArrayList<Number160>(me.length / Number160.BYTE_ARRAY_SIZE);
+        for (int offset = 0; offset < me.length; offset += Number160.BYTE_ARRAY_SIZE) {
+            locationKeys.add(new Number160(me, offset, Number160.BYTE_ARRAY_SIZE));
+        }
+        final RangeHashTree rangeHashTree = storageLayer.rangeHashTree();
+        // the hashes of the nodes by level, the nodes of a message are usually on the same level
+        final Map<Integer, Map<Integer, Number160>> hashes = new HashMap<Integer, Map<Integer, Number160>>();
+        final List<Number640> retVal = new ArrayList<Number640>();
+        for (Map.Entry<Number640, Collection<Number160>> entry : nodes.keysMap().entrySet()) {
+            final int level = entry.getKey().domainKey().intValue();
+            if (level < 0 || level > RangeHashTree.DEPTH || entry.getValue().size() != 1) {
+                throw new IllegalArgumentException("Message content is wrong");
+            }
+            Map<Integer, Number160> levelHashes = hashes.get(level);
+            if (levelHashes == null) {
+                levelHashes = rangeHashTree.hashes(level, locationKeys);
+                hashes.put(level, levelHashes);
+            }
+            final Number160 hash = levelHashes.get(RangeHashTree.index(entry.getKey().locationKey(), level));
+            if (!(hash == null ? Number160.ZERO : hash).equals(entry.getValue().iterator().next())) {
+                retVal.add(entry.getKey());
+            }
+        }
+        responseMessage.keyCollection(new KeyCollection(retVal));
+        responder.response(responseMessage);
+    }
+
     /**
      * Handles the sync message by putting the changed part of data into a hash table. This is an RPC.
      * 
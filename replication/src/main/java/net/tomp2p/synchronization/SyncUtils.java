@@ -55,11 +55,30 @@ public class SyncUtils {
 	
 	public static int encodeInstructions(List<Instruction> instructions, Number160 versionKey, 
 			Number160 hash, AlternativeCompositeByteBuf buf) {
-		int size = 0;
-	    buf.writeBytes(versionKey.toByteArray());
-	    buf.writeBytes(hash.toByteArray());
-		//first bit to 1 means reference, otherwise length of the literal
+		final InstructionEncoder encoder = new InstructionEncoder(versionKey, hash, buf);
 		for(Instruction instruction:instructions) {
+			encoder.instruction(instruction);
+		}
+		return encoder.size();
+    }
+
+	/**
+	 * Encodes the instructions while {@link RSync} creates them, in the same
+	 * format as {@link SyncUtils#encodeInstructions(List, Number160, Number160, AlternativeCompositeByteBuf)}.
+	 */
+	public static class InstructionEncoder implements RSync.InstructionListener {
+		private final AlternativeCompositeByteBuf buf;
+		private int size = 0;
+
+		public InstructionEncoder(Number160 versionKey, Number160 hash, AlternativeCompositeByteBuf buf) {
+			this.buf = buf;
+			buf.writeBytes(versionKey.toByteArray());
+			buf.writeBytes(hash.toByteArray());
+		}
+
+		@Override
+		public void instruction(Instruction instruction) {
+			//first bit to 1 means reference, otherwise length of the literal
 			int header = instruction.reference();
 			size +=4;
 			if(header != -1) {
@@ -73,8 +92,14 @@ public class SyncUtils {
 				instruction.literal().transferTo(buf);
 			}
 		}
-		return size;
-    }
+
+		/**
+		 * @return The number of bytes of the encoded instructions, without the header
+		 */
+		public int size() {
+			return size;
+		}
+	}
 	
 	public static DataBuffer encodeChecksum(List<Checksum> checksums, Number160 versionKey, Number160 hash, ByteBuf buf) {
 		buf.writeBytes(versionKey.toByteArray());
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.synchronization;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import net.tomp2p.connection.ChannelCreator;
+import net.tomp2p.dht.DHTBuilder;
+import net.tomp2p.dht.RangeHashTree;
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureChannelCreator;
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.futures.FutureResponse;
+import net.tomp2p.message.DataMap;
+import net.tomp2p.message.KeyCollection;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.replication.ReplicationScheduler;
+import net.tomp2p.replication.ReplicationScheduler.Priority;
+import net.tomp2p.storage.Data;
+import net.tomp2p.utils.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The builder for the anti-entropy synchronization of location keys with a replica peer. Instead of sending the hash
+ * of every entry, this class walks the {@link RangeHashTree} of both peers from the top, one level per message, and
+ * only descends into the nodes that differ. The hashes of the nodes only cover the entries of the location keys, which
+ * are sent along, as the replica peer stores other location keys as well. The location keys of the leaves that still
+ * differ are then synchronized with a {@link SyncBuilder}, or queued in a {@link ReplicationScheduler}. If the replicas
+ * are in sync, one message with the location keys and one hash is sent.
+ *
+ * @author Thomas Bocek
+ *
+ */
+public class TreeSyncBuilder extends DHTBuilder<TreeSyncBuilder> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TreeSyncBuilder.class);
+    private static final FutureDone<SyncStat> FUTURE_SHUTDOWN = new FutureDone<SyncStat>()
+            .failed("tree sync builder - peer is shutting down");
+
+    private final PeerAddress other;
+    private final PeerSync peerSync;
+
+    private Collection<Number160> locationKeys;
+    private ReplicationScheduler replicationScheduler;
+
+    /**
+     * Constructor.
+     *
+     * @param peerSync
+     *            The responsible peer that performs synchronization
+     * @param other
+     *            The replica peer
+     */
+    public TreeSyncBuilder(final PeerSync peerSync, final PeerAddress other) {
+        super(peerSync.peerDHT(), Number160.ZERO);
+        self(this);
+        this.other = other;
+        this.peerSync = peerSync;
+    }
+
+    public Collection<Number160> locationKeys() {
+        return locationKeys;
+    }
+
+    /**
+     * @param locationKeys
+     *            The location keys the replica peer should have the same data for
+     * @return This class
+     */
+    public TreeSyncBuilder locationKeys(final Collection<Number160> locationKeys) {
+        this.locationKeys = locationKeys;
+        return this;
+    }
+
+    public ReplicationScheduler replicationScheduler() {
+        return replicationScheduler;
+    }
+
+    /**
+     * @param replicationScheduler
+     *            The scheduler that sends the location keys that differ, so that they share the queue and the
+     *            bandwidth budget with the other replication traffic. The data is then counted in
+     *            {@link ReplicationScheduler#bytesSent()} and not in the {@link SyncStat}. If null, the default, they
+     *            are synchronized right away with a {@link SyncBuilder}
+     * @return This class
+     */
+    public TreeSyncBuilder replicationScheduler(final ReplicationScheduler replicationScheduler) {
+        this.replicationScheduler = replicationScheduler;
+        return this;
+    }
+
+    public FutureDone<SyncStat> start() {
+        if (peer.peer().isShutdown()) {
+            return FUTURE_SHUTDOWN;
+        }
+        if (locationKeys == null) {
+            throw new IllegalArgumentException("Need location keys!");
+        }
+        final RangeHashTree rangeHashTree = peer.storageLayer().rangeHashTree();
+        // the location keys by the index of the leaf that covers them
+        final NavigableMap<Integer, List<Number160>> leaves = new TreeMap<Integer, List<Number160>>();
+        for (Number160 locationKey : locationKeys) {
+            final int index = RangeHashTree.index(locationKey, RangeHashTree.DEPTH);
+            List<Number160> leafLocationKeys = leaves.get(index);
+            if (leafLocationKeys == null) {
+                leafLocationKeys = new ArrayList<Number160>();
+                leaves.put(index, leafLocationKeys);
+            }
+            leafLocationKeys.add(locationKey);
+        }
+        final FutureDone<SyncStat> futureSync = new FutureDone<SyncStat>();
+        if (leaves.isEmpty()) {
+            return futureSync.done(new SyncStat(peer.peerAddress().peerId(), other.peerId(), 0, 0));
+        }
+        final FutureChannelCreator futureChannelCreator = peer.peer().connectionBean().reservation().create(0, 1);
+        Utils.addReleaseListener(futureChannelCreator, futureSync);
+        futureChannelCreator.addListener(new BaseFutureAdapter<FutureChannelCreator>() {
+            @Override
+            public void operationComplete(final FutureChannelCreator future) throws Exception {
+                if (!future.isSuccess()) {
+                    futureSync.failed(future);
+                    LOG.error("tree sync failed {}", future.failedReason());
+                    return;
+                }
+                compare(rangeHashTree, leaves, 0, ancestors(leaves.keySet(), 0), future.channelCreator(),
+                        futureSync);
+            }
+        });
+        return futureSync;
+    }
+
+    /**
+     * Sends the hashes of the nodes on one level and continues with the children of the nodes that differ.
+     */
+    private void compare(final RangeHashTree rangeHashTree, final NavigableMap<Integer, List<Number160>> leaves,
+            final int level, final Set<Integer> indexes, final ChannelCreator channelCreator,
+            final FutureDone<SyncStat> futureSync) {
+        // the location keys covered by the nodes
+        final int shift = RangeHashTree.BITS_PER_LEVEL * (RangeHashTree.DEPTH - level);
+        final List<Number160> nodeLocationKeys = new ArrayList<Number160>();
+        for (Map.Entry<Integer, List<Number160>> entry : leaves.entrySet()) {
+            if (indexes.contains(entry.getKey() >>> shift)) {
+                nodeLocationKeys.addAll(entry.getValue());
+            }
+        }
+        final Map<Integer, Number160> hashes = rangeHashTree.hashes(level, nodeLocationKeys);
+        final NavigableMap<Number640, Collection<Number160>> nodes = new TreeMap<Number640, Collection<Number160>>();
+        for (int index : indexes) {
+            final Set<Number160> hashSet = new HashSet<Number160>(1);
+            hashSet.add(hashes.get(index));
+            nodes.put(SyncRPC.encodeNode(level, index), hashSet);
+        }
+        final FutureResponse futureResponse = peerSync.syncRPC().treeMessage(other, this, nodes, nodeLocationKeys,
+                channelCreator);
+        futureResponse.addListener(new BaseFutureAdapter<FutureResponse>() {
+            @Override
+            public void operationComplete(final FutureResponse future) throws Exception {
+                if (future.isFailed()) {
+                    futureSync.failed(future);
+                    LOG.error("tree sync failed {}", future.failedReason());
+                    return;
+                }
+                final KeyCollection keyCollection = future.responseMessage().keyCollection(0);
+                if (keyCollection == null) {
+                    LOG.error("nothing received, something is wrong");
+                    futureSync.failed("nothing received, something is wrong");
+                    return;
+                }
+                final Set<Integer> differ = new TreeSet<Integer>();
+                for (Number640 node : keyCollection.keys()) {
+                    differ.add(RangeHashTree.index(node.locationKey(), level));
+                }
+                LOG.debug("{} of {} nodes differ on level {}", differ.size(), indexes.size(), level);
+                if (differ.isEmpty()) {
+                    futureSync.done(new SyncStat(peer.peerAddress().peerId(), other.peerId(), 0, 0));
+                } else if (level == RangeHashTree.DEPTH) {
+                    syncLeaves(leaves, differ, futureSync);
+                } else {
+                    final Set<Integer> children = new TreeSet<Integer>();
+                    for (int index : ancestors(leaves.keySet(), level + 1)) {
+                        if (differ.contains(index >>> RangeHashTree.BITS_PER_LEVEL)) {
+                            children.add(index);
+                        }
+                    }
+                    compare(rangeHashTree, leaves, level + 1, children, channelCreator, futureSync);
+                }
+            }
+        });
+    }
+
+    /**
+     * Synchronizes the entries of the location keys in the leaves that differ.
+     */
+    private void syncLeaves(final NavigableMap<Integer, List<Number160>> leaves, final Set<Integer> differ,
+            final FutureDone<SyncStat> futureSync) {
+        final List<Number160> differLocationKeys = new ArrayList<Number160>();
+        for (int index : differ) {
+            differLocationKeys.addAll(leaves.get(index));
+        }
+        if (replicationScheduler != null) {
+            replicationScheduler.schedule(other, differLocationKeys, Priority.REFRESH).addListener(
+                    new BaseFutureAdapter<FutureDone<Void>>() {
+                        @Override
+                        public void operationComplete(final FutureDone<Void> future) throws Exception {
+                            if (future.isSuccess()) {
+                                futureSync.done(new SyncStat(peer.peerAddress().peerId(), other.peerId(), 0, 0));
+                            } else {
+                                futureSync.failed(future);
+                            }
+                        }
+                    });
+            return;
+        }
+        final NavigableMap<Number640, Data> dataMap = new TreeMap<Number640, Data>();
+        for (Number160 locationKey : differLocationKeys) {
+            final Number640 min = new Number640(locationKey, Number160.ZERO, Number160.ZERO, Number160.ZERO);
+            final Number640 max = new Number640(locationKey, Number160.MAX_VALUE, Number160.MAX_VALUE,
+                    Number160.MAX_VALUE);
+            dataMap.putAll(peer.storageLayer().get(min, max, -1, true));
+        }
+        if (dataMap.isEmpty()) {
+            futureSync.done(new SyncStat(peer.peerAddress().peerId(), other.peerId(), 0, 0));
+            return;
+        }
+        peerSync.synchronize(other).dataMap(new DataMap(dataMap)).start()
+                .addListener(new BaseFutureAdapter<FutureDone<SyncStat>>() {
+                    @Override
+                    public void operationComplete(final FutureDone<SyncStat> future) throws Exception {
+                        if (future.isSuccess()) {
+                            futureSync.done(future.object());
+                        } else {
+                            futureSync.failed(future);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @return The indexes of the nodes on the given level that cover the leaves
+     */
+    private static Set<Integer> ancestors(final Set<Integer> leaves, final int level) {
+        final Set<Integer> ancestors = new TreeSet<Integer>();
+        final int shift = RangeHashTree.BITS_PER_LEVEL * (RangeHashTree.DEPTH - level);
+        for (int leaf : leaves) {
+            ancestors.add(leaf >>> shift);
+        }
+        return ancestors;
+    }
+}
@@ -5,7 +5,9 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NavigableMap;
 import java.util.Random;
@@ -85,6 +87,73 @@ public class SynchronizationTest {
 		}
 	}
 
+	@Test
+	public void testInstructionsOverBuffers() {
+		Random rnd = new Random(42);
+		for (int i = 0; i < 20; i++) {
+			byte[] oldValue = new byte[10000 + rnd.nextInt(1000)];
+			rnd.nextBytes(oldValue);
+			byte[] newValue = oldValue.clone();
+			newValue[rnd.nextInt(newValue.length)]++;
+			// split the values into buffers that do not align with the blocks
+			ByteBuffer[] oldBuffers = new ByteBuffer[] { ByteBuffer.wrap(oldValue, 0, 333).slice(),
+			        ByteBuffer.wrap(oldValue, 333, oldValue.length - 333).slice() };
+			ByteBuffer[] newBuffers = new ByteBuffer[] { ByteBuffer.wrap(newValue, 0, 4567).slice(),
+			        ByteBuffer.wrap(newValue, 4567, newValue.length - 4567).slice() };
+
+			List<Checksum> checksums = RSync.checksums(oldBuffers, 100);
+			Assert.assertEquals(RSync.checksums(oldValue, 100), checksums);
+			final List<Instruction> instructions = new ArrayList<Instruction>();
+			RSync.instructions(newBuffers, checksums, 100, new RSync.InstructionListener() {
+				@Override
+				public void instruction(Instruction instruction) {
+					instructions.add(instruction);
+				}
+			});
+			Assert.assertEquals(RSync.instructions(newValue, checksums, 100), instructions);
+			DataBuffer reconstructedValue = RSync.reconstruct(oldValue, instructions, 100);
+			Assert.assertArrayEquals(newValue, reconstructedValue.bytes());
+		}
+	}
+
+	@Test
+	public void testInstructionsOverManyBuffers() {
+		Random rnd = new Random(42);
+		for (int i = 0; i < 20; i++) {
+			byte[] oldValue = new byte[10000 + rnd.nextInt(1000)];
+			rnd.nextBytes(oldValue);
+			byte[] newValue = oldValue.clone();
+			newValue[rnd.nextInt(newValue.length)]++;
+			// small buffers, some of them empty, so that a block spans many buffers
+			ByteBuffer[] oldBuffers = split(oldValue, rnd);
+			ByteBuffer[] newBuffers = split(newValue, rnd);
+
+			List<Checksum> checksums = RSync.checksums(oldBuffers, 100);
+			Assert.assertEquals(RSync.checksums(oldValue, 100), checksums);
+			final List<Instruction> instructions = new ArrayList<Instruction>();
+			RSync.instructions(newBuffers, checksums, 100, new RSync.InstructionListener() {
+				@Override
+				public void instruction(Instruction instruction) {
+					instructions.add(instruction);
+				}
+			});
+			Assert.assertEquals(RSync.instructions(newValue, checksums, 100), instructions);
+			DataBuffer reconstructedValue = RSync.reconstruct(oldValue, instructions, 100);
+			Assert.assertArrayEquals(newValue, reconstructedValue.bytes());
+		}
+	}
+
+	private static ByteBuffer[] split(byte[] value, Random rnd) {
+		List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		int offset = 0;
+		while (offset < value.length) {
+			int length = Math.min(rnd.nextInt(50), value.length - offset);
+			buffers.add(ByteBuffer.wrap(value, offset, length).slice());
+			offset += length;
+		}
+		return buffers.toArray(new ByteBuffer[buffers.size()]);
+	}
+
 	@Test
 	public void testGetReconstructedValueStatic0() throws IOException, NoSuchAlgorithmException {
 		// oldValue and newValue are set manually
@@ -582,4 +651,101 @@ public class SynchronizationTest {
 			}
 		}
 	}
+
+	@Test
+	public void testTreeSync() throws IOException, InterruptedException, ClassNotFoundException {
+		PeerDHT sender = null;
+		PeerDHT receiver = null;
+		try {
+			sender = new PeerBuilderDHT(new PeerBuilder(new Number160(5)).ports(4005).start()).start();
+			receiver = new PeerBuilderDHT(new PeerBuilder(new Number160(6)).ports(4006).start()).start();
+
+			final PeerSync senderSync = new PeerSync(sender, 5);
+			new PeerSync(receiver, 5);
+
+			final Number160 locationKey1 = new Number160(700);
+			final Number160 locationKey2 = new Number160(800);
+			final List<Number160> locationKeys = new ArrayList<Number160>();
+			locationKeys.add(locationKey1);
+			locationKeys.add(locationKey2);
+			Number640 key1 = new Number640(locationKey1, Number160.ZERO, Number160.ZERO, Number160.ZERO);
+			Number640 key2 = new Number640(locationKey2, Number160.ZERO, Number160.ZERO, Number160.ZERO);
+
+			sender.put(locationKey1).data(new Data("Test1")).start().awaitUninterruptibly();
+			receiver.put(locationKey1).data(new Data("Test1")).start().awaitUninterruptibly();
+
+			// in sync, only the hashes are compared
+			FutureDone<SyncStat> future = senderSync.synchronizeTree(receiver.peerAddress())
+			        .locationKeys(locationKeys).start();
+			future.awaitUninterruptibly();
+			Assert.assertTrue(future.isSuccess());
+			Assert.assertEquals(0, future.object().dataCopy());
+
+			sender.put(locationKey2).data(new Data("Test2")).start().awaitUninterruptibly();
+			future = senderSync.synchronizeTree(receiver.peerAddress()).locationKeys(locationKeys).start();
+			future.awaitUninterruptibly();
+			Assert.assertTrue(future.isSuccess());
+			Assert.assertEquals("Test2", receiver.storageLayer().get(key2).object());
+			Assert.assertEquals(receiver.storageLayer().get(key1).hash(), sender.storageLayer().get(key1).hash());
+		} finally {
+			if (sender != null) {
+				sender.shutdown().awaitUninterruptibly();
+			}
+			if (receiver != null) {
+				receiver.shutdown().awaitUninterruptibly();
+			}
+		}
+	}
+
+	@Test
+	public void testTreeSyncUnrelatedKeys() throws IOException, InterruptedException, ClassNotFoundException {
+		PeerDHT sender = null;
+		PeerDHT receiver = null;
+		try {
+			sender = new PeerBuilderDHT(new PeerBuilder(new Number160(5)).ports(4005).start()).start();
+			receiver = new PeerBuilderDHT(new PeerBuilder(new Number160(6)).ports(4006).start()).start();
+
+			final PeerSync senderSync = new PeerSync(sender, 5);
+			new PeerSync(receiver, 5);
+
+			final Number160 locationKey1 = new Number160(700);
+			final Number160 locationKey2 = new Number160(800);
+			final List<Number160> locationKeys = new ArrayList<Number160>();
+			locationKeys.add(locationKey1);
+			locationKeys.add(locationKey2);
+			Number640 key2 = new Number640(locationKey2, Number160.ZERO, Number160.ZERO, Number160.ZERO);
+
+			sender.put(locationKey1).data(new Data("Test1")).start().awaitUninterruptibly();
+			sender.put(locationKey2).data(new Data("Test2")).start().awaitUninterruptibly();
+			receiver.put(locationKey1).data(new Data("Test1")).start().awaitUninterruptibly();
+			receiver.put(locationKey2).data(new Data("Test2")).start().awaitUninterruptibly();
+			// the receiver is a replica for other peers as well, in the same leaf and in an other one
+			receiver.put(new Number160(900)).data(new Data("Other1")).start().awaitUninterruptibly();
+			receiver.put(Number160.MAX_VALUE).data(new Data("Other2")).start().awaitUninterruptibly();
+
+			// only the entries of the location keys are compared
+			Assert.assertEquals(sender.storageLayer().rangeHashTree().hashes(0, locationKeys), receiver
+			        .storageLayer().rangeHashTree().hashes(0, locationKeys));
+			FutureDone<SyncStat> future = senderSync.synchronizeTree(receiver.peerAddress())
+			        .locationKeys(locationKeys).start();
+			future.awaitUninterruptibly();
+			Assert.assertTrue(future.isSuccess());
+			Assert.assertEquals(0, future.object().dataCopy());
+
+			sender.put(locationKey2).data(new Data("Test3")).start().awaitUninterruptibly();
+			future = senderSync.synchronizeTree(receiver.peerAddress()).locationKeys(locationKeys).start();
+			future.awaitUninterruptibly();
+			Assert.assertTrue(future.isSuccess());
+			Assert.assertEquals("Test3", receiver.storageLayer().get(key2).object());
+			Assert.assertEquals(sender.storageLayer().rangeHashTree().hashes(0, locationKeys), receiver
+			        .storageLayer().rangeHashTree().hashes(0, locationKeys));
+		} finally {
+			if (sender != null) {
+				sender.shutdown().awaitUninterruptibly();
+			}
+			if (receiver != null) {
+				receiver.shutdown().awaitUninterruptibly();
+			}
+		}
+	}
 }
@@ -0,0 +1,234 @@
+package net.tomp2p.replication;
+
+import java.util.Random;
+
+import net.tomp2p.Utils2;
+import net.tomp2p.connection.PeerException;
+import net.tomp2p.connection.PeerException.AbortCause;
+import net.tomp2p.dht.PeerBuilderDHT;
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.p2p.PeerBuilder;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.storage.Data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestErasureCoding {
+	private static final int PORT = 4001;
+
+	@Test
+	public void testPutGetRepair() throws Exception {
+		final Random rnd = new Random(42L);
+		PeerDHT master = null;
+		try {
+			PeerDHT[] peers = Utils2.createNodes(10, rnd, PORT);
+			master = peers[0];
+			Utils2.perfectRouting(peers);
+			final ErasureCoding erasureCoding = new ErasureCoding(master).dataFragments(3).fragments(5).start();
+
+			final Number160 locationKey = Number160.createHash("large");
+			final byte[] value = new byte[10000];
+			rnd.nextBytes(value);
+			FutureDone<Void> futurePut = erasureCoding.put(locationKey, Number160.ZERO, new Data(value));
+			futurePut.awaitUninterruptibly();
+			Assert.assertTrue(futurePut.isSuccess());
+			// each fragment is stored once, with about a third of the value
+			for (int i = 0; i < 5; i++) {
+				final PeerDHT holder = holder(peers, locationKey, i);
+				Assert.assertNotNull(holder);
+				Assert.assertTrue(holder.storageLayer().get(key(locationKey, i)).length() < 4000);
+			}
+
+			FutureDone<Data> futureGet = new ErasureCoding(peers[5]).dataFragments(3).fragments(5).start()
+			        .get(locationKey, Number160.ZERO);
+			futureGet.awaitUninterruptibly();
+			Assert.assertTrue(futureGet.isSuccess());
+			Assert.assertArrayEquals(value, futureGet.object().toBytes());
+
+			// lose two fragments, any three restore the value
+			holder(peers, locationKey, 0).storageLayer().remove(key(locationKey, 0), null, false);
+			holder(peers, locationKey, 3).storageLayer().remove(key(locationKey, 3), null, false);
+			futureGet = erasureCoding.get(locationKey, Number160.ZERO);
+			futureGet.awaitUninterruptibly();
+			Assert.assertTrue(futureGet.isSuccess());
+			Assert.assertArrayEquals(value, futureGet.object().toBytes());
+
+			// only the lost fragments are stored again
+			FutureDone<Integer> futureRepair = erasureCoding.repair(locationKey, Number160.ZERO);
+			futureRepair.awaitUninterruptibly();
+			Assert.assertTrue(futureRepair.isSuccess());
+			Assert.assertEquals(2, futureRepair.object().intValue());
+			Assert.assertNotNull(holder(peers, locationKey, 0));
+			Assert.assertNotNull(holder(peers, locationKey, 3));
+
+			// not enough fragments left
+			for (int i = 0; i < 3; i++) {
+				holder(peers, locationKey, i).storageLayer().remove(key(locationKey, i), null, false);
+			}
+			futureGet = erasureCoding.get(locationKey, Number160.ZERO);
+			futureGet.awaitUninterruptibly();
+			Assert.assertTrue(futureGet.isFailed());
+		} finally {
+			if (master != null) {
+				master.shutdown().awaitUninterruptibly();
+			}
+		}
+	}
+
+	@Test
+	public void testRepairTTL() throws Exception {
+		final Random rnd = new Random(42L);
+		PeerDHT master = null;
+		try {
+			PeerDHT[] peers = Utils2.createNodes(10, rnd, PORT);
+			master = peers[0];
+			Utils2.perfectRouting(peers);
+			final ErasureCoding erasureCoding = new ErasureCoding(master).dataFragments(3).fragments(5).start();
+
+			final Number160 locationKey = Number160.createHash("ttl");
+			final byte[] value = new byte[1000];
+			rnd.nextBytes(value);
+			FutureDone<Void> futurePut = erasureCoding.put(locationKey, Number160.ZERO,
+			        new Data(value).ttlSeconds(100));
+			futurePut.awaitUninterruptibly();
+			Assert.assertTrue(futurePut.isSuccess());
+			Assert.assertEquals(100, holder(peers, locationKey, 0).storageLayer().get(key(locationKey, 0))
+			        .ttlSeconds());
+
+			holder(peers, locationKey, 1).storageLayer().remove(key(locationKey, 1), null, false);
+			FutureDone<Integer> futureRepair = erasureCoding.repair(locationKey, Number160.ZERO);
+			futureRepair.awaitUninterruptibly();
+			Assert.assertEquals(1, futureRepair.object().intValue());
+			// the repaired fragment expires with the value
+			final int ttlSeconds = holder(peers, locationKey, 1).storageLayer().get(key(locationKey, 1))
+			        .ttlSeconds();
+			Assert.assertTrue(ttlSeconds > 0 && ttlSeconds <= 100);
+		} finally {
+			if (master != null) {
+				master.shutdown().awaitUninterruptibly();
+			}
+		}
+	}
+
+	@Test
+	public void testChurnRepair() throws Exception {
+		final Random rnd = new Random(42L);
+		PeerDHT master = null;
+		try {
+			PeerDHT[] peers = Utils2.createNodes(10, rnd, PORT);
+			master = peers[0];
+			Utils2.perfectRouting(peers);
+			final ErasureCoding erasureCoding = new ErasureCoding(master).dataFragments(3).fragments(5)
+			        .delayMillis(100).start();
+			for (int i = 1; i < peers.length; i++) {
+				new ErasureCoding(peers[i]).dataFragments(3).fragments(5).delayMillis(100).start();
+			}
+
+			final Number160 locationKey = Number160.createHash("churn");
+			final byte[] value = new byte[1000];
+			rnd.nextBytes(value);
+			FutureDone<Void> futurePut = erasureCoding.put(locationKey, Number160.ZERO, new Data(value));
+			futurePut.awaitUninterruptibly();
+			Assert.assertTrue(futurePut.isSuccess());
+
+			// a peer other than the master with one fragment leaves
+			int lost = -1;
+			for (int i = 0; i < 5 && lost == -1; i++) {
+				final PeerDHT holder = holder(peers, locationKey, i);
+				if (holder != master && holder.storageLayer().keys(ErasureCoding.DOMAIN_KEY).size() == 1) {
+					lost = i;
+				}
+			}
+			Assert.assertTrue(lost >= 0);
+			final PeerDHT leaving = holder(peers, locationKey, lost);
+			final Data[] before = new Data[5];
+			for (int i = 0; i < 5; i++) {
+				before[i] = holder(peers, locationKey, i).storageLayer().get(key(locationKey, i));
+			}
+			leaving.storageLayer().remove(key(locationKey, lost), null, false);
+			for (PeerDHT peer : peers) {
+				peer.peerBean().peerMap().peerFailed(leaving.peerAddress(),
+				        new PeerException(AbortCause.SHUTDOWN, "left"));
+			}
+
+			for (int i = 0; i < 50 && holder(peers, locationKey, lost) == null; i++) {
+				Thread.sleep(100);
+			}
+			Assert.assertNotNull(holder(peers, locationKey, lost));
+			Assert.assertNotSame(leaving, holder(peers, locationKey, lost));
+			// the other fragments are not stored again
+			for (int i = 0; i < 5; i++) {
+				if (i != lost) {
+					Assert.assertSame(before[i],
+					        holder(peers, locationKey, i).storageLayer().get(key(locationKey, i)));
+				}
+			}
+		} finally {
+			if (master != null) {
+				master.shutdown().awaitUninterruptibly();
+			}
+		}
+	}
+
+	@Test
+	public void testHandOff() throws Exception {
+		final Random rnd = new Random(42L);
+		PeerDHT master = null;
+		try {
+			PeerDHT[] peers = Utils2.createNodes(10, rnd, PORT);
+			master = peers[0];
+			Utils2.perfectRouting(peers);
+			final ErasureCoding erasureCoding = new ErasureCoding(master).dataFragments(3).fragments(5)
+			        .delayMillis(100).start();
+			for (int i = 1; i < peers.length; i++) {
+				new ErasureCoding(peers[i]).dataFragments(3).fragments(5).delayMillis(100).start();
+			}
+
+			final Number160 locationKey = Number160.createHash("hand-off");
+			final byte[] value = new byte[1000];
+			rnd.nextBytes(value);
+			FutureDone<Void> futurePut = erasureCoding.put(locationKey, Number160.ZERO, new Data(value));
+			futurePut.awaitUninterruptibly();
+			Assert.assertTrue(futurePut.isSuccess());
+			final PeerDHT holder = holder(peers, locationKey, 0);
+
+			// a peer closer to the first fragment joins
+			final Number160 peerId = ErasureCoding.fragmentKey(locationKey, 0).xor(Number160.ONE);
+			final PeerDHT joining = new PeerBuilderDHT(new PeerBuilder(peerId).enableMaintenance(false)
+			        .masterPeer(master.peer()).start()).start();
+			new ErasureCoding(joining).dataFragments(3).fragments(5).delayMillis(100).start();
+			for (PeerDHT peer : peers) {
+				joining.peerBean().peerMap().peerFound(peer.peerAddress(), null, null, null);
+				peer.peerBean().peerMap().peerFound(joining.peerAddress(), null, null, null);
+			}
+
+			for (int i = 0; i < 50 && holder.storageLayer().contains(key(locationKey, 0)); i++) {
+				Thread.sleep(100);
+			}
+			// the fragment moved, it is not copied
+			Assert.assertTrue(joining.storageLayer().contains(key(locationKey, 0)));
+			Assert.assertFalse(holder.storageLayer().contains(key(locationKey, 0)));
+		} finally {
+			if (master != null) {
+				master.shutdown().awaitUninterruptibly();
+			}
+		}
+	}
+
+	private static Number640 key(final Number160 locationKey, final int index) {
+		return new Number640(ErasureCoding.fragmentKey(locationKey, index), ErasureCoding.DOMAIN_KEY, Number160.ZERO,
+		        Number160.ZERO);
+	}
+
+	private static PeerDHT holder(final PeerDHT[] peers, final Number160 locationKey, final int index) {
+		for (PeerDHT peer : peers) {
+			if (peer.storageLayer().contains(key(locationKey, index))) {
+				return peer;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,62 @@
+package net.tomp2p.replication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestReedSolomon {
+
+	@Test
+	public void testAnyFragments() {
+		final Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			final int dataFragments = 1 + random.nextInt(10);
+			final int fragments = dataFragments + random.nextInt(8);
+			final ReedSolomon reedSolomon = new ReedSolomon(dataFragments, fragments);
+			final byte[] value = new byte[random.nextInt(300)];
+			random.nextBytes(value);
+			final byte[][] encoded = reedSolomon.encode(value);
+			Assert.assertEquals(fragments, encoded.length);
+
+			// keep a random set of k fragments
+			final List<Integer> indexes = new ArrayList<Integer>();
+			for (int j = 0; j < fragments; j++) {
+				indexes.add(j);
+			}
+			Collections.shuffle(indexes, random);
+			final byte[][] available = new byte[fragments][];
+			for (int j = 0; j < dataFragments; j++) {
+				available[indexes.get(j)] = encoded[indexes.get(j)].clone();
+			}
+			Assert.assertArrayEquals(value, reedSolomon.decode(available, value.length));
+			// the lost fragments are restored as well
+			for (int j = 0; j < fragments; j++) {
+				Assert.assertArrayEquals(encoded[j], available[j]);
+			}
+		}
+	}
+
+	@Test
+	public void testSystematic() {
+		final ReedSolomon reedSolomon = new ReedSolomon(3, 5);
+		final byte[] value = "Test1Test2Test3".getBytes();
+		final byte[][] encoded = reedSolomon.encode(value);
+		Assert.assertArrayEquals("Test1".getBytes(), encoded[0]);
+		Assert.assertArrayEquals("Test2".getBytes(), encoded[1]);
+		Assert.assertArrayEquals("Test3".getBytes(), encoded[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotEnoughFragments() {
+		final ReedSolomon reedSolomon = new ReedSolomon(3, 5);
+		final byte[][] encoded = reedSolomon.encode("Test".getBytes());
+		encoded[0] = null;
+		encoded[2] = null;
+		encoded[4] = null;
+		reedSolomon.reconstruct(encoded);
+	}
+}
@@ -0,0 +1,205 @@
+package net.tomp2p.replication;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.tomp2p.Utils2;
+import net.tomp2p.dht.PeerBuilderDHT;
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.FutureDone;
+import net.tomp2p.p2p.PeerBuilder;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+import net.tomp2p.peers.PeerAddress;
+import net.tomp2p.replication.ReplicationScheduler.Priority;
+import net.tomp2p.storage.Data;
+import net.tomp2p.synchronization.PeerSync;
+import net.tomp2p.synchronization.SyncStat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestReplicationScheduler {
+
+	@Test
+	public void testPriority() throws Exception {
+		PeerDHT master = null;
+		try {
+			master = new PeerBuilderDHT(new PeerBuilder(new Number160(1)).ports(4001).start()).start();
+			final Number160 key1 = new Number160(100);
+			final Number160 key2 = new Number160(200);
+			final Number160 key3 = new Number160(300);
+			master.put(key1).data(new Data("test1")).start().awaitUninterruptibly();
+			master.put(key2).data(new Data("test2")).start().awaitUninterruptibly();
+			master.put(key3).data(new Data("test3")).start().awaitUninterruptibly();
+			final PeerAddress other = Utils2.createAddress(2);
+
+			final ManualReplicationSender sender = new ManualReplicationSender();
+			final ReplicationScheduler scheduler = new ReplicationScheduler(master, sender).batchSize(1);
+
+			FutureDone<Void> future1 = scheduler.schedule(other, Collections.singletonList(key1), Priority.REFRESH);
+			Assert.assertEquals(key1, sender.sent.poll(10, TimeUnit.SECONDS));
+			Assert.assertEquals(0, scheduler.queueLength());
+
+			// queued while the first message is in flight, the same key is only queued once
+			FutureDone<Void> future2 = scheduler.schedule(other, Collections.singletonList(key2), Priority.REFRESH);
+			FutureDone<Void> future3 = scheduler.schedule(other, Collections.singletonList(key3),
+			        Priority.UNDER_REPLICATED);
+			FutureDone<Void> future4 = scheduler.schedule(other, Arrays.asList(key2, key3), Priority.REFRESH);
+			Assert.assertEquals(2, scheduler.queueLength(other));
+			Assert.assertFalse(future1.isCompleted());
+
+			sender.complete();
+			Assert.assertTrue(future1.awaitUninterruptibly(10000));
+			Assert.assertTrue(future1.isSuccess());
+			// the under-replicated key goes first
+			Assert.assertEquals(key3, sender.sent.poll(10, TimeUnit.SECONDS));
+			sender.complete();
+			Assert.assertTrue(future3.awaitUninterruptibly(10000));
+			Assert.assertFalse(future4.isCompleted());
+			Assert.assertEquals(key2, sender.sent.poll(10, TimeUnit.SECONDS));
+			sender.complete();
+			Assert.assertTrue(future2.awaitUninterruptibly(10000));
+			Assert.assertTrue(future4.awaitUninterruptibly(10000));
+			Assert.assertTrue(future4.isSuccess());
+			Assert.assertEquals(0, scheduler.queueLength());
+			Assert.assertEquals(0, scheduler.lagMillis());
+		} finally {
+			if (master != null) {
+				master.shutdown().await();
+			}
+		}
+	}
+
+	@Test
+	public void testBudget() throws Exception {
+		PeerDHT master = null;
+		try {
+			master = new PeerBuilderDHT(new PeerBuilder(new Number160(1)).ports(4001).start()).start();
+			final Number160 key1 = new Number160(100);
+			final Number160 key2 = new Number160(200);
+			master.put(key1).data(new Data(new byte[2000])).start().awaitUninterruptibly();
+			master.put(key2).data(new Data(new byte[2000])).start().awaitUninterruptibly();
+			final PeerAddress other1 = Utils2.createAddress(2);
+			final PeerAddress other2 = Utils2.createAddress(3);
+
+			final ManualReplicationSender sender = new ManualReplicationSender();
+			final ReplicationScheduler scheduler = new ReplicationScheduler(master, sender).bytesPerSecond(1000);
+
+			scheduler.schedule(other1, Collections.singletonList(key1), Priority.UNDER_REPLICATED);
+			Assert.assertEquals(key1, sender.sent.poll(10, TimeUnit.SECONDS));
+			// the message exceeds the budget of one second, so the next message to an other peer waits
+			scheduler.schedule(other2, Collections.singletonList(key2), Priority.UNDER_REPLICATED);
+			Assert.assertNull(sender.sent.poll(200, TimeUnit.MILLISECONDS));
+			Assert.assertEquals(1, scheduler.queueLength());
+			Assert.assertTrue(scheduler.lagMillis() >= 200);
+			Assert.assertEquals(key2, sender.sent.poll(10, TimeUnit.SECONDS));
+			Assert.assertTrue(scheduler.bytesSent() >= 4000);
+			scheduler.shutdown();
+		} finally {
+			if (master != null) {
+				master.shutdown().await();
+			}
+		}
+	}
+
+	@Test
+	public void testSendThrows() throws Exception {
+		PeerDHT master = null;
+		try {
+			master = new PeerBuilderDHT(new PeerBuilder(new Number160(1)).ports(4001).start()).start();
+			final Number160 key1 = new Number160(100);
+			final Number160 key2 = new Number160(200);
+			master.put(key1).data(new Data("test1")).start().awaitUninterruptibly();
+			master.put(key2).data(new Data("test2")).start().awaitUninterruptibly();
+			final PeerAddress other = Utils2.createAddress(2);
+
+			final ManualReplicationSender sender = new ManualReplicationSender();
+			sender.fail = true;
+			final ReplicationScheduler scheduler = new ReplicationScheduler(master, sender).batchSize(1);
+
+			FutureDone<Void> future1 = scheduler.schedule(other, Collections.singletonList(key1), Priority.REFRESH);
+			Assert.assertTrue(future1.awaitUninterruptibly(10000));
+			Assert.assertFalse(future1.isSuccess());
+			// the destination is not left in flight, the next message is sent
+			FutureDone<Void> future2 = scheduler.schedule(other, Collections.singletonList(key2), Priority.REFRESH);
+			Assert.assertEquals(key2, sender.sent.poll(10, TimeUnit.SECONDS));
+			sender.complete();
+			Assert.assertTrue(future2.awaitUninterruptibly(10000));
+			Assert.assertTrue(future2.isSuccess());
+			Assert.assertEquals(0, scheduler.queueLength());
+			scheduler.shutdown();
+		} finally {
+			if (master != null) {
+				master.shutdown().await();
+			}
+		}
+	}
+
+	@Test
+	public void testTreeSync() throws Exception {
+		PeerDHT master = null;
+		PeerDHT receiver = null;
+		try {
+			master = new PeerBuilderDHT(new PeerBuilder(new Number160(1)).ports(4001).start()).start();
+			receiver = new PeerBuilderDHT(new PeerBuilder(new Number160(2)).ports(4002).start()).start();
+			final PeerSync peerSync = new PeerSync(master, 5);
+			new PeerSync(receiver, 5);
+			final Number160 key1 = new Number160(100);
+			master.put(key1).data(new Data("test1")).start().awaitUninterruptibly();
+
+			final ManualReplicationSender sender = new ManualReplicationSender();
+			final ReplicationScheduler scheduler = new ReplicationScheduler(master, sender);
+			// the location key that differs is queued, not sent by the tree sync itself
+			FutureDone<SyncStat> futureSync = peerSync.synchronizeTree(receiver.peerAddress())
+			        .locationKeys(Collections.singletonList(key1)).replicationScheduler(scheduler).start();
+			Assert.assertEquals(key1, sender.sent.poll(10, TimeUnit.SECONDS));
+			Assert.assertFalse(futureSync.isCompleted());
+			Assert.assertTrue(scheduler.bytesSent() > 0);
+			sender.complete();
+			Assert.assertTrue(futureSync.awaitUninterruptibly(10000));
+			Assert.assertTrue(futureSync.isSuccess());
+			Assert.assertNull(receiver.storageLayer().get(
+			        new Number640(key1, Number160.ZERO, Number160.ZERO, Number160.ZERO)));
+			scheduler.shutdown();
+		} finally {
+			if (receiver != null) {
+				receiver.shutdown().await();
+			}
+			if (master != null) {
+				master.shutdown().await();
+			}
+		}
+	}
+
+	/**
+	 * Records the first location key of each message, which is done when {@link #complete()} is called. If
+	 * {@link #fail} is set, the next message throws instead.
+	 */
+	private static class ManualReplicationSender implements ReplicationSender {
+		private final BlockingQueue<Number160> sent = new LinkedBlockingQueue<Number160>();
+		private final BlockingQueue<FutureDone<Void>> pending = new LinkedBlockingQueue<FutureDone<Void>>();
+		private volatile boolean fail = false;
+
+		@Override
+		public FutureDone<?> sendDirect(final PeerAddress other, final Number160 locationKey,
+		        final NavigableMap<Number640, Data> dataMap) {
+			if (fail) {
+				fail = false;
+				throw new IllegalStateException("shutting down");
+			}
+			final FutureDone<Void> futureDone = new FutureDone<Void>();
+			pending.add(futureDone);
+			sent.add(locationKey);
+			return futureDone;
+		}
+
+		private void complete() {
+			pending.poll().done();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package net.tomp2p.replication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.tomp2p.dht.PeerBuilderDHT;
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.p2p.PeerBuilder;
+import net.tomp2p.peers.Number160;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestResponsibilityIndex {
+
+	@Test
+	public void testAffected() {
+		final Random random = new Random(42);
+		final ResponsibilityIndex index = new ResponsibilityIndex();
+		final List<Number160> locationKeys = new ArrayList<Number160>();
+		final List<Number160> boundaries = new ArrayList<Number160>();
+		for (int i = 0; i < 1000; i++) {
+			final Number160 locationKey = new Number160(random);
+			// close and far replica sets, and some keys without a boundary
+			final Number160 boundary = i % 10 == 0 ? null : locationKey.xor(new Number160(random.nextInt(1 << (i % 31))));
+			locationKeys.add(locationKey);
+			boundaries.add(boundary);
+			index.put(locationKey, boundary);
+		}
+		Assert.assertEquals(1000, index.size());
+		for (int i = 0; i < 200; i++) {
+			// peers close to a key and random peers
+			final Number160 peerId = i % 2 == 0 ? locationKeys.get(i).xor(new Number160(random.nextInt(1 << 20)))
+			        : new Number160(random);
+			assertAffected(expected(locationKeys, boundaries, peerId, false), index.affectedByInsert(peerId));
+			assertAffected(expected(locationKeys, boundaries, peerId, true), index.affectedByRemove(peerId));
+		}
+	}
+
+	@Test
+	public void testUpdate() {
+		final ResponsibilityIndex index = new ResponsibilityIndex();
+		final Number160 locationKey = new Number160(0x1000);
+		index.put(locationKey, new Number160(0x1001));
+		Assert.assertTrue(index.affectedByInsert(locationKey).contains(locationKey));
+		Assert.assertFalse(index.affectedByInsert(new Number160(0x1003)).contains(locationKey));
+		// the boundary peer itself changes the replica set if it leaves
+		Assert.assertTrue(index.affectedByRemove(new Number160(0x1001)).contains(locationKey));
+		index.put(locationKey, new Number160(0x1100));
+		Assert.assertEquals(1, index.size());
+		Assert.assertTrue(index.affectedByInsert(new Number160(0x1003)).contains(locationKey));
+		index.put(locationKey, null);
+		Assert.assertTrue(index.affectedByInsert(Number160.MAX_VALUE).contains(locationKey));
+		Assert.assertTrue(index.remove(locationKey));
+		Assert.assertFalse(index.remove(locationKey));
+		Assert.assertTrue(index.affectedByInsert(Number160.MAX_VALUE).isEmpty());
+	}
+
+	@Test
+	public void testRebuild() throws Exception {
+		PeerDHT master = null;
+		try {
+			master = new PeerBuilderDHT(new PeerBuilder(new Number160(1)).ports(4001).start()).start();
+			final Replication replication = new Replication(master, 3, false, false,
+			        new HashSet<ReplicationFilter>());
+			final ResponsibilityIndex index = replication.responsibilityIndex();
+			final Number160 locationKey1 = new Number160(100);
+			final Number160 locationKey2 = new Number160(200);
+			master.storageLayer().updateResponsibilities(locationKey1, master.peerID());
+			master.storageLayer().updateResponsibilities(locationKey2, master.peerID());
+			replication.updateResponsibilityIndex();
+			// updated in place, the churn events keep working on the same index
+			Assert.assertSame(index, replication.responsibilityIndex());
+			Assert.assertEquals(2, index.size());
+
+			master.storageLayer().removeResponsibility(locationKey1, true);
+			replication.updateResponsibilityIndex();
+			Assert.assertEquals(1, index.size());
+			Assert.assertTrue(index.locationKeys().contains(locationKey2));
+		} finally {
+			if (master != null) {
+				master.shutdown().await();
+			}
+		}
+	}
+
+	private static Set<Number160> expected(final List<Number160> locationKeys, final List<Number160> boundaries,
+	        final Number160 peerId, final boolean inclusive) {
+		final Set<Number160> expected = new HashSet<Number160>();
+		for (int i = 0; i < locationKeys.size(); i++) {
+			final Number160 boundary = boundaries.get(i);
+			if (boundary == null) {
+				expected.add(locationKeys.get(i));
+				continue;
+			}
+			final int compare = locationKeys.get(i).xor(peerId).compareTo(locationKeys.get(i).xor(boundary));
+			if (compare < 0 || (inclusive && compare == 0)) {
+				expected.add(locationKeys.get(i));
+			}
+		}
+		return expected;
+	}
+
+	private static void assertAffected(final Set<Number160> expected, final Collection<Number160> affected) {
+		Assert.assertEquals(expected.size(), affected.size());
+		Assert.assertEquals(expected, new HashSet<Number160>(affected));
+	}
+}
@@ -29,6 +29,8 @@ public class DataSerializer implements Serializer<Data>, Serializable {
     
     final private File path;
     final private SignatureFactory signatureFactory;
+    // created on first use, as MapDB serializes this serializer
+    private transient volatile LargeValueStore largeValueStore;
     
     public DataSerializer(File path, SignatureFactory signatureFactory) {
     	this.path = path;
@@ -38,8 +40,8 @@ public class DataSerializer implements Serializer<Data>, Serializable {
 	@Override
 	public void serialize(DataOutput out, Data value) throws IOException {
 		if (value.length() > MAX_SIZE) {
-			// header, 1 means stored on disk in a file
-			out.writeByte(1);
+			// header, 2 means the payload is stored on disk in a file
+			out.writeByte(2);
 			serializeFile(out, value);
 		} else {
 			// header, 0 means stored on disk with MapDB
@@ -69,42 +71,27 @@ public class DataSerializer implements Serializer<Data>, Serializable {
 	    }
     }
 
-	private void serializeFile(DataOutput out, Data value) throws IOException, FileNotFoundException {
+	private void serializeFile(DataOutput out, Data value) throws IOException {
 	    Number160 hash = value.hash();
 	    // store file name
 	    out.write(hash.toByteArray());
-	    // store as external file, create path
-	    RandomAccessFile file = null;
-	    FileChannel rwChannel = null;
+	    // the payload goes to a file named by its hash, which is never
+	    // modified afterwards. The header and the signature may differ for
+	    // the same payload, so they are stored with MapDB
+	    largeValueStore().write(hash, value);
+	    AlternativeCompositeByteBuf acb = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
+	    value.encodeHeader(acb, signatureFactory);
+	    write(out, acb.nioBuffers());
+	    acb.skipBytes(acb.writerIndex());
 	    try {
-	    	file = new RandomAccessFile(new File(path, hash.toString()), "rw");
-	    	rwChannel = file.getChannel();
-	    	AlternativeCompositeByteBuf acb = AlternativeCompositeByteBuf.compBuffer(AlternativeCompositeByteBuf.UNPOOLED_HEAP);
-	    	// store data to disk
-	    	// header first
-	    	value.encodeHeader(acb, signatureFactory);
-	    	rwChannel.write(acb.nioBuffers());
-	    	// next data - no need to copy to another buffer, just take the
-	    	// data from memory
-	    	rwChannel.write(value.toByteBuffers());
-	    	// rest
-	    	try {
-	    		value.encodeDone(acb, signatureFactory);
-	    		rwChannel.write(acb.nioBuffers());
-	    	} catch (InvalidKeyException e) {
-	    		throw new IOException(e);
-	    	} catch (SignatureException e) {
-	    		throw new IOException(e);
-	    	}
-	    } finally {
-
-	    	if (rwChannel != null) {
-	    		rwChannel.close();
-	    	}
-	    	if (file != null) {
-	    		file.close();
-	    	}
+	    	value.encodeDone(acb, signatureFactory);
+	    } catch (InvalidKeyException e) {
+	    	throw new IOException(e);
+	    } catch (SignatureException e) {
+	    	throw new IOException(e);
 	    }
+	    out.writeInt(acb.readableBytes());
+	    write(out, acb.nioBuffers());
     }
 
 	private void write(DataOutput out, ByteBuffer[] nioBuffers) throws IOException {
@@ -124,8 +111,10 @@ public class DataSerializer implements Serializer<Data>, Serializable {
 	@Override
     public Data deserialize(DataInput in, int available) throws IOException {
 	    int header = in.readByte();
-	    if(header == 1) {
+	    if(header == 2) {
 	    	return deserializeFile(in);
+	    } else if(header == 1) {
+	    	return deserializeLegacyFile(in);
 	    } else if(header == 0) {
 	    	return deserializeMapDB(in);
 	    } else {
@@ -155,22 +144,66 @@ public class DataSerializer implements Serializer<Data>, Serializable {
 	    return data;
     }
 
-	private Data deserializeFile(DataInput in) throws IOException, FileNotFoundException {
+	private Data deserializeFile(DataInput in) throws IOException {
 	    byte[] me = new byte[Number160.BYTE_ARRAY_SIZE];
 	    in.readFully(me);
 	    Number160 hash = new Number160(me);
-	    RandomAccessFile file = new RandomAccessFile(new File(path, hash.toString()), "r");
-	    FileChannel inChannel = file.getChannel();
-	    MappedByteBuffer buffer = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, inChannel.size());
-	    buffer.load();
-	    ByteBuf buf = Unpooled.wrappedBuffer(buffer);
-	    Data data = Data.decodeHeader(buf, signatureFactory);
-	    data.decodeBuffer(buf);
-	    data.decodeDone(buf, signatureFactory);
-	    file.close();
+	    ByteBuf buf = Unpooled.buffer();
+	    Data data = null;
+	    while(data == null) {
+	    	buf.writeByte(in.readByte());
+	    	data = Data.decodeHeader(buf, signatureFactory);
+	    }
+	    // backed by the mapped file, the payload is not copied to the heap
+	    boolean retVal = data.decodeBuffer(largeValueStore().read(hash, data.length()));
+	    if(!retVal) {
+	    	throw new IOException("data could not be read");
+	    }
+	    byte[] signature = new byte[in.readInt()];
+	    in.readFully(signature);
+	    retVal = data.decodeDone(Unpooled.wrappedBuffer(signature), signatureFactory);
+	    if(!retVal) {
+	    	throw new IOException("signature could not be read");
+	    }
 	    return data;
     }
 
+	/**
+	 * Reads a value that was stored with header, payload, and signature in one file.
+	 */
+	private Data deserializeLegacyFile(DataInput in) throws IOException, FileNotFoundException {
+	    byte[] me = new byte[Number160.BYTE_ARRAY_SIZE];
+	    in.readFully(me);
+	    Number160 hash = new Number160(me);
+	    RandomAccessFile file = new RandomAccessFile(new File(path, hash.toString()), "r");
+	    try {
+	    	FileChannel inChannel = file.getChannel();
+	    	// pages are loaded on access
+	    	MappedByteBuffer buffer = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, inChannel.size());
+	    	ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+	    	Data data = Data.decodeHeader(buf, signatureFactory);
+	    	data.decodeBuffer(buf);
+	    	data.decodeDone(buf, signatureFactory);
+	    	return data;
+	    } finally {
+	    	file.close();
+	    }
+    }
+
+	private LargeValueStore largeValueStore() {
+		LargeValueStore store = largeValueStore;
+		if (store == null) {
+			synchronized (this) {
+				store = largeValueStore;
+				if (store == null) {
+					store = new LargeValueStore(path);
+					largeValueStore = store;
+				}
+			}
+		}
+		return store;
+	}
+
 	@Override
     public int fixedSize() {
 	    return -1;
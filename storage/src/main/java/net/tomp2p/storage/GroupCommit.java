@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.storage;
+
+import org.mapdb.DB;
+
+/**
+ * Coalesces the commits of concurrent writers. A writer modifies the database and then calls {@link #commit()}, which
+ * blocks until a commit that covers this modification has finished. A single thread commits all modifications that
+ * arrived within a time window, or as soon as a number of modifications are pending.
+ *
+ * @author Thomas Bocek
+ *
+ */
+final class GroupCommit implements Runnable {
+
+	private final DB db;
+	private final long windowMillis;
+	private final int windowSize;
+	private final Thread thread;
+
+	private final Object lock = new Object();
+	// guarded by lock
+	private Round current = new Round();
+	private boolean closed = false;
+
+	/**
+	 * @param db
+	 *            The database to commit
+	 * @param windowMillis
+	 *            The time in milliseconds the first modification of a commit
+	 *            waits for other modifications
+	 * @param windowSize
+	 *            The number of modifications that are committed without
+	 *            waiting for the time window to end
+	 */
+	GroupCommit(final DB db, final int windowMillis, final int windowSize) {
+		if (windowMillis <= 0 || windowSize <= 0) {
+			throw new IllegalArgumentException("The commit window needs to be positive.");
+		}
+		this.db = db;
+		this.windowMillis = windowMillis;
+		this.windowSize = windowSize;
+		this.thread = new Thread(this, "tomp2p-storage-commit");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Blocks until the modifications made by the current thread so far are
+	 * committed.
+	 *
+	 * @throws RuntimeException
+	 *             If the covering commit failed
+	 */
+	void commit() {
+		final Round round;
+		synchronized (lock) {
+			if (closed) {
+				throw new IllegalStateException("Storage is closed.");
+			}
+			round = current;
+			// wake up the commit thread to start the window, or to commit now
+			if (++round.writes == 1 || round.writes >= windowSize) {
+				lock.notifyAll();
+			}
+		}
+		round.await();
+	}
+
+	/**
+	 * Commits the pending modifications and stops the commit thread.
+	 */
+	void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			final Round round;
+			synchronized (lock) {
+				try {
+					while (current.writes == 0 && !closed) {
+						lock.wait();
+					}
+					final long deadline = System.currentTimeMillis() + windowMillis;
+					long remaining = windowMillis;
+					while (current.writes < windowSize && !closed && remaining > 0) {
+						lock.wait(remaining);
+						remaining = deadline - System.currentTimeMillis();
+					}
+				} catch (InterruptedException e) {
+					// commit what we have and stop
+					closed = true;
+				}
+				if (current.writes == 0) {
+					// closed and nothing pending
+					return;
+				}
+				round = current;
+				current = new Round();
+			}
+			try {
+				db.commit();
+				round.done(null);
+			} catch (RuntimeException e) {
+				round.done(e);
+			}
+		}
+	}
+
+	/**
+	 * The modifications that are committed together.
+	 */
+	private static final class Round {
+		// guarded by the lock of GroupCommit
+		private int writes = 0;
+		// guarded by this
+		private boolean done = false;
+		private RuntimeException failure;
+
+		private synchronized void done(final RuntimeException failure) {
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+		}
+
+		private synchronized void await() {
+			boolean interrupted = false;
+			// the modification is already made, we cannot give up waiting
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Thomas Bocek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package net.tomp2p.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.utils.ConcurrentCacheMap;
+
+/**
+ * Stores the payload of large values in files named by the hash of the payload. Since the name is derived from the
+ * content, a file is written once and never changes afterwards, which allows to keep the files memory-mapped and to
+ * hand out the mapping to several readers at once. A value read from this store is backed by the mapping, thus it is
+ * not copied to the heap and the encoder can add it to the outgoing buffer as it is.
+ *
+ * @author Thomas Bocek
+ *
+ */
+final class LargeValueStore {
+
+	private static final int MAPPINGS_TIME_TO_LIVE = 60;
+	private static final int MAX_MAPPINGS = 1024;
+	// files of the older format contain header and signature as well, they must not be overwritten
+	private static final String SUFFIX = ".value";
+
+	private final File path;
+	private final ConcurrentCacheMap<Number160, MappedByteBuffer> mappings = new ConcurrentCacheMap<Number160, MappedByteBuffer>(
+	        MAPPINGS_TIME_TO_LIVE, MAX_MAPPINGS);
+
+	LargeValueStore(final File path) {
+		this.path = path;
+	}
+
+	/**
+	 * Writes the payload of the value to its file, unless the file exists
+	 * already. The file is written to a temporary file first and then renamed,
+	 * so a reader never sees a partial file.
+	 *
+	 * @param hash
+	 *            The hash of the payload
+	 * @param value
+	 *            The value to store
+	 * @throws IOException
+	 *             If the file could not be written
+	 */
+	void write(final Number160 hash, final Data value) throws IOException {
+		final File file = file(hash);
+		final int length = value.length();
+		if (file.length() == length) {
+			// content addressed, the payload is already stored
+			return;
+		}
+		final File tmp = File.createTempFile(hash.toString(), ".tmp", path);
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(tmp, "rw");
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer[] buffers = value.toByteBuffers();
+			long written = 0;
+			while (written < length) {
+				written += channel.write(buffers);
+			}
+			// the entry in MapDB that points to this file may be committed
+			// right after this
+			channel.force(false);
+		} finally {
+			if (raf != null) {
+				raf.close();
+			}
+		}
+		if (!tmp.renameTo(file)) {
+			// on some platforms, rename does not replace an existing file
+			final boolean exists = file.length() == length;
+			tmp.delete();
+			if (!exists) {
+				throw new IOException("could not store " + file);
+			}
+		}
+		mappings.remove(hash);
+	}
+
+	/**
+	 * Returns the payload of a value, backed by the memory-mapped file. The
+	 * pages are loaded on access.
+	 *
+	 * @param hash
+	 *            The hash of the payload
+	 * @param length
+	 *            The expected length of the payload
+	 * @return A buffer with the payload that does not need to be released
+	 * @throws IOException
+	 *             If the file could not be mapped or has the wrong length
+	 */
+	ByteBuf read(final Number160 hash, final int length) throws IOException {
+		MappedByteBuffer mapping = mappings.get(hash);
+		if (mapping == null || mapping.capacity() != length) {
+			mapping = map(hash);
+			if (mapping.capacity() != length) {
+				throw new IOException("expected " + length + " bytes, but the file of " + hash + " has "
+				        + mapping.capacity());
+			}
+			mappings.put(hash, mapping);
+		}
+		// each reader needs its own position
+		return Unpooled.wrappedBuffer(mapping.duplicate());
+	}
+
+	private MappedByteBuffer map(final Number160 hash) throws IOException {
+		final RandomAccessFile file = new RandomAccessFile(file(hash), "r");
+		try {
+			final FileChannel channel = file.getChannel();
+			// the mapping stays valid after the file is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+	}
+
+	private File file(final Number160 hash) {
+		return new File(path, hash.toString() + SUFFIX);
+	}
+}
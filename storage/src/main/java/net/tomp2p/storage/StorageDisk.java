@@ -18,21 +18,17 @@ package net.tomp2p.storage;
 
 import java.io.File;
 import java.security.PublicKey;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentNavigableMap;
 
 import net.tomp2p.connection.SignatureFactory;
-import net.tomp2p.dht.Storage;
+import net.tomp2p.dht.BatchedStorage;
+import net.tomp2p.dht.TimeoutWheel;
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.Number320;
 import net.tomp2p.peers.Number480;
@@ -41,12 +37,12 @@ import net.tomp2p.peers.Number640;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 
-public class StorageDisk implements Storage {
+public class StorageDisk implements BatchedStorage {
     // Core
     final private NavigableMap<Number640, Data> dataMap;
-    // Maintenance
+    // Maintenance, the expiration times are stored, the wheel is rebuilt on startup
     final private Map<Number640, Long> timeoutMap;
-    final private ConcurrentNavigableMap<Long, Set<Number640>> timeoutMapRev;
+    final private TimeoutWheel timeoutWheel = new TimeoutWheel();
     // Protection
     final private Map<Number320, PublicKey> protectedDomainMap;
     final private Map<Number480, PublicKey> protectedEntryMap;
@@ -58,13 +54,46 @@ public class StorageDisk implements Storage {
     
     final private int storageCheckIntervalMillis;
     
+    // null if every modification commits on its own
+    final private GroupCommit groupCommit;
+    final private ThreadLocal<Batch> batch = new ThreadLocal<Batch>() {
+    	@Override
+    	protected Batch initialValue() {
+    		return new Batch();
+    	}
+    };
+    
     //for full control
     public StorageDisk(DB db, Number160 peerId, File path, SignatureFactory signatureFactory, int storageCheckIntervalMillis) {
+    	this(db, peerId, path, signatureFactory, storageCheckIntervalMillis, 0, 0);
+    }
+    
+    /**
+     * Creates a disk storage that commits the modifications of concurrent writers together. A modification returns
+     * once the commit that covers it has finished, thus a returned put is as durable as without group commit, but
+     * takes up to commitWindowMillis longer. The {@link net.tomp2p.dht.StorageLayer} waits for the commit after it has
+     * released the lock of the modified range, thus the window only delays the writer and not the readers.
+     * 
+     * @param commitWindowMillis
+     *            The time in milliseconds a commit waits for other modifications, or 0 to commit every modification
+     *            on its own
+     * @param commitWindowSize
+     *            The number of modifications that are committed without waiting for the time window to end
+     */
+    public StorageDisk(DB db, Number160 peerId, File path, SignatureFactory signatureFactory,
+    		int storageCheckIntervalMillis, int commitWindowMillis, int commitWindowSize) {
     	this.db = db;
+    	this.groupCommit = commitWindowMillis > 0 ? new GroupCommit(db, commitWindowMillis, commitWindowSize) : null;
     	DataSerializer dataSerializer = new DataSerializer(path, signatureFactory);
     	this.dataMap = db.createTreeMap("dataMap_" + peerId.toString()).valueSerializer(dataSerializer).makeOrGet();
     	this.timeoutMap = db.createTreeMap("timeoutMap_" + peerId.toString()).makeOrGet();
-    	this.timeoutMapRev = db.createTreeMap("timeoutMapRev_" + peerId.toString()).makeOrGet();
+    	for (Map.Entry<Number640, Long> entry : timeoutMap.entrySet()) {
+    		timeoutWheel.add(entry.getKey(), entry.getValue());
+    	}
+    	// replaced by the wheel
+    	if (db.exists("timeoutMapRev_" + peerId.toString())) {
+    		db.delete("timeoutMapRev_" + peerId.toString());
+    	}
     	this.protectedDomainMap = db.createTreeMap("protectedDomainMap_" + peerId.toString()).makeOrGet();
     	this.protectedEntryMap = db.createTreeMap("protectedEntryMap_" + peerId.toString()).makeOrGet();
     	this.responsibilityMap = db.createTreeMap("responsibilityMap_" + peerId.toString()).makeOrGet();
@@ -81,7 +110,7 @@ public class StorageDisk implements Storage {
     @Override
     public Data put(Number640 key, Data value) {
 		Data oldData = dataMap.put(key, value);
-		db.commit();
+		commit();
         return oldData;
     }
     
@@ -104,7 +133,7 @@ public class StorageDisk implements Storage {
     @Override
     public Data remove(Number640 key, boolean returnData) {
     	Data retVal = dataMap.remove(key);
-		db.commit();
+		commit();
 		return retVal;
     }
     
@@ -138,7 +167,7 @@ public class StorageDisk implements Storage {
         }
 		
         tmp.clear();
-        db.commit();
+        commit();
         return retVal;
     }
     
@@ -218,54 +247,23 @@ public class StorageDisk implements Storage {
     // Maintenance
 	@Override
 	public void addTimeout(Number640 key, long expiration) {
-		Long oldExpiration = timeoutMap.put(key, expiration);
-		putIfAbsent2(expiration, key);
-		if (oldExpiration == null) {
-			return;
-		}
-		removeRevTimeout(key, oldExpiration);
-		db.commit();
+		timeoutMap.put(key, expiration);
+		timeoutWheel.add(key, expiration);
+		commit();
 	}
  	
- 	private void putIfAbsent2(long expiration, Number640 key) {
-        Set<Number640> timeouts = timeoutMapRev.get(expiration);
-        if(timeouts == null) {
-        	timeouts = Collections.newSetFromMap(new ConcurrentHashMap<Number640, Boolean>());
-        }
-        timeouts.add(key);
-        timeoutMapRev.put(expiration, timeouts);
-    }
- 	
  	@Override
     public void removeTimeout(Number640 key) {
-		Long expiration = timeoutMap.remove(key);
-        if (expiration == null) {
+		if (timeoutMap.remove(key) == null) {
             return;
         }
-        removeRevTimeout(key, expiration);
-        db.commit();
-    }
- 	
- 	private void removeRevTimeout(Number640 key, Long expiration) {
-        Set<Number640> tmp = timeoutMapRev.get(expiration);
-        if (tmp != null) {
-            tmp.remove(key);
-            if (tmp.isEmpty()) {
-                timeoutMapRev.remove(expiration);
-            } else {
-            	timeoutMapRev.put(expiration, tmp);
-            }
-        }
+		timeoutWheel.remove(key);
+        commit();
     }
  	
  	@Override
     public Collection<Number640> subMapTimeout(long to) {
-		SortedMap<Long, Set<Number640>> tmp = timeoutMapRev.subMap(0L, to);
-        Collection<Number640> toRemove = new ArrayList<Number640>();
-        for (Set<Number640> set : tmp.values()) {
-            toRemove.addAll(set);
-        }
-        return toRemove;
+		return timeoutWheel.expire(to);
     }
  	
  	
@@ -301,7 +299,7 @@ public class StorageDisk implements Storage {
 		}
 		contentIDs.add(locationKey);
 		responsibilityMapRev.put(peerId, contentIDs);
-		db.commit();
+		commit();
 		return hasChanged;
     }
 
@@ -311,7 +309,7 @@ public class StorageDisk implements Storage {
     	if(peerId != null) {
     		removeRevResponsibility(peerId, locationKey);
     	}
-    	db.commit();
+    	commit();
     }
 	
 	private void removeRevResponsibility(Number160 peerId, Number160 locationKey) {
@@ -326,9 +324,44 @@ public class StorageDisk implements Storage {
         }
     }
 	
+	// Batch
+	@Override
+	public void beginBatch() {
+		batch.get().depth++;
+	}
+
+	@Override
+	public void endBatch() {
+		final Batch current = batch.get();
+		if (--current.depth == 0 && current.modified) {
+			current.modified = false;
+			commitNow();
+		}
+	}
+
+	private void commit() {
+		final Batch current = batch.get();
+		if (current.depth > 0) {
+			current.modified = true;
+		} else {
+			commitNow();
+		}
+	}
+
+	private void commitNow() {
+		if (groupCommit != null) {
+			groupCommit.commit();
+		} else {
+			db.commit();
+		}
+	}
+	
 	// Misc
 	@Override
     public void close() {
+		if (groupCommit != null) {
+			groupCommit.close();
+		}
 	    db.close();	    
     }
 	
@@ -368,4 +401,12 @@ public class StorageDisk implements Storage {
     public int storageCheckIntervalMillis() {
 	    return storageCheckIntervalMillis;
     }
+
+	/**
+	 * The batch nesting depth of a thread and whether it has uncommitted modifications.
+	 */
+	private static final class Batch {
+		private int depth = 0;
+		private boolean modified = false;
+	}
 }
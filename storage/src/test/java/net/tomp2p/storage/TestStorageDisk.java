@@ -4,13 +4,17 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Random;
 
 import net.tomp2p.connection.DSASignatureFactory;
 import net.tomp2p.dht.Storage;
 import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
 
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Test;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 
@@ -23,6 +27,31 @@ public class TestStorageDisk extends TestStorage {
 		return new StorageDisk(db, locationKey, DIR, new DSASignatureFactory(), 60 * 1000);
 	}
 
+	@Test
+	public void testLargeValue() throws Exception {
+		Storage storage = createStorage();
+		byte[] me = new byte[1024 * 1024];
+		new Random(42).nextBytes(me);
+		Number640 key1 = new Number640(locationKey, Number160.ZERO, new Number160(1), Number160.ZERO);
+		Number640 key2 = new Number640(locationKey, Number160.ZERO, new Number160(2), Number160.ZERO);
+		// same payload with a different header
+		storage.put(key1, new Data(me));
+		storage.put(key2, new Data(me).ttlSeconds(100));
+		Data data1 = storage.get(key1);
+		Data data2 = storage.get(key2);
+		Assert.assertArrayEquals(me, data1.toBytes());
+		Assert.assertArrayEquals(me, data2.toBytes());
+		Assert.assertEquals(-1, data1.ttlSeconds());
+		Assert.assertEquals(100, data2.ttlSeconds());
+		// backed by the mapped file, not by the heap
+		Assert.assertTrue(data1.buffer().isDirect());
+		storage.close();
+	}
+
+	static File dir() {
+		return DIR;
+	}
+
 	@Before
 	public void befor() throws IOException {
 		DIR =  Files.createTempDirectory("tomp2p").toFile();
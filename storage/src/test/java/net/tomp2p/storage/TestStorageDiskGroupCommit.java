@@ -0,0 +1,103 @@
+package net.tomp2p.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.tomp2p.connection.DSASignatureFactory;
+import net.tomp2p.dht.Storage;
+import net.tomp2p.dht.StorageLayer;
+import net.tomp2p.dht.StorageLayer.PutStatus;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+/**
+ * Runs the storage tests with a disk storage that commits concurrent writers together.
+ */
+public class TestStorageDiskGroupCommit extends TestStorageDisk {
+	final private static Number160 locationKey = new Number160(10);
+
+	public Storage createStorage() throws IOException {
+		DB db = DBMaker.newFileDB(new File(dir(), "tomp2p")).transactionDisable().closeOnJvmShutdown().cacheDisable().make();
+		return new StorageDisk(db, locationKey, dir(), new DSASignatureFactory(), 60 * 1000, 5, 64);
+	}
+
+	@Test
+	public void testConcurrentPutAll() throws Exception {
+		final Storage storageM = createStorage();
+		final StorageLayer storageLayer = new StorageLayer(storageM);
+		final int threads = 8;
+		final int rounds = 20;
+		final int keys = 10;
+		final AtomicInteger failed = new AtomicInteger();
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < rounds; j++) {
+							NavigableMap<Number640, Data> dataMap = new TreeMap<Number640, Data>();
+							for (int k = 0; k < keys; k++) {
+								dataMap.put(new Number640(new Number160(thread + 1), Number160.ZERO, new Number160(
+								        j * keys + k + 1), Number160.ZERO), new Data("value" + k));
+							}
+							Map<Number640, Enum<?>> status = storageLayer.putAll(dataMap, null, false, false, false);
+							for (Enum<?> putStatus : status.values()) {
+								if (putStatus != PutStatus.OK) {
+									failed.incrementAndGet();
+								}
+							}
+						}
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		Assert.assertEquals(0, failed.get());
+		Assert.assertEquals(threads * rounds * keys, storageM.map().size());
+		storageM.close();
+	}
+
+	@Test
+	public void testCommitOutsideLock() throws Exception {
+		DB db = DBMaker.newFileDB(new File(dir(), "tomp2p")).transactionDisable().closeOnJvmShutdown().cacheDisable().make();
+		final Storage storageM = new StorageDisk(db, locationKey, dir(), new DSASignatureFactory(), 60 * 1000, 1000, 64);
+		final StorageLayer storageLayer = new StorageLayer(storageM);
+		final Number640 key = new Number640(locationKey, Number160.ZERO, Number160.ONE, Number160.ZERO);
+		final AtomicInteger failed = new AtomicInteger();
+		// a lone writer waits for the whole commit window
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				if (storageLayer.put(key, new Data("value"), null, false, false, false) != PutStatus.OK) {
+					failed.incrementAndGet();
+				}
+			}
+		});
+		writer.start();
+		Thread.sleep(200);
+		// the range of the key is not locked while the writer waits
+		long start = System.currentTimeMillis();
+		Assert.assertNotNull(storageLayer.get(key));
+		Assert.assertTrue(System.currentTimeMillis() - start < 500);
+		Assert.assertTrue(writer.isAlive());
+		writer.join();
+		Assert.assertEquals(0, failed.get());
+		storageM.close();
+	}
+}
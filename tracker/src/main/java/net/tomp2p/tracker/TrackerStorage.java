@@ -6,7 +6,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NavigableSet;
-import java.util.SortedSet;
 
 import net.tomp2p.connection.PeerConnection;
 import net.tomp2p.connection.PeerException;
@@ -187,9 +186,18 @@ public class TrackerStorage implements Maintainable, PeerMapChangeListener, Peer
 
 	private boolean isInReplicationRange(final Number160 locationKey, final PeerAddress peerAddress,
 	        final int replicationFactor) {
-		SortedSet<PeerStatistic> tmp = peerMap.closePeers(locationKey, replicationFactor);
-		tmp.add(new PeerStatistic(self));
-		return tmp.headSet(new PeerStatistic(peerAddress)).size() < replicationFactor;
+		// count the peers that are closer than peerAddress, including ourselfs
+		final Number160 peerId = peerAddress.peerId();
+		int closer = Number160.compareDistance(locationKey, self.peerId(), peerId) < 0 ? 1 : 0;
+		for (PeerStatistic peerStatistic : peerMap.closePeers(locationKey, replicationFactor)) {
+			if (closer >= replicationFactor) {
+				return false;
+			}
+			if (Number160.compareDistance(locationKey, peerStatistic.peerAddress().peerId(), peerId) < 0) {
+				closer++;
+			}
+		}
+		return closer < replicationFactor;
 	}
 
 	private boolean add(Number320 key, PeerAddress peerAddress, Map<Number320, Map<PeerAddress, Pair<PeerStatistic, Data>>> map, Data attachement) {